@@ -89,6 +89,9 @@ public class MicroHessianInput {
     
     /** Using fast but not thread safe StringBuilder for constructing strings */
     private StringBuilder mStringBuilder = new StringBuilder(255);
+
+    /** Reused buffer the UTF-8 bytes of strings are read into in bulk */
+    private byte[] mStringBytes = new byte[255];
     
     /**
      * Creates a new Hessian input stream, initialized with an underlying input
@@ -345,6 +348,117 @@ public class MicroHessianInput {
         return v;
     }
 
+    /**
+     * Reads the next raw tag from the stream. Used by streaming decoders which
+     * drive the token stream themselves instead of building Hashtables.
+     *
+     * @return the tag or -1 at the end of the stream.
+     */
+    public int readTag() throws IOException {
+        return is.read();
+    }
+
+    /**
+     * Starts reading a map in streaming mode. Consumes the optional type
+     * following the map tag.
+     *
+     * <pre>
+     * M t b16 b8 type-string (key value)* z
+     * </pre>
+     *
+     * @param tag The tag already read from the stream.
+     * @return true if a map follows, false if the map is null.
+     */
+    public boolean startMap(int tag) throws IOException {
+        if (tag == 'N')
+            return false;
+
+        if (tag != 'M')
+            throw expect("map", tag);
+
+        skipOptionalType();
+        return true;
+    }
+
+    /**
+     * Reads the next key of a map started with {@link #startMap(int)}. The
+     * value of the key has to be consumed by the caller before calling this
+     * method again.
+     *
+     * @return The key or null if the end of the map (or of the stream) was
+     *         reached.
+     */
+    public String readMapKey() throws IOException {
+        int tag = is.read();
+
+        if (tag == 'z' || tag < 0)
+            return null;
+
+        Object key = decodeType(tag);
+        return (key == null) ? null : key.toString();
+    }
+
+    /**
+     * Starts reading a list in streaming mode. Consumes the optional type and
+     * length following the list tag. The elements are then read one by one
+     * while {@link #hasMoreElements()} returns true.
+     *
+     * <pre>
+     * V t b16 b8 type-string l b32 b24 b16 b8 value* z
+     * </pre>
+     *
+     * @param tag The tag already read from the stream.
+     * @return true if a list follows, false if the list is null.
+     */
+    public boolean startList(int tag) throws IOException {
+        if (tag == 'N')
+            return false;
+
+        if (tag != 'V')
+            throw expect("vector", tag);
+
+        skipOptionalType();
+
+        is.mark(1);
+        if (is.read() == 'l') {
+            // the length is not needed as the list is read up to its end tag
+            is.readInt();
+        } else {
+            is.reset();
+        }
+        return true;
+    }
+
+    /**
+     * Checks if the list started with {@link #startList(int)} has more
+     * elements. Consumes the end tag of the list when there are none left.
+     *
+     * @return true if another element follows, false at the end of the list
+     *         (or of the stream).
+     */
+    public boolean hasMoreElements() throws IOException {
+        is.mark(1);
+        int tag = is.read();
+
+        if (tag == 'z' || tag < 0)
+            return false;
+
+        is.reset();
+        return true;
+    }
+
+    /**
+     * Skips the optional type declaration of a map or a list.
+     */
+    private void skipOptionalType() throws IOException {
+        is.mark(1);
+        if (is.read() == 't') {
+            is.skip(2);
+        } else {
+            is.reset();
+        }
+    }
+
     public Fault readFault() throws IOException {
         decodeTag();
         int tag = is.read();
@@ -439,7 +553,10 @@ public class MicroHessianInput {
     }
 
     /**
-     * Reads a string from the underlying stream.
+     * Reads a string from the underlying stream. The length is given in
+     * characters, so the UTF-8 bytes are read in chunks of as many bytes as
+     * characters are left, which never reads past the end of the string.
+     * Sequences split by the end of a chunk are completed before decoding.
      */
     private String readStringImpl(int length) throws IOException {
 
@@ -447,34 +564,103 @@ public class MicroHessianInput {
         // new one.
         mStringBuilder.setLength(0);
 
-        for (int i = 0; i < length; i++) {
-            int ch = is.read();
+        int remaining = length;
+        while (remaining > 0) {
+            // one byte per character at least, up to 4 for the last one
+            if (mStringBytes.length < remaining + 3) {
+                mStringBytes = new byte[remaining + 3];
+            }
+            final byte[] b = mStringBytes;
+            int count = readFully(b, 0, remaining);
+            if (count < remaining) {
+                // end of stream, pad like single byte reads returning -1
+                remaining = appendUtf8(b, count, remaining);
+                while (remaining-- > 0) {
+                    mStringBuilder.append((char)-1);
+                }
+                break;
+            }
+            remaining = appendUtf8(b, count, remaining);
+        }
 
-            if (ch < 0x80)
-                mStringBuilder.append((char)ch);
+        return mStringBuilder.substring(0, mStringBuilder.length());
+    }
 
-            else if ((ch & 0xe0) == 0xc0) {
-                int ch1 = is.read();
-                int v = ((ch & 0x1f) << 6) + (ch1 & 0x3f);
-                mStringBuilder.append((char)v);
-            } else if ((ch & 0xf0) == 0xe0) {
-                int ch1 = is.read();
-                int ch2 = is.read();
-                int v = ((ch & 0x0f) << 12) + ((ch1 & 0x3f) << 6) + (ch2 & 0x3f);
-                mStringBuilder.append((char)v);
-            } else if ((ch & 0xff) >= 0xf0 && (ch & 0xff) <= 0xf4) { // UTF-4
-                final byte[] b = new byte[4];
-                b[0] = (byte)ch;
-                b[1] = (byte)is.read();
-                b[2] = (byte)is.read();
-                b[3] = (byte)is.read();
-                mStringBuilder.append(new String(b, "utf-8"));
+    /**
+     * Decodes UTF-8 bytes into the string builder, reading the missing bytes
+     * of a sequence cut off at the end of the buffer from the stream.
+     * 
+     * @param b The buffer holding the bytes.
+     * @param count The number of bytes in the buffer.
+     * @param remaining The number of characters left to read.
+     * @return The number of characters left to read after decoding.
+     */
+    private int appendUtf8(byte[] b, int count, int remaining) throws IOException {
+        int i = 0;
+        while (i < count) {
+            final int ch = b[i] & 0xff;
+            int sequenceLength;
+            if (ch < 0x80) {
+                mStringBuilder.append((char)ch);
                 i++;
-            } else
+                remaining--;
+                continue;
+            } else if ((ch & 0xe0) == 0xc0) {
+                sequenceLength = 2;
+            } else if ((ch & 0xf0) == 0xe0) {
+                sequenceLength = 3;
+            } else if (ch >= 0xf0 && ch <= 0xf4) { // UTF-4
+                sequenceLength = 4;
+            } else {
                 throw new IOException("bad utf-8 encoding");
+            }
+
+            if (i + sequenceLength > count) {
+                // complete the sequence, missing bytes read as -1
+                final int read = readFully(b, count, i + sequenceLength - count);
+                for (int j = count + read; j < i + sequenceLength; j++) {
+                    b[j] = (byte)-1;
+                }
+                count = i + sequenceLength;
+            }
+
+            if (sequenceLength == 2) {
+                mStringBuilder.append((char)(((ch & 0x1f) << 6) + (b[i + 1] & 0x3f)));
+                remaining--;
+            } else if (sequenceLength == 3) {
+                mStringBuilder.append((char)(((ch & 0x0f) << 12) + ((b[i + 1] & 0x3f) << 6)
+                        + (b[i + 2] & 0x3f)));
+                remaining--;
+            } else {
+                final int codePoint = ((ch & 0x07) << 18) + ((b[i + 1] & 0x3f) << 12)
+                        + ((b[i + 2] & 0x3f) << 6) + (b[i + 3] & 0x3f);
+                // surrogate pair, counts as two characters
+                mStringBuilder.append((char)(0xd800 + ((codePoint - 0x10000) >> 10)));
+                mStringBuilder.append((char)(0xdc00 + ((codePoint - 0x10000) & 0x3ff)));
+                remaining -= 2;
+            }
+            i += sequenceLength;
         }
+        return remaining;
+    }
 
-        return mStringBuilder.substring(0, mStringBuilder.length());
+    /**
+     * Reads up to length bytes, blocking until they are read or the end of
+     * the stream is reached.
+     * 
+     * @return The number of bytes read, less than length only at the end of
+     *         the stream.
+     */
+    private int readFully(byte[] b, int offset, int length) throws IOException {
+        int total = 0;
+        while (total < length) {
+            final int count = is.read(b, offset + total, length - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
     }
 
     public Hashtable<String, Object> readHashMap() throws IOException {
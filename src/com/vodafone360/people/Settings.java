@@ -46,6 +46,15 @@ public final class Settings {
     /** Maximum number of HTTP connection attempts. */
     public static final int HTTP_MAX_RETRY_COUNT = 3;
 
+    /**
+     * Maximum number of pooled HTTP connections, one each for the RPG poll,
+     * the RPG requests and the API authentication.
+     */
+    public static final int HTTP_MAX_CONNECTIONS = 3;
+
+    /** Milliseconds an idle HTTP connection is kept alive for reuse. */
+    public static final long HTTP_IDLE_CONNECTION_TIMEOUT = 60000;
+
     /** HTTP header content type. */
     public static final String HTTP_HEADER_CONTENT_TYPE = "application/binary";
 
@@ -62,6 +71,78 @@ public final class Settings {
     /** TCP socket read time out for the read-operation. */
     public static final int TCP_SOCKET_READ_TIMEOUT = 10 * 60 * 1000;
 
+    /** Number of threads decoding server responses. */
+    public static final int DECODER_THREAD_COUNT = 2;
+
+    /**
+     * Maximum number of undecoded responses per decoder priority lane. The
+     * transport blocks when a lane is full.
+     */
+    public static final int DECODER_QUEUE_CAPACITY = 50;
+
+    /** Maximum number of free response buffers kept for reading responses. */
+    public static final int RESPONSE_BUFFER_POOL_SIZE = 8;
+
+    /**
+     * Maximum size in bytes of a response buffer kept for reuse, buffers of
+     * larger responses are left to the garbage collector.
+     */
+    public static final int RESPONSE_BUFFER_MAX_POOLED_SIZE = 256 * 1024;
+
+    /*
+     * Database.
+     */
+    /**
+     * Maximum number of contacts added to the database in one transaction
+     * when a list of contacts is imported.
+     */
+    public static final int MAX_CONTACTS_PER_TRANSACTION = 100;
+
+    /**
+     * Maximum number of compiled statements kept per open database by the
+     * statement cache.
+     */
+    public static final int STATEMENT_CACHE_SIZE = 32;
+
+    /** Number of contacts read from the database per contact list page. */
+    public static final int CONTACT_LIST_PAGE_SIZE = 50;
+
+    /** Maximum number of contact list pages kept in memory. */
+    public static final int CONTACT_LIST_CACHED_PAGES = 4;
+
+    /**
+     * Distance in contacts from the end of a page at which the following
+     * contact list page is read ahead.
+     */
+    public static final int CONTACT_LIST_PREFETCH_DISTANCE = 10;
+
+    /**
+     * Number of contact change pages requested from the server ahead of the
+     * one being applied when a contact download starts.
+     */
+    public static final int CONTACT_DOWNLOAD_INITIAL_WINDOW = 2;
+
+    /**
+     * Maximum number of contact change pages either requested from the server
+     * or waiting to be applied during a contact download.
+     */
+    public static final int CONTACT_DOWNLOAD_MAX_WINDOW = 6;
+
+    /** Maximum number of contacts requested per contact change page. */
+    public static final int CONTACT_DOWNLOAD_MAX_PAGE_SIZE = 100;
+
+    /**
+     * Contact change page round trip time (in milliseconds) above which the
+     * next contact download uses smaller pages.
+     */
+    public static final long CONTACT_DOWNLOAD_TARGET_RTT_MS = 4000;
+
+    /**
+     * Time (in milliseconds) a contact download should spend applying changes
+     * to the database in each engine run.
+     */
+    public static final long CONTACT_DOWNLOAD_RUN_TIME_MS = 100;
+
 
     /*
      * Notifications.
@@ -97,6 +178,12 @@ public final class Settings {
     /** Trace output for database components. **/
     public static final boolean ENABLED_DATABASE_TRACE = false;
 
+    /**
+     * Log and record queries which need a full table scan. Tests can switch
+     * the audit on at runtime with QueryPlanUtils.setEnabled().
+     */
+    public static final boolean ENABLED_DATABASE_QUERY_PLAN = false;
+
     /** Trace output for contact synchronisation components. **/
     public static final boolean ENABLED_CONTACTS_SYNC_TRACE = false;
 
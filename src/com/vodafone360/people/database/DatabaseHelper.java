@@ -34,7 +34,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Timer;
 import java.util.TimerTask;
 
@@ -57,8 +59,10 @@ import com.vodafone360.people.database.tables.ActivitiesTable;
 import com.vodafone360.people.database.tables.ContactChangeLogTable;
 import com.vodafone360.people.database.tables.ContactDetailsTable;
 import com.vodafone360.people.database.tables.ContactGroupsTable;
+import com.vodafone360.people.database.tables.ContactSearchTable;
 import com.vodafone360.people.database.tables.ContactSourceTable;
 import com.vodafone360.people.database.tables.ContactSummaryTable;
+import com.vodafone360.people.database.tables.ContactSummaryTable.ContactListPosition;
 import com.vodafone360.people.database.tables.ContactsTable;
 import com.vodafone360.people.database.tables.ConversationsTable;
 import com.vodafone360.people.database.tables.GroupsTable;
@@ -70,6 +74,7 @@ import com.vodafone360.people.database.tables.StateTable;
 import com.vodafone360.people.database.tables.ActivitiesTable.TimelineSummaryItem;
 import com.vodafone360.people.database.tables.ContactChangeLogTable.ContactChangeInfo;
 import com.vodafone360.people.database.tables.ContactDetailsTable.Field;
+import com.vodafone360.people.database.utils.StatementCache;
 import com.vodafone360.people.datatypes.ActivityItem;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.datatypes.ContactDetail;
@@ -121,7 +126,35 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      * Contains the database version. Must be increased each time the schema is
      * changed.
      **/
-    private static final int DATABASE_VERSION = 64;
+    private static final int DATABASE_VERSION = 68;
+
+    /**
+     * Last database version without the secondary indexes on the contact
+     * details, groups and sources tables. Upgrading from this version only
+     * adds the indexes and keeps the user data.
+     **/
+    private static final int DATABASE_VERSION_WITHOUT_INDEXES = 64;
+
+    /**
+     * Last database version without the contact search table. Upgrading from
+     * this version (or {@link #DATABASE_VERSION_WITHOUT_INDEXES}) builds the
+     * table from the existing contacts and keeps the user data.
+     **/
+    private static final int DATABASE_VERSION_WITHOUT_SEARCH = 65;
+
+    /**
+     * Last database version without the contact list sort index. Upgrading
+     * from this version (or an older one listed above) only adds the index.
+     **/
+    private static final int DATABASE_VERSION_WITHOUT_SORT_INDEX = 66;
+
+    /**
+     * Last database version without the native fingerprint of the contacts.
+     * Upgrading from this version (or an older one listed above) only adds
+     * the column and the index on the native contact ID, the fingerprints are
+     * filled by the next native import.
+     **/
+    private static final int DATABASE_VERSION_WITHOUT_NATIVE_FINGERPRINT = 67;
 
     private final List<Handler> mUiEventCallbackList = new ArrayList<Handler>();
 
@@ -129,6 +162,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 
     private boolean mMeProfileAvatarChangedFlag;
 
+    /** Database last opened by this helper, whose statements are cached. **/
+    private SQLiteDatabase mOpenDatabase;
+
     private boolean mDbUpgradeRequired = false;
     
     /**
@@ -145,9 +181,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private final Timer mDbEventTimer = new Timer();
     
     /**
-     * SELECT DISTINCT LocalId FROM NativeChangeLog UNION SELECT DISTINCT
-     * LocalId FROM ContactDetails WHERE NativeSyncId IS NULL OR NativeSyncId <>
-     * -1 ORDER BY 1
+     * SELECT DISTINCT LocalId FROM NativeChangeLog UNION SELECT +LocalId FROM
+     * ContactDetails WHERE NativeSyncId IS NULL OR NativeSyncId > -1 ORDER BY
+     * 1
      */
     private final static String QUERY_NATIVE_SYNCABLE_CONTACTS_LOCAL_IDS = 
     		NativeChangeLogTable.QUERY_MODIFIED_CONTACTS_LOCAL_IDS_NO_ORDERBY 
@@ -301,10 +337,36 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL("ATTACH DATABASE ':memory:' AS " + DATABASE_PRESENCE + ";");
         PresenceTable.create(db);
         MyIdentitiesCacheTable.create(db); // will be created if not existing
+        StatementCache.open(db);
+        mOpenDatabase = db;
     }
 
     /***
-     * Delete and then recreate a newer database structure.
+     * Closes the cached statements and then the database.
+     */
+    @Override
+    public synchronized void close() {
+        if (mOpenDatabase != null) {
+            StatementCache.close(mOpenDatabase);
+            mOpenDatabase = null;
+        }
+        super.close();
+    }
+
+    /***
+     * Returns the cache of compiled statements of the open database, e.g. to
+     * read its hit and miss counters.
+     * 
+     * @return The statement cache, or null if the database is not open
+     */
+    public StatementCache getStatementCache() {
+        return StatementCache.get(getReadableDatabase());
+    }
+
+    /***
+     * Upgrade the database structure. Upgrades which only add indexes, the
+     * contact search table or the native fingerprint column are done in place,
+     * any other upgrade deletes and then recreates the database.
      *
      * @param db An open SQLite database object
      * @param oldVersion The current database version on the device
@@ -316,6 +378,24 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         	trace(true, "DatabaseHelper.onUpgrade() Upgrading database version from [" + oldVersion
                     + "] to [" + newVersion + "]");
 
+            if (oldVersion == DATABASE_VERSION_WITHOUT_INDEXES
+                    || oldVersion == DATABASE_VERSION_WITHOUT_SEARCH) {
+                ContactDetailsTable.createIndexes(db);
+                ContactGroupsTable.createIndexes(db);
+                ContactSourceTable.createIndexes(db);
+                ContactSummaryTable.createSearchTable(db);
+            }
+            if (oldVersion >= DATABASE_VERSION_WITHOUT_INDEXES
+                    && oldVersion <= DATABASE_VERSION_WITHOUT_SORT_INDEX) {
+                ContactSummaryTable.createSortIndex(db);
+            }
+            if (oldVersion >= DATABASE_VERSION_WITHOUT_INDEXES
+                    && oldVersion <= DATABASE_VERSION_WITHOUT_NATIVE_FINGERPRINT) {
+                ContactsTable.addNativeFingerprintColumn(db);
+                ContactsTable.createIndexes(db);
+                return;
+            }
+
         	mDbUpgradeRequired = true;
         	removeUserData();
         	//Clearing the ApplicationCache.
@@ -337,9 +417,13 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 			//creating or upgrading the Db, that will lead to "IllegalStateException,
 			//getReadableDatabase() called recursively".
 			if (!mDbUpgradeRequired) {
-				getReadableDatabase().close();
+				final SQLiteDatabase db = getReadableDatabase();
+				StatementCache.close(db);
+				db.close();
 			}
 			mContext.deleteDatabase(DATABASE_NAME);
+			ContactDetailsTable.clearPhoneNumberIndex();
+			StateTable.clearCache();
 		}
         fireDatabaseChangedEvent(DatabaseChangeType.CONTACTS, false);
     }
@@ -355,6 +439,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             db = getReadableDatabase();
         }
 
+        StateTable.loadCache(db);
         mMeProfileAvatarChangedFlag = StateTable.fetchMeProfileAvatarChangedFlag(db);
     }
 
@@ -955,6 +1040,41 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 SyncMeDbUtils.getMeProfileLocalContactId(this), getReadableDatabase());
     }
 
+    /***
+     * Fetches one page of the main contact list, ordered by name. The position
+     * of the last contact of a page is used to fetch the next one.
+     * 
+     * @param groupFilterId The local ID of a group to filter, or null if no
+     *            filter is required
+     * @param constraint A search string to filter the contact name, or null if
+     *            no filter is required
+     * @param after Position of the last contact of the previous page, or null
+     *            for the first page
+     * @param pageSize Maximum number of contacts in the page
+     * @return The cursor result
+     * @see ContactSummaryTable#getPosition(Cursor)
+     */
+    public synchronized Cursor openContactSummaryPage(Long groupFilterId, CharSequence constraint,
+            ContactListPosition after, int pageSize) {
+        return ContactSummaryTable.openContactSummaryPage(groupFilterId, constraint,
+                SyncMeDbUtils.getMeProfileLocalContactId(this), after, pageSize,
+                getReadableDatabase());
+    }
+
+    /***
+     * Counts the contacts of the main contact list.
+     * 
+     * @param groupFilterId The local ID of a group to filter, or null if no
+     *            filter is required
+     * @param constraint A search string to filter the contact name, or null if
+     *            no filter is required
+     * @return The number of contacts, or -1 if an error occurred
+     */
+    public synchronized int fetchContactListCount(Long groupFilterId, CharSequence constraint) {
+        return ContactSummaryTable.fetchContactListCount(groupFilterId, constraint,
+                SyncMeDbUtils.getMeProfileLocalContactId(this), getReadableDatabase());
+    }
+
     public synchronized Cursor openContactsCursor() {
         return ContactsTable.openContactsCursor(getReadableDatabase());
     }
@@ -1333,12 +1453,35 @@ public class DatabaseHelper extends SQLiteOpenHelper {
      *            phonebook
      * @return SUCCESS or a suitable error code
      * @see #addContact(Contact)
+     * @see #syncAddContactList(List, boolean, boolean, List)
      */
     public ServiceStatus syncAddContactList(List<Contact> contactList, boolean syncToServer,
             boolean syncToNative) {
+        return syncAddContactList(contactList, syncToServer, syncToNative, null);
+    }
+
+    /***
+     * Function used by the contact sync engine to add a list of contacts to the
+     * database. The contacts are added with precompiled statements in
+     * transactions of up to {@link Settings#MAX_CONTACTS_PER_TRANSACTION}
+     * contacts. A contact which cannot be added is removed again and the
+     * remaining contacts are still added.
+     * 
+     * @param contactList The list of contacts received from the server
+     * @param syncToServer true if the contacts need to be sent to the server
+     * @param syncToNative true if the contacts need to be added to the native
+     *            phonebook
+     * @param failedList If not null, will be populated with the contacts which
+     *            could not be added
+     * @return SUCCESS if all contacts were added, otherwise the error of the
+     *         first contact which failed
+     */
+    public ServiceStatus syncAddContactList(List<Contact> contactList, boolean syncToServer,
+            boolean syncToNative, List<Contact> failedList) {
         if (Settings.ENABLED_DATABASE_TRACE)
             trace(false, "DatabaseHelper.syncAddContactList() syncToServer[" + syncToServer
-                    + "] syncToNative[" + syncToNative + "]");
+                    + "] syncToNative[" + syncToNative + "] contacts[" + contactList.size()
+                    + "]");
         if (!Settings.ENABLE_SERVER_CONTACT_SYNC) {
             syncToServer = false;
         }
@@ -1347,112 +1490,60 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
 
         SQLiteDatabase writableDb = getWritableDatabase();
-        
+        AddContactStatements statements = null;
+        ServiceStatus result = ServiceStatus.SUCCESS;
         boolean needFireDbUpdate = false;
+        int contactsInTransaction = 0;
 
-        for (Contact contact : contactList) {
-            contact.deleted = null;
-            contact.localContactID = null;
-            if (syncToNative) {
-                contact.nativeContactId = null;
-            }
-            if (syncToServer) {
-                contact.contactID = null;
-                contact.updated = null;
-                contact.synctophone = true;
-            }
-
-            try {
-
-                writableDb.beginTransaction();
-                ServiceStatus status = ContactsTable.addContact(contact, writableDb);
-                if (ServiceStatus.SUCCESS != status) {
-                    LogUtils.logE("DatabaseHelper.syncAddContactList() Unable to add contact to contacts table, due to a database error");
-                    return status;
-                }
-
-                List<ContactDetail.DetailKeys> orderList = new ArrayList<ContactDetail.DetailKeys>();
-                for (int i = 0; i < contact.details.size(); i++) {
-                    final ContactDetail detail = contact.details.get(i);
-                    
-                    detail.localContactID = contact.localContactID;
-                    detail.localDetailID = null;
-                    if (syncToServer) {
-                        detail.unique_id = null;
-                    }
-                    if (detail.order != null
-                            && (detail.order.equals(ContactDetail.ORDER_PREFERRED))) {
-                        if (orderList.contains(detail.key)) {
-                            detail.order = ContactDetail.ORDER_NORMAL;
-                        } else {
-                            orderList.add(detail.key);
-                        }
-                    }
-                    status = ContactDetailsTable.addContactDetail(detail, syncToServer,
-                            (syncToNative && contact.synctophone), writableDb);
-                    if (ServiceStatus.SUCCESS != status) {
-                        LogUtils.logE("DatabaseHelper.syncAddContactList() Unable to add contact detail (for new contact), " +
-                        			  "due to a database error. Contact ID[" + contact.localContactID + "]");
-                        return status;
-                    }
+        writableDb.beginTransaction();
+        try {
+            statements = new AddContactStatements(writableDb);
+            for (Contact contact : contactList) {
+                contact.deleted = null;
+                contact.localContactID = null;
+                if (syncToNative) {
+                    contact.nativeContactId = null;
                 }
-                // AA: added the check to make sure that contacts with empty
-                // contact
-                // details are not stored
-                if (!contact.details.isEmpty()) {
-                    status = ContactSummaryTable.addContact(contact, writableDb);
-                    if (ServiceStatus.SUCCESS != status) {
-
-                        return status;
-                    }
+                if (syncToServer) {
+                    contact.contactID = null;
+                    contact.updated = null;
+                    contact.synctophone = true;
                 }
 
-                if (contact.groupList != null) {
-                    for (Long groupId : contact.groupList) {
-                        if (groupId != -1
-                                && !ContactGroupsTable.addContactToGroup(contact.localContactID,
-                                        groupId, writableDb)) {
-                            return ServiceStatus.ERROR_DATABASE_CORRUPT;
-                        }
+                ServiceStatus status = syncAddContact(contact, syncToServer, syncToNative,
+                        statements, writableDb);
+                String displayName = null;
+                if (ServiceStatus.SUCCESS == status) {
+                    /*
+                     * FIXME: Hacking a check for me profile here using syncToNative and syncToServer
+                     * The me contact does not use a static local contact id 
+                     * which is ridiculous. Basically we have to check the syncToNative and syncToServer
+                     * flags together with isMeProfile
+                     * because luckily as of yet the they are only both false when its me profile 
+                     * in case that's the contact being added.
+                     */
+                    displayName = 
+                        updateContactNameInSummary(writableDb, 
+                                                   contact.localContactID, 
+                                                   (!syncToNative && !syncToServer) || 
+                                                   SyncMeDbUtils.isMeProfile(this, contact.localContactID));
+                    if (null == displayName) {
+                        status = ServiceStatus.ERROR_DATABASE_CORRUPT;
                     }
                 }
-
-                if (contact.sources != null) {
-                    for (String source : contact.sources) {
-                        if (!ContactSourceTable.addContactSource(contact.localContactID, source,
-                                writableDb)) {
-                            return ServiceStatus.ERROR_DATABASE_CORRUPT;
-                        }
+                if (ServiceStatus.SUCCESS != status) {
+                    LogUtils.logE("DatabaseHelper.syncAddContactList() Unable to add contact, "
+                            + "due to a database error. Contact ID[" + contact.contactID + "]");
+                    removeFailedContact(contact, writableDb);
+                    if (failedList != null) {
+                        failedList.add(contact);
                     }
-                }
-
-                if (syncToServer) {
-                    if (contact.groupList != null) {
-                        for (Long groupId : contact.groupList) {
-                            if (!ContactChangeLogTable.addGroupRel(contact.localContactID,
-                                    contact.contactID, groupId, writableDb)) {
-                                return ServiceStatus.ERROR_DATABASE_CORRUPT;
-                            }
-                        }
+                    if (ServiceStatus.SUCCESS == result) {
+                        result = status;
                     }
+                    continue;
                 }
 
-                /*
-                 * FIXME: Hacking a check for me profile here using syncToNative and syncToServer
-                 * The me contact does not use a static local contact id 
-                 * which is ridiculous. Basically we have to check the syncToNative and syncToServer
-                 * flags together with isMeProfile
-                 * because luckily as of yet the they are only both false when its me profile 
-                 * in case that's the contact being added.
-                 */
-                String displayName = 
-                    updateContactNameInSummary(writableDb, 
-                                               contact.localContactID, 
-                                               (!syncToNative && !syncToServer) || 
-                                               SyncMeDbUtils.isMeProfile(this, contact.localContactID));
-                if (null == displayName) {
-                    return ServiceStatus.ERROR_DATABASE_CORRUPT;
-                }
                 // updating timeline
                 for (ContactDetail detail : contact.details) {
                 // we already have name, don't need to get it again
@@ -1464,17 +1555,257 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                         }
                     }
                 }
-                writableDb.setTransactionSuccessful();
-            } finally {
-                writableDb.endTransaction();
+
+                if (++contactsInTransaction >= Settings.MAX_CONTACTS_PER_TRANSACTION) {
+                    writableDb.setTransactionSuccessful();
+                    writableDb.endTransaction();
+                    writableDb.beginTransaction();
+                    contactsInTransaction = 0;
+                }
+            }
+            writableDb.setTransactionSuccessful();
+        } finally {
+            writableDb.endTransaction();
+            if (statements != null) {
+                statements.close();
             }
         }
         if (needFireDbUpdate) {
             fireDatabaseChangedEvent(DatabaseChangeType.ACTIVITIES, false);
         }
+        return result;
+    }
+
+    /***
+     * Adds a single contact with its details, summary, groups and sources as
+     * part of {@link #syncAddContactList(List, boolean, boolean, List)}. Must
+     * be called inside a transaction.
+     * 
+     * @param contact The contact to add
+     * @param syncToServer true if the contact needs to be sent to the server
+     * @param syncToNative true if the contact needs to be added to the native
+     *            phonebook
+     * @param statements The precompiled insert statements
+     * @param writableDb Writable SQLite database
+     * @return SUCCESS or a suitable error code
+     */
+    private ServiceStatus syncAddContact(Contact contact, boolean syncToServer,
+            boolean syncToNative, AddContactStatements statements, SQLiteDatabase writableDb) {
+        ServiceStatus status = ContactsTable.addContact(contact, statements.mContact);
+        if (ServiceStatus.SUCCESS != status) {
+            return status;
+        }
+
+        List<ContactDetail.DetailKeys> orderList = new ArrayList<ContactDetail.DetailKeys>();
+        for (int i = 0; i < contact.details.size(); i++) {
+            final ContactDetail detail = contact.details.get(i);
+            
+            detail.localContactID = contact.localContactID;
+            detail.localDetailID = null;
+            if (syncToServer) {
+                detail.unique_id = null;
+            }
+            if (detail.order != null
+                    && (detail.order.equals(ContactDetail.ORDER_PREFERRED))) {
+                if (orderList.contains(detail.key)) {
+                    detail.order = ContactDetail.ORDER_NORMAL;
+                } else {
+                    orderList.add(detail.key);
+                }
+            }
+            status = ContactDetailsTable.addContactDetail(detail, syncToServer,
+                    (syncToNative && contact.synctophone), statements.mDetail);
+            if (ServiceStatus.SUCCESS != status) {
+                return status;
+            }
+        }
+        // AA: added the check to make sure that contacts with empty
+        // contact
+        // details are not stored
+        if (!contact.details.isEmpty()) {
+            status = ContactSummaryTable.addContact(contact, statements.mSummary,
+                    statements.mSearch);
+            if (ServiceStatus.SUCCESS != status) {
+                return status;
+            }
+        }
+
+        if (contact.groupList != null) {
+            for (Long groupId : contact.groupList) {
+                if (groupId != -1
+                        && !ContactGroupsTable.addContactToGroup(contact.localContactID,
+                                groupId, statements.mGroup)) {
+                    return ServiceStatus.ERROR_DATABASE_CORRUPT;
+                }
+            }
+        }
+
+        if (contact.sources != null) {
+            for (String source : contact.sources) {
+                if (!ContactSourceTable.addContactSource(contact.localContactID, source,
+                        statements.mSource)) {
+                    return ServiceStatus.ERROR_DATABASE_CORRUPT;
+                }
+            }
+        }
+
+        if (syncToServer) {
+            if (contact.groupList != null) {
+                for (Long groupId : contact.groupList) {
+                    if (!ContactChangeLogTable.addGroupRel(contact.localContactID,
+                            contact.contactID, groupId, writableDb)) {
+                        return ServiceStatus.ERROR_DATABASE_CORRUPT;
+                    }
+                }
+            }
+        }
         return ServiceStatus.SUCCESS;
     }
 
+    /***
+     * Removes whatever was stored for a contact which could not be added
+     * completely, so the rest of the batch can still be committed.
+     * 
+     * @param contact The contact which failed
+     * @param writableDb Writable SQLite database
+     */
+    private void removeFailedContact(Contact contact, SQLiteDatabase writableDb) {
+        if (contact.localContactID == null) {
+            return;
+        }
+        final long localContactId = contact.localContactID;
+        ContactChangeLogTable.removeContactChanges(localContactId, writableDb);
+        ContactGroupsTable.deleteContact(localContactId, writableDb);
+        ContactSourceTable.deleteAllContactSources(localContactId, writableDb);
+        ContactSummaryTable.deleteContact(localContactId, writableDb);
+        ContactSearchTable.deleteContact(localContactId, writableDb);
+        ContactDetailsTable.deleteDetailByContactId(localContactId, writableDb);
+        ContactsTable.deleteContact(localContactId, writableDb);
+        contact.localContactID = null;
+    }
+
+    /***
+     * Collects the contact details changed by one of the sync detail list
+     * methods and then updates the summary of each changed contact once,
+     * instead of once per detail. Changes of details the summary is not built
+     * from are ignored.
+     */
+    private class ContactSummaryBatch {
+        /**
+         * Changed contacts in the order of their first change, with their
+         * changed details.
+         */
+        private final Map<Long, List<ContactDetail>> mChanges =
+                new LinkedHashMap<Long, List<ContactDetail>>();
+
+        /** True if a summary update has changed the activities table. **/
+        private boolean mTimelineChanged = false;
+
+        /***
+         * Records a detail which has been added, modified or deleted.
+         * 
+         * @param detail The changed detail
+         */
+        private void onDetailChanged(ContactDetail detail) {
+            if (!ContactSummaryTable.isSummaryDetail(detail.key)) {
+                return;
+            }
+            List<ContactDetail> details = mChanges.get(detail.localContactID);
+            if (details == null) {
+                details = new ArrayList<ContactDetail>();
+                mChanges.put(detail.localContactID, details);
+            }
+            details.add(detail);
+        }
+
+        /***
+         * Updates the summary, and the names in the timeline, of each contact
+         * changed since the last flush, in one transaction. The summary
+         * updates run inside this transaction rather than opening their own,
+         * so a contact whose summary cannot be updated is skipped and the
+         * others are still committed. The changes are only forgotten once the
+         * transaction has been committed.
+         * 
+         * @param db Writable SQLite database
+         * @return SUCCESS or a suitable error code if a summary could not be
+         *         updated
+         */
+        private ServiceStatus flush(SQLiteDatabase db) {
+            if (mChanges.isEmpty()) {
+                return ServiceStatus.SUCCESS;
+            }
+            ServiceStatus status = ServiceStatus.SUCCESS;
+            db.beginTransaction();
+            try {
+                for (Map.Entry<Long, List<ContactDetail>> entry : mChanges.entrySet()) {
+                    final long localContactId = entry.getKey();
+                    final String displayName = updateContactNameInSummary(db, localContactId,
+                            SyncMeDbUtils.isMeProfile(DatabaseHelper.this, localContactId));
+                    if (displayName == null) {
+                        LogUtils.logE("ContactSummaryBatch.flush() Unable to update the summary "
+                                + "of contact " + localContactId);
+                        status = ServiceStatus.ERROR_DATABASE_CORRUPT;
+                        continue;
+                    }
+                    for (ContactDetail detail : entry.getValue()) {
+                        if (updateTimelineNames(detail, displayName, null, db)) {
+                            mTimelineChanged = true;
+                        }
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            mChanges.clear();
+            return status;
+        }
+    }
+
+    /***
+     * Precompiled statements used to add a list of contacts.
+     */
+    private static class AddContactStatements {
+        private final SQLiteStatement mContact;
+
+        private final SQLiteStatement mDetail;
+
+        private final SQLiteStatement mSummary;
+
+        private final SQLiteStatement mSearch;
+
+        private final SQLiteStatement mGroup;
+
+        private final SQLiteStatement mSource;
+
+        private AddContactStatements(SQLiteDatabase writableDb) {
+            mContact = ContactsTable.addContactStatement(writableDb);
+            mDetail = ContactDetailsTable.addContactDetailStatement(writableDb);
+            mSummary = ContactSummaryTable.addContactStatement(writableDb);
+            mSearch = ContactSearchTable.addContactStatement(writableDb);
+            mGroup = ContactGroupsTable.addContactToGroupStatement(writableDb);
+            mSource = ContactSourceTable.addContactSourceStatement(writableDb);
+        }
+
+        /***
+         * Releases all the statements.
+         */
+        private void close() {
+            close(mContact);
+            close(mDetail);
+            close(mSummary);
+            close(mSearch);
+            close(mGroup);
+            close(mSource);
+        }
+
+        private static void close(SQLiteStatement statement) {
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+
     /***
      * Function used by the contact sync engine to modify a list of contacts in
      * the database.
@@ -1750,77 +2081,104 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             syncToNative = false;
         }
 
-        boolean needFireDbUpdate = false; 
         SQLiteDatabase db = getWritableDatabase();
+        final ContactSummaryBatch summaries = new ContactSummaryBatch();
 
-        for (ContactDetail contactDetail : detailList) {
+        try {
+            for (ContactDetail contactDetail : detailList) {
             
-            contactDetail.localDetailID = null;
-            if (syncToServer) {
-                contactDetail.unique_id = null;
-            }
-            if (syncToNative) {
-                contactDetail.nativeDetailId = null;
-            }
-            if (contactDetail.localContactID == null) {
-                return ServiceStatus.ERROR_NOT_FOUND;
-            }
-            try {
-                db.beginTransaction();
-                ContactsTable.ContactIdInfo contactIdInfo = ContactsTable.validateContactId(
-                        contactDetail.localContactID, db);
-                if (contactIdInfo == null) {
-                    return ServiceStatus.ERROR_NOT_FOUND;
-                }
-                contactDetail.serverContactId = contactIdInfo.serverId;
-                if (contactIdInfo.syncToPhone) {
-                    contactDetail.syncNativeContactId = contactIdInfo.nativeId;
-                } else {
-                    contactDetail.syncNativeContactId = -1;
+                contactDetail.localDetailID = null;
+                if (syncToServer) {
+                    contactDetail.unique_id = null;
                 }
-                if (contactDetail.order != null
-                        && contactDetail.order.equals(ContactDetail.ORDER_PREFERRED)) {
-                    ContactDetailsTable.removePreferred(contactDetail.localContactID,
-                            contactDetail.key, db);
+                if (syncToNative) {
+                    contactDetail.nativeDetailId = null;
                 }
-                ServiceStatus status = ContactDetailsTable.addContactDetail(contactDetail,
-                        syncToServer, syncToNative, db);
-                if (ServiceStatus.SUCCESS != status) {
-                    return status;
+                if (contactDetail.localContactID == null) {
+                    return ServiceStatus.ERROR_NOT_FOUND;
                 }
+                try {
+                    db.beginTransaction();
+                    ContactsTable.ContactIdInfo contactIdInfo = ContactsTable.validateContactId(
+                            contactDetail.localContactID, db);
+                    if (contactIdInfo == null) {
+                        return ServiceStatus.ERROR_NOT_FOUND;
+                    }
+                    contactDetail.serverContactId = contactIdInfo.serverId;
+                    if (contactIdInfo.syncToPhone) {
+                        contactDetail.syncNativeContactId = contactIdInfo.nativeId;
+                    } else {
+                        contactDetail.syncNativeContactId = -1;
+                    }
+                    if (contactDetail.order != null
+                            && contactDetail.order.equals(ContactDetail.ORDER_PREFERRED)) {
+                        ContactDetailsTable.removePreferred(contactDetail.localContactID,
+                                contactDetail.key, db);
+                    }
+                    ServiceStatus status = ContactDetailsTable.addContactDetail(contactDetail,
+                            syncToServer, syncToNative, db);
+                    if (ServiceStatus.SUCCESS != status) {
+                        return status;
+                    }
 
-                // Whenever the photo URL is updated, the photoloaded flag in
-                // ContactSummaryTable should be reset to 0 so that when the
-                // thumbnails are downloaded later on, the new thumbnail shall
-                // also be downloaded.
-                // When the picture is being from the client we don't need to set the flag to "TRUE",
-                // in order not to override the new picture before it is uploaded.
-                if (contactDetail.key == ContactDetail.DetailKeys.PHOTO && TextUtils.isEmpty(contactDetail.photo_url)) {
-                        ContactSummaryTable.modifyPictureLoadedFlag(contactDetail.localContactID,
-                                false, db);
-                }
-                String displayName = updateContactNameInSummary(db,
-                        contactDetail.localContactID, 
-                        SyncMeDbUtils.isMeProfile(this, contactDetail.localContactID));
-                if (null == displayName) {
-                    return ServiceStatus.ERROR_DATABASE_CORRUPT;
-                }
+                    // Whenever the photo URL is updated, the photoloaded flag in
+                    // ContactSummaryTable should be reset to 0 so that when the
+                    // thumbnails are downloaded later on, the new thumbnail shall
+                    // also be downloaded.
+                    // When the picture is being from the client we don't need to set the flag to "TRUE",
+                    // in order not to override the new picture before it is uploaded.
+                    if (contactDetail.key == ContactDetail.DetailKeys.PHOTO && TextUtils.isEmpty(contactDetail.photo_url)) {
+                            ContactSummaryTable.modifyPictureLoadedFlag(contactDetail.localContactID,
+                                    false, db);
+                    }
+                    summaries.onDetailChanged(contactDetail);
 
-                if (updateTimelineNames(contactDetail, displayName, null, db)) {
-                    needFireDbUpdate = true;
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-
-                db.setTransactionSuccessful();
-            } finally {
-                db.endTransaction();
             }
+            return flushContactSummaryBatch(summaries, db);
+        } finally {
+            // summaries of the details added before an error
+            flushContactSummaryBatchAfterError(summaries, db);
         }
-        
-        if (needFireDbUpdate) {
+    }
+
+    /***
+     * Updates the summaries collected while changing a list of contact
+     * details and notifies the UI if the timeline has changed.
+     * 
+     * @param summaries The changed contacts
+     * @param db Writable SQLite database
+     * @return SUCCESS or a suitable error code
+     */
+    private ServiceStatus flushContactSummaryBatch(ContactSummaryBatch summaries,
+            SQLiteDatabase db) {
+        final ServiceStatus status = summaries.flush(db);
+        if (summaries.mTimelineChanged) {
+            summaries.mTimelineChanged = false;
             fireDatabaseChangedEvent(DatabaseChangeType.ACTIVITIES, false);
         }
+        return status;
+    }
 
-        return ServiceStatus.SUCCESS;
+    /***
+     * Updates the summaries of the details changed before a list update
+     * failed. Errors are only logged so they do not replace the original
+     * error.
+     * 
+     * @param summaries The changed contacts
+     * @param db Writable SQLite database
+     */
+    private void flushContactSummaryBatchAfterError(ContactSummaryBatch summaries,
+            SQLiteDatabase db) {
+        try {
+            flushContactSummaryBatch(summaries, db);
+        } catch (RuntimeException e) {
+            LogUtils.logE("DatabaseHelper.flushContactSummaryBatchAfterError() "
+                    + "Unable to update the contact summaries", e);
+        }
     }
 
 
@@ -1889,66 +2247,57 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             syncToNative = false;
         }
 
-        boolean needFireDbUpdate = false;
         SQLiteDatabase db = getWritableDatabase();
+        final ContactSummaryBatch summaries = new ContactSummaryBatch();
 
-        for (ContactDetail contactDetail : contactDetailList) {
-            ContactsTable.ContactIdInfo contactIdInfo = ContactsTable.validateContactId(
-                    contactDetail.localContactID, db);
-            if (contactIdInfo == null) {
-                return ServiceStatus.ERROR_NOT_FOUND;
-            }
-            contactDetail.serverContactId = contactIdInfo.serverId;
-            if (contactIdInfo.syncToPhone) {
-                contactDetail.syncNativeContactId = contactIdInfo.nativeId;
-            } else {
-                contactDetail.syncNativeContactId = -1;
-            }
-            try {
-
-                db.beginTransaction();
-                if (contactDetail.order != null
-                        && contactDetail.order.equals(ContactDetail.ORDER_PREFERRED)) {
-                    ContactDetailsTable.removePreferred(contactDetail.localContactID,
-                            contactDetail.key, db);
+        try {
+            for (ContactDetail contactDetail : contactDetailList) {
+                ContactsTable.ContactIdInfo contactIdInfo = ContactsTable.validateContactId(
+                        contactDetail.localContactID, db);
+                if (contactIdInfo == null) {
+                    return ServiceStatus.ERROR_NOT_FOUND;
                 }
-                ServiceStatus status = ContactDetailsTable.modifyDetail(contactDetail,
-                        syncToServer, syncToNative, db);
-                if (ServiceStatus.SUCCESS != status) {
-                    return status;
+                contactDetail.serverContactId = contactIdInfo.serverId;
+                if (contactIdInfo.syncToPhone) {
+                    contactDetail.syncNativeContactId = contactIdInfo.nativeId;
+                } else {
+                    contactDetail.syncNativeContactId = -1;
                 }
+                try {
 
-                // Whenever the photo URL is updated, the photoloaded flag in
-                // ContactSummaryTable should be reset to 0 so that when the
-                // thumbnails are downloaded later on, the new thumbnail shall
-                // also be downloaded.
-                // When the picture is being from the client we don't need to set the flag to "TRUE",
-                // in order not to override the new picture before it is uploaded.
-                if (ContactDetail.DetailKeys.PHOTO == contactDetail.key && TextUtils.isEmpty(contactDetail.photo_url)) {
-                    ContactSummaryTable.modifyPictureLoadedFlag(contactDetail.localContactID,
-                            false, db);
-                }
+                    db.beginTransaction();
+                    if (contactDetail.order != null
+                            && contactDetail.order.equals(ContactDetail.ORDER_PREFERRED)) {
+                        ContactDetailsTable.removePreferred(contactDetail.localContactID,
+                                contactDetail.key, db);
+                    }
+                    ServiceStatus status = ContactDetailsTable.modifyDetail(contactDetail,
+                            syncToServer, syncToNative, db);
+                    if (ServiceStatus.SUCCESS != status) {
+                        return status;
+                    }
 
-                String displayName = updateContactNameInSummary(db,
-                        contactDetail.localContactID, 
-                        SyncMeDbUtils.isMeProfile(this, contactDetail.localContactID));
-                if (null == displayName) {
-                    return ServiceStatus.ERROR_DATABASE_CORRUPT;
-                }
-                if (updateTimelineNames(contactDetail, displayName, null, db)) {
-                    needFireDbUpdate = true;
+                    // Whenever the photo URL is updated, the photoloaded flag in
+                    // ContactSummaryTable should be reset to 0 so that when the
+                    // thumbnails are downloaded later on, the new thumbnail shall
+                    // also be downloaded.
+                    // When the picture is being from the client we don't need to set the flag to "TRUE",
+                    // in order not to override the new picture before it is uploaded.
+                    if (ContactDetail.DetailKeys.PHOTO == contactDetail.key && TextUtils.isEmpty(contactDetail.photo_url)) {
+                        ContactSummaryTable.modifyPictureLoadedFlag(contactDetail.localContactID,
+                                false, db);
+                    }
+                    summaries.onDetailChanged(contactDetail);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-                db.setTransactionSuccessful();
-            } finally {
-                db.endTransaction();
             }
+            return flushContactSummaryBatch(summaries, db);
+        } finally {
+            // summaries of the details modified before an error
+            flushContactSummaryBatchAfterError(summaries, db);
         }
-        
-        if (needFireDbUpdate) {
-            fireDatabaseChangedEvent(DatabaseChangeType.ACTIVITIES, false);
-        }
-
-        return ServiceStatus.SUCCESS;
     }
 
     /***
@@ -1978,68 +2327,60 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         }
 
         SQLiteDatabase db = getWritableDatabase();
-        boolean needFireDbUpdate = false;
+        final ContactSummaryBatch summaries = new ContactSummaryBatch();
         
-        for (ContactDetail contactDetail : contactDetailList) {
-            if ((contactDetail.serverContactId == null) || (contactDetail.serverContactId == -1)) {
-                ContactsTable.ContactIdInfo contactIdInfo = ContactsTable.validateContactId(
-                        contactDetail.localContactID, db);
-                if (contactIdInfo == null) {
-                    return ServiceStatus.ERROR_NOT_FOUND;
+        try {
+            for (ContactDetail contactDetail : contactDetailList) {
+                if ((contactDetail.serverContactId == null) || (contactDetail.serverContactId == -1)) {
+                    ContactsTable.ContactIdInfo contactIdInfo = ContactsTable.validateContactId(
+                            contactDetail.localContactID, db);
+                    if (contactIdInfo == null) {
+                        return ServiceStatus.ERROR_NOT_FOUND;
+                    }
+                    contactDetail.nativeContactId = contactIdInfo.nativeId;
+                    contactDetail.serverContactId = contactIdInfo.serverId;
                 }
-                contactDetail.nativeContactId = contactIdInfo.nativeId;
-                contactDetail.serverContactId = contactIdInfo.serverId;
-            }
 
-            try {
-                db.beginTransaction();
-                if (syncToNative) {
-                    if (!NativeChangeLogTable.addDeletedContactDetailChange(contactDetail, db)) {
-                        return ServiceStatus.ERROR_DATABASE_CORRUPT;
+                try {
+                    db.beginTransaction();
+                    if (syncToNative) {
+                        if (!NativeChangeLogTable.addDeletedContactDetailChange(contactDetail, db)) {
+                            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+                        }
                     }
-                }
-                if (syncToServer) {
-                    if (!ContactChangeLogTable.addDeletedContactDetailChange(contactDetail,
-                            syncToServer, db)) {
+                    if (syncToServer) {
+                        if (!ContactChangeLogTable.addDeletedContactDetailChange(contactDetail,
+                                syncToServer, db)) {
+                            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+                        }
+                    }
+                    if (!ContactDetailsTable.deleteDetailByDetailId(contactDetail.localDetailID, db)) {
                         return ServiceStatus.ERROR_DATABASE_CORRUPT;
                     }
-                }
-                if (!ContactDetailsTable.deleteDetailByDetailId(contactDetail.localDetailID, db)) {
-                    return ServiceStatus.ERROR_DATABASE_CORRUPT;
-                }
 
-                // Whenever the photo URL is updated, the photoloaded flag in
-                // ContactSummaryTable should be reset to 0 so that when the
-                // thumbnails are downloaded later on, the new thumbnail shall
-                // also be downloaded.
-                // When the picture is being from the client we don't need to set the flag to "TRUE",
-                // in order not to override the new picture before it is uploaded.
-                if (contactDetail.key == ContactDetail.DetailKeys.PHOTO && TextUtils.isEmpty(contactDetail.photo_url)) {
-                    ContactSummaryTable.modifyPictureLoadedFlag(contactDetail.localContactID,
-                            false, db);
-                    deleteThumbnail(contactDetail.localContactID);
-                }
+                    // Whenever the photo URL is updated, the photoloaded flag in
+                    // ContactSummaryTable should be reset to 0 so that when the
+                    // thumbnails are downloaded later on, the new thumbnail shall
+                    // also be downloaded.
+                    // When the picture is being from the client we don't need to set the flag to "TRUE",
+                    // in order not to override the new picture before it is uploaded.
+                    if (contactDetail.key == ContactDetail.DetailKeys.PHOTO && TextUtils.isEmpty(contactDetail.photo_url)) {
+                        ContactSummaryTable.modifyPictureLoadedFlag(contactDetail.localContactID,
+                                false, db);
+                        deleteThumbnail(contactDetail.localContactID);
+                    }
 
-                String displayName = updateContactNameInSummary(db,
-                        contactDetail.localContactID,
-                        SyncMeDbUtils.isMeProfile(this, contactDetail.localContactID));
-                if (displayName == null) {
-                    return ServiceStatus.ERROR_DATABASE_CORRUPT;
+                    summaries.onDetailChanged(contactDetail);
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
                 }
-                
-                if (updateTimelineNames(contactDetail, displayName, contactDetail.localContactID, db)) {
-                    needFireDbUpdate = true;
-                }
-                db.setTransactionSuccessful();
-            } finally {
-                db.endTransaction();
             }
+            return flushContactSummaryBatch(summaries, db);
+        } finally {
+            // summaries of the details deleted before an error
+            flushContactSummaryBatchAfterError(summaries, db);
         }
-
-        if (needFireDbUpdate) {
-            fireDatabaseChangedEvent(DatabaseChangeType.ACTIVITIES, false);
-        }
-        return ServiceStatus.SUCCESS;
     }
 
     /***
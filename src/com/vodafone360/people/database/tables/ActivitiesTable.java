@@ -26,6 +26,8 @@
 package com.vodafone360.people.database.tables;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 
 import android.content.ContentValues;
@@ -45,9 +47,9 @@ import com.vodafone360.people.Settings;
 import com.vodafone360.people.database.DatabaseHelper;
 import com.vodafone360.people.database.SQLKeys;
 import com.vodafone360.people.database.utils.SqlUtils;
+import com.vodafone360.people.database.utils.StatementCache;
 import com.vodafone360.people.datatypes.ActivityContact;
 import com.vodafone360.people.datatypes.ActivityItem;
-import com.vodafone360.people.datatypes.ContactSummary;
 import com.vodafone360.people.service.ServiceStatus;
 import com.vodafone360.people.utils.CloseUtils;
 import com.vodafone360.people.utils.LogUtils;
@@ -68,6 +70,18 @@ public abstract class ActivitiesTable {
 
     private static final String TABLE_INDEX_NAME = "ActivitiesIndex";
 
+    /** Columns written by {@link #addActivities(List, SQLiteDatabase, Context)}. **/
+    private static final String[] INSERT_COLUMNS = {
+            Field.ACTIVITY_ID.toString(), Field.TIMESTAMP.toString(), Field.TYPE.toString(),
+            Field.URI.toString(), Field.TITLE.toString(), Field.DESCRIPTION.toString(),
+            Field.PREVIEW_URL.toString(), Field.STORE.toString(), Field.FLAG.toString(),
+            Field.PARENT_ACTIVITY.toString(), Field.HAS_CHILDREN.toString(),
+            Field.VISIBILITY.toString(), Field.CONTACT_ID.toString(), Field.USER_ID.toString(),
+            Field.CONTACT_NAME.toString(), Field.LOCAL_CONTACT_ID.toString(),
+            Field.CONTACT_NETWORK.toString(), Field.CONTACT_ADDRESS.toString(),
+            Field.CONTACT_AVATAR_URL.toString(), Field.LATEST_CONTACT_STATUS.toString()
+    };
+
     /** Database cleanup will delete any activity older than X days. **/
     private static final int CLEANUP_MAX_AGE_DAYS = 20;
 
@@ -634,6 +648,8 @@ public abstract class ActivitiesTable {
      * {@link #removeContactGroup(Long, String, Long, int,
      * TimelineNativeTypes[], SQLiteDatabase)}
      * for more information on how the grouping works.
+     * The contacts of the whole list and their current names are resolved up
+     * front, then all activities are added in one transaction.
      *
      * @param actList The list of activities
      * @param writableDb Writable SQLite database
@@ -642,23 +658,43 @@ public abstract class ActivitiesTable {
     public static ServiceStatus addActivities(final List<ActivityItem> actList,
             final SQLiteDatabase writableDb, final Context context) {
         DatabaseHelper.trace(true, "DatabaseHelper.addActivities()");
-        SQLiteStatement statement =
-            ContactsTable.fetchLocalFromServerIdStatement(writableDb);
         boolean isMeProfileChanged = false;
         Long meProfileId = StateTable.fetchMeProfileId(writableDb);
 
+        final HashSet<Long> serverIds = new HashSet<Long>();
         for (ActivityItem activity : actList) {
-            try {
-                writableDb.beginTransaction();
+            if (activity.contactList != null) {
+                for (ActivityContact activityContact : activity.contactList) {
+                    if (activityContact.mContactId != null) {
+                        serverIds.add(activityContact.mContactId);
+                    }
+                }
+            }
+        }
+        final HashMap<Long, Long> localIds = new HashMap<Long, Long>();
+        final HashMap<Long, String> names = new HashMap<Long, String>();
+        ServiceStatus status = ContactsTable.fetchLocalFromServerIds(serverIds, localIds,
+                writableDb);
+        if (ServiceStatus.SUCCESS == status) {
+            status = ContactSummaryTable.fetchFormattedNames(localIds.values(), names,
+                    writableDb);
+        }
+        if (ServiceStatus.SUCCESS != status) {
+            return status;
+        }
 
+        SQLiteStatement statement = null;
+        writableDb.beginTransaction();
+        try {
+            statement = SqlUtils.compileInsertStatement(writableDb, TABLE_NAME,
+                    INSERT_COLUMNS);
+            for (ActivityItem activity : actList) {
                 if (activity.contactList != null) {
                     int clistSize = activity.contactList.size();
                     for (int i = 0; i < clistSize; i++) {
                         final ActivityContact activityContact = activity.contactList.get(i);
-                        activityContact.mLocalContactId =
-                            ContactsTable.fetchLocalFromServerId(
-                                    activityContact.mContactId,
-                                    statement);
+                        activityContact.mLocalContactId = (activityContact.mContactId == null)
+                                ? null : localIds.get(activityContact.mContactId);
 
                         // Check if me profile status has been modified.
                         boolean isMeProfile =
@@ -677,16 +713,13 @@ public abstract class ActivitiesTable {
                         } else {
                             // Find a more up-to-date name as the names in the Activities are the ones
                             // from submit time. If they changed in the meantime, this is not reflected
-                            // so we fetch the names from the ContactSummary table.
-                            final ContactSummary contactSummary = new ContactSummary();
-                            if (ContactSummaryTable.fetchSummaryItem(activityContact.mLocalContactId,
-                                                                     contactSummary,
-                                                                     writableDb) == ServiceStatus.SUCCESS) {
-								// Me Profile can have empty name
-                                if ((isMeProfile && contactSummary.formattedName != null) ||
-								    !TextUtils.isEmpty(contactSummary.formattedName)) {
-                                    activityContact.mName = contactSummary.formattedName;
-                                }
+                            // so we use the names from the ContactSummary table.
+                            final String formattedName =
+                                names.get(activityContact.mLocalContactId);
+							// Me Profile can have empty name
+                            if ((isMeProfile && formattedName != null) ||
+							    !TextUtils.isEmpty(formattedName)) {
+                                activityContact.mName = formattedName;
                             }
                         }
 
@@ -698,30 +731,31 @@ public abstract class ActivitiesTable {
                         ContentValues cv = fillUpdateData(activity, i);
                         cv.put(Field.LATEST_CONTACT_STATUS.toString(),
                                 latestStatusVal);
-                        activity.localActivityId =
-                            writableDb.insertOrThrow(TABLE_NAME, null, cv);
+                        SqlUtils.bindValues(statement, INSERT_COLUMNS, cv);
+                        activity.localActivityId = statement.executeInsert();
                     }
                 } else {
-                    activity.localActivityId = writableDb.insertOrThrow(
-                            TABLE_NAME, null, fillUpdateData(activity, null));
+                    SqlUtils.bindValues(statement, INSERT_COLUMNS,
+                            fillUpdateData(activity, null));
+                    activity.localActivityId = statement.executeInsert();
                 }
                 if ((activity.localActivityId != null) && (activity.localActivityId < 0)) {
                     LogUtils.logE("ActivitiesTable.addActivities() "
                             + "Unable to add activity");
                     return ServiceStatus.ERROR_DATABASE_CORRUPT;
                 }
-                writableDb.setTransactionSuccessful();
-            } catch (SQLException e) {
-                LogUtils.logE("ActivitiesTable.addActivities() "
-                        + "Unable to add activity", e);
-                return ServiceStatus.ERROR_DATABASE_CORRUPT;
-            } finally {
-                writableDb.endTransaction();
             }
-        }
-        if(statement != null) {
-            statement.close();
-            statement = null;
+            writableDb.setTransactionSuccessful();
+        } catch (SQLException e) {
+            LogUtils.logE("ActivitiesTable.addActivities() "
+                    + "Unable to add activity", e);
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        } finally {
+            writableDb.endTransaction();
+            if (statement != null) {
+                statement.close();
+                statement = null;
+            }
         }
 
         // Update widget if me profile status has been modified.
@@ -1700,28 +1734,32 @@ public abstract class ActivitiesTable {
                     + "localContactId(" + localContactId + ")");
             return;
         }
+        SQLiteStatement statement = null;
         try {
             //Remove all the Chat Entries
             removeChatTimelineForContact(localContactId, writeableDb);
 
-            String[] args = {
-                localContactId.toString()
-            };
-            String query = "UPDATE "
-                    + TABLE_NAME
-                    + " SET "
-                    + Field.LOCAL_CONTACT_ID + "=NULL, "
-                    + Field.CONTACT_ID + "=NULL, " + Field.CONTACT_NAME + "="
-                    + Field.CONTACT_ADDRESS + " WHERE "
-                    + Field.LOCAL_CONTACT_ID + "=? AND ("
-                    + Field.FLAG + "&" + ActivityItem.TIMELINE_ITEM + ")";
-            writeableDb.execSQL(query, args);
+            statement = StatementCache.acquire(writeableDb, UPDATE_REMOVE_TIMELINE_CONTACT);
+            statement.bindLong(1, localContactId);
+            statement.execute();
         } catch (SQLException e) {
             LogUtils.logE("ActivitiesTable.removeTimelineContactData() Unable "
                     + "to update table: \n", e);
+        } finally {
+            StatementCache.release(writeableDb, UPDATE_REMOVE_TIMELINE_CONTACT, statement);
         }
     }
 
+    /**
+     * UPDATE Activities SET LocalContactId=NULL, ContactId=NULL,
+     * ContactName=ContactAddress WHERE LocalContactId=? AND (Flag&TIMELINE_ITEM)
+     */
+    private static final String UPDATE_REMOVE_TIMELINE_CONTACT = "UPDATE " + TABLE_NAME
+            + " SET " + Field.LOCAL_CONTACT_ID + "=NULL, " + Field.CONTACT_ID + "=NULL, "
+            + Field.CONTACT_NAME + "=" + Field.CONTACT_ADDRESS + " WHERE "
+            + Field.LOCAL_CONTACT_ID + "=? AND (" + Field.FLAG + "&" + ActivityItem.TIMELINE_ITEM
+            + ")";
+
     /**
      * Removes all the items from the chat timeline for the given contact.
      *
@@ -2100,37 +2138,42 @@ public abstract class ActivitiesTable {
             return;
         }
 
+        SQLiteStatement statement = null;
     	try {
     		// Update the Timeline Entry to make localContactId, contactId NULL
-            String[] args = {
-            	localContactId.toString(), number,localContactId.toString(), number
-            };
-
-            final StringBuffer query = StringBufferPool.getStringBuffer();
-
-            query.append("UPDATE ").append(TABLE_NAME).append(" SET ")
-            .append(Field.LOCAL_CONTACT_ID).append("=NULL, ")
-            .append(Field.CONTACT_ID).append("=NULL, ").append(Field.CONTACT_NAME)
-            .append("=").append(Field.CONTACT_ADDRESS).append(" WHERE ")
-            .append(Field.LOCAL_CONTACT_ID).append("=? AND (").append(Field.FLAG)
-            .append("&").append(ActivityItem.TIMELINE_ITEM).append(") AND ")
-            .append(Field.CONTACT_ADDRESS).append("=?")
-            .append(" and not exists (select * from ")
-            .append(ContactDetailsTable.TABLE_NAME)
-            .append(" where ")
-            .append(ContactDetailsTable.Field.LOCALCONTACTID)
-            .append("=? and ")
-            .append(ContactDetailsTable.Field.STRINGVAL)
-            .append("=?)");
-
-
-            writableDb.execSQL(StringBufferPool.toStringThenRelease(query), args);
+            statement = StatementCache.acquire(writableDb, UPDATE_TIMELINE_ENTRY_FOR_NUMBER);
+            statement.bindLong(1, localContactId);
+            statement.bindLong(3, localContactId);
+            if (number == null) {
+                statement.bindNull(2);
+                statement.bindNull(4);
+            } else {
+                statement.bindString(2, number);
+                statement.bindString(4, number);
+            }
+            statement.execute();
 		} catch (SQLException e) {
             LogUtils.logE("ActivitiesTable.updateTimeLineEntryForContact() "
                     + "Unable to update Activities table", e);
+        } finally {
+            StatementCache.release(writableDb, UPDATE_TIMELINE_ENTRY_FOR_NUMBER, statement);
         }
     }
 
+    /**
+     * UPDATE Activities SET LocalContactId=NULL, ContactId=NULL,
+     * ContactName=ContactAddress WHERE LocalContactId=? AND (Flag&TIMELINE_ITEM)
+     * AND ContactAddress=? AND NOT EXISTS (SELECT * FROM ContactDetails WHERE
+     * LocalContactId=? AND StringVal=?)
+     */
+    private static final String UPDATE_TIMELINE_ENTRY_FOR_NUMBER = "UPDATE " + TABLE_NAME
+            + " SET " + Field.LOCAL_CONTACT_ID + "=NULL, " + Field.CONTACT_ID + "=NULL, "
+            + Field.CONTACT_NAME + "=" + Field.CONTACT_ADDRESS + " WHERE "
+            + Field.LOCAL_CONTACT_ID + "=? AND (" + Field.FLAG + "&" + ActivityItem.TIMELINE_ITEM
+            + ") AND " + Field.CONTACT_ADDRESS + "=?" + " and not exists (select * from "
+            + ContactDetailsTable.TABLE_NAME + " where " + ContactDetailsTable.Field.LOCALCONTACTID
+            + "=? and " + ContactDetailsTable.Field.STRINGVAL + "=?)";
+
     /**
      * This method updates the latest contact status entry for a timeline
      * entry identified by localContactId and timestamp value.
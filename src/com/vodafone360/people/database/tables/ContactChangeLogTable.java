@@ -32,10 +32,12 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.text.format.Time;
 
 import com.vodafone360.people.Settings;
 import com.vodafone360.people.database.DatabaseHelper;
+import com.vodafone360.people.database.utils.StatementCache;
 import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.utils.CloseUtils;
 import com.vodafone360.people.utils.LogUtils;
@@ -602,21 +604,13 @@ public abstract class ContactChangeLogTable {
      * @param writableDb Writable SQLite database
      * @return true if successful, false otherwise
      */
-    private static boolean removeContactChanges(Long localContactId, SQLiteDatabase writableDb) {
+    public static boolean removeContactChanges(Long localContactId, SQLiteDatabase writableDb) {
         if (Settings.ENABLED_DATABASE_TRACE)
             DatabaseHelper.trace(true,
                     "ContactChangeLogTable.removeContactChanges() localContactId[" + localContactId
                             + "]");
-        try {
-            int result = writableDb.delete(TABLE_NAME, Field.LOCALCHANGECONTACTID + "="
-                    + localContactId, null);
-            if (result <= 0) {
-                return false;
-            }
-        } catch (SQLException e) {
-            return false;
-        }
-        return true;
+        return localContactId != null
+                && deleteById(DELETE_BY_LOCAL_CONTACT_ID, localContactId, writableDb) > 0;
     }
 
     /**
@@ -631,16 +625,7 @@ public abstract class ContactChangeLogTable {
             DatabaseHelper.trace(true,
                     "ContactChangeLogTable.removeContactChange() ContactChangeId["
                             + ContactChangeId + "]");
-        try {
-            int result = writableDb.delete(TABLE_NAME, Field.CONTACTCHANGEID + "="
-                    + ContactChangeId, null);
-            if (result <= 0) {
-                return false;
-            }
-        } catch (SQLException e) {
-            return false;
-        }
-        return true;
+        return deleteById(DELETE_BY_CHANGE_ID, ContactChangeId, writableDb) > 0;
     }
 
     /**
@@ -657,16 +642,56 @@ public abstract class ContactChangeLogTable {
             DatabaseHelper.trace(true,
                     "ContactChangeLogTable.removeContactDetailChanges() localDetailId["
                             + localDetailId + "]");
+        // When 0 rows are deleted we still should return success
+        return localDetailId != null
+                && deleteById(DELETE_BY_LOCAL_DETAIL_ID, localDetailId, writableDb) >= 0;
+    }
+
+    /**
+     * DELETE FROM ContactChangeLog WHERE LocalContactId=?
+     */
+    private static final String DELETE_BY_LOCAL_CONTACT_ID = "DELETE FROM " + TABLE_NAME
+            + " WHERE " + Field.LOCALCHANGECONTACTID + "=?";
+
+    /**
+     * DELETE FROM ContactChangeLog WHERE ContactChangeId=?
+     */
+    private static final String DELETE_BY_CHANGE_ID = "DELETE FROM " + TABLE_NAME + " WHERE "
+            + Field.CONTACTCHANGEID + "=?";
+
+    /**
+     * DELETE FROM ContactChangeLog WHERE LocalDetailId=?
+     */
+    private static final String DELETE_BY_LOCAL_DETAIL_ID = "DELETE FROM " + TABLE_NAME
+            + " WHERE " + Field.LOCALCHANGEDETAILID + "=?";
+
+    /**
+     * Runs one of the cached DELETE statements taking a single ID.
+     * 
+     * @param sql The DELETE statement
+     * @param id The ID to bind
+     * @param writableDb Writable SQLite database
+     * @return The number of deleted rows, or -1 if an error occurred
+     */
+    private static long deleteById(String sql, long id, SQLiteDatabase writableDb) {
+        SQLiteStatement statement = null;
+        // the transaction keeps other statements from running between the
+        // delete and the query of its number of changes
+        writableDb.beginTransaction();
         try {
-            if (writableDb
-                    .delete(TABLE_NAME, Field.LOCALCHANGEDETAILID + "=" + localDetailId, null) < 0) {
-                return false;
-            }
-            // We 0 rows are deleted we still should return success
+            statement = StatementCache.acquire(writableDb, sql);
+            statement.bindLong(1, id);
+            statement.execute();
+            return StatementCache.changes(writableDb);
         } catch (SQLException e) {
-            return false;
+            return -1;
+        } finally {
+            StatementCache.release(writableDb, sql, statement);
+            // a failed statement has not changed anything, so it must not
+            // roll back a transaction of the caller either
+            writableDb.setTransactionSuccessful();
+            writableDb.endTransaction();
         }
-        return true;
     }
 
     /**
@@ -40,6 +40,10 @@ import com.vodafone360.people.database.DatabaseHelper;
 import com.vodafone360.people.database.SQLKeys;
 import com.vodafone360.people.database.DatabaseHelper.ServerIdInfo;
 import com.vodafone360.people.database.tables.ContactsTable.ContactIdInfo;
+import com.vodafone360.people.database.utils.PhoneNumberIndex;
+import com.vodafone360.people.database.utils.QueryPlanUtils;
+import com.vodafone360.people.database.utils.SqlUtils;
+import com.vodafone360.people.database.utils.StatementCache;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.datatypes.VCardHelper;
@@ -63,6 +67,26 @@ public abstract class ContactDetailsTable {
      * Name of the table in the people database.
      */
     public static final String TABLE_NAME = "ContactDetails";
+
+    /** Index on local contact ID and detail key. **/
+    private static final String CONTACT_INDEX_NAME = "ContactDetailsContactIndex";
+
+    /** Covering index for searching contacts by detail value. **/
+    private static final String KEY_VALUE_INDEX_NAME = "ContactDetailsKeyValueIndex";
+
+    /**
+     * Index on the server sync state of a detail. The sync ID is -1 once the
+     * detail is in sync, otherwise NULL or a contact ID, which is never
+     * negative. Changed details are therefore selected with "> -1" rather
+     * than "<> -1", which SQLite cannot look up in an index.
+     */
+    private static final String SERVER_SYNC_INDEX_NAME = "ContactDetailsServerSyncIndex";
+
+    /**
+     * Index on the native sync state of a detail, used in the same way as
+     * {@link #SERVER_SYNC_INDEX_NAME}.
+     */
+    private static final String NATIVE_SYNC_INDEX_NAME = "ContactDetailsNativeSyncIndex";
     
     /**
      * SELECT LocalContactId, DetailLocalId, NativeDetailId, NativeContactIdDup, Key, Type, StringVal, OrderNo FROM ContactDetails.
@@ -78,16 +102,19 @@ public abstract class ContactDetailsTable {
      */
     private final static String QUERY_NATIVE_SYNCABLE_CONTACT_DETAILS_BY_LOCAL_ID = QUERY_CONTACT_DETAILS_BY_LOCAL_ID
                                                                                   + " AND (" + Field.NATIVESYNCCONTACTID + " IS NULL OR " + Field.NATIVESYNCCONTACTID
-                                                                                  + " <> -1)";
+                                                                                  + " > -1)";
     
     
     /**
-     * SELECT DISTINCT LocalId
+     * SELECT +LocalId
      * FROM ContactDetails
-     * WHERE NativeSyncId is NULL or NativeSyncId <> -1
+     * WHERE NativeSyncId is NULL or NativeSyncId > -1
+     * 
+     * The unary plus keeps SQLite from walking the whole local contact ID
+     * index when the query is part of an ordered UNION.
      */
-    public final static String QUERY_NATIVE_SYNCABLE_CONTACTS_LOCAL_IDS = "SELECT " + Field.LOCALCONTACTID + " FROM " + TABLE_NAME
-                                                                        + " WHERE (" + Field.NATIVESYNCCONTACTID + " IS NULL OR " + Field.NATIVESYNCCONTACTID + " <> -1)";
+    public final static String QUERY_NATIVE_SYNCABLE_CONTACTS_LOCAL_IDS = "SELECT +" + Field.LOCALCONTACTID + " FROM " + TABLE_NAME
+                                                                        + " WHERE (" + Field.NATIVESYNCCONTACTID + " IS NULL OR " + Field.NATIVESYNCCONTACTID + " > -1)";
     
     /**
      * SELECT DetailLocalId, DetailServerId
@@ -160,6 +187,20 @@ public abstract class ContactDetailsTable {
      * @See {@link #getQueryDataLength()}
      */
     private static final int DATA_QUERY_LENGTH = 14;
+
+    /**
+     * Index of the phone number details used by
+     * {@link #fetchContactInfo(String, ContactDetail, ContactDetail, SQLiteDatabase)}
+     * instead of comparing the number with every phone detail.
+     */
+    private static final PhoneNumberIndex sPhoneNumberIndex = new PhoneNumberIndex();
+
+    /**
+     * SELECT DetailLocalId, StringVal FROM ContactDetails WHERE Key = ?, used
+     * to load the phone number index.
+     */
+    private static final String QUERY_PHONE_NUMBERS = "SELECT " + Field.DETAILLOCALID + ", "
+            + Field.STRINGVAL + " FROM " + TABLE_NAME + " WHERE " + Field.KEY + " = ?";
     
     /**
      * Associates a constant with a field string in the People database.
@@ -288,6 +329,29 @@ public abstract class ContactDetailsTable {
                 + " INTEGER," + Field.NATIVEDETAILVAL1 + " TEXT," + Field.NATIVEDETAILVAL2
                 + " TEXT," + Field.NATIVEDETAILVAL3 + " TEXT," + Field.SERVERSYNCCONTACTID
                 + " LONG," + Field.NATIVESYNCCONTACTID + " INTEGER);");
+        createIndexes(writeableDb);
+        clearPhoneNumberIndex();
+    }
+
+    /**
+     * Creates the secondary indexes of the Contact Details Table if they do
+     * not exist yet. Covers the per-contact lookups, the search by detail
+     * value and the server/native sync change cursors.
+     * 
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL compilation error occurs
+     */
+    public static void createIndexes(SQLiteDatabase writeableDb) throws SQLException {
+        DatabaseHelper.trace(true, "ContactDetailsTable.createIndexes()");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + CONTACT_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.LOCALCONTACTID + ", " + Field.KEY + ")");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + KEY_VALUE_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.KEY + ", " + Field.STRINGVAL + ", "
+                + Field.LOCALCONTACTID + ")");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + SERVER_SYNC_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.SERVERSYNCCONTACTID + ")");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + NATIVE_SYNC_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.NATIVESYNCCONTACTID + ")");
     }
 
     /**
@@ -517,7 +581,8 @@ public abstract class ContactDetailsTable {
         ContactDetail detail = null;
         Cursor cursor = null;
         try {
-            cursor = readableDb.rawQuery(getQueryStringSql(Field.DETAILLOCALID + " = ?"), mArgs);
+            cursor = QueryPlanUtils.rawQuery(readableDb,
+                    getQueryStringSql(Field.DETAILLOCALID + " = ?"), mArgs);
             if (cursor.moveToFirst()) {
                 detail = getQueryData(cursor);
             }
@@ -621,6 +686,9 @@ public abstract class ContactDetailsTable {
                         .logE("ContactDetailsTable.addContactDetail() Unable to add contact detail");
                 return ServiceStatus.ERROR_DATABASE_CORRUPT;
             }
+            if (detail.key == DetailKeys.VCARD_PHONE) {
+                sPhoneNumberIndex.add(detail.localDetailID, detail.value);
+            }
             DatabaseHelper.trace(true,
                     "ContactDetailsTable.addContactDetail() Added localDetailID["
                             + detail.localDetailID + "]");
@@ -636,6 +704,104 @@ public abstract class ContactDetailsTable {
         }
     }
 
+    /**
+     * Provides a statement that can be used to add contact details to the
+     * table.
+     * 
+     * @param writableDb A writable SQLite database object.
+     * @return The SQLite statement
+     * @see #addContactDetail(ContactDetail, boolean, boolean, SQLiteStatement)
+     */
+    public static SQLiteStatement addContactDetailStatement(SQLiteDatabase writableDb) {
+        try {
+            return writableDb.compileStatement("INSERT INTO " + TABLE_NAME + " (" + Field.KEY
+                    + "," + Field.TYPE + "," + Field.STRINGVAL + "," + Field.ALT + ","
+                    + Field.DETAILSERVERID + "," + Field.ORDER + "," + Field.UPDATED + ","
+                    + Field.LOCALCONTACTID + "," + Field.DELETED + "," + Field.BYTESMIMETYPE
+                    + "," + Field.PHOTOURL + "," + Field.NATIVECONTACTID + ","
+                    + Field.NATIVEDETAILID + "," + Field.SERVERSYNCCONTACTID + ","
+                    + Field.NATIVESYNCCONTACTID + "," + Field.NATIVEDETAILVAL1 + ","
+                    + Field.NATIVEDETAILVAL2 + "," + Field.NATIVEDETAILVAL3
+                    + ") VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+        } catch (SQLException e) {
+            LogUtils.logE("ContactDetailsTable.addContactDetailStatement() "
+                    + "Exception - Compile error:\n", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds a contact detail to the table using a precompiled statement. The
+     * same fields are stored as by
+     * {@link #addContactDetail(ContactDetail, boolean, boolean, SQLiteDatabase)}
+     * .
+     * 
+     * @param detail The new detail.
+     * @param syncToServer Mark the new detail so it will be synced to the
+     *            server
+     * @param syncToNative Mark the new detail so it will be synced to the
+     *            native database
+     * @param statement The statement returned by
+     *            {@link #addContactDetailStatement(SQLiteDatabase)}
+     * @return SUCCESS or a suitable error code.
+     */
+    public static ServiceStatus addContactDetail(ContactDetail detail, boolean syncToServer,
+            boolean syncToNative, SQLiteStatement statement) {
+        if (detail.localContactID == null || statement == null) {
+            LogUtils.logE("ContactDetailsTable.addContactDetail() "
+                    + "Unable to add contact detail - invalid parameter");
+            return ServiceStatus.ERROR_NOT_FOUND;
+        }
+        try {
+            detail.localDetailID = null;
+            SqlUtils.bindLong(statement, 1, detail.key != null ? detail.key.ordinal() : null);
+            SqlUtils.bindLong(statement, 2, detail.keyType != null ? detail.keyType.ordinal()
+                    : null);
+            SqlUtils.bindString(statement, 3, detail.value);
+            SqlUtils.bindString(statement, 4, detail.alt);
+            SqlUtils.bindLong(statement, 5, detail.unique_id);
+            SqlUtils.bindLong(statement, 6, detail.order);
+            SqlUtils.bindLong(statement, 7, detail.updated);
+            statement.bindLong(8, detail.localContactID);
+            SqlUtils.bindBoolean(statement, 9, detail.deleted != null ? Boolean.FALSE : null);
+            SqlUtils.bindString(statement, 10, detail.photo_mime_type);
+            SqlUtils.bindString(statement, 11, detail.photo_url);
+            SqlUtils.bindLong(statement, 12, detail.nativeContactId);
+            SqlUtils.bindLong(statement, 13, detail.nativeDetailId);
+            if (syncToServer) {
+                SqlUtils.bindLong(statement, 14, detail.serverContactId);
+            } else {
+                statement.bindLong(14, -1);
+            }
+            if (syncToNative) {
+                SqlUtils.bindLong(statement, 15, detail.syncNativeContactId);
+                statement.bindNull(16);
+                statement.bindNull(17);
+                statement.bindNull(18);
+            } else {
+                statement.bindLong(15, -1);
+                SqlUtils.bindString(statement, 16, detail.nativeVal1);
+                SqlUtils.bindString(statement, 17, detail.nativeVal2);
+                SqlUtils.bindString(statement, 18, detail.nativeVal3);
+            }
+            detail.localDetailID = statement.executeInsert();
+            if (detail.localDetailID < 0) {
+                LogUtils.logE("ContactDetailsTable.addContactDetail() "
+                        + "Unable to add contact detail");
+                return ServiceStatus.ERROR_DATABASE_CORRUPT;
+            }
+            if (detail.key == DetailKeys.VCARD_PHONE) {
+                sPhoneNumberIndex.add(detail.localDetailID, detail.value);
+            }
+            return ServiceStatus.SUCCESS;
+
+        } catch (SQLException e) {
+            LogUtils.logE("ContactDetailsTable.addContactDetail() SQLException - "
+                    + "Unable to add contact detail", e);
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        }
+    }
+
     /**
      * Updates an existing contact detail in the table.
      * 
@@ -679,6 +845,9 @@ public abstract class ContactDetailsTable {
                                 + detail.localDetailID + "]");
                 return ServiceStatus.ERROR_NOT_FOUND;
             }
+            if (detail.key == DetailKeys.VCARD_PHONE && detail.value != null) {
+                sPhoneNumberIndex.add(detail.localDetailID, detail.value);
+            }
         } catch (SQLException e) {
             LogUtils
                     .logE(
@@ -793,7 +962,7 @@ public abstract class ContactDetailsTable {
             } else {
                 orderByText = Field.NATIVECONTACTID.toString();
             }
-            c = readableDb.rawQuery("SELECT " + getFullQueryList() + ", "
+            c = QueryPlanUtils.rawQuery(readableDb, "SELECT " + getFullQueryList() + ", "
                     + Field.NATIVESYNCCONTACTID + " FROM " + TABLE_NAME + " WHERE "
                     + Field.NATIVECONTACTID + " IS NOT NULL AND (" + sb1 + ") ORDER BY "
                     + orderByText + " LIMIT " + firstIndex + "," + count, null);
@@ -830,8 +999,8 @@ public abstract class ContactDetailsTable {
         ContactDetail detail = null;
         Cursor c = null;
         try {
-            c = readableDb.rawQuery(getQueryStringSql(Field.LOCALCONTACTID + "=? AND " + Field.KEY
-                    + "=?"), args);
+            c = QueryPlanUtils.rawQuery(readableDb, getQueryStringSql(Field.LOCALCONTACTID
+                    + "=? AND " + Field.KEY + "=?"), args);
             if (c.moveToFirst()) {
                 detail = getQueryData(c);
             }
@@ -847,9 +1016,18 @@ public abstract class ContactDetailsTable {
         return detail;
     }
 
+    /**
+     * Empties the phone number index, to be called when the database is
+     * deleted. The index is loaded again on the next lookup.
+     */
+    public static void clearPhoneNumberIndex() {
+        sPhoneNumberIndex.clear();
+    }
+
     /**
      * Finds a phone contact detail which matches a given telephone number. Uses
-     * the native Android functionality for matching the numbers.
+     * the native Android functionality for matching the numbers, only on the
+     * details the phone number index returns for the number.
      * 
      * @param phoneNumber The number to find
      * @param phoneDetail An empty contact detail where the resulting phone
@@ -872,8 +1050,23 @@ public abstract class ContactDetailsTable {
             String[] args = {
                 String.format("%d", ContactDetail.DetailKeys.VCARD_PHONE.ordinal())
             };
-            c2 = readableDb.rawQuery(getQueryStringSql(Field.KEY + "=? AND PHONE_NUMBERS_EQUAL("
-                    + Field.STRINGVAL + "," + searchNumber + ")"), args);
+            final List<Long> candidates = sPhoneNumberIndex.find(phoneNumber,
+                    QUERY_PHONE_NUMBERS, args, readableDb);
+            if (candidates.isEmpty()) {
+                return ServiceStatus.ERROR_NOT_FOUND;
+            }
+            final StringBuffer where = StringBufferPool.getStringBuffer(Field.KEY.toString());
+            where.append("=? AND ").append(Field.DETAILLOCALID).append(" IN (");
+            for (int i = 0; i < candidates.size(); i++) {
+                if (i > 0) {
+                    where.append(',');
+                }
+                where.append(candidates.get(i));
+            }
+            where.append(") AND PHONE_NUMBERS_EQUAL(").append(Field.STRINGVAL).append(',')
+                    .append(searchNumber).append(')');
+            c2 = QueryPlanUtils.rawQuery(readableDb, getQueryStringSql(StringBufferPool
+                    .toStringThenRelease(where)), args);
             if (!c2.moveToFirst()) {
                 return ServiceStatus.ERROR_NOT_FOUND;
             }
@@ -917,7 +1110,7 @@ public abstract class ContactDetailsTable {
         };
         Cursor c = null;
         try {
-            c = readableDb.rawQuery(ContactDetailsTable
+            c = QueryPlanUtils.rawQuery(readableDb, ContactDetailsTable
                     .getQueryStringSql(ContactDetailsTable.Field.LOCALCONTACTID + " = ?"), args);
             detailList.clear();
             while (c.moveToNext()) {
@@ -964,18 +1157,16 @@ public abstract class ContactDetailsTable {
                 final ServerIdInfo info = serverIdList.get(i);
                 if (info.serverId != null) {
                     if (statement1 == null) {
-                        statement1 = writableDb.compileStatement("UPDATE " + TABLE_NAME + " SET "
-                                + Field.DETAILSERVERID + "=?," + Field.SERVERSYNCCONTACTID
-                                + "=-1 WHERE " + Field.DETAILLOCALID + "=?");
+                        statement1 = StatementCache.acquire(writableDb,
+                                UPDATE_SERVER_ID_BY_DETAIL_ID);
                     }
                     statement1.bindLong(STATEMENT1_COLUMN_SERVERID, info.serverId);
                     statement1.bindLong(STATEMENT1_COLUMN_LOCALID, info.localId);
                     statement1.execute();
                 } else {
                     if (statement2 == null) {
-                        statement2 = writableDb.compileStatement("UPDATE " + TABLE_NAME + " SET "
-                                + Field.SERVERSYNCCONTACTID + "=-1 WHERE " + Field.DETAILLOCALID
-                                + "=?");
+                        statement2 = StatementCache.acquire(writableDb,
+                                UPDATE_SERVER_SYNCED_BY_DETAIL_ID);
                     }
                     statement2.bindLong(STATEMENT2_COLUMN_LOCALID, info.localId);
                     statement2.execute();
@@ -991,17 +1182,34 @@ public abstract class ContactDetailsTable {
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
         } finally {
             writableDb.endTransaction();
-            if(statement1 != null) {
-                statement1.close();
-                statement1 = null;
-            }
-            if(statement2 != null) {
-                statement2.close();
-                statement2 = null;
-            }
+            StatementCache.release(writableDb, UPDATE_SERVER_ID_BY_DETAIL_ID, statement1);
+            StatementCache.release(writableDb, UPDATE_SERVER_SYNCED_BY_DETAIL_ID, statement2);
         }
     }
 
+    /**
+     * UPDATE ContactDetails SET DetailServerId=?,ServerSyncContactId=-1 WHERE DetailLocalId=?
+     */
+    private static final String UPDATE_SERVER_ID_BY_DETAIL_ID = "UPDATE " + TABLE_NAME + " SET "
+            + Field.DETAILSERVERID + "=?," + Field.SERVERSYNCCONTACTID + "=-1 WHERE "
+            + Field.DETAILLOCALID + "=?";
+
+    /**
+     * UPDATE ContactDetails SET ServerSyncContactId=-1 WHERE DetailLocalId=?
+     */
+    private static final String UPDATE_SERVER_SYNCED_BY_DETAIL_ID = "UPDATE " + TABLE_NAME
+            + " SET " + Field.SERVERSYNCCONTACTID + "=-1 WHERE " + Field.DETAILLOCALID + "=?";
+
+    /**
+     * UPDATE ContactDetails SET NativeContactId=?,NativeDetailId=?,NativeVal1=?,
+     * NativeVal2=?,NativeVal3=?,NativeSyncContactId=? WHERE DetailLocalId=?
+     */
+    private static final String UPDATE_NATIVE_IDS_BY_DETAIL_ID = "UPDATE " + TABLE_NAME + " SET "
+            + Field.NATIVECONTACTID + "=?," + Field.NATIVEDETAILID + "=?,"
+            + Field.NATIVEDETAILVAL1 + "=?," + Field.NATIVEDETAILVAL2 + "=?,"
+            + Field.NATIVEDETAILVAL3 + "=?," + Field.NATIVESYNCCONTACTID + "=? WHERE "
+            + Field.DETAILLOCALID + "=?";
+
     /**
      * Set native detail ID for all those details which require an ID. In any
      * case, the native sync contact ID flag is set to -1 to indicate that the
@@ -1027,13 +1235,10 @@ public abstract class ContactDetailsTable {
             return ServiceStatus.SUCCESS;
         }
         
+        SQLiteStatement statement = null;
         try {
             writableDb.beginTransaction();
-            SQLiteStatement statement = writableDb.compileStatement("UPDATE " + TABLE_NAME
-                    + " SET " + Field.NATIVECONTACTID + "=?," + Field.NATIVEDETAILID + "=?,"
-                    + Field.NATIVEDETAILVAL1 + "=?," + Field.NATIVEDETAILVAL2 + "=?,"
-                    + Field.NATIVEDETAILVAL3 + "=?," + Field.NATIVESYNCCONTACTID + "=? WHERE "
-                    + Field.DETAILLOCALID + "=?");
+            statement = StatementCache.acquire(writableDb, UPDATE_NATIVE_IDS_BY_DETAIL_ID);
             for (int i = 0; i < nativeIdList.size(); i++) {
                 final NativeIdInfo info = nativeIdList.get(i);
                 statement.clearBindings();
@@ -1066,6 +1271,7 @@ public abstract class ContactDetailsTable {
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
         } finally {
             writableDb.endTransaction();
+            StatementCache.release(writableDb, UPDATE_NATIVE_IDS_BY_DETAIL_ID, statement);
         }
     }
 
@@ -1090,8 +1296,8 @@ public abstract class ContactDetailsTable {
         Cursor c = null;
         try {
             boolean found = false;
-            c = readableDb.rawQuery("SELECT " + Field.DETAILLOCALID + "," + Field.TYPE + ","
-                    + Field.STRINGVAL + "," + Field.ORDER + " FROM " + TABLE_NAME + " WHERE "
+            c = QueryPlanUtils.rawQuery(readableDb, "SELECT " + Field.DETAILLOCALID + ","
+                    + Field.TYPE + "," + Field.STRINGVAL + "," + Field.ORDER + " FROM " + TABLE_NAME + " WHERE "
                     + Field.LOCALCONTACTID + "=" + localContactID + " AND " + Field.KEY + "="
                     + keyVal + " AND " + Field.ORDER + "=" + "(SELECT MIN(" + Field.ORDER
                     + ") FROM " + TABLE_NAME + " WHERE " + Field.LOCALCONTACTID + "="
@@ -1190,8 +1396,8 @@ public abstract class ContactDetailsTable {
                 return null;
             }
             final String searchValue = DatabaseUtils.sqlEscapeString(value);
-            return readableDb.rawQuery("SELECT " + Field.DETAILLOCALID + "," + Field.LOCALCONTACTID
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.KEY + "=" + key.ordinal() + " AND "
+            return QueryPlanUtils.rawQuery(readableDb, "SELECT " + Field.DETAILLOCALID + ","
+                    + Field.LOCALCONTACTID + " FROM " + TABLE_NAME + " WHERE " + Field.KEY + "=" + key.ordinal() + " AND "
                     + Field.STRINGVAL + "=" + searchValue + " AND " + Field.NATIVECONTACTID
                     + " IS NULL", null);
         } catch (SQLException e) {
@@ -1246,7 +1452,8 @@ public abstract class ContactDetailsTable {
             // Retrieve a list of detail local IDs from the merged contact
             // (original one)
             final String[] args = {String.valueOf(info.mergedLocalId)}; 
-            cursor = writableDb.rawQuery(QUERY_DETAIL_LOCAL_AND_SERVER_IDS_BY_LOCAL_CONTACT_ID, args);
+            cursor = QueryPlanUtils.rawQuery(writableDb,
+                    QUERY_DETAIL_LOCAL_AND_SERVER_IDS_BY_LOCAL_CONTACT_ID, args);
             
             while (cursor.moveToNext()) {
                 if (!cursor.isNull(0) && !cursor.isNull(1)) {
@@ -1329,7 +1536,7 @@ public abstract class ContactDetailsTable {
             final String[] args = {
                 String.valueOf(localContactId)
             };
-            c = writableDb.rawQuery(QUERY_DETAIL_BY_LOCAL_CONTACT_ID, args);
+            c = QueryPlanUtils.rawQuery(writableDb, QUERY_DETAIL_BY_LOCAL_CONTACT_ID, args);
             nativeInfoList.clear();
             while (c.moveToNext()) {
                 ContactDetail detailInfo = new ContactDetail();
@@ -1403,7 +1610,8 @@ public abstract class ContactDetailsTable {
                 query.append(SQLKeys.AND).append(Field.ALT).append(SQLKeys.EQUALS).append(
                         networkName);
             }
-            c = readableDb.rawQuery(StringBufferPool.toStringThenRelease(query), null);
+            c = QueryPlanUtils.rawQuery(readableDb,
+                    StringBufferPool.toStringThenRelease(query), null);
             while (c.moveToNext()) {
                 if (!c.isNull(0)) {
                     localContactId = c.getLong(0);
@@ -1453,7 +1661,7 @@ public abstract class ContactDetailsTable {
                     + "="
                     + (!TextUtils.isEmpty(networkName) ? localContactId + " AND "
                             + Field.ALT + "=" + networkName : String.valueOf(localContactId));
-            c = readableDb.rawQuery(query, null);
+            c = QueryPlanUtils.rawQuery(readableDb, query, null);
             while (c.moveToNext()) {
                 if (!c.isNull(0)) {
                     chatId = c.getString(0);
@@ -1705,9 +1913,9 @@ public abstract class ContactDetailsTable {
                 statusMatch = Field.SERVERSYNCCONTACTID + " IS NULL";
             } else {
                 /** Note this won't return NULLs. **/
-                statusMatch = Field.SERVERSYNCCONTACTID + "<>-1";
+                statusMatch = Field.SERVERSYNCCONTACTID + ">-1";
             }
-            return readableDb.rawQuery("SELECT " + Field.LOCALCONTACTID + ","
+            return QueryPlanUtils.rawQuery(readableDb, "SELECT " + Field.LOCALCONTACTID + ","
                     + Field.SERVERSYNCCONTACTID + "," + Field.DETAILLOCALID + ","
                     + Field.DETAILSERVERID + "," + Field.KEY + "," + Field.TYPE + ","
                     + Field.STRINGVAL + "," + Field.ORDER + "," + Field.PHOTOURL + " FROM "
@@ -1808,8 +2016,8 @@ public abstract class ContactDetailsTable {
         Cursor cursor = null;
         try {
             /** Return all values from this table (including new contacts) **/
-            cursor = db.rawQuery("SELECT COUNT(distinct " + Field.LOCALCONTACTID + ") FROM "
-                    + TABLE_NAME + " WHERE " + Field.SERVERSYNCCONTACTID + "<>-1 OR "
+            cursor = QueryPlanUtils.rawQuery(db, "SELECT COUNT(distinct "
+                    + Field.LOCALCONTACTID + ") FROM " + TABLE_NAME + " WHERE " + Field.SERVERSYNCCONTACTID + ">-1 OR "
                     + Field.SERVERSYNCCONTACTID + " IS NULL", null);
             if (cursor.moveToFirst()) {
                 int result = cursor.getInt(0);
@@ -1847,15 +2055,16 @@ public abstract class ContactDetailsTable {
                 statusMatch = Field.NATIVESYNCCONTACTID + " IS NULL";
             } else {
                 /** Note this won't return NULLs. **/
-                statusMatch = Field.NATIVESYNCCONTACTID + "<>-1";
+                statusMatch = Field.NATIVESYNCCONTACTID + ">-1";
             }
-            return readableDb.rawQuery("SELECT " + Field.LOCALCONTACTID + ","
+            return QueryPlanUtils.rawQuery(readableDb, "SELECT " + Field.LOCALCONTACTID + ","
                     + Field.NATIVECONTACTID + "," + Field.NATIVESYNCCONTACTID + ","
                     + Field.DETAILLOCALID + "," + Field.NATIVEDETAILID + "," + Field.KEY + ","
                     + Field.TYPE + "," + Field.STRINGVAL + "," + Field.ORDER + ","
                     + Field.NATIVEDETAILVAL1 + "," + Field.NATIVEDETAILVAL2 + ","
                     + Field.NATIVEDETAILVAL3 + " FROM " + TABLE_NAME + " WHERE " + statusMatch
-                    + " ORDER BY " + Field.LOCALCONTACTID, null);
+                    // sort the few matches rather than walk the contact index
+                    + " ORDER BY +" + Field.LOCALCONTACTID, null);
         } catch (SQLException e) {
             LogUtils.logE("ContactDetailsTable.findDetailByKey() SQLException - "
                     + "Unable to search for native contact ", e);
@@ -1975,8 +2184,8 @@ public abstract class ContactDetailsTable {
         int noOfChanges = 0;
         Cursor c = null;
         try {
-            c = readableDb.rawQuery("SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE "
-                    + Field.NATIVESYNCCONTACTID + "<>-1", null);
+            c = QueryPlanUtils.rawQuery(readableDb, "SELECT COUNT(*) FROM " + TABLE_NAME + " WHERE "
+                    + Field.NATIVESYNCCONTACTID + ">-1", null);
             if (c.moveToFirst()) {
                 noOfChanges = c.getInt(0);
             }
@@ -2204,6 +2413,10 @@ public abstract class ContactDetailsTable {
                 values.clear();
                 prepareNativeContactDetailInsert(currentChange, values);
                 currentChange.setInternalDetailId(writeableDb.insertOrThrow(TABLE_NAME, null, values));
+                if (currentChange.getKey() == ContactChange.KEY_VCARD_PHONE) {
+                    sPhoneNumberIndex.add(currentChange.getInternalDetailId(),
+                            currentChange.getValue());
+                }
             }
         }
         catch(Exception e) {
@@ -2230,7 +2443,7 @@ public abstract class ContactDetailsTable {
         
         try {
             
-            cursor = readableDb.rawQuery(QUERY_STRING , SELECTION );
+            cursor = QueryPlanUtils.rawQuery(readableDb, QUERY_STRING , SELECTION );
             
             if (cursor.getCount() > 0) {
                 
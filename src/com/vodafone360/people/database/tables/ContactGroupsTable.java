@@ -33,8 +33,10 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 
 import com.vodafone360.people.database.DatabaseHelper;
+import com.vodafone360.people.database.utils.QueryPlanUtils;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.service.ServiceStatus;
 import com.vodafone360.people.utils.CloseUtils;
@@ -54,6 +56,12 @@ public abstract class ContactGroupsTable {
      */
     public static final String TABLE_NAME = "ContactGroupRelations";
 
+    /** Index on local contact ID, also covering the group ID. **/
+    private static final String CONTACT_INDEX_NAME = "ContactGroupRelationsContactIndex";
+
+    /** Index on group ID for fetching the members of a group. **/
+    private static final String GROUP_INDEX_NAME = "ContactGroupRelationsGroupIndex";
+
     /**
      * Represents the data stored in a record
      */
@@ -111,6 +119,22 @@ public abstract class ContactGroupsTable {
         writeableDb.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Field.LOCALRELATIONID
                 + " INTEGER PRIMARY KEY AUTOINCREMENT, " + Field.LOCALCONTACTID + " LONG, "
                 + Field.ZYBGROUPID + " LONG);");
+        createIndexes(writeableDb);
+    }
+
+    /**
+     * Creates the secondary indexes of the Contact Groups Table if they do not
+     * exist yet.
+     * 
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL compilation error occurs
+     */
+    public static void createIndexes(SQLiteDatabase writeableDb) throws SQLException {
+        DatabaseHelper.trace(true, "ContactGroupsTable.createIndexes()");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + CONTACT_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.LOCALCONTACTID + ", " + Field.ZYBGROUPID + ")");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + GROUP_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.ZYBGROUPID + ")");
     }
 
     /**
@@ -159,6 +183,55 @@ public abstract class ContactGroupsTable {
         }
     }
 
+    /**
+     * Provides a statement that can be used to associate contacts and groups.
+     * 
+     * @param writableDb A writable SQLite database
+     * @return The SQLite statement
+     * @see #addContactToGroup(long, long, SQLiteStatement)
+     */
+    public static SQLiteStatement addContactToGroupStatement(SQLiteDatabase writableDb) {
+        try {
+            return writableDb.compileStatement("INSERT INTO " + TABLE_NAME + " ("
+                    + Field.LOCALCONTACTID + "," + Field.ZYBGROUPID + ") VALUES (?,?)");
+        } catch (SQLException e) {
+            LogUtils.logE("ContactGroupsTable.addContactToGroupStatement() "
+                    + "Exception - Compile error:\n", e);
+            return null;
+        }
+    }
+
+    /**
+     * Associates a contact and a group using a precompiled statement.
+     * 
+     * @param localContactId The local contact Id from the Contacts table
+     * @param zybGroupId The server group ID from groups table
+     * @param statement The statement returned by
+     *            {@link #addContactToGroupStatement(SQLiteDatabase)}
+     * @return true if successful, false otherwise
+     */
+    public static boolean addContactToGroup(long localContactId, long zybGroupId,
+            SQLiteStatement statement) {
+        if (statement == null) {
+            return false;
+        }
+        try {
+            statement.bindLong(1, localContactId);
+            statement.bindLong(2, zybGroupId);
+            if (statement.executeInsert() < 0) {
+                LogUtils.logE("ContactGroupsTable.addContactToGroup() "
+                        + "Unable to insert new contact group summary");
+                return false;
+            }
+            return true;
+
+        } catch (SQLException e) {
+            LogUtils.logE("ContactGroupsTable.addContactToGroup() SQLException - "
+                    + "Unable to insert new contact group", e);
+            return false;
+        }
+    }
+
     /**
      * Remove the association between contact and group.
      * 
@@ -229,8 +302,8 @@ public abstract class ContactGroupsTable {
         Cursor c1 = null;
         groupIds.clear();
         try {
-            c1 = readableDb.rawQuery("SELECT " + Field.ZYBGROUPID + " FROM " + TABLE_NAME
-                    + " WHERE " + Field.LOCALCONTACTID + " = ?", args);
+            c1 = QueryPlanUtils.rawQuery(readableDb, "SELECT " + Field.ZYBGROUPID
+                    + " FROM " + TABLE_NAME + " WHERE " + Field.LOCALCONTACTID + " = ?", args);
 
             while (c1.moveToNext()) {
                 if (!c1.isNull(0)) {
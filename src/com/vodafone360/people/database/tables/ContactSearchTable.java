@@ -0,0 +1,384 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.database.tables;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ContentValues;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.vodafone360.people.Settings;
+import com.vodafone360.people.database.DatabaseHelper;
+import com.vodafone360.people.database.utils.SearchTokenizer;
+import com.vodafone360.people.database.utils.SqlUtils;
+import com.vodafone360.people.datatypes.ContactDetail;
+import com.vodafone360.people.datatypes.VCardHelper;
+import com.vodafone360.people.utils.LogUtils;
+
+/**
+ * Contains all the functionality related to the contact search database
+ * table. This table is a word index of the contact list: for each contact it
+ * stores the words of the display name, nickname, organisation, e-mail
+ * addresses and phone numbers, so that the contact list can be filtered with
+ * prefix matches on an index rather than a LIKE scan of the whole
+ * ContactSummary table. It is maintained by {@link ContactSummaryTable}. This
+ * class is never instantiated hence all methods must be static.
+ *
+ * @version %I%, %G%
+ */
+public abstract class ContactSearchTable {
+    /**
+     * Name of the table as it appears in the database
+     */
+    public static final String TABLE_NAME = "ContactSearch";
+
+    /**
+     * Name of the rank column returned by
+     * {@link #getMatchQuery(List, List)}, lower is better.
+     */
+    public static final String MATCH_RANK = "SearchRank";
+
+    /** Index on the word, covering the contact and weight for the lookup. **/
+    private static final String TOKEN_INDEX_NAME = "ContactSearchTokenIndex";
+
+    /** Index on local contact ID, used when a contact is updated. **/
+    private static final String CONTACT_INDEX_NAME = "ContactSearchContactIndex";
+
+    /** Weight of words of the display name. **/
+    private static final int WEIGHT_NAME = 0;
+
+    /** Weight of words of the nickname. **/
+    private static final int WEIGHT_NICKNAME = 1;
+
+    /** Weight of words of the organisation. **/
+    private static final int WEIGHT_ORG = 2;
+
+    /** Weight of words of an e-mail address. **/
+    private static final int WEIGHT_EMAIL = 3;
+
+    /** Weight of words of a phone number. **/
+    private static final int WEIGHT_PHONE = 4;
+
+    /**
+     * Columns written when the words of a contact are added, in the order of
+     * the parameters of {@link #addContactStatement(SQLiteDatabase)}.
+     */
+    private static final String[] ADD_COLUMNS = {
+            Field.LOCALCONTACTID.toString(), Field.TOKEN.toString(), Field.WEIGHT.toString()
+    };
+
+    /**
+     * An enumeration of all the field names in the database.
+     */
+    public static enum Field {
+        LOCALCONTACTID("LocalContactId"),
+        TOKEN("Token"),
+        WEIGHT("Weight");
+
+        /**
+         * The name of the field as it appears in the database
+         */
+        private String mField;
+
+        /**
+         * Constructor
+         *
+         * @param field - The name of the field (see list above)
+         */
+        private Field(String field) {
+            mField = field;
+        }
+
+        /**
+         * @return the name of the field as it appears in the database.
+         */
+        public String toString() {
+            return mField;
+        }
+
+    }
+
+    /**
+     * Create Contact Search Table.
+     *
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL compilation error occurs
+     */
+    public static void create(SQLiteDatabase writeableDb) throws SQLException {
+        DatabaseHelper.trace(true, "ContactSearchTable.create()");
+        writeableDb.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Field.LOCALCONTACTID
+                + " LONG, " + Field.TOKEN + " TEXT, " + Field.WEIGHT + " INTEGER);");
+        writeableDb.execSQL("CREATE INDEX " + TOKEN_INDEX_NAME + " ON " + TABLE_NAME + " ("
+                + Field.TOKEN + ", " + Field.LOCALCONTACTID + ", " + Field.WEIGHT + ")");
+        writeableDb.execSQL("CREATE INDEX " + CONTACT_INDEX_NAME + " ON " + TABLE_NAME + " ("
+                + Field.LOCALCONTACTID + ")");
+    }
+
+    /**
+     * Adds the words of a contact to the table.
+     *
+     * @param localContactId The local Contact ID from Contacts table
+     * @param displayName The name shown in the contact list, may be null
+     * @param details The details of the contact
+     * @param writableDb A writable SQLite database
+     * @return true if successful, false otherwise
+     */
+    public static boolean addContact(long localContactId, String displayName,
+            List<ContactDetail> details, SQLiteDatabase writableDb) {
+        if (Settings.ENABLED_DATABASE_TRACE) {
+            DatabaseHelper.trace(true, "ContactSearchTable.addContact() localContactId["
+                    + localContactId + "]");
+        }
+        try {
+            final ContentValues values = new ContentValues();
+            for (Map.Entry<String, Integer> entry : getTokens(displayName, details).entrySet()) {
+                values.put(Field.LOCALCONTACTID.toString(), localContactId);
+                values.put(Field.TOKEN.toString(), entry.getKey());
+                values.put(Field.WEIGHT.toString(), entry.getValue());
+                if (writableDb.insertOrThrow(TABLE_NAME, null, values) < 0) {
+                    LogUtils.logE("ContactSearchTable.addContact() "
+                            + "Unable to insert contact search word");
+                    return false;
+                }
+            }
+            return true;
+
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSearchTable.addContact() SQLException - "
+                    + "Unable to insert contact search words", e);
+            return false;
+        }
+    }
+
+    /**
+     * Provides a statement that can be used to add the words of contacts.
+     *
+     * @param writableDb A writable SQLite database
+     * @return The SQLite statement
+     * @see #addContact(long, String, List, SQLiteStatement)
+     */
+    public static SQLiteStatement addContactStatement(SQLiteDatabase writableDb) {
+        try {
+            return SqlUtils.compileInsertStatement(writableDb, TABLE_NAME, ADD_COLUMNS);
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSearchTable.addContactStatement() "
+                    + "Exception - Compile error:\n", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds the words of a contact to the table using a precompiled statement.
+     *
+     * @param localContactId The local Contact ID from Contacts table
+     * @param displayName The name shown in the contact list, may be null
+     * @param details The details of the contact
+     * @param statement The statement returned by
+     *            {@link #addContactStatement(SQLiteDatabase)}
+     * @return true if successful, false otherwise
+     */
+    public static boolean addContact(long localContactId, String displayName,
+            List<ContactDetail> details, SQLiteStatement statement) {
+        if (statement == null) {
+            return false;
+        }
+        try {
+            for (Map.Entry<String, Integer> entry : getTokens(displayName, details).entrySet()) {
+                statement.bindLong(1, localContactId);
+                statement.bindString(2, entry.getKey());
+                statement.bindLong(3, entry.getValue());
+                if (statement.executeInsert() < 0) {
+                    LogUtils.logE("ContactSearchTable.addContact() "
+                            + "Unable to insert contact search word");
+                    return false;
+                }
+            }
+            return true;
+
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSearchTable.addContact() SQLException - "
+                    + "Unable to insert contact search words", e);
+            return false;
+        }
+    }
+
+    /**
+     * Removes all the words of a contact from the table.
+     *
+     * @param localContactId The local Contact ID from Contacts table
+     * @param writableDb A writable SQLite database
+     * @return true if successful, false otherwise
+     */
+    public static boolean deleteContact(long localContactId, SQLiteDatabase writableDb) {
+        if (Settings.ENABLED_DATABASE_TRACE) {
+            DatabaseHelper.trace(true, "ContactSearchTable.deleteContact() localContactId["
+                    + localContactId + "]");
+        }
+        try {
+            writableDb.delete(TABLE_NAME, Field.LOCALCONTACTID + "=" + localContactId, null);
+            return true;
+
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSearchTable.deleteContact() SQLException - "
+                    + "Unable to delete contact search words", e);
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the words of a contact, e.g. after its details have changed.
+     *
+     * @param localContactId The local Contact ID from Contacts table
+     * @param displayName The name shown in the contact list, may be null
+     * @param details All the details of the contact
+     * @param writableDb A writable SQLite database
+     * @return true if successful, false otherwise
+     */
+    public static boolean modifyContact(long localContactId, String displayName,
+            List<ContactDetail> details, SQLiteDatabase writableDb) {
+        return deleteContact(localContactId, writableDb)
+                && addContact(localContactId, displayName, details, writableDb);
+    }
+
+    /**
+     * Returns a query for the local contact IDs which match all the given
+     * search words. A contact matches a search word if one of its words
+     * starts with it. Each contact is returned once with a {@link #MATCH_RANK}
+     * column: contacts found by their name rank before those found by their
+     * nickname, organisation, e-mail address or phone number, and whole
+     * words rank before prefixes.
+     *
+     * @param tokens The search words, as returned by
+     *            {@link SearchTokenizer#tokenize(String)}. Must not be empty.
+     * @param args The list the query arguments are added to.
+     * @return The SQL query.
+     */
+    public static String getMatchQuery(List<String> tokens, List<String> args) {
+        final StringBuilder query = new StringBuilder("SELECT ").append(Field.LOCALCONTACTID)
+                .append(", SUM(TokenRank) AS ").append(MATCH_RANK).append(" FROM (");
+        for (int i = 0; i < tokens.size(); i++) {
+            final String token = tokens.get(i);
+            final String upperBound = SearchTokenizer.getPrefixUpperBound(token);
+            if (i > 0) {
+                query.append(" UNION ALL ");
+            }
+            query.append("SELECT ").append(Field.LOCALCONTACTID).append(", MIN(")
+                    .append(Field.WEIGHT).append(" * 2 + (").append(Field.TOKEN)
+                    .append(" <> ?)) AS TokenRank FROM ").append(TABLE_NAME).append(" WHERE ")
+                    .append(Field.TOKEN).append(" >= ?");
+            args.add(token);
+            args.add(token);
+            if (upperBound != null) {
+                query.append(" AND ").append(Field.TOKEN).append(" < ?");
+                args.add(upperBound);
+            }
+            query.append(" GROUP BY ").append(Field.LOCALCONTACTID);
+        }
+        query.append(") GROUP BY ").append(Field.LOCALCONTACTID).append(" HAVING COUNT(*) = ")
+                .append(tokens.size());
+        return query.toString();
+    }
+
+    /**
+     * Collects the words of a contact with the best weight of each word.
+     *
+     * @param displayName The name shown in the contact list, may be null
+     * @param details The details of the contact
+     * @return The words and their weights
+     */
+    private static Map<String, Integer> getTokens(String displayName,
+            List<ContactDetail> details) {
+        final Map<String, Integer> tokens = new LinkedHashMap<String, Integer>();
+        addTokens(tokens, SearchTokenizer.tokenize(displayName), WEIGHT_NAME);
+        if (details == null) {
+            return tokens;
+        }
+        for (ContactDetail detail : details) {
+            if (detail.key == null) {
+                continue;
+            }
+            switch (detail.key) {
+                case VCARD_NAME:
+                    final VCardHelper.Name name = detail.getName();
+                    if (name != null) {
+                        addTokens(tokens, SearchTokenizer.tokenize(name.toString()),
+                                WEIGHT_NAME);
+                    }
+                    break;
+                case VCARD_NICKNAME:
+                    addTokens(tokens, SearchTokenizer.tokenize(detail.getValue()),
+                            WEIGHT_NICKNAME);
+                    break;
+                case VCARD_ORG:
+                    final VCardHelper.Organisation org = detail.getOrg();
+                    if (org != null) {
+                        addTokens(tokens, SearchTokenizer.tokenize(org.name), WEIGHT_ORG);
+                    }
+                    break;
+                case VCARD_EMAIL:
+                    addTokens(tokens, SearchTokenizer.tokenize(detail.getValue()),
+                            WEIGHT_EMAIL);
+                    break;
+                case VCARD_PHONE:
+                    final String number = detail.getValue();
+                    addTokens(tokens, SearchTokenizer.tokenize(number), WEIGHT_PHONE);
+                    final String digits = SearchTokenizer.getDigits(number);
+                    if (digits.length() > 0) {
+                        addToken(tokens, digits, WEIGHT_PHONE);
+                    }
+                    break;
+                default:
+                    // Not searchable.
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Adds words to the map unless they are already there with a better
+     * weight.
+     */
+    private static void addTokens(Map<String, Integer> tokens, List<String> newTokens,
+            int weight) {
+        for (String token : newTokens) {
+            addToken(tokens, token, weight);
+        }
+    }
+
+    /**
+     * Adds a word to the map unless it is already there with a better weight.
+     */
+    private static void addToken(Map<String, Integer> tokens, String token, int weight) {
+        final Integer current = tokens.get(token);
+        if (current == null || current.intValue() > weight) {
+            tokens.put(token, weight);
+        }
+    }
+}
@@ -32,9 +32,11 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 
 import com.vodafone360.people.Settings;
 import com.vodafone360.people.database.DatabaseHelper;
+import com.vodafone360.people.database.utils.QueryPlanUtils;
 import com.vodafone360.people.utils.CloseUtils;
 import com.vodafone360.people.utils.LogUtils;
 
@@ -51,6 +53,9 @@ public abstract class ContactSourceTable {
      */
     public static final String TABLE_NAME = "ContactSources";
 
+    /** Index on local contact ID, also covering the source. **/
+    private static final String CONTACT_INDEX_NAME = "ContactSourcesContactIndex";
+
     /**
      * Represents the data stored in a record
      */
@@ -109,6 +114,20 @@ public abstract class ContactSourceTable {
         writeableDb.execSQL("CREATE TABLE " + TABLE_NAME + " (" + Field.SOURCEID
                 + " INTEGER PRIMARY KEY AUTOINCREMENT, " + Field.LOCALCONTACTID + " LONG, "
                 + Field.SOURCE + " STRING);");
+        createIndexes(writeableDb);
+    }
+
+    /**
+     * Creates the secondary indexes of the Contact Source Table if they do not
+     * exist yet.
+     * 
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL compilation error occurs
+     */
+    public static void createIndexes(SQLiteDatabase writeableDb) throws SQLException {
+        DatabaseHelper.trace(true, "ContactSourceTable.createIndexes()");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + CONTACT_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.LOCALCONTACTID + ", " + Field.SOURCE + ")");
     }
 
     /**
@@ -157,6 +176,59 @@ public abstract class ContactSourceTable {
         }
     }
 
+    /**
+     * Provides a statement that can be used to add contact sources.
+     * 
+     * @param writableDb A writable SQLite database
+     * @return The SQLite statement
+     * @see #addContactSource(long, String, SQLiteStatement)
+     */
+    public static SQLiteStatement addContactSourceStatement(SQLiteDatabase writableDb) {
+        try {
+            return writableDb.compileStatement("INSERT INTO " + TABLE_NAME + " ("
+                    + Field.LOCALCONTACTID + "," + Field.SOURCE + ") VALUES (?,?)");
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSourceTable.addContactSourceStatement() "
+                    + "Exception - Compile error:\n", e);
+            return null;
+        }
+    }
+
+    /**
+     * Add contact source to contact using a precompiled statement.
+     * 
+     * @param localContactId The local Contact ID from Contacts table
+     * @param source The source string from the server
+     * @param statement The statement returned by
+     *            {@link #addContactSourceStatement(SQLiteDatabase)}
+     * @return true if successful, false otherwise
+     */
+    public static boolean addContactSource(long localContactId, String source,
+            SQLiteStatement statement) {
+        if (statement == null) {
+            return false;
+        }
+        try {
+            statement.bindLong(1, localContactId);
+            if (source == null) {
+                statement.bindNull(2);
+            } else {
+                statement.bindString(2, source);
+            }
+            if (statement.executeInsert() < 0) {
+                LogUtils.logE("ContactSourceTable.addContactSource() "
+                        + "Unable to insert new contact source");
+                return false;
+            }
+            return true;
+
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSourceTable.addContactSource() SQLException - "
+                    + "Unable to insert new contact source", e);
+            return false;
+        }
+    }
+
     /**
      * Removes all sources associated with a specific contact.
      * 
@@ -201,8 +273,8 @@ public abstract class ContactSourceTable {
         Cursor c1 = null;
         sourceList.clear();
         try {
-            c1 = readableDb.rawQuery("SELECT " + Field.SOURCE + " FROM " + TABLE_NAME + " WHERE "
-                    + Field.LOCALCONTACTID + " = ?", args);
+            c1 = QueryPlanUtils.rawQuery(readableDb, "SELECT " + Field.SOURCE
+                    + " FROM " + TABLE_NAME + " WHERE " + Field.LOCALCONTACTID + " = ?", args);
             while (c1.moveToNext()) {
                 if (!c1.isNull(0)) {
                     sourceList.add(c1.getString(0));
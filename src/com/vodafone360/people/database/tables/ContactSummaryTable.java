@@ -26,10 +26,11 @@
 package com.vodafone360.people.database.tables;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import android.content.ContentValues;
@@ -45,6 +46,9 @@ import com.vodafone360.people.Settings;
 import com.vodafone360.people.database.DatabaseHelper;
 import com.vodafone360.people.database.SQLKeys;
 import com.vodafone360.people.database.tables.ContactsTable.ContactIdInfo;
+import com.vodafone360.people.database.utils.PresenceMap;
+import com.vodafone360.people.database.utils.SearchTokenizer;
+import com.vodafone360.people.database.utils.SqlUtils;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.datatypes.ContactSummary;
@@ -81,11 +85,63 @@ public abstract class ContactSummaryTable {
      * SQL localized collate for sorting contact list. 
      */
     private static final String LOCALIZED_COLLATE = " COLLATE LOCALIZED ASC";
+
+    /**
+     * Localized collation used to compare and order the contact list names.
+     */
+    private static final String LOCALIZED = " COLLATE LOCALIZED";
+
+    /**
+     * Index ordering the contact list by name, used by the paged contact list
+     * query.
+     */
+    public static final String SORT_INDEX_NAME = "ContactSummarySortIndex";
+    
+    /**
+     * Alias of the search table matches joined in
+     * {@link #openContactSummaryCursor(Long, CharSequence, Long, SQLiteDatabase)}.
+     */
+    private static final String SEARCH_MATCHES = "SearchMatches";
     
     /**
      * This holds the presence information for each contact in the ContactSummaryTable
      */
-    private static HashMap<Long, Integer> sPresenceMap = new HashMap<Long, Integer>();
+    private static final PresenceMap sPresenceMap = new PresenceMap();
+
+    /**
+     * Name of the temporary table holding the IDs of the online contacts, used
+     * to filter the online group without building the list into the query.
+     */
+    private static final String ONLINE_TABLE_NAME = "OnlineContacts";
+
+    /**
+     * Lock held while the temporary online table is brought up to date.
+     */
+    private static final Object ONLINE_TABLE_LOCK = new Object();
+
+    /**
+     * Version of {@link #sPresenceMap} online set last copied into the
+     * temporary online table.
+     */
+    private static int sOnlineTableVersion = -1;
+
+    /**
+     * Database the temporary online table was last copied into. Temporary
+     * tables only exist for the connection which created them.
+     */
+    private static SQLiteDatabase sOnlineTableDb = null;
+
+    /**
+     * Columns written when a new contact is added, in the order of the
+     * parameters of {@link #addContactStatement(SQLiteDatabase)}.
+     */
+    private static final String[] ADD_CONTACT_COLUMNS = {
+            Field.LOCALCONTACTID.toString(), Field.DISPLAYNAME.toString(),
+            Field.STATUSTEXT.toString(), Field.ALTFIELDTYPE.toString(),
+            Field.ALTDETAILTYPE.toString(), Field.NATIVEID.toString(),
+            Field.FRIENDOFMINE.toString(), Field.PICTURELOADED.toString(),
+            Field.SNS.toString(), Field.SYNCTOPHONE.toString(), Field.SEARCHNAME.toString()
+    };
     
     /**
      * An enumeration of all the field names in the database.
@@ -129,7 +185,8 @@ public abstract class ContactSummaryTable {
     }
 
     /**
-     * Creates ContactSummary Table.
+     * Creates ContactSummary Table, together with the {@link ContactSearchTable}
+     * it maintains.
      * 
      * @param writeableDb A writable SQLite database
      * @throws SQLException If an SQL compilation error occurs
@@ -150,9 +207,65 @@ public abstract class ContactSummaryTable {
                 + " BOOLEAN, "+ Field.SEARCHNAME + " TEXT);");
         
         writeableDb.execSQL("CREATE INDEX " + TABLE_INDEX_NAME + " ON " + TABLE_NAME + " ( " + Field.LOCALCONTACTID + ", " + Field.DISPLAYNAME + " )");
+        createSortIndex(writeableDb);
+        ContactSearchTable.create(writeableDb);
         clearPresenceMap();
     }
 
+    /**
+     * Creates the index ordering the contact list by name. Android rebuilds
+     * indexes on the localized collation when the locale changes.
+     * 
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL error occurs
+     */
+    public static void createSortIndex(SQLiteDatabase writeableDb) throws SQLException {
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + SORT_INDEX_NAME + " ON " + TABLE_NAME
+                + " (" + Field.SEARCHNAME + LOCALIZED + ", " + Field.LOCALCONTACTID + ")");
+    }
+
+    /**
+     * Creates the {@link ContactSearchTable} in a database which does not
+     * have it yet and fills it from the contact summaries and details.
+     * 
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL error occurs
+     */
+    public static void createSearchTable(SQLiteDatabase writeableDb) throws SQLException {
+        DatabaseHelper.trace(true, "ContactSummaryTable.createSearchTable()");
+        ContactSearchTable.create(writeableDb);
+
+        final Map<Long, String> displayNames = new HashMap<Long, String>();
+        Cursor cursor = null;
+        try {
+            cursor = writeableDb.rawQuery("SELECT " + Field.LOCALCONTACTID + ", "
+                    + Field.DISPLAYNAME + " FROM " + TABLE_NAME, null);
+            while (cursor.moveToNext()) {
+                displayNames.put(cursor.getLong(0), cursor.getString(1));
+            }
+        } finally {
+            CloseUtils.close(cursor);
+        }
+
+        final SQLiteStatement statement = ContactSearchTable.addContactStatement(writeableDb);
+        final List<ContactDetail> details = new ArrayList<ContactDetail>();
+        try {
+            writeableDb.beginTransaction();
+            for (Entry<Long, String> entry : displayNames.entrySet()) {
+                details.clear();
+                ContactDetailsTable.fetchContactDetails(entry.getKey(), details, writeableDb);
+                ContactSearchTable.addContact(entry.getKey(), entry.getValue(), details,
+                        statement);
+            }
+            writeableDb.setTransactionSuccessful();
+        } finally {
+            writeableDb.endTransaction();
+            if (statement != null) {
+                statement.close();
+            }
+        }
+    }
+
     /**
      * Fetches the list of table fields that can be injected into an SQL query
      * statement. The {@link #getQueryData(Cursor)} method can be used to obtain
@@ -169,6 +282,23 @@ public abstract class ContactSummaryTable {
                 + Field.ALTDETAILTYPE;
     }
 
+    /**
+     * Returns the names of the columns of {@link #getFullQueryList()}, in the
+     * same order.
+     * 
+     * @return The column names
+     */
+    public static String[] getFullQueryColumnNames() {
+        return new String[] {
+                Field.SUMMARYID.toString(), Field.LOCALCONTACTID.toString(),
+                Field.DISPLAYNAME.toString(), Field.STATUSTEXT.toString(),
+                Field.ONLINESTATUS.toString(), Field.NATIVEID.toString(),
+                Field.FRIENDOFMINE.toString(), Field.PICTURELOADED.toString(),
+                Field.SNS.toString(), Field.SYNCTOPHONE.toString(),
+                Field.ALTFIELDTYPE.toString(), Field.ALTDETAILTYPE.toString()
+        };
+    }
+
     /**
      * Returns a full SQL query statement to fetch the contact summary
      * information. The {@link #getQueryData(Cursor)} method can be used to
@@ -220,6 +350,45 @@ public abstract class ContactSummaryTable {
 
     public static final int ALTDETAIL_TYPE = 11;
 
+    /**
+     * Column index of the sort name, only in cursors returned by
+     * {@link #openContactSummaryPage(Long, CharSequence, Long, ContactListPosition, int, SQLiteDatabase)}.
+     */
+    public static final int SORT_NAME = 12;
+
+    /**
+     * Position of a contact in the order of the paged contact list, the page
+     * following a contact starts after its position.
+     */
+    public static class ContactListPosition {
+
+        /**
+         * Lower case display name the list is sorted by, can be null
+         */
+        public final String searchName;
+
+        /**
+         * Local contact ID, orders contacts with the same name
+         */
+        public final long localContactId;
+
+        /**
+         * Constructor.
+         * 
+         * @param searchName Lower case display name, can be null
+         * @param localContactId Local contact ID
+         */
+        public ContactListPosition(String searchName, long localContactId) {
+            this.searchName = searchName;
+            this.localContactId = localContactId;
+        }
+
+        @Override
+        public String toString() {
+            return searchName + "/" + localContactId;
+        }
+    }
+
     /**
      * Fetches the contact summary data from the current record of the given
      * cursor.
@@ -358,14 +527,7 @@ public abstract class ContactSummaryTable {
             return ServiceStatus.ERROR_NOT_FOUND;
         }
         try {
-            final ContentValues values = new ContentValues();
-            values.put(Field.LOCALCONTACTID.toString(), contact.localContactID);
-            values.put(Field.NATIVEID.toString(), contact.nativeContactId);
-            values.put(Field.FRIENDOFMINE.toString(), contact.friendOfMine);
-            values.put(Field.SYNCTOPHONE.toString(), contact.synctophone);
-
-            ContactDetail altDetail = findAlternativeNameContactDetail(values, contact.details);
-            updateAltValues(values, altDetail);
+            final ContentValues values = fillAddData(contact);
             
             addToPresenceMap(contact.localContactID);
 
@@ -374,6 +536,69 @@ public abstract class ContactSummaryTable {
                         + "Unable to insert new contact summary");
                 return ServiceStatus.ERROR_NOT_FOUND;
             }
+            if (!ContactSearchTable.addContact(contact.localContactID,
+                    values.getAsString(Field.DISPLAYNAME.toString()), contact.details, writableDb)) {
+                return ServiceStatus.ERROR_DATABASE_CORRUPT;
+            }
+            return ServiceStatus.SUCCESS;
+
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSummeryTable.addContact() SQLException - "
+                    + "Unable to insert new contact summary", e);
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        }
+    }
+
+    /**
+     * Provides a statement that can be used to add contact summaries to the
+     * table.
+     * 
+     * @param writableDb Writable SQLite database
+     * @return The SQLite statement
+     * @see #addContact(Contact, SQLiteStatement)
+     */
+    public static SQLiteStatement addContactStatement(SQLiteDatabase writableDb) {
+        try {
+            return SqlUtils.compileInsertStatement(writableDb, TABLE_NAME, ADD_CONTACT_COLUMNS);
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSummeryTable.addContactStatement() "
+                    + "Exception - Compile error:\n", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds contact summary information to the table for a new contact using
+     * precompiled statements. The same fields are stored as by
+     * {@link #addContact(Contact, SQLiteDatabase)}.
+     * 
+     * @param contact The new contact
+     * @param statement The statement returned by
+     *            {@link #addContactStatement(SQLiteDatabase)}
+     * @param searchStatement The statement returned by
+     *            {@link ContactSearchTable#addContactStatement(SQLiteDatabase)}
+     * @return SUCCESS or a suitable error code
+     */
+    public static ServiceStatus addContact(Contact contact, SQLiteStatement statement,
+            SQLiteStatement searchStatement) {
+        if (contact.localContactID == null || statement == null) {
+            LogUtils.logE("ContactSummeryTable.addContact() Invalid parameters");
+            return ServiceStatus.ERROR_NOT_FOUND;
+        }
+        try {
+            final ContentValues values = fillAddData(contact);
+            SqlUtils.bindValues(statement, ADD_CONTACT_COLUMNS, values);
+            if (statement.executeInsert() < 0) {
+                LogUtils.logE("ContactSummeryTable.addContact() "
+                        + "Unable to insert new contact summary");
+                return ServiceStatus.ERROR_NOT_FOUND;
+            }
+            if (!ContactSearchTable.addContact(contact.localContactID,
+                    values.getAsString(Field.DISPLAYNAME.toString()), contact.details,
+                    searchStatement)) {
+                return ServiceStatus.ERROR_DATABASE_CORRUPT;
+            }
+            addToPresenceMap(contact.localContactID);
             return ServiceStatus.SUCCESS;
 
         } catch (SQLException e) {
@@ -383,6 +608,24 @@ public abstract class ContactSummaryTable {
         }
     }
 
+    /**
+     * Builds the summary values stored for a new contact.
+     * 
+     * @param contact The new contact
+     * @return The ContentValues object
+     */
+    private static ContentValues fillAddData(Contact contact) {
+        final ContentValues values = new ContentValues();
+        values.put(Field.LOCALCONTACTID.toString(), contact.localContactID);
+        values.put(Field.NATIVEID.toString(), contact.nativeContactId);
+        values.put(Field.FRIENDOFMINE.toString(), contact.friendOfMine);
+        values.put(Field.SYNCTOPHONE.toString(), contact.synctophone);
+
+        ContactDetail altDetail = findAlternativeNameContactDetail(values, contact.details);
+        updateAltValues(values, altDetail);
+        return values;
+    }
+
     /**
      * This method returns the most preferred contact detail to be displayed
      * instead of the contact name when vcard.name is missing.
@@ -429,6 +672,9 @@ public abstract class ContactSummaryTable {
                         + "Unable to delete contact summary");
                 return ServiceStatus.ERROR_NOT_FOUND;
             }
+            if (!ContactSearchTable.deleteContact(localContactId, writableDb)) {
+                return ServiceStatus.ERROR_DATABASE_CORRUPT;
+            }
             deleteFromPresenceMap(localContactId);
             return ServiceStatus.SUCCESS;
 
@@ -716,9 +962,10 @@ public abstract class ContactSummaryTable {
      * Get a group constraint for SQL query depending on the group type.
      * 
      * @param groupFilterId the group id
+     * @param readableDb Readable SQLite database
      * @return a String containing the corresponding group constraint
      */
-    private static String getGroupConstraint(Long groupFilterId) {
+    private static String getGroupConstraint(Long groupFilterId, SQLiteDatabase readableDb) {
         if ((groupFilterId != null) && (groupFilterId == GroupsTable.GROUP_PHONEBOOK)) {
             return " WHERE " + ContactSummaryTable.Field.SYNCTOPHONE + "=" + "1";
         }
@@ -726,7 +973,7 @@ public abstract class ContactSummaryTable {
             return " WHERE " + ContactSummaryTable.Field.FRIENDOFMINE + "=" + "1";
         }
         if ((groupFilterId != null) && (groupFilterId == GroupsTable.GROUP_ONLINE)) {
-            return " WHERE " + ContactSummaryTable.Field.LOCALCONTACTID + " IN " + getOnlineWhereClause();
+            return " WHERE " + ContactSummaryTable.Field.LOCALCONTACTID + " IN " + getOnlineWhereClause(readableDb);
         }
         return " INNER JOIN " + ContactGroupsTable.TABLE_NAME + " WHERE "
                 + ContactSummaryTable.TABLE_NAME + "." + ContactSummaryTable.Field.LOCALCONTACTID
@@ -754,41 +1001,28 @@ public abstract class ContactSummaryTable {
         }
 
         try {
-            if (meProfileId == null) {
-                // Ensure that when the profile is not available the function doesn't fail
-                // Since "Field <> null" always returns false
-                meProfileId = -1L;
-            }
-            
-            final StringBuilder queryString = new StringBuilder("SELECT ").append(getFullQueryList())
-                                      .append(" FROM ").append(TABLE_NAME);
+            final StringBuilder queryString = new StringBuilder("SELECT ").append(getFullQueryList());
             
-            // Add group constraint if any
-            if (groupFilterId == null) {
-            	queryString.append(" WHERE ");
-            }
-            else {
-                queryString.append(getGroupConstraint(groupFilterId)).append(" AND ");
-            }
+            // Search requests are matched against the words of the contact search table
+            final List<String> searchTokens = (constraint != null)
+                    ? SearchTokenizer.tokenize(constraint.toString()) : new ArrayList<String>();
+            final List<String> args = new ArrayList<String>();
+            appendContactListFilter(queryString, groupFilterId, constraint, searchTokens,
+                    meProfileId, args, readableDb);
             
-            // Check if this is a search request
-            /**
-             * Rather than checking the searchConstraint with the Field.DISPLAYNAME, we are comparing it with Field.SEARCHNAME
-             * so that it can handle the comparison of special characters like à, è, ù, â, ê, î, ô CASE insensitively.
-             */
-            if (constraint != null) {
-            	final String dbSafeConstraint = DatabaseUtils.sqlEscapeString("%" + constraint.toString().toLowerCase() + "%");
-            	queryString.append(Field.SEARCHNAME).append(" LIKE ").append(dbSafeConstraint).append(" AND ");
+            queryString.append(" ORDER BY ");
+            if (searchTokens.size() > 0) {
+                // Best matches first
+                queryString.append(SEARCH_MATCHES).append(".")
+                           .append(ContactSearchTable.MATCH_RANK).append(", ");
             }
-                        
-            queryString.append(TABLE_NAME).append(".")
-                       .append(Field.LOCALCONTACTID).append("!=").append(meProfileId)
-                       .append(" ORDER BY LOWER(").append(Field.DISPLAYNAME).append(")");
+            queryString.append("LOWER(").append(Field.DISPLAYNAME).append(")");
             
             // Sort results using localized collate method
             queryString.append(LOCALIZED_COLLATE);
             
-            return readableDb.rawQuery(queryString.toString(), null);
+            return readableDb.rawQuery(queryString.toString(),
+                    args.toArray(new String[args.size()]));
             
         } 
         catch (SQLException e) {
@@ -798,6 +1032,175 @@ public abstract class ContactSummaryTable {
         }
     }
 
+    /**
+     * Fetches one page of the contact list for a given filter and search
+     * constraint. Contacts are ordered by name and then local contact ID, and
+     * the page starts after the given position, so no page needs the contacts
+     * before it to be read or sorted. Search results are ordered by name as
+     * well, {@link #openContactSummaryCursor(Long, CharSequence, Long, SQLiteDatabase)}
+     * orders them by relevance.
+     * <p>
+     * The cursor holds the {@link #getFullQueryList()} columns followed by
+     * the sort name, {@link #getPosition(Cursor)} returns the position of its
+     * current contact from which the next page can be fetched.
+     * 
+     * @param groupFilterId The server group ID or null to fetch all groups
+     * @param constraint A search string or null to fetch without constraint
+     * @param meProfileId The current me profile Id which should be excluded
+     *            from the returned list.
+     * @param after Position of the last contact of the previous page, or null
+     *            to fetch the first page
+     * @param pageSize Maximum number of contacts returned
+     * @param readableDb Readable SQLite database
+     * @return The cursor or null if an error occurred
+     * @see #getQueryData(Cursor)
+     */
+    public static Cursor openContactSummaryPage(Long groupFilterId, CharSequence constraint,
+            Long meProfileId, ContactListPosition after, int pageSize, SQLiteDatabase readableDb) {
+        if (Settings.ENABLED_DATABASE_TRACE) {
+            DatabaseHelper.trace(false, "ContactSummeryTable.openContactSummaryPage() "
+                    + "groupFilterId[" + groupFilterId + "] constraint[" + constraint + "]"
+                    + " after[" + after + "] pageSize[" + pageSize + "]");
+        }
+
+        try {
+            final StringBuilder queryString = new StringBuilder("SELECT ").append(getFullQueryList())
+                    .append(", ").append(Field.SEARCHNAME);
+            final List<String> searchTokens = (constraint != null)
+                    ? SearchTokenizer.tokenize(constraint.toString()) : new ArrayList<String>();
+            final List<String> args = new ArrayList<String>();
+            appendContactListFilter(queryString, groupFilterId, constraint, searchTokens,
+                    meProfileId, args, readableDb);
+
+            // Keyset condition, the range on the name lets the sort index
+            // start at the position instead of the beginning of the list
+            if (after != null && after.searchName != null) {
+                queryString.append(" AND ").append(Field.SEARCHNAME).append(LOCALIZED).append(">=?")
+                           .append(" AND (").append(Field.SEARCHNAME).append(LOCALIZED).append(">? OR ")
+                           .append(TABLE_NAME).append(".").append(Field.LOCALCONTACTID).append(">?)");
+                args.add(after.searchName);
+                args.add(after.searchName);
+                args.add(String.valueOf(after.localContactId));
+            } else if (after != null) {
+                // Contacts without a name come first
+                queryString.append(" AND (").append(Field.SEARCHNAME).append(" IS NOT NULL OR ")
+                           .append(TABLE_NAME).append(".").append(Field.LOCALCONTACTID).append(">?)");
+                args.add(String.valueOf(after.localContactId));
+            }
+
+            queryString.append(" ORDER BY ").append(Field.SEARCHNAME).append(LOCALIZED).append(", ")
+                       .append(TABLE_NAME).append(".").append(Field.LOCALCONTACTID)
+                       .append(" LIMIT ").append(pageSize);
+
+            return readableDb.rawQuery(queryString.toString(),
+                    args.toArray(new String[args.size()]));
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSummeryTable.openContactSummaryPage() "
+                    + "SQLException - Unable to fetch contact list page", e);
+            return null;
+        }
+    }
+
+    /**
+     * Counts the contacts of the contact list for a given filter and search
+     * constraint, without sorting them.
+     * 
+     * @param groupFilterId The server group ID or null to count all groups
+     * @param constraint A search string or null to count without constraint
+     * @param meProfileId The current me profile Id which is not counted
+     * @param readableDb Readable SQLite database
+     * @return The number of contacts, or -1 if an error occurred
+     */
+    public static int fetchContactListCount(Long groupFilterId, CharSequence constraint,
+            Long meProfileId, SQLiteDatabase readableDb) {
+        Cursor cursor = null;
+        try {
+            final StringBuilder queryString = new StringBuilder("SELECT COUNT(*)");
+            final List<String> searchTokens = (constraint != null)
+                    ? SearchTokenizer.tokenize(constraint.toString()) : new ArrayList<String>();
+            final List<String> args = new ArrayList<String>();
+            appendContactListFilter(queryString, groupFilterId, constraint, searchTokens,
+                    meProfileId, args, readableDb);
+            cursor = readableDb.rawQuery(queryString.toString(),
+                    args.toArray(new String[args.size()]));
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSummeryTable.fetchContactListCount() "
+                    + "SQLException - Unable to count the contact list", e);
+            return -1;
+        } finally {
+            CloseUtils.close(cursor);
+        }
+    }
+
+    /**
+     * Returns the position of the current contact of a cursor returned by
+     * {@link #openContactSummaryPage(Long, CharSequence, Long, ContactListPosition, int, SQLiteDatabase)}.
+     * 
+     * @param c The page cursor, on a contact
+     * @return The position of the contact
+     */
+    public static ContactListPosition getPosition(Cursor c) {
+        return new ContactListPosition(c.getString(SORT_NAME), c.getLong(LOCALCONTACT_ID));
+    }
+
+    /**
+     * Appends the tables and the conditions of the contact list query for a
+     * given filter and search constraint to a query selecting the contact
+     * summary columns, up to and including the exclusion of the me profile.
+     * 
+     * @param queryString The query, ending with its selected columns
+     * @param groupFilterId The server group ID or null to fetch all groups
+     * @param constraint A search string or null to fetch without constraint
+     * @param searchTokens The search words of the constraint
+     * @param meProfileId The current me profile Id, or null
+     * @param args Populated with the arguments of the query
+     * @param readableDb Readable SQLite database
+     */
+    private static void appendContactListFilter(StringBuilder queryString, Long groupFilterId,
+            CharSequence constraint, List<String> searchTokens, Long meProfileId,
+            List<String> args, SQLiteDatabase readableDb) {
+        if (meProfileId == null) {
+            // Ensure that when the profile is not available the function doesn't fail
+            // Since "Field <> null" always returns false
+            meProfileId = -1L;
+        }
+        
+        queryString.append(" FROM ").append(TABLE_NAME);
+        
+        // Search requests are matched against the words of the contact search table
+        if (searchTokens.size() > 0) {
+            queryString.append(" INNER JOIN (")
+                       .append(ContactSearchTable.getMatchQuery(searchTokens, args))
+                       .append(") AS ").append(SEARCH_MATCHES).append(" ON ")
+                       .append(TABLE_NAME).append(".").append(Field.LOCALCONTACTID).append("=")
+                       .append(SEARCH_MATCHES).append(".")
+                       .append(ContactSearchTable.Field.LOCALCONTACTID);
+        }
+        
+        // Add group constraint if any
+        if (groupFilterId == null) {
+        	queryString.append(" WHERE ");
+        }
+        else {
+            queryString.append(getGroupConstraint(groupFilterId, readableDb)).append(" AND ");
+        }
+        
+        // Check if this is a search request
+        /**
+         * Rather than checking the searchConstraint with the Field.DISPLAYNAME, we are comparing it with Field.SEARCHNAME
+         * so that it can handle the comparison of special characters like à, è, ù, â, ê, î, ô CASE insensitively.
+         * Only used for constraints without any letter or digit, which the search table cannot match.
+         */
+        if (constraint != null && searchTokens.size() == 0) {
+        	final String dbSafeConstraint = DatabaseUtils.sqlEscapeString("%" + constraint.toString().toLowerCase() + "%");
+        	queryString.append(Field.SEARCHNAME).append(" LIKE ").append(dbSafeConstraint).append(" AND ");
+        }
+                    
+        queryString.append(TABLE_NAME).append(".")
+                   .append(Field.LOCALCONTACTID).append("!=").append(meProfileId);
+    }
+
     /**
      * Fetches an SQLite statement object which can be used to merge the native
      * information from one contact to another.
@@ -861,7 +1264,7 @@ public abstract class ContactSummaryTable {
      * @param writableDb
      * @return
      */
-    public synchronized static ServiceStatus updateOnlineStatus(User user) {
+    public static ServiceStatus updateOnlineStatus(User user) {
         sPresenceMap.put(user.getLocalContactId(), user.isOnline());
         return ServiceStatus.SUCCESS;
     }
@@ -871,14 +1274,11 @@ public abstract class ContactSummaryTable {
      * @param userIds - ArrayList of integer user ids, if null - all user will be removed from the presence hash.
      * @param writableDb - database.
      */
-    public synchronized static void setUsersOffline(ArrayList<Long> userIds) {
-        Iterator<Long> itr = sPresenceMap.keySet().iterator();
-        Long localId = null;
-        while(itr.hasNext()) {
-            localId = itr.next();
-            if (userIds == null || !userIds.contains(localId)) {
-                itr.remove();
-            }
+    public static void setUsersOffline(ArrayList<Long> userIds) {
+        if (userIds == null) {
+            sPresenceMap.clear();
+        } else {
+            sPresenceMap.retainAll(userIds);
         }
     }
 
@@ -887,12 +1287,10 @@ public abstract class ContactSummaryTable {
      * @param writableDb
      * @return
      */
-    public synchronized static ServiceStatus setOfflineStatus() {
+    public static ServiceStatus setOfflineStatus() {
         // If any contact is not present within the presenceMap, then its status
         // is considered as OFFLINE. This is taken care in the getPresence API.
-        if (sPresenceMap != null) {
-            sPresenceMap.clear();
-        }
+        sPresenceMap.clear();
         return ServiceStatus.SUCCESS;
 
     }
@@ -902,10 +1300,10 @@ public abstract class ContactSummaryTable {
      * @param writableDb
      * @return
      */
-    public synchronized static ServiceStatus setOfflineStatusExceptForMe(long localContactIdOfMe) {
+    public static ServiceStatus setOfflineStatusExceptForMe(long localContactIdOfMe) {
         // If any contact is not present within the presenceMap, then its status
         // is considered as OFFLINE. This is taken care in the getPresence API.
-        if (sPresenceMap != null) {
+        synchronized (sPresenceMap) {
             sPresenceMap.clear();
             sPresenceMap.put(localContactIdOfMe, OnlineStatus.OFFLINE.ordinal());
         }
@@ -969,6 +1367,11 @@ public abstract class ContactSummaryTable {
      * Updates the summary for a contact Replaces the complex logic of updating
      * the summary with a new contactdetail. Instead the method gets a whole
      * contact after it has been modified and builds the summary infos.
+     * <p>
+     * When called inside a transaction of the caller no transaction of its
+     * own is opened, so a failure does not roll back the other changes of
+     * the caller. The caller is then responsible for skipping or removing a
+     * contact whose summary could not be updated.
      * 
      * @param contact A Contact object that has been modified
      * @param writeableDb Writable SQLite database
@@ -999,6 +1402,7 @@ public abstract class ContactSummaryTable {
         }
                 
         // Start updating the table
+        final boolean ownTransaction = !writableDb.inTransaction();
         SQLiteStatement statement = null;
         try {
             final StringBuffer updateQuery = StringBufferPool.getStringBuffer(SQLKeys.UPDATE);
@@ -1006,20 +1410,31 @@ public abstract class ContactSummaryTable {
             append("=?, ").append(Field.SEARCHNAME).append("=?").append(" WHERE ").append(Field.LOCALCONTACTID).append("=?");
             statement = writableDb.compileStatement(StringBufferPool.toStringThenRelease(updateQuery));
             
-            writableDb.beginTransaction();
+            if (ownTransaction) {
+                writableDb.beginTransaction();
+            }
             statement.bindString(1, nameString);
             //need to update the Field.SEARCHNAME too.
             statement.bindString(2, nameString.toLowerCase());
             statement.bindLong(3, contact.localContactID);
             statement.execute();
-            writableDb.setTransactionSuccessful();
+            // the details may have changed too, so all the words are replaced
+            if (!ContactSearchTable.modifyContact(contact.localContactID, nameString,
+                    contact.details, writableDb)) {
+                return null;
+            }
+            if (ownTransaction) {
+                writableDb.setTransactionSuccessful();
+            }
             
         } catch (SQLException e) {
             LogUtils.logE("ContactSummaryTable.updateNameAndStatus() "
                     + "SQLException - Unable to update contact native Ids", e);
             return null;
         } finally {
-            writableDb.endTransaction();
+            if (ownTransaction && writableDb.inTransaction()) {
+                writableDb.endTransaction();
+            }
             if (statement != null) {
                 statement.close();
                 statement = null;
@@ -1029,6 +1444,26 @@ public abstract class ContactSummaryTable {
         return nameString;
     }
     
+    /**
+     * Detail keys the summary is built from: the display name and the words
+     * of the contact search table.
+     */
+    private static final EnumSet<DetailKeys> SUMMARY_DETAIL_KEYS = EnumSet.of(
+            DetailKeys.VCARD_NAME, DetailKeys.VCARD_NICKNAME, DetailKeys.VCARD_ORG,
+            DetailKeys.VCARD_EMAIL, DetailKeys.VCARD_PHONE);
+
+    /**
+     * Returns true if adding, modifying or deleting a detail with the given
+     * key can change the summary written by
+     * {@link #updateContactDisplayName(Contact, SQLiteDatabase, boolean)}.
+     * 
+     * @param key The detail key, null if unknown
+     * @return true if the summary must be updated after a change of the detail
+     */
+    public static boolean isSummaryDetail(DetailKeys key) {
+        return key == null || SUMMARY_DETAIL_KEYS.contains(key);
+    }
+
     /**
      * Utility method to determine if a Detail is of the VCard Name key type
      * @param detail The Contact Detail to check
@@ -1104,9 +1539,8 @@ public abstract class ContactSummaryTable {
      * Clears the Presence Map table. This needs to be called whenever the ContactSummaryTable is cleared 
      * or recreated.
      */
-    private synchronized static void clearPresenceMap() {
+    private static void clearPresenceMap() {
         sPresenceMap.clear();
-        
     }
     
     /**
@@ -1115,16 +1549,11 @@ public abstract class ContactSummaryTable {
      * @param localContactID
      * @return the presence status of the contact
      */
-    public synchronized static OnlineStatus getPresence(Long localContactID) {
-        OnlineStatus onlineStatus = OnlineStatus.OFFLINE;
-        Integer val = sPresenceMap.get(localContactID);
-        if (val != null) {
-            if (val < ContactSummary.OnlineStatus.values().length) {
-                onlineStatus = ContactSummary.OnlineStatus.values()[val];
-            }
+    public static OnlineStatus getPresence(Long localContactID) {
+        if (localContactID == null) {
+            return OnlineStatus.OFFLINE;
         }
-
-        return onlineStatus;
+        return sPresenceMap.get(localContactID);
     }
     
     /**
@@ -1132,9 +1561,8 @@ public abstract class ContactSummaryTable {
      * with the ContactSummaryTable. Hence the default status of OFFLINE is set for every contact added
      * @param localContactID
      */
-    private synchronized static void addToPresenceMap(Long localContactID) {
+    private static void addToPresenceMap(Long localContactID) {
         sPresenceMap.put(localContactID, OnlineStatus.OFFLINE.ordinal());
-        
     }
     
     /**
@@ -1142,41 +1570,117 @@ public abstract class ContactSummaryTable {
      * removes the presence information for the given contact
      * @param localContactId
      */
-    private synchronized static void deleteFromPresenceMap(Long localContactId) {
+    private static void deleteFromPresenceMap(Long localContactId) {
         sPresenceMap.remove(localContactId);
-        
     }
     
     /**
      * This API creates the string to be used in the IN clause when getting the list of all
-     * online contacts.
-     * @return The list of contacts in the proper format for the IN list
-     */
-    private synchronized static String getOnlineWhereClause() {
-        Set<Entry<Long, Integer>> set = sPresenceMap.entrySet();
-        Iterator<Entry<Long, Integer>> i = set.iterator();
-        StringBuilder inClause = new StringBuilder("(");
-        boolean isFirst = true;
-
-        while (i.hasNext()) {
-            Entry<Long, Integer> me = (Entry<Long, Integer>) i.next();
-            Integer value = me.getValue();
-            if (value != null
-                    && (value == OnlineStatus.ONLINE.ordinal() || value == OnlineStatus.IDLE
-                            .ordinal())) {
-                if (isFirst == false) {
-                    inClause.append(',');
-                } else {
-                    isFirst = false;
+     * online contacts. The IDs are copied into a temporary table, only when the online
+     * contacts have changed since the last query, and the clause selects from it. If the
+     * table cannot be used the IDs are listed in the clause instead.
+     * @param readableDb Readable SQLite database
+     * @return The subquery or list of contacts in the proper format for the IN clause
+     */
+    private static String getOnlineWhereClause(SQLiteDatabase readableDb) {
+        try {
+            updateOnlineTable(readableDb);
+            return "(SELECT " + Field.LOCALCONTACTID + " FROM temp." + ONLINE_TABLE_NAME + ")";
+        } catch (SQLException e) {
+            LogUtils.logE("ContactSummaryTable.getOnlineWhereClause() "
+                    + "Unable to update the online table", e);
+        }
+        final long[] onlineIds = sPresenceMap.getOnlineIds();
+        final StringBuilder inClause = new StringBuilder("(");
+        for (int i = 0; i < onlineIds.length; i++) {
+            if (i > 0) {
+                inClause.append(',');
+            }
+            inClause.append(onlineIds[i]);
+        }
+        return inClause.append(')').toString();
+    }
+
+    /**
+     * Copies the online contacts of the presence map into the temporary online
+     * table, unless it already holds them.
+     * 
+     * @param db SQLite database
+     * @throws SQLException If the table could not be created or updated
+     */
+    private static void updateOnlineTable(SQLiteDatabase db) throws SQLException {
+        synchronized (ONLINE_TABLE_LOCK) {
+            final int version = sPresenceMap.getOnlineVersion();
+            if (db == sOnlineTableDb && version == sOnlineTableVersion) {
+                return;
+            }
+            sOnlineTableDb = null;
+            db.execSQL("CREATE TEMP TABLE IF NOT EXISTS " + ONLINE_TABLE_NAME + " ("
+                    + Field.LOCALCONTACTID + " INTEGER PRIMARY KEY)");
+            final long[] onlineIds = sPresenceMap.getOnlineIds();
+            SQLiteStatement insert = null;
+            db.beginTransaction();
+            try {
+                db.execSQL("DELETE FROM temp." + ONLINE_TABLE_NAME);
+                insert = db.compileStatement("INSERT INTO temp." + ONLINE_TABLE_NAME + " ("
+                        + Field.LOCALCONTACTID + ") VALUES (?)");
+                for (long id : onlineIds) {
+                    insert.bindLong(1, id);
+                    insert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                if (insert != null) {
+                    insert.close();
                 }
-                inClause.append(me.getKey());
             }
+            sOnlineTableDb = db;
+            sOnlineTableVersion = version;
+        }
+    }
+
+    /**
+     * Fetches the formattedName of a set of contacts in one query.
+     *
+     * @param localContactIds The primary key IDs of the contacts to find
+     * @param names Populated with the formattedName of each contact found,
+     *            which can be NULL
+     * @param readableDb Readable SQLite database
+     * @return SUCCESS or a suitable error code
+     */
+    public static ServiceStatus fetchFormattedNames(final Collection<Long> localContactIds,
+            final Map<Long, String> names, final SQLiteDatabase readableDb) {
+        if (Settings.ENABLED_DATABASE_TRACE) {
+            DatabaseHelper.trace(false, "ContactSummaryTable.fetchFormattedNames() count["
+                    + localContactIds.size() + "]");
+        }
+        if (localContactIds.isEmpty()) {
+            return ServiceStatus.SUCCESS;
+        }
+        Cursor c1 = null;
+        try {
+            final StringBuilder query = new StringBuilder("SELECT ");
+            query.append(Field.LOCALCONTACTID).append(',').append(Field.DISPLAYNAME)
+                    .append(" FROM ").append(TABLE_NAME).append(" WHERE ")
+                    .append(Field.LOCALCONTACTID).append(" IN ");
+            SqlUtils.appendInList(query, localContactIds);
+
+            c1 = readableDb.rawQuery(query.toString(), null);
+            while (c1.moveToNext()) {
+                final Long localContactId = c1.getLong(0);
+                if (!names.containsKey(localContactId)) {
+                    names.put(localContactId, c1.isNull(1) ? null : c1.getString(1));
+                }
+            }
+            return ServiceStatus.SUCCESS;
+        } catch (SQLiteException e) {
+            LogUtils.logE("ContactSummaryTable.fetchFormattedNames() "
+                    + "Exception - Unable to fetch contact summary", e);
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        } finally {
+            CloseUtils.close(c1);
         }
-        if (isFirst) {
-            return "()";
-        } 
-    	inClause.append(')');
-    	return inClause.toString();
     }
 
     /**
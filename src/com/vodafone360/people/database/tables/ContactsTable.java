@@ -26,14 +26,18 @@
 package com.vodafone360.people.database.tables;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteConstraintException;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteStatement;
 
@@ -42,6 +46,8 @@ import com.vodafone360.people.database.DatabaseHelper;
 import com.vodafone360.people.database.SQLKeys;
 import com.vodafone360.people.database.DatabaseHelper.ServerIdInfo;
 import com.vodafone360.people.database.persistenceHelper.PersistenceHelper;
+import com.vodafone360.people.database.utils.SqlUtils;
+import com.vodafone360.people.database.utils.StatementCache;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.engine.contactsync.ContactChange;
 import com.vodafone360.people.service.ServiceStatus;
@@ -65,6 +71,12 @@ public abstract class ContactsTable {
      */
     public static final String TABLE_NAME = "Contacts";
 
+    /**
+     * Index on the native contact ID, used when importing native contacts,
+     * e.g. to store the native fingerprint of each contact.
+     */
+    private static final String NATIVE_ID_INDEX_NAME = "ContactsNativeIdIndex";
+
     /**
      * Contains ID information used to identify a contact. Also used during sync
      * and merge operations.
@@ -122,7 +134,8 @@ public abstract class ContactsTable {
         GENDER("Gender"),
         UPDATED("Updated"),
         NATIVECONTACTID("NativeContactId"),
-        SYNCTOPHONE("Synctophone");
+        SYNCTOPHONE("Synctophone"),
+        NATIVEFINGERPRINT("NativeFingerprint");
 
         /**
          * The name of the field as it appears in the database
@@ -158,7 +171,35 @@ public abstract class ContactsTable {
                 + " INTEGER PRIMARY KEY AUTOINCREMENT, " + Field.SERVERID + " LONG UNIQUE, "
                 + Field.USERID + " LONG, " + Field.ABOUTME + " TEXT, " + Field.FRIEND
                 + " BOOLEAN, " + Field.GENDER + " TEXT, " + Field.UPDATED + " INTEGER, "
-                + Field.NATIVECONTACTID + " INTEGER, " + Field.SYNCTOPHONE + " BOOLEAN);");
+                + Field.NATIVECONTACTID + " INTEGER, " + Field.SYNCTOPHONE + " BOOLEAN, "
+                + Field.NATIVEFINGERPRINT + " INTEGER);");
+        createIndexes(writeableDb);
+    }
+
+    /**
+     * Creates the secondary indexes of the Contacts Table if they do not
+     * exist yet.
+     * 
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL compilation error occurs
+     */
+    public static void createIndexes(SQLiteDatabase writeableDb) throws SQLException {
+        DatabaseHelper.trace(true, "ContactsTable.createIndexes()");
+        writeableDb.execSQL("CREATE INDEX IF NOT EXISTS " + NATIVE_ID_INDEX_NAME + " ON "
+                + TABLE_NAME + " (" + Field.NATIVECONTACTID + ")");
+    }
+
+    /**
+     * Adds the native fingerprint column to a Contacts Table created by a
+     * previous database version.
+     * 
+     * @param writeableDb A writable SQLite database
+     * @throws SQLException If an SQL compilation error occurs
+     */
+    public static void addNativeFingerprintColumn(SQLiteDatabase writeableDb) throws SQLException {
+        DatabaseHelper.trace(true, "ContactsTable.addNativeFingerprintColumn()");
+        writeableDb.execSQL("ALTER TABLE " + TABLE_NAME + " ADD COLUMN " + Field.NATIVEFINGERPRINT
+                + " INTEGER");
     }
 
     /**
@@ -189,11 +230,12 @@ public abstract class ContactsTable {
     
     /**
      * UPDATE Contacts SET
-     * NativeContactId = ?
+     * NativeContactId = ?, NativeFingerprint = NULL
      * WHERE LocalId = ?
      */
     private static final String UPDATE_NATIVE_ID_BY_LOCAL_CONTACT_ID = "UPDATE "
-        +TABLE_NAME + " SET " + Field.NATIVECONTACTID + "=? WHERE " + Field.LOCALID + "=?";
+        +TABLE_NAME + " SET " + Field.NATIVECONTACTID + "=?," + Field.NATIVEFINGERPRINT
+        + "=NULL WHERE " + Field.LOCALID + "=?";
     
     /**
      * SELECT NativeId
@@ -490,6 +532,72 @@ public abstract class ContactsTable {
         }
     }
 
+    /**
+     * Provides a statement that can be used to add contacts to the table.
+     * 
+     * @param writableDb Writeable SQLite database
+     * @return The SQLite statement
+     * @see #addContact(Contact, SQLiteStatement)
+     */
+    public static SQLiteStatement addContactStatement(SQLiteDatabase writableDb) {
+        try {
+            return writableDb.compileStatement("INSERT INTO " + TABLE_NAME + " ("
+                    + Field.SERVERID + "," + Field.USERID + "," + Field.FRIEND + ","
+                    + Field.GENDER + "," + Field.UPDATED + "," + Field.ABOUTME + ","
+                    + Field.NATIVECONTACTID + "," + Field.SYNCTOPHONE
+                    + ") VALUES (?,?,?,?,?,?,?,?)");
+        } catch (SQLException e) {
+            LogUtils.logE("ContactsTable.addContactStatement() "
+                    + "Exception - Compile error:\n", e);
+            return null;
+        }
+    }
+
+    /**
+     * Adds a contact to the table using a precompiled statement. The same
+     * fields are stored as by {@link #addContact(Contact, SQLiteDatabase)}.
+     * 
+     * @param contact The source Contact object
+     * @param statement The statement returned by
+     *            {@link #addContactStatement(SQLiteDatabase)}
+     * @return SUCCESS or a suitable error code
+     */
+    public static ServiceStatus addContact(Contact contact, SQLiteStatement statement) {
+        if (statement == null) {
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        }
+        try {
+            SqlUtils.bindLong(statement, 1, contact.contactID);
+            SqlUtils.bindLong(statement, 2, contact.userID);
+            SqlUtils.bindBoolean(statement, 3, contact.friendOfMine);
+            SqlUtils.bindLong(statement, 4, contact.gender);
+            SqlUtils.bindLong(statement, 5, contact.updated);
+            SqlUtils.bindString(statement, 6, contact.aboutMe);
+            SqlUtils.bindLong(statement, 7, contact.nativeContactId);
+            SqlUtils.bindBoolean(statement, 8, contact.synctophone);
+            contact.localContactID = statement.executeInsert();
+            if (contact.localContactID < 0) {
+                contact.localContactID = null;
+                return ServiceStatus.ERROR_DATABASE_CORRUPT;
+            }
+            if (Settings.ENABLED_DATABASE_TRACE) {
+                DatabaseHelper.trace(true, "ContactsTable.addContact() localContactID["
+                        + contact.localContactID + "]");
+            }
+            return ServiceStatus.SUCCESS;
+        } catch (SQLException e) {
+            LogUtils.logE("ContactsTable.addContact() SQLException - Unable to add contact", e);
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        }
+    }
+
+    /**
+     * SELECT ServerId FROM Contacts WHERE LocalId=? AND ServerId IS NOT NULL
+     */
+    private static final String QUERY_SERVER_ID_BY_LOCAL_ID = "SELECT " + Field.SERVERID
+            + " FROM " + TABLE_NAME + " WHERE " + Field.LOCALID + "=? AND " + Field.SERVERID
+            + " IS NOT NULL";
+
     /**
      * Finds the server ID associated with a contact
      * 
@@ -500,27 +608,24 @@ public abstract class ContactsTable {
     public static Long fetchServerId(Long localContactId, SQLiteDatabase readableDb) {
         DatabaseHelper.trace(false, "ContactsTable.fetchServerId() localContactId["
                 + localContactId + "]");
-        Long serverId = null;
-        String[] args = {
-            String.format("%d", localContactId)
-        };
-        Cursor c = null;
+        if (localContactId == null) {
+            return null;
+        }
+        SQLiteStatement statement = null;
         try {
-            c = readableDb.rawQuery("SELECT " + Field.SERVERID + " FROM " + TABLE_NAME + " WHERE "
-                    + Field.LOCALID + " = ?", args);
-            if (c.moveToFirst() && !c.isNull(0)) {
-                serverId = c.getLong(0);
-            }
-
-        } catch (SQLiteException e) {
+            statement = StatementCache.acquire(readableDb, QUERY_SERVER_ID_BY_LOCAL_ID);
+            statement.bindLong(1, localContactId);
+            return statement.simpleQueryForLong();
+        } catch (SQLiteDoneException e) {
+            // no contact or no server ID
+            return null;
+        } catch (SQLException e) {
             LogUtils.logE("ContactsTable.fetchServerId() "
                     + "Exception - Unable to validate contact ID", e);
             return null;
         } finally {
-            CloseUtils.close(c);
-            c = null;
+            StatementCache.release(readableDb, QUERY_SERVER_ID_BY_LOCAL_ID, statement);
         }
-        return serverId;
     }
 
     /**
@@ -669,6 +774,43 @@ public abstract class ContactsTable {
         }
     }
 
+    /**
+     * Searches the table for a set of contact server IDs in one query.
+     * 
+     * @param serverIds The server IDs to find
+     * @param localIds Populated with the local contact ID of each server ID
+     *            found
+     * @param readableDb Readable SQLite database
+     * @return SUCCESS or a suitable error code
+     */
+    public static ServiceStatus fetchLocalFromServerIds(Collection<Long> serverIds,
+            Map<Long, Long> localIds, SQLiteDatabase readableDb) {
+        DatabaseHelper.trace(false, "ContactsTable.fetchLocalFromServerIds() count["
+                + serverIds.size() + "]");
+        if (serverIds.isEmpty()) {
+            return ServiceStatus.SUCCESS;
+        }
+        Cursor c = null;
+        try {
+            final StringBuilder query = new StringBuilder("SELECT ");
+            query.append(Field.SERVERID).append(',').append(Field.LOCALID).append(" FROM ")
+                    .append(TABLE_NAME).append(" WHERE ").append(Field.SERVERID).append(" IN ");
+            SqlUtils.appendInList(query, serverIds);
+
+            c = readableDb.rawQuery(query.toString(), null);
+            while (c.moveToNext()) {
+                localIds.put(c.getLong(0), c.getLong(1));
+            }
+            return ServiceStatus.SUCCESS;
+        } catch (SQLException e) {
+            LogUtils.logE("ContactsTable.fetchLocalFromServerIds() "
+                    + "Exception - Unable to fetch local IDs", e);
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        } finally {
+            CloseUtils.close(c);
+        }
+    }
+
     /**
      * Updates the server and user IDs for a list of contacts. Also prepares a
      * list of duplicates which will be filled with the Ids for contacts already
@@ -702,18 +844,16 @@ public abstract class ContactsTable {
                     if (info.serverId != null) {
                         if (info.userId == null) {
                             if (statement2 == null) {
-                                statement2 = writableDb.compileStatement("UPDATE " + TABLE_NAME
-                                        + " SET " + Field.SERVERID + "=? WHERE " + Field.LOCALID
-                                        + "=?");
+                                statement2 = StatementCache.acquire(writableDb,
+                                        UPDATE_SERVER_ID_BY_LOCAL_ID);
                             }
                             statement2.bindLong(1, info.serverId);
                             statement2.bindLong(2, info.localId);
                             statement2.execute();
                         } else {
                             if (statement1 == null) {
-                                statement1 = writableDb.compileStatement("UPDATE " + TABLE_NAME
-                                        + " SET " + Field.SERVERID + "=?," + Field.USERID
-                                        + "=? WHERE " + Field.LOCALID + "=?");
+                                statement1 = StatementCache.acquire(writableDb,
+                                        UPDATE_SERVER_AND_USER_ID_BY_LOCAL_ID);
                             }
                             statement1.bindLong(1, info.serverId);
                             statement1.bindLong(2, info.userId);
@@ -742,18 +882,31 @@ public abstract class ContactsTable {
             writableDb.setTransactionSuccessful();
         } finally {
             writableDb.endTransaction();
-            if(statement1 != null) {
-                statement1.close();
-                statement1 = null;
-            }
-            if(statement2 != null) {
-                statement2.close();
-                statement2 = null;
-            }
+            StatementCache.release(writableDb, UPDATE_SERVER_AND_USER_ID_BY_LOCAL_ID, statement1);
+            StatementCache.release(writableDb, UPDATE_SERVER_ID_BY_LOCAL_ID, statement2);
         }
         return ServiceStatus.SUCCESS;
     }
 
+    /**
+     * UPDATE Contacts SET ServerId=? WHERE LocalId=?
+     */
+    private static final String UPDATE_SERVER_ID_BY_LOCAL_ID = "UPDATE " + TABLE_NAME + " SET "
+            + Field.SERVERID + "=? WHERE " + Field.LOCALID + "=?";
+
+    /**
+     * UPDATE Contacts SET ServerId=?,UserId=? WHERE LocalId=?
+     */
+    private static final String UPDATE_SERVER_AND_USER_ID_BY_LOCAL_ID = "UPDATE " + TABLE_NAME
+            + " SET " + Field.SERVERID + "=?," + Field.USERID + "=? WHERE " + Field.LOCALID + "=?";
+
+    /**
+     * UPDATE Contacts SET NativeContactId=?,NativeFingerprint=NULL WHERE LocalId=?
+     */
+    private static final String UPDATE_NATIVE_CONTACT_ID_BY_LOCAL_ID = "UPDATE " + TABLE_NAME
+            + " SET " + Field.NATIVECONTACTID + "=?," + Field.NATIVEFINGERPRINT + "=NULL WHERE "
+            + Field.LOCALID + "=?";
+
     /**
      * Updates the native IDs for a list of contacts.
      * 
@@ -771,10 +924,10 @@ public abstract class ContactsTable {
             return ServiceStatus.SUCCESS;
         }
 
+        SQLiteStatement statement1 = null;
         try {
             writableDb.beginTransaction();
-            final SQLiteStatement statement1 = writableDb.compileStatement("UPDATE " + TABLE_NAME
-                    + " SET " + Field.NATIVECONTACTID + "=? WHERE " + Field.LOCALID + "=?");
+            statement1 = StatementCache.acquire(writableDb, UPDATE_NATIVE_CONTACT_ID_BY_LOCAL_ID);
             for (int i = 0; i < contactIdList.size(); i++) {
                 final ContactIdInfo info = contactIdList.get(i);
                 try {
@@ -794,6 +947,7 @@ public abstract class ContactsTable {
             writableDb.setTransactionSuccessful();
         } finally {
             writableDb.endTransaction();
+            StatementCache.release(writableDb, UPDATE_NATIVE_CONTACT_ID_BY_LOCAL_ID, statement1);
         }
         return ServiceStatus.SUCCESS;
     }
@@ -1116,6 +1270,99 @@ public abstract class ContactsTable {
         return ids;
     }
 
+    /**
+     * SELECT NativeContactId, NativeFingerprint FROM ContactsTable WHERE
+     * NativeContactId IS NOT NULL AND NativeFingerprint IS NOT NULL
+     */
+    private final static String QUERY_NATIVE_FINGERPRINTS = "SELECT " + Field.NATIVECONTACTID
+            + ", " + Field.NATIVEFINGERPRINT + " FROM " + TABLE_NAME + " WHERE "
+            + Field.NATIVECONTACTID + " IS NOT NULL AND " + Field.NATIVEFINGERPRINT
+            + " IS NOT NULL";
+
+    /**
+     * UPDATE Contacts SET NativeFingerprint=? WHERE NativeContactId=?
+     */
+    private final static String UPDATE_NATIVE_FINGERPRINT_BY_NATIVE_ID = "UPDATE " + TABLE_NAME
+            + " SET " + Field.NATIVEFINGERPRINT + "=? WHERE " + Field.NATIVECONTACTID + "=?";
+
+    /**
+     * Gets the fingerprints of the native contacts as they were last imported.
+     * 
+     * @param readableDb the people database to query from
+     * @return a map of the fingerprints by native contact id, null if the
+     *         query failed
+     */
+    public static HashMap<Long, Long> getNativeFingerprints(SQLiteDatabase readableDb) {
+
+        if (Settings.ENABLED_DATABASE_TRACE) {
+            DatabaseHelper.trace(false, "ContactsTable.getNativeFingerprints()");
+        }
+
+        final HashMap<Long, Long> fingerprints;
+        Cursor cursor = null;
+
+        try {
+
+            final int NATIVE_ID_INDEX = 0;
+            final int FINGERPRINT_INDEX = 1;
+
+            cursor = readableDb.rawQuery(QUERY_NATIVE_FINGERPRINTS, null);
+            fingerprints = new HashMap<Long, Long>(cursor.getCount() * 2);
+
+            while (cursor.moveToNext()) {
+                fingerprints.put(cursor.getLong(NATIVE_ID_INDEX), cursor
+                        .getLong(FINGERPRINT_INDEX));
+            }
+        } catch (SQLException e) {
+
+            return null;
+        } finally {
+
+            CloseUtils.close(cursor);
+            cursor = null;
+        }
+
+        return fingerprints;
+    }
+
+    /**
+     * Sets the fingerprints of native contacts once they have been imported.
+     * 
+     * @param nativeContactIds the native contact ids
+     * @param fingerprints the fingerprint of each native contact
+     * @param writableDb the database where to write
+     * @return true if successful, false otherwise
+     */
+    public static boolean setNativeFingerprints(long[] nativeContactIds, long[] fingerprints,
+            SQLiteDatabase writableDb) {
+
+        if (Settings.ENABLED_DATABASE_TRACE) {
+            DatabaseHelper.trace(true, "ContactsTable.setNativeFingerprints()");
+        }
+
+        SQLiteStatement statement = null;
+        try {
+            writableDb.beginTransaction();
+            statement = StatementCache.acquire(writableDb, UPDATE_NATIVE_FINGERPRINT_BY_NATIVE_ID);
+            for (int i = 0; i < nativeContactIds.length; i++) {
+                statement.bindLong(1, fingerprints[i]);
+                statement.bindLong(2, nativeContactIds[i]);
+                statement.execute();
+            }
+            writableDb.setTransactionSuccessful();
+        } catch (SQLException e) {
+
+            LogUtils.logE("ContactsTable.setNativeFingerprints() SQLException - "
+                    + "Unable to update native fingerprints", e);
+            return false;
+        } finally {
+            writableDb.endTransaction();
+            StatementCache.release(writableDb, UPDATE_NATIVE_FINGERPRINT_BY_NATIVE_ID, statement);
+        }
+
+        return true;
+    }
+
     /**
      * Gets the native related ContentValues for the provided ContactChange.
      * 
@@ -1226,6 +1473,7 @@ public abstract class ContactsTable {
         final ContentValues values = new ContentValues();
 
         values.put(Field.NATIVECONTACTID.toString(), nativeContactId);
+        values.putNull(Field.NATIVEFINGERPRINT.toString());
 
         try {
 
@@ -32,10 +32,12 @@ import android.database.Cursor;
 import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteException;
+import android.database.sqlite.SQLiteStatement;
 import android.text.format.Time;
 
 import com.vodafone360.people.Settings;
 import com.vodafone360.people.database.DatabaseHelper;
+import com.vodafone360.people.database.utils.StatementCache;
 import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.engine.contactsync.ContactChange;
 import com.vodafone360.people.utils.CloseUtils;
@@ -423,21 +425,8 @@ public abstract class NativeChangeLogTable {
     public static boolean isContactChangeInList(Long localContactId, ContactChangeType type,
             SQLiteDatabase readableDb) {
         DatabaseHelper.trace(false, "NativeChangeLogTable.isContactChangeInList()");
-        Cursor c = null;
-        try {
-            c = readableDb.rawQuery("SELECT " + Field.LOCALCONTACTID + " FROM " + TABLE_NAME
-                    + " WHERE " + Field.LOCALCONTACTID + "=" + localContactId + " AND "
-                    + Field.CHANGETYPE + "=" + type.ordinal(), null);
-            if (c.moveToFirst()) {
-                return true;
-            }
-            return false;
-        } catch (SQLException e) {
-            return false;
-        } finally {
-            CloseUtils.close(c);
-            c = null;
-        }
+        return localContactId != null
+                && isChangeInList(QUERY_CHANGE_BY_LOCAL_CONTACT_ID, localContactId, type, readableDb);
     }
     
     /**
@@ -450,21 +439,7 @@ public abstract class NativeChangeLogTable {
     public static boolean isContactChangeInList(long nativeContactId, ContactChangeType type,
             SQLiteDatabase readableDb) {
         DatabaseHelper.trace(false, "NativeChangeLogTable.isContactChangeInList()");
-        Cursor c = null;
-        try {
-            c = readableDb.rawQuery("SELECT " + Field.LOCALCONTACTID + " FROM " + TABLE_NAME
-                    + " WHERE " + Field.NATIVECONTACTID + "=" + nativeContactId + " AND "
-                    + Field.CHANGETYPE + "=" + type.ordinal(), null);
-            if (c.moveToFirst()) {
-                return true;
-            }
-            return false;
-        } catch (SQLException e) {
-            return false;
-        } finally {
-            CloseUtils.close(c);
-            c = null;
-        }
+        return isChangeInList(QUERY_CHANGE_BY_NATIVE_CONTACT_ID, nativeContactId, type, readableDb);
     }
 
     /**
@@ -479,20 +454,49 @@ public abstract class NativeChangeLogTable {
     private static boolean isContactDetailChangeInList(Long localDetailId, ContactChangeType type,
             SQLiteDatabase readableDb) {
         DatabaseHelper.trace(false, "NativeChangeLogTable.isContactDetailChangeInList()");
-        Cursor c = null;
+        return localDetailId != null
+                && isChangeInList(QUERY_CHANGE_BY_LOCAL_DETAIL_ID, localDetailId, type, readableDb);
+    }
+
+    /**
+     * SELECT EXISTS(SELECT 1 FROM NativeChangeLog WHERE LocalContactId=? AND ChangeType=?)
+     */
+    private static final String QUERY_CHANGE_BY_LOCAL_CONTACT_ID = "SELECT EXISTS(SELECT 1 FROM "
+            + TABLE_NAME + " WHERE " + Field.LOCALCONTACTID + "=? AND " + Field.CHANGETYPE + "=?)";
+
+    /**
+     * SELECT EXISTS(SELECT 1 FROM NativeChangeLog WHERE NativeContactId=? AND ChangeType=?)
+     */
+    private static final String QUERY_CHANGE_BY_NATIVE_CONTACT_ID = "SELECT EXISTS(SELECT 1 FROM "
+            + TABLE_NAME + " WHERE " + Field.NATIVECONTACTID + "=? AND " + Field.CHANGETYPE + "=?)";
+
+    /**
+     * SELECT EXISTS(SELECT 1 FROM NativeChangeLog WHERE LocalDetailId=? AND ChangeType=?)
+     */
+    private static final String QUERY_CHANGE_BY_LOCAL_DETAIL_ID = "SELECT EXISTS(SELECT 1 FROM "
+            + TABLE_NAME + " WHERE " + Field.LOCALDETAILID + "=? AND " + Field.CHANGETYPE + "=?)";
+
+    /**
+     * Runs one of the cached queries checking if a change is in the list.
+     * 
+     * @param sql The query, taking an ID and the change type
+     * @param id The ID to bind
+     * @param type The change type
+     * @param readableDb Readable SQLite database
+     * @return true if the change is found, false otherwise
+     */
+    private static boolean isChangeInList(String sql, long id, ContactChangeType type,
+            SQLiteDatabase readableDb) {
+        SQLiteStatement statement = null;
         try {
-            c = readableDb.rawQuery("SELECT " + Field.LOCALDETAILID + " FROM " + TABLE_NAME
-                    + " WHERE " + Field.LOCALDETAILID + "=" + localDetailId + " AND "
-                    + Field.CHANGETYPE + "=" + type.ordinal(), null);
-            if (c.moveToFirst()) {
-                return true;
-            }
-            return false;
+            statement = StatementCache.acquire(readableDb, sql);
+            statement.bindLong(1, id);
+            statement.bindLong(2, type.ordinal());
+            return statement.simpleQueryForLong() != 0;
         } catch (SQLException e) {
             return false;
         } finally {
-            CloseUtils.close(c);
-            c = null;
+            StatementCache.release(readableDb, sql, statement);
         }
     }
 
@@ -506,16 +510,8 @@ public abstract class NativeChangeLogTable {
      */
     public static boolean removeContactChanges(Long localContactId, SQLiteDatabase writableDb) {
         DatabaseHelper.trace(true, "NativeChangeLogTable.removeContactChanges()");
-        try {
-            int result = writableDb.delete(TABLE_NAME, Field.LOCALCONTACTID + "=" + localContactId,
-                    null);
-            if (result <= 0) {
-                return false;
-            }
-        } catch (SQLException e) {
-            return false;
-        }
-        return true;
+        return localContactId != null
+                && deleteById(DELETE_BY_LOCAL_CONTACT_ID, localContactId, writableDb) > 0;
     }
 
     /**
@@ -529,15 +525,50 @@ public abstract class NativeChangeLogTable {
      */
     public static boolean removeContactDetailChanges(Long localDetailId, SQLiteDatabase writableDb) {
         DatabaseHelper.trace(true, "NativeChangeLogTable.removeContactDetailChanges()");
+        // When 0 rows are deleted we still should return success
+        return localDetailId != null
+                && deleteById(DELETE_BY_LOCAL_DETAIL_ID, localDetailId, writableDb) >= 0;
+    }
+
+    /**
+     * DELETE FROM NativeChangeLog WHERE LocalContactId=?
+     */
+    private static final String DELETE_BY_LOCAL_CONTACT_ID = "DELETE FROM " + TABLE_NAME
+            + " WHERE " + Field.LOCALCONTACTID + "=?";
+
+    /**
+     * DELETE FROM NativeChangeLog WHERE LocalDetailId=?
+     */
+    private static final String DELETE_BY_LOCAL_DETAIL_ID = "DELETE FROM " + TABLE_NAME
+            + " WHERE " + Field.LOCALDETAILID + "=?";
+
+    /**
+     * Runs one of the cached DELETE statements taking a single ID.
+     * 
+     * @param sql The DELETE statement
+     * @param id The ID to bind
+     * @param writableDb Writable SQLite database
+     * @return The number of deleted rows, or -1 if an error occurred
+     */
+    private static long deleteById(String sql, long id, SQLiteDatabase writableDb) {
+        SQLiteStatement statement = null;
+        // the transaction keeps other statements from running between the
+        // delete and the query of its number of changes
+        writableDb.beginTransaction();
         try {
-            if (writableDb.delete(TABLE_NAME, Field.LOCALDETAILID + "=" + localDetailId, null) < 0) {
-                return false;
-            }
-            // When 0 rows are deleted we still should return success
+            statement = StatementCache.acquire(writableDb, sql);
+            statement.bindLong(1, id);
+            statement.execute();
+            return StatementCache.changes(writableDb);
         } catch (SQLException e) {
-            return false;
+            return -1;
+        } finally {
+            StatementCache.release(writableDb, sql, statement);
+            // a failed statement has not changed anything, so it must not
+            // roll back a transaction of the caller either
+            writableDb.setTransactionSuccessful();
+            writableDb.endTransaction();
         }
-        return true;
     }
 
     /**
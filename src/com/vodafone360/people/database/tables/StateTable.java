@@ -25,6 +25,9 @@
 
 package com.vodafone360.people.database.tables;
 
+import java.util.EnumSet;
+import java.util.Map;
+
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
@@ -64,6 +67,56 @@ public abstract class StateTable {
      */
     private static final int PRIMARY_STATE_KEY_VALUE = 1;
 
+    /**
+     * Guards updates of the cached state record, see {@link #updateState}.
+     * Never held while the database is accessed, a thread inside a
+     * transaction holds the database lock and may need this one.
+     */
+    private static final Object CACHE_LOCK = new Object();
+
+    /**
+     * Incremented under {@link #CACHE_LOCK} whenever the state record is
+     * written or the cache is dropped, so a record read before the change is
+     * not published over it.
+     */
+    private static long sGeneration = 0;
+
+    /**
+     * In memory copy of the cached fields of the state record, or null if it
+     * has not been loaded yet. Never modified in place, updates replace the
+     * whole object so readers always see a consistent snapshot.
+     */
+    private static volatile CachedState sCache = null;
+
+    /**
+     * Snapshot of the cached fields together with the database they were
+     * read from. A different database instance (e.g. after the database has
+     * been reopened) causes the snapshot to be reloaded.
+     */
+    private static final class CachedState {
+        /**
+         * The database the values belong to.
+         */
+        private final SQLiteDatabase mDb;
+
+        /**
+         * The cached field values, numbers and booleans held as Long.
+         */
+        private final ContentValues mValues;
+
+        /**
+         * Constructor.
+         *
+         * @param db The database the values belong to
+         * @param values The cached field values
+         */
+        private CachedState(final SQLiteDatabase db,
+                final ContentValues values) {
+            mDb = db;
+            mValues = values;
+        }
+    }
+
     /**
      * An enumeration of all the field names in the database.
      */
@@ -217,6 +270,29 @@ public abstract class StateTable {
         }
     }
 
+    /**
+     * Fields of the state record which are held in memory, see
+     * {@link #loadCache(SQLiteDatabase)}. Credentials, the public key and the
+     * persist settings options are always read from the database.
+     */
+    private static final Field[] CACHED_FIELDS = {
+            Field.CONTACTSREVISION, Field.REGISTRATIONCOMPLETE,
+            Field.SESSIONID, Field.SESSIONSECRET, Field.SESSIONUSERID,
+            Field.SESSIONUSERNAME, Field.MYCONTACTID, Field.MYCONTACTCHANGED,
+            Field.LASTSTATUSUPDATE, Field.OLDESTSTATUSUPDATE,
+            Field.LASTPHONECALLUPDATE, Field.OLDESTPHONECALL,
+            Field.LASTSMSUPDATE, Field.OLDESTSMS, Field.LASTMMSUPDATE,
+            Field.OLDESTMMS, Field.MEPROFILEREVISION,
+            Field.MEPROFILEAVATARCHANGED
+    };
+
+    /**
+     * Cached fields stored as TEXT, all other cached fields are numbers or
+     * booleans and are held as Long values.
+     */
+    private static final EnumSet<Field> CACHED_TEXT_FIELDS = EnumSet.of(
+            Field.SESSIONID, Field.SESSIONSECRET, Field.SESSIONUSERNAME);
+
     /**
      * Create Settings Table and add a record with default setting values.
      *
@@ -224,6 +300,7 @@ public abstract class StateTable {
      */
     public static void create(final SQLiteDatabase writableDb) {
         DatabaseHelper.trace(true, "StateTable.create()");
+        clearCache();
         String createSql = "CREATE TABLE " + TABLE_NAME + " ("
                 + Field.STATEID + " INTEGER PRIMARY KEY, "
                 + Field.USERNAME + " TEXT, "
@@ -288,6 +365,219 @@ public abstract class StateTable {
         // Do nothing.
     }
 
+    /**
+     * Reads all cached fields of the state record with a single query. From
+     * then on the fetch methods for these fields are served from memory and
+     * the modify methods write through to both the database and the cache.
+     * Called from DatabaseHelper.start(), otherwise the cache is loaded on
+     * first use.
+     *
+     * @param readableDb Readable SQLite database for fetching the information
+     * @return true if the cache was loaded, false otherwise
+     */
+    public static boolean loadCache(final SQLiteDatabase readableDb) {
+        DatabaseHelper.trace(false, "StateTable.loadCache()");
+        try {
+            return readCache(readableDb) != null;
+        } catch (SQLException e) {
+            LogUtils.logE("StateTable.loadCache() Exception - "
+                    + "Unable to load the state record", e);
+            return false;
+        }
+    }
+
+    /**
+     * Drops the cached state record, e.g. when the database is deleted. The
+     * next fetch reloads it from the database.
+     */
+    public static void clearCache() {
+        synchronized (CACHE_LOCK) {
+            sGeneration++;
+            sCache = null;
+        }
+    }
+
+    /**
+     * Reads the cached fields of the state record from the database and
+     * replaces the current cache with them, unless the record has been
+     * written since the read started or the values may still be rolled back
+     * because the calling thread is inside a transaction.
+     *
+     * @param readableDb Readable SQLite database for fetching the information
+     * @return The cached values or null if the state record does not exist.
+     * @throws SQLException if the query fails
+     */
+    private static ContentValues readCache(final SQLiteDatabase readableDb) {
+        final long generation;
+        synchronized (CACHE_LOCK) {
+            generation = sGeneration;
+        }
+
+        final StringBuilder query = new StringBuilder("SELECT ");
+        for (int i = 0; i < CACHED_FIELDS.length; i++) {
+            if (i > 0) {
+                query.append(',');
+            }
+            query.append(CACHED_FIELDS[i]);
+        }
+        query.append(" FROM ").append(TABLE_NAME).append(" WHERE ")
+                .append(Field.STATEID).append(" = ")
+                .append(PRIMARY_STATE_KEY_VALUE);
+
+        Cursor cursor = null;
+        try {
+            cursor = readableDb.rawQuery(query.toString(), null);
+            if (!cursor.moveToFirst()) {
+                LogUtils.logE("StateTable.readCache() "
+                        + "Unable to find the state record");
+                return null;
+            }
+            final ContentValues values = new ContentValues();
+            for (int i = 0; i < CACHED_FIELDS.length; i++) {
+                final String name = CACHED_FIELDS[i].toString();
+                if (cursor.isNull(i)) {
+                    values.putNull(name);
+                } else if (CACHED_TEXT_FIELDS.contains(CACHED_FIELDS[i])) {
+                    values.put(name, cursor.getString(i));
+                } else {
+                    values.put(name, cursor.getLong(i));
+                }
+            }
+            if (!readableDb.inTransaction()) {
+                synchronized (CACHE_LOCK) {
+                    if (generation == sGeneration) {
+                        sCache = new CachedState(readableDb, values);
+                    }
+                }
+            }
+            return values;
+
+        } finally {
+            CloseUtils.close(cursor);
+        }
+    }
+
+    /**
+     * Returns the cached state record, loading it first if necessary.
+     *
+     * @param readableDb Readable SQLite database for fetching the information
+     * @return The cached values or null if the state record does not exist.
+     * @throws SQLException if the state record could not be loaded
+     */
+    private static ContentValues getCache(final SQLiteDatabase readableDb) {
+        final CachedState cache = sCache;
+        if (cache != null && cache.mDb == readableDb) {
+            return cache.mValues;
+        }
+        return readCache(readableDb);
+    }
+
+    /**
+     * Fetches a numeric or boolean field from the cached state record.
+     *
+     * @param field One of {@link #CACHED_FIELDS}
+     * @param readableDb Readable SQLite database for fetching the information
+     * @return The value or null if it is not set.
+     * @throws SQLException if the state record could not be loaded
+     */
+    private static Long getCachedLong(final Field field,
+            final SQLiteDatabase readableDb) {
+        final ContentValues cache = getCache(readableDb);
+        if (cache == null) {
+            return null;
+        }
+        return cache.getAsLong(field.toString());
+    }
+
+    /**
+     * Fetches a boolean field from the cached state record.
+     *
+     * @param field One of {@link #CACHED_FIELDS}
+     * @param readableDb Readable SQLite database for fetching the information
+     * @return The flag value, false if it is not set.
+     * @throws SQLException if the state record could not be loaded
+     */
+    private static boolean getCachedFlag(final Field field,
+            final SQLiteDatabase readableDb) {
+        final Long value = getCachedLong(field, readableDb);
+        return value != null && value.longValue() != 0;
+    }
+
+    /**
+     * Writes the given values to the state record with a single update and,
+     * if successful, merges them into the cache. Fields which are changed
+     * together should be passed in one go rather than one update each.
+     * When called inside a transaction of the caller the cache is dropped
+     * instead, as the update may still be rolled back; it is reloaded by the
+     * first fetch outside of a transaction.
+     *
+     * @param values The fields to change
+     * @param writableDb Writable SQLite database for storing the information
+     * @return true if the record was updated, false otherwise
+     * @throws SQLException if the database update fails
+     */
+    private static boolean updateState(final ContentValues values,
+            final SQLiteDatabase writableDb) {
+        final boolean inCallerTransaction = writableDb.inTransaction();
+        // the own transaction keeps other writers out until the cache is
+        // merged, so the cache sees the updates in the order of the database
+        writableDb.beginTransaction();
+        try {
+            if (writableDb.update(TABLE_NAME, values, Field.STATEID + " = "
+                    + PRIMARY_STATE_KEY_VALUE, null) <= 0) {
+                return false;
+            }
+            synchronized (CACHE_LOCK) {
+                sGeneration++;
+                if (sCache != null) {
+                    if (inCallerTransaction || sCache.mDb != writableDb) {
+                        sCache = null;
+                    } else {
+                        sCache = new CachedState(writableDb,
+                                mergeCache(sCache.mValues, values));
+                    }
+                }
+            }
+            writableDb.setTransactionSuccessful();
+            return true;
+        } finally {
+            try {
+                writableDb.endTransaction();
+            } catch (RuntimeException e) {
+                clearCache();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Returns a copy of the cached values with the given values merged in.
+     *
+     * @param cache The cached values
+     * @param values The fields written to the database
+     * @return The merged values
+     */
+    private static ContentValues mergeCache(final ContentValues cache,
+            final ContentValues values) {
+        final ContentValues merged = new ContentValues(cache);
+        for (Map.Entry<String, Object> entry : values.valueSet()) {
+            final String name = entry.getKey();
+            final Object value = entry.getValue();
+            if (!merged.containsKey(name)) {
+                continue;
+            } else if (value == null) {
+                merged.putNull(name);
+            } else if (value instanceof Boolean) {
+                merged.put(name, ((Boolean)value) ? 1L : 0L);
+            } else if (value instanceof Number) {
+                merged.put(name, ((Number)value).longValue());
+            } else {
+                merged.put(name, value.toString());
+            }
+        }
+        return merged;
+    }
+
     /**
      * Fetches cached user login credentials (without encryption information).
      *
@@ -539,8 +829,7 @@ public abstract class StateTable {
         }
 
         try {
-            if (writableDb.update(TABLE_NAME, values, Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null) <= 0) {
+            if (!updateState(values, writableDb)) {
                 LogUtils.logE("StateTable.setRegistrationComplete()"
                         + "Unable to modify registration complete flag");
                 return false;
@@ -563,23 +852,12 @@ public abstract class StateTable {
     public static boolean isRegistrationComplete(
             final SQLiteDatabase readableDb) {
         boolean mResult = false;
-        Cursor mCursor = null;
         try {
-            mCursor = readableDb.rawQuery("SELECT "
-                    + Field.REGISTRATIONCOMPLETE + " FROM " + TABLE_NAME
-                    + " WHERE "
-                    + Field.STATEID + " = " + PRIMARY_STATE_KEY_VALUE,
-                    null);
-            if (mCursor.moveToFirst() && !mCursor.isNull(0)) {
-                mResult = (mCursor.getInt(0) != 0);
-            }
+            mResult = getCachedFlag(Field.REGISTRATIONCOMPLETE, readableDb);
         } catch (SQLiteException e) {
             LogUtils.logE("StateTable.isRegistrationComplete() Exception - "
                     + "Unable to select registration complete", e);
             return false;
-        } finally {
-            CloseUtils.close(mCursor);
-            mCursor = null;
         }
         LogUtils.logE("StateTable.isRegistrationComplete() is " + mResult);
         DatabaseHelper.trace(false, "StateTable.isRegistrationComplete() "
@@ -596,26 +874,18 @@ public abstract class StateTable {
     public static Integer fetchContactRevision(
             final SQLiteDatabase readableDb) {
         DatabaseHelper.trace(false, "StateTable.fetchContactRevision()");
-        Integer value = null;
-        Cursor c = null;
         try {
-            c = readableDb.rawQuery("SELECT " + Field.CONTACTSREVISION
-                    + " FROM " + TABLE_NAME
-                    + " WHERE " + Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null);
-            if (!c.moveToFirst() || c.isNull(0)) {
+            final Long value = getCachedLong(Field.CONTACTSREVISION,
+                    readableDb);
+            if (value == null) {
                 return null;
             }
-            value = c.getInt(0);
-            return value;
+            return value.intValue();
 
         } catch (SQLiteException e) {
             LogUtils.logE("StateTable.fetchContactRevision() Exception -"
                     + " Unable to fetch contact revision", e);
             return null;
-        } finally {
-            CloseUtils.close(c);
-            c = null;
         }
     }
 
@@ -636,8 +906,7 @@ public abstract class StateTable {
 
         values.put(Field.CONTACTSREVISION.toString(), revision);
         try {
-            if (writableDb.update(TABLE_NAME, values, Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null) <= 0) {
+            if (!updateState(values, writableDb)) {
                 LogUtils.logE("StateTable.modifyContactRevision() "
                         + "Unable to modify contact revision state");
                 return false;
@@ -739,56 +1008,42 @@ public abstract class StateTable {
      */
     public static AuthSessionHolder fetchSession(
             final SQLiteDatabase readableDb) {
-        Cursor cursor = null;
+        final ContentValues cache;
         try {
-            cursor = readableDb.rawQuery("SELECT "
-                    + Field.SESSIONID + ","
-                    + Field.SESSIONSECRET
-                    + "," + Field.SESSIONUSERID + ","
-                    + Field.SESSIONUSERNAME
-                    + " FROM " + TABLE_NAME + " WHERE "
-                    + Field.STATEID + " = " + PRIMARY_STATE_KEY_VALUE,
-                    null);
-            if (!cursor.moveToFirst()) {
-                LogUtils.logE("StateTable.fetchSession() "
-                        + "Unable to find session info in the database");
-                return null;
-            }
-
-            if (cursor.isNull(cursor.getColumnIndex(Field.SESSIONID.toString()))
-                    || cursor.isNull(cursor.getColumnIndex(
-                            Field.SESSIONSECRET.toString()))
-                    || cursor.isNull(cursor.getColumnIndex(
-                            Field.SESSIONUSERID.toString()))
-                    || cursor.isNull(cursor.getColumnIndex(
-                            Field.SESSIONUSERNAME.toString()))) {
-                LogUtils.logE("StateTable.fetchSession() "
-                        + "Unable to find session data in the database");
-                return null;
-            }
-
-            final AuthSessionHolder session = new AuthSessionHolder();
-            session.sessionID = SqlUtils.setString(cursor,
-                    Field.SESSIONID.toString());
-            session.sessionSecret = SqlUtils.setString(cursor,
-                    Field.SESSIONSECRET.toString());
-            session.userID = SqlUtils.setLong(cursor,
-                    Field.SESSIONUSERID.toString(), -1L);
-            session.userName = SqlUtils.setString(cursor,
-                    Field.SESSIONUSERNAME.toString());
-
-            DatabaseHelper.trace(false, "StateTable.fetchSession() "
-                    + "Fetched session[" + session.sessionID + "]");
-            return session;
-
+            cache = getCache(readableDb);
         } catch (Exception e) {
             LogUtils.logE("StateTable.fetchSession() Exception - "
                     + "Unable to fetch session from database", e);
             return null;
+        }
+        if (cache == null) {
+            LogUtils.logE("StateTable.fetchSession() "
+                    + "Unable to find session info in the database");
+            return null;
+        }
 
-        } finally {
-            CloseUtils.close(cursor);
+        final String sessionId = cache.getAsString(Field.SESSIONID.toString());
+        final String sessionSecret = cache.getAsString(
+                Field.SESSIONSECRET.toString());
+        final Long userId = cache.getAsLong(Field.SESSIONUSERID.toString());
+        final String userName = cache.getAsString(
+                Field.SESSIONUSERNAME.toString());
+        if (sessionId == null || sessionSecret == null || userId == null
+                || userName == null) {
+            LogUtils.logE("StateTable.fetchSession() "
+                    + "Unable to find session data in the database");
+            return null;
         }
+
+        final AuthSessionHolder session = new AuthSessionHolder();
+        session.sessionID = sessionId;
+        session.sessionSecret = sessionSecret;
+        session.userID = userId;
+        session.userName = userName;
+
+        DatabaseHelper.trace(false, "StateTable.fetchSession() "
+                + "Fetched session[" + session.sessionID + "]");
+        return session;
     }
 
     /**
@@ -815,8 +1070,7 @@ public abstract class StateTable {
                 values.putNull(Field.SESSIONUSERID.toString());
                 values.putNull(Field.SESSIONUSERNAME.toString());
             }
-            if (writableDb.update(TABLE_NAME, values, Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null) <= 0) {
+            if (!updateState(values, writableDb)) {
                 LogUtils.logE("StateTable.setSession() Unable to modify "
                         + "fields in settings table, values[" + values + "]");
                 return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -839,20 +1093,8 @@ public abstract class StateTable {
      *         yet been synced from the server.
      */
     public static Long fetchMeProfileId(final SQLiteDatabase readableDb) {
-        Long mValue = null;
-        Cursor mCursor = null;
         try {
-            mCursor = readableDb.rawQuery("SELECT " + Field.MYCONTACTID
-                    + " FROM " + TABLE_NAME + " WHERE "
-                    + Field.STATEID + " = " + PRIMARY_STATE_KEY_VALUE, null);
-            if (!mCursor.moveToFirst() || mCursor.isNull(0)) {
-                DatabaseHelper.trace(false, "StateTable.fetchMeProfileId() "
-                        + "Return NULL");
-                return null;
-            }
-            if (!mCursor.isNull(0)) {
-                mValue = mCursor.getLong(0);
-            }
+            final Long mValue = getCachedLong(Field.MYCONTACTID, readableDb);
             DatabaseHelper.trace(false, "StateTable.fetchMeProfileId() "
                     + "Return[" + mValue + "]");
             return mValue;
@@ -862,9 +1104,6 @@ public abstract class StateTable {
                     "StateTable.fetchMeProfileId() Exception - "
                     + "Unable to fetch my contact ID", e);
             return null;
-        } finally {
-            CloseUtils.close(mCursor);
-            mCursor = null;
         }
     }
 
@@ -888,8 +1127,7 @@ public abstract class StateTable {
 
         values.put(Field.MYCONTACTID.toString(), myContactID);
         try {
-            if (writableDb.update(TABLE_NAME, values, Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null) <= 0) {
+            if (!updateState(values, writableDb)) {
                 LogUtils.logE("StateTable.modifyMeProfileID() "
                         + "Unable to modify my contact ID");
                 return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -912,21 +1150,9 @@ public abstract class StateTable {
      */
     public static boolean fetchMeProfileChangedFlag(
             final SQLiteDatabase readableDb) {
-        boolean mValue = false;
-        Cursor mCursor = null;
         try {
-            mCursor = readableDb.rawQuery("SELECT " + Field.MYCONTACTCHANGED
-                    + " FROM " + TABLE_NAME + " WHERE "
-                    + Field.STATEID + " = " + PRIMARY_STATE_KEY_VALUE,
-                    null);
-            if (!mCursor.moveToFirst() || mCursor.isNull(0)) {
-                DatabaseHelper.trace(false, "StateTable."
-                        + "fetchMeProfileChangedFlag() Return FALSE");
-                return false;
-            }
-            if (!mCursor.isNull(0)) {
-                mValue = (mCursor.getInt(0) != 0);
-            }
+            final boolean mValue = getCachedFlag(Field.MYCONTACTCHANGED,
+                    readableDb);
             DatabaseHelper.trace(false, "StateTable."
                     + "fetchMeProfileChangedFlag() Return[" + mValue + "]");
             return mValue;
@@ -935,10 +1161,6 @@ public abstract class StateTable {
             LogUtils.logE("StateTable.fetchMeProfileChangedFlag() "
                     + "Exception - Unable to fetch my contact changed", e);
             return false;
-
-        } finally {
-            CloseUtils.close(mCursor);
-            mCursor = null;
         }
     }
 
@@ -960,8 +1182,7 @@ public abstract class StateTable {
 
         values.put(Field.MYCONTACTCHANGED.toString(), myContactChanged);
         try {
-            if (writableDb.update(TABLE_NAME, values, Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null) <= 0) {
+            if (!updateState(values, writableDb)) {
                 LogUtils.logE("StateTable.modifyMeProfileChangedFlag() "
                         + "Unable to modify my contact changed flag");
                 return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -984,21 +1205,10 @@ public abstract class StateTable {
      */
     public static long fetchLatestStatusUpdateTime(
             final SQLiteDatabase readableDb) {
-        Cursor cursor = null;
-        long value = 0;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.LASTSTATUSUPDATE
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.STATEID
-                    + " = " + PRIMARY_STATE_KEY_VALUE, null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchLatestStatusUpdate() "
-                    + "Returning value[" + value + "]");
-
-        } finally {
-            CloseUtils.close(cursor);
-        }
+        final Long cached = getCachedLong(Field.LASTSTATUSUPDATE, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchLatestStatusUpdate() "
+                + "Returning value[" + value + "]");
         return value;
     }
 
@@ -1011,22 +1221,9 @@ public abstract class StateTable {
      */
     public static long fetchOldestStatusUpdate(
             final SQLiteDatabase readableDb) {
-        Cursor cursor = null;
-        long value = 0;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.OLDESTSTATUSUPDATE
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.STATEID
-                    + " = " + PRIMARY_STATE_KEY_VALUE,
-                    null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchOldestStatusUpdate()"
-                    + " [" + value + "]");
-        } finally {
-            CloseUtils.close(cursor);
-            cursor = null;
-        }
+        final Long cached = getCachedLong(Field.OLDESTSTATUSUPDATE, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchOldestStatusUpdate() [" + value + "]");
         return value;
     }
 
@@ -1037,22 +1234,11 @@ public abstract class StateTable {
      * @param readableDb Readable SQLite database for fetching the information
      * @return The timestamp in milliseconds
      */
-    public static long fetchOldestSmsTime(final SQLiteDatabase readableDb) {
-        Cursor cursor = null;
-        long value = 0;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.OLDESTSMS + " FROM "
-                    + TABLE_NAME + " WHERE " + Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchOldestSMS [" + value
-                    + "]");
-        } finally {
-            CloseUtils.close(cursor);
-            cursor = null;
-        }
+    public static long fetchOldestSmsTime(
+            final SQLiteDatabase readableDb) {
+        final Long cached = getCachedLong(Field.OLDESTSMS, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchOldestSMS [" + value + "]");
         return value;
     }
 
@@ -1063,22 +1249,11 @@ public abstract class StateTable {
      * @param readableDb Readable SQLite database for fetching the information
      * @return The timestamp in milliseconds
      */
-    public static long fetchOldestMmsTime(final SQLiteDatabase readableDb) {
-        Cursor cursor = null;
-        long value = 0;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.OLDESTMMS + " FROM "
-                    + TABLE_NAME + " WHERE " + Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchOldestMMS() Return ["
-                    + value + "]");
-        } finally {
-            CloseUtils.close(cursor);
-            cursor = null;
-        }
+    public static long fetchOldestMmsTime(
+            final SQLiteDatabase readableDb) {
+        final Long cached = getCachedLong(Field.OLDESTMMS, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchOldestMMS() Return [" + value + "]");
         return value;
     }
 
@@ -1091,22 +1266,10 @@ public abstract class StateTable {
      */
     public static long fetchLatestPhoneCallTime(
             final SQLiteDatabase readableDb) {
-        long value = 0;
-        Cursor cursor = null;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.LASTPHONECALLUPDATE
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchLatestPhoneCallTime()"
-                    + " [" + value + "]");
-            return value;
-
-        } finally {
-            CloseUtils.close(cursor);
-        }
+        final Long cached = getCachedLong(Field.LASTPHONECALLUPDATE, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchLatestPhoneCallTime() [" + value + "]");
+        return value;
     }
 
     /**
@@ -1116,23 +1279,13 @@ public abstract class StateTable {
      * @param readableDb Readable SQLite database for fetching the information
      * @return The timestamp in milliseconds
      */
-    public static long fetchLatestSmsTime(final SQLiteDatabase readableDb) {
-        long value = 0;
-        Cursor cursor = null;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.LASTSMSUPDATE
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchLatestSMSTime() "
-                    + "mValue[" + value + "]");
-            return value;
-        } finally {
-            CloseUtils.close(cursor);
-            cursor = null;
-        }
+    public static long fetchLatestSmsTime(
+            final SQLiteDatabase readableDb) {
+        final Long cached = getCachedLong(Field.LASTSMSUPDATE, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchLatestSMSTime() "
+                + "mValue[" + value + "]");
+        return value;
     }
 
     /**
@@ -1142,22 +1295,12 @@ public abstract class StateTable {
      * @param readableDb Readable SQLite database for fetching the information
      * @return The timestamp in milliseconds
      */
-    public static long fetchLatestMmsTime(final SQLiteDatabase readableDb) {
-        long value = 0;
-        Cursor cursor = null;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.LASTMMSUPDATE
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.STATEID
-                    + " = " + PRIMARY_STATE_KEY_VALUE, null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchLastMMSUpdate() "
-                    + "mValue[" + value + "]");
-        } finally {
-            CloseUtils.close(cursor);
-            cursor = null;
-        }
+    public static long fetchLatestMmsTime(
+            final SQLiteDatabase readableDb) {
+        final Long cached = getCachedLong(Field.LASTMMSUPDATE, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchLastMMSUpdate() "
+                + "mValue[" + value + "]");
         return value;
     }
 
@@ -1170,21 +1313,9 @@ public abstract class StateTable {
      */
     public static long fetchOldestPhoneCallTime(
             final SQLiteDatabase readableDb) {
-        long value = 0;
-        Cursor cursor = null;
-        try {
-            cursor = readableDb.rawQuery("SELECT " + Field.OLDESTPHONECALL
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.STATEID
-                    + " = " + PRIMARY_STATE_KEY_VALUE, null);
-            if (cursor.moveToFirst() && !cursor.isNull(0)) {
-                value = (cursor.getLong(0));
-            }
-            DatabaseHelper.trace(false, "StateTable.fetchOldestPhoneCallTime()"
-                    + " [" + value + "]");
-        } finally {
-            CloseUtils.close(cursor);
-            cursor = null;
-        }
+        final Long cached = getCachedLong(Field.OLDESTPHONECALL, readableDb);
+        final long value = (cached == null) ? 0 : cached.longValue();
+        DatabaseHelper.trace(false, "StateTable.fetchOldestPhoneCallTime() [" + value + "]");
         return value;
     }
 
@@ -1203,7 +1334,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.LASTSTATUSUPDATE.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyLatestStatusUpdate() "
                     + "Unable to modify last status update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1228,7 +1359,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.OLDESTSTATUSUPDATE.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyOldestStatusUpdate() "
                     + "Unable to modify oldest status update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1251,7 +1382,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.OLDESTSMS.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyOldestSMSTime() "
                     + "Unable to modify oldest sms update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1274,7 +1405,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.OLDESTMMS.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyOldestMMSTime() "
                     + "Unable to modify oldest mms update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1298,7 +1429,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.LASTPHONECALLUPDATE.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyLatestPhoneCallTime() "
                     + "Unable to modify last timeline update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1323,7 +1454,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.LASTSMSUPDATE.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyLatestSMSUpdate() "
                     + "Unable to modify last sms update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1347,7 +1478,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.LASTMMSUPDATE.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyLatestMMSTime() "
                     + "Unable to modify last mms update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1371,7 +1502,7 @@ public abstract class StateTable {
         }
         ContentValues values = new ContentValues();
         values.put(Field.OLDESTPHONECALL.toString(), value);
-        if (writableDb.update(TABLE_NAME, values, null, null) <= 0) {
+        if (!updateState(values, writableDb)) {
             LogUtils.logE("StateTable.modifyOldestPhoneCallTime() "
                     + "Unable to modify last timeline update");
             return ServiceStatus.ERROR_DATABASE_CORRUPT;
@@ -1379,6 +1510,94 @@ public abstract class StateTable {
         return ServiceStatus.SUCCESS;
     }
 
+    /**
+     * Modifies the timestamps for the oldest and last phone call timeline
+     * activities that have been synced with a single update.
+     *
+     * @param oldest The new oldest timestamp (in milliseconds), or null to
+     *            keep the current value
+     * @param latest The new last timestamp (in milliseconds), or null to keep
+     *            the current value
+     * @param writableDb Writable SQLite database for storing the information
+     * @return SUCCESS or a suitable error code.
+     */
+    public static ServiceStatus modifyPhoneCallTimes(final Long oldest,
+            final Long latest, final SQLiteDatabase writableDb) {
+        return modifyTimes(Field.OLDESTPHONECALL, oldest,
+                Field.LASTPHONECALLUPDATE, latest, writableDb);
+    }
+
+    /**
+     * Modifies the timestamps for the oldest and last SMS timeline activities
+     * that have been synced with a single update.
+     *
+     * @param oldest The new oldest timestamp (in milliseconds), or null to
+     *            keep the current value
+     * @param latest The new last timestamp (in milliseconds), or null to keep
+     *            the current value
+     * @param writableDb Writable SQLite database for storing the information
+     * @return SUCCESS or a suitable error code.
+     */
+    public static ServiceStatus modifySmsTimes(final Long oldest,
+            final Long latest, final SQLiteDatabase writableDb) {
+        return modifyTimes(Field.OLDESTSMS, oldest, Field.LASTSMSUPDATE,
+                latest, writableDb);
+    }
+
+    /**
+     * Modifies the timestamps for the oldest and last MMS timeline activities
+     * that have been synced with a single update.
+     *
+     * @param oldest The new oldest timestamp (in milliseconds), or null to
+     *            keep the current value
+     * @param latest The new last timestamp (in milliseconds), or null to keep
+     *            the current value
+     * @param writableDb Writable SQLite database for storing the information
+     * @return SUCCESS or a suitable error code.
+     */
+    public static ServiceStatus modifyMmsTimes(final Long oldest,
+            final Long latest, final SQLiteDatabase writableDb) {
+        return modifyTimes(Field.OLDESTMMS, oldest, Field.LASTMMSUPDATE,
+                latest, writableDb);
+    }
+
+    /**
+     * Writes an oldest/last timestamp pair with a single update, skipping
+     * the values which are null.
+     *
+     * @param oldestField Field holding the oldest timestamp
+     * @param oldest The new oldest timestamp or null
+     * @param latestField Field holding the last timestamp
+     * @param latest The new last timestamp or null
+     * @param writableDb Writable SQLite database for storing the information
+     * @return SUCCESS or a suitable error code.
+     */
+    private static ServiceStatus modifyTimes(final Field oldestField,
+            final Long oldest, final Field latestField, final Long latest,
+            final SQLiteDatabase writableDb) {
+        if (Settings.ENABLED_DATABASE_TRACE) {
+            DatabaseHelper.trace(true, "StateTable.modifyTimes() "
+                    + oldestField + "[" + oldest + "] "
+                    + latestField + "[" + latest + "]");
+        }
+        ContentValues values = new ContentValues();
+        if (oldest != null) {
+            values.put(oldestField.toString(), oldest);
+        }
+        if (latest != null) {
+            values.put(latestField.toString(), latest);
+        }
+        if (values.size() == 0) {
+            return ServiceStatus.SUCCESS;
+        }
+        if (!updateState(values, writableDb)) {
+            LogUtils.logE("StateTable.modifyTimes() "
+                    + "Unable to modify timeline timestamps");
+            return ServiceStatus.ERROR_DATABASE_CORRUPT;
+        }
+        return ServiceStatus.SUCCESS;
+    }
+
     /**
      * Fetches the current me profile revision for the server sync.
      *
@@ -1388,22 +1607,14 @@ public abstract class StateTable {
     public static long fetchMeProfileRevision(
             final SQLiteDatabase readableDb) {
         DatabaseHelper.trace(false, "StateTable.fetchMeProfileRevision()");
-        Cursor c = null;
         try {
-            c = readableDb.rawQuery("SELECT " + Field.MEPROFILEREVISION
-                    + " FROM " + TABLE_NAME + " WHERE " + Field.STATEID
-                    + " = " + PRIMARY_STATE_KEY_VALUE, null);
-            if (!c.moveToFirst() || c.isNull(0)) {
-                return 0;
-            }
-            return c.getLong(0);
+            final Long value = getCachedLong(Field.MEPROFILEREVISION,
+                    readableDb);
+            return (value == null) ? 0 : value.longValue();
 
         } catch (SQLiteException e) {
             LogUtils.logE("StateTable.fetchMeProfileRevision Exception - "
                     + "Unable to fetch me profile revision", e);
-        } finally {
-            CloseUtils.close(c);
-            c = null;
         }
         return 0;
     }
@@ -1425,8 +1636,7 @@ public abstract class StateTable {
 
         values.put(Field.MEPROFILEREVISION.toString(), revision);
         try {
-            if (writableDb.update(TABLE_NAME, values, Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE, null) <= 0) {
+            if (!updateState(values, writableDb)) {
                 LogUtils.logE("StateTable.modifyMeProfileRevision() "
                         + "Unable to modify me profile revision state");
                 return false;
@@ -1447,20 +1657,9 @@ public abstract class StateTable {
      */
     public static boolean fetchMeProfileAvatarChangedFlag(
             final SQLiteDatabase readableDb) {
-        boolean mValue = false;
-        Cursor mCursor = null;
         try {
-            mCursor = readableDb.rawQuery("SELECT "
-                    + Field.MEPROFILEAVATARCHANGED + " FROM " + TABLE_NAME
-                    + " WHERE " + Field.STATEID + " = "
-                    + PRIMARY_STATE_KEY_VALUE,
-                    null);
-            if (!mCursor.moveToFirst() || mCursor.isNull(0)) {
-                DatabaseHelper.trace(false, "StateTable."
-                        + "fetchMeProfileAvatarChangedFlag() Return FALSE");
-                return false;
-            }
-            mValue = (mCursor.getInt(0) != 0);
+            final boolean mValue = getCachedFlag(
+                    Field.MEPROFILEAVATARCHANGED, readableDb);
             DatabaseHelper.trace(false, "StateTable."
                     + "fetchMeProfileAvatarChangedFlag() Return[" + mValue
                     + "]");
@@ -1470,9 +1669,6 @@ public abstract class StateTable {
             LogUtils.logE("StateTable.fetchMeProfileAvatarChangedFlag() "
                     + "Exception", e);
             return false;
-        } finally {
-            CloseUtils.close(mCursor);
-            mCursor = null;
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,364 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.database.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.vodafone360.people.Settings;
+import com.vodafone360.people.database.tables.ContactSummaryTable;
+import com.vodafone360.people.database.tables.ContactSummaryTable.ContactListPosition;
+import com.vodafone360.people.utils.CloseUtils;
+
+/**
+ * Cursor over the contact list of one group and search constraint which only
+ * keeps a few pages of it in memory. It has the columns of
+ * {@link ContactSummaryTable#getFullQueryColumnNames()}.
+ * <p>
+ * Pages are read with the keyset paged query of {@link ContactSummaryTable},
+ * which starts each page after the last contact of the previous one, so the
+ * first screen is read without sorting the whole contact list. The start of
+ * every page read so far is remembered, the most recently used pages are
+ * cached and the next page is read ahead when the cursor moves close to the
+ * end of a page.
+ * <p>
+ * The pager does not notice changes of the database, {@link #requery()} must
+ * be called when the contact list has changed.
+ */
+public class ContactListPager extends AbstractCursor {
+
+    /**
+     * Columns of the cursor.
+     */
+    private static final String[] COLUMN_NAMES = ContactSummaryTable.getFullQueryColumnNames();
+
+    /**
+     * Database the pages are read from.
+     */
+    private final SQLiteDatabase mReadableDb;
+
+    /**
+     * The local contact ID of the me profile, which is not listed, or null.
+     */
+    private final Long mMeProfileId;
+
+    /**
+     * The group filter, or null for all contacts.
+     */
+    private final Long mGroupFilterId;
+
+    /**
+     * The search constraint, or null.
+     */
+    private final CharSequence mConstraint;
+
+    /**
+     * Number of contacts per page.
+     */
+    private final int mPageSize;
+
+    /**
+     * Distance from the end of a page at which the next page is read ahead.
+     */
+    private final int mPrefetchDistance;
+
+    /**
+     * Position after which each page read so far starts, null for the first
+     * page.
+     */
+    private final List<ContactListPosition> mPageStarts = new ArrayList<ContactListPosition>();
+
+    /**
+     * Most recently used pages by page number, each row holding the column
+     * values as strings.
+     */
+    private final Map<Integer, List<String[]>> mPages;
+
+    /**
+     * Number of contacts in the list, -1 until known.
+     */
+    private int mCount = -1;
+
+    /**
+     * Number of pages in the list, -1 until the last page has been read.
+     */
+    private int mPageCount = -1;
+
+    /**
+     * The row at the cursor position, null if there is none.
+     */
+    private String[] mRow;
+
+    /**
+     * Constructor, using the page, cache and read ahead sizes of
+     * {@link Settings}.
+     *
+     * @param readableDb Readable SQLite database
+     * @param meProfileId The local contact ID of the me profile, or null
+     * @param groupFilterId The local ID of a group to filter, or null for all
+     *            contacts
+     * @param constraint A search string, or null
+     */
+    public ContactListPager(SQLiteDatabase readableDb, Long meProfileId, Long groupFilterId,
+            CharSequence constraint) {
+        this(readableDb, meProfileId, groupFilterId, constraint, Settings.CONTACT_LIST_PAGE_SIZE,
+                Settings.CONTACT_LIST_CACHED_PAGES, Settings.CONTACT_LIST_PREFETCH_DISTANCE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param readableDb Readable SQLite database
+     * @param meProfileId The local contact ID of the me profile, or null
+     * @param groupFilterId The local ID of a group to filter, or null for all
+     *            contacts
+     * @param constraint A search string, or null
+     * @param pageSize Number of contacts read per page
+     * @param cachedPages Maximum number of pages kept in memory, at least 2
+     *            so a page read ahead does not push out the current one
+     * @param prefetchDistance Distance from the end of a page at which the
+     *            next page is read ahead, 0 to never read ahead
+     */
+    public ContactListPager(SQLiteDatabase readableDb, Long meProfileId, Long groupFilterId,
+            CharSequence constraint, int pageSize, final int cachedPages, int prefetchDistance) {
+        mReadableDb = readableDb;
+        mMeProfileId = meProfileId;
+        mGroupFilterId = groupFilterId;
+        mConstraint = constraint;
+        mPageSize = pageSize;
+        mPrefetchDistance = prefetchDistance;
+        mPages = new LinkedHashMap<Integer, List<String[]>>(cachedPages + 1, 1f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<String[]>> eldest) {
+                return size() > cachedPages;
+            }
+        };
+        mPageStarts.add(null);
+    }
+
+    @Override
+    public int getCount() {
+        if (mCount < 0) {
+            mCount = Math.max(ContactSummaryTable.fetchContactListCount(mGroupFilterId,
+                    mConstraint, mMeProfileId, mReadableDb), 0);
+        }
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return COLUMN_NAMES;
+    }
+
+    /**
+     * Reads the page of the new position if it is not cached, and the
+     * following one if the position is close to the end of its page.
+     */
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        mRow = null;
+        final int pageNumber = newPosition / mPageSize;
+        final int index = newPosition % mPageSize;
+        final List<String[]> page = getPage(pageNumber);
+        if (page == null || index >= page.size()) {
+            return false;
+        }
+        if (mPrefetchDistance > 0 && index >= mPageSize - mPrefetchDistance) {
+            getPage(pageNumber + 1);
+            // keep the current page the most recently used one
+            mPages.get(pageNumber);
+        }
+        mRow = page.get(index);
+        return true;
+    }
+
+    @Override
+    public String getString(int column) {
+        return getRow()[column];
+    }
+
+    @Override
+    public short getShort(int column) {
+        final String value = getRow()[column];
+        return (value != null) ? Short.parseShort(value) : 0;
+    }
+
+    @Override
+    public int getInt(int column) {
+        final String value = getRow()[column];
+        return (value != null) ? Integer.parseInt(value) : 0;
+    }
+
+    @Override
+    public long getLong(int column) {
+        final String value = getRow()[column];
+        return (value != null) ? Long.parseLong(value) : 0L;
+    }
+
+    @Override
+    public float getFloat(int column) {
+        final String value = getRow()[column];
+        return (value != null) ? Float.parseFloat(value) : 0f;
+    }
+
+    @Override
+    public double getDouble(int column) {
+        final String value = getRow()[column];
+        return (value != null) ? Double.parseDouble(value) : 0d;
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return getRow()[column] == null;
+    }
+
+    /**
+     * Forgets all pages and the count, the list is read again from the
+     * database.
+     */
+    @Override
+    public boolean requery() {
+        clearPages();
+        return super.requery();
+    }
+
+    @Override
+    public void deactivate() {
+        clearPages();
+        super.deactivate();
+    }
+
+    @Override
+    public void close() {
+        clearPages();
+        super.close();
+    }
+
+    /**
+     * Forgets all pages and the count.
+     */
+    private void clearPages() {
+        mPages.clear();
+        mPageStarts.clear();
+        mPageStarts.add(null);
+        mCount = -1;
+        mPageCount = -1;
+        mRow = null;
+    }
+
+    /**
+     * Returns the row at the cursor position.
+     *
+     * @return The column values of the row
+     * @throws IllegalStateException Thrown if the cursor is not on a row
+     */
+    private String[] getRow() {
+        if (mRow == null) {
+            throw new IllegalStateException("ContactListPager is not on a row, position["
+                    + getPosition() + "]");
+        }
+        return mRow;
+    }
+
+    /**
+     * Returns a page from the cache or reads it, reading the pages before it
+     * first if their starts are not known yet.
+     *
+     * @param pageNumber The page number, from 0
+     * @return The rows of the page, or null if the page is after the end of
+     *         the list or could not be read
+     */
+    private List<String[]> getPage(int pageNumber) {
+        if (mPageCount >= 0 && pageNumber >= mPageCount) {
+            return null;
+        }
+        List<String[]> page = mPages.get(pageNumber);
+        if (page != null) {
+            return page;
+        }
+        for (int number = Math.min(pageNumber, mPageStarts.size() - 1); number <= pageNumber; number++) {
+            page = readPage(number);
+            if (page == null) {
+                return null;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Reads a page whose start is known and caches it.
+     *
+     * @param pageNumber The page number, its start must be in mPageStarts
+     * @return The rows of the page, or null if the page is after the end of
+     *         the list or could not be read
+     */
+    private List<String[]> readPage(int pageNumber) {
+        if (mPageCount >= 0 && pageNumber >= mPageCount) {
+            return null;
+        }
+        final Cursor cursor = ContactSummaryTable.openContactSummaryPage(mGroupFilterId,
+                mConstraint, mMeProfileId, mPageStarts.get(pageNumber), mPageSize, mReadableDb);
+        if (cursor == null) {
+            return null;
+        }
+        final List<String[]> page = new ArrayList<String[]>(mPageSize);
+        ContactListPosition last = null;
+        try {
+            while (cursor.moveToNext()) {
+                final String[] row = new String[COLUMN_NAMES.length];
+                for (int i = 0; i < row.length; i++) {
+                    row[i] = cursor.getString(i);
+                }
+                page.add(row);
+                if (cursor.isLast()) {
+                    last = ContactSummaryTable.getPosition(cursor);
+                }
+            }
+        } finally {
+            CloseUtils.close(cursor);
+        }
+
+        if (page.size() < mPageSize) {
+            mPageCount = (page.size() > 0) ? pageNumber + 1 : pageNumber;
+            mCount = pageNumber * mPageSize + page.size();
+        } else if (mPageStarts.size() == pageNumber + 1) {
+            mPageStarts.add(last);
+        }
+        if (page.size() == 0) {
+            return null;
+        }
+        mPages.put(pageNumber, page);
+        return page;
+    }
+}
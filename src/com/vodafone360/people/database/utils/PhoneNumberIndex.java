@@ -0,0 +1,200 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.database.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * In-memory index of the phone number details, keyed by the last
+ * {@link #MIN_MATCH} dialable characters of the number in reverse order. Two
+ * numbers which PHONE_NUMBERS_EQUAL() considers equal always share this key,
+ * so the detail IDs found under a key are the only candidates that query needs
+ * to look at.
+ * <p>
+ * The index may hold more IDs than match, for example for details which have
+ * been modified or deleted since, so callers must still compare the numbers.
+ * It is loaded from the database on first use and afterwards only has details
+ * added to it.
+ */
+public class PhoneNumberIndex {
+
+    /**
+     * Number of trailing characters PHONE_NUMBERS_EQUAL() compares at least.
+     */
+    public static final int MIN_MATCH = 7;
+
+    /**
+     * Detail IDs by key.
+     */
+    private final HashMap<String, List<Long>> mIndex = new HashMap<String, List<Long>>();
+
+    /**
+     * True once all phone details of the database have been loaded.
+     */
+    private boolean mLoaded = false;
+
+    /**
+     * Incremented by {@link #clear()} so a load started before does not fill
+     * the index with details of the old database.
+     */
+    private int mGeneration = 0;
+
+    /**
+     * Returns the key for a phone number: its last {@link #MIN_MATCH} dialable
+     * characters in reverse order. Separators like spaces, dashes or brackets
+     * are skipped, and so is everything from the first pause (',') or wait
+     * (';') on, as PHONE_NUMBERS_EQUAL() ignores the digits dialled after it.
+     * 
+     * @param number The phone number.
+     * @return The key, an empty string if the number has no dialable
+     *         characters.
+     */
+    public static String getKey(String number) {
+        if (number == null) {
+            return "";
+        }
+        int end = number.length();
+        for (int i = 0; i < end; i++) {
+            final char c = number.charAt(i);
+            if (c == ',' || c == ';') {
+                end = i;
+                break;
+            }
+        }
+        final StringBuilder key = new StringBuilder(MIN_MATCH);
+        for (int i = end - 1; i >= 0 && key.length() < MIN_MATCH; i--) {
+            final char c = number.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '*' || c == '#' || c == '+' || c == 'N') {
+                key.append(c);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Adds a phone number detail to the index.
+     * 
+     * @param localDetailId The local ID of the detail.
+     * @param number The phone number.
+     */
+    public synchronized void add(long localDetailId, String number) {
+        addToIndex(mIndex, getKey(number), localDetailId);
+    }
+
+    /**
+     * Returns the local IDs of the details which may hold the given number,
+     * loading the index first if needed.
+     * 
+     * @param number The phone number to look for.
+     * @param query Query returning the local detail ID and the number of all
+     *            phone details, used to load the index.
+     * @param args Arguments of the query.
+     * @param readableDb A readable SQLite database object.
+     * @return The candidate detail IDs, empty if there are none.
+     */
+    public List<Long> find(String number, String query, String[] args,
+            SQLiteDatabase readableDb) {
+        final String key = getKey(number);
+        final int generation;
+        synchronized (this) {
+            if (mLoaded) {
+                return getFromIndex(key);
+            }
+            generation = mGeneration;
+        }
+
+        // load without holding the lock, writers add to the index meanwhile
+        final HashMap<String, List<Long>> loaded = new HashMap<String, List<Long>>();
+        Cursor cursor = null;
+        try {
+            cursor = readableDb.rawQuery(query, args);
+            while (cursor.moveToNext()) {
+                addToIndex(loaded, getKey(cursor.getString(1)), cursor.getLong(0));
+            }
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+
+        synchronized (this) {
+            if (generation == mGeneration && !mLoaded) {
+                for (String loadedKey : loaded.keySet()) {
+                    for (Long localDetailId : loaded.get(loadedKey)) {
+                        addToIndex(mIndex, loadedKey, localDetailId);
+                    }
+                }
+                mLoaded = true;
+                return getFromIndex(key);
+            }
+        }
+        final List<Long> result = loaded.get(key);
+        return (result != null) ? result : new ArrayList<Long>();
+    }
+
+    /**
+     * Empties the index, for example when the database is deleted. It is
+     * loaded again on the next lookup.
+     */
+    public synchronized void clear() {
+        mIndex.clear();
+        mLoaded = false;
+        mGeneration++;
+    }
+
+    /**
+     * Returns a copy of the IDs stored under a key. Must be called holding
+     * the lock.
+     */
+    private List<Long> getFromIndex(String key) {
+        final List<Long> localDetailIds = mIndex.get(key);
+        if (localDetailIds == null) {
+            return new ArrayList<Long>();
+        }
+        return new ArrayList<Long>(localDetailIds);
+    }
+
+    /**
+     * Adds an ID under a key unless it is already there.
+     */
+    private static void addToIndex(HashMap<String, List<Long>> index, String key,
+            long localDetailId) {
+        List<Long> localDetailIds = index.get(key);
+        if (localDetailIds == null) {
+            localDetailIds = new ArrayList<Long>(1);
+            index.put(key, localDetailIds);
+        }
+        final Long id = Long.valueOf(localDetailId);
+        if (!localDetailIds.contains(id)) {
+            localDetailIds.add(id);
+        }
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.database.utils;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.vodafone360.people.datatypes.ContactSummary.OnlineStatus;
+
+/**
+ * Holds the aggregated presence of each contact in the contact list, keyed by
+ * local contact ID, together with the set of contacts which are online (or
+ * idle). Both are open addressing tables on primitive arrays so no object is
+ * created per contact.
+ * <p>
+ * Writers are serialised on the map. Readers do not lock: a table is only
+ * replaced as a whole when it grows, and a reader racing with a write sees
+ * either the old or the new status of that contact.
+ * <p>
+ * Long.MIN_VALUE and Long.MIN_VALUE + 1 are used internally and cannot be
+ * stored; local contact IDs are always positive.
+ */
+public class PresenceMap {
+
+    /**
+     * Key of a slot which has never been used.
+     */
+    private static final long EMPTY = Long.MIN_VALUE;
+
+    /**
+     * Key of a slot whose entry has been removed. Lookups continue past it.
+     */
+    private static final long REMOVED = Long.MIN_VALUE + 1;
+
+    /**
+     * Initial number of slots of a table, must be a power of two.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Status returned for contacts which are not in the map.
+     */
+    private static final byte OFFLINE = (byte)OnlineStatus.OFFLINE.ordinal();
+
+    /**
+     * An open addressing table with linear probing. Only modified by writers
+     * holding the lock of the map.
+     */
+    private static final class Table {
+        /** Local contact IDs, or EMPTY/REMOVED. **/
+        private final long[] mKeys;
+
+        /** Presence status ordinal of the contact in the same slot. **/
+        private final byte[] mValues;
+
+        /** Number of entries. **/
+        private int mSize = 0;
+
+        /** Number of slots which are not EMPTY (entries and removed ones). **/
+        private int mUsed = 0;
+
+        private Table(int capacity) {
+            mKeys = new long[capacity];
+            mValues = new byte[capacity];
+            for (int i = 0; i < capacity; i++) {
+                mKeys[i] = EMPTY;
+            }
+        }
+
+        /**
+         * Returns the slot holding a key, or -1 if the key is not in the table.
+         */
+        private int indexOf(long key) {
+            final int mask = mKeys.length - 1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                final long current = mKeys[i];
+                if (current == key) {
+                    return i;
+                } else if (current == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        /**
+         * Returns true if one more slot can be used without the table getting
+         * too full for lookups to stay short.
+         */
+        private boolean hasRoom() {
+            return (mUsed + 1) * 4 <= mKeys.length * 3;
+        }
+
+        /**
+         * Stores a value, the table must have room for a new key.
+         */
+        private void put(long key, byte value) {
+            final int mask = mKeys.length - 1;
+            int free = -1;
+            for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+                final long current = mKeys[i];
+                if (current == key) {
+                    mValues[i] = value;
+                    return;
+                } else if (current == REMOVED && free < 0) {
+                    free = i;
+                } else if (current == EMPTY) {
+                    if (free < 0) {
+                        free = i;
+                        mUsed++;
+                    }
+                    break;
+                }
+            }
+            // the value is written first so that readers never see the key
+            // with the value of a previously removed entry
+            mValues[free] = value;
+            mKeys[free] = key;
+            mSize++;
+        }
+
+        /**
+         * Removes a key, returns true if it was in the table.
+         */
+        private boolean remove(long key) {
+            final int index = indexOf(key);
+            if (index < 0) {
+                return false;
+            }
+            mKeys[index] = REMOVED;
+            mValues[index] = OFFLINE;
+            mSize--;
+            return true;
+        }
+    }
+
+    /**
+     * Presence status of each contact.
+     */
+    private volatile Table mStatus = new Table(MIN_CAPACITY);
+
+    /**
+     * Contacts which are online or idle, the values are unused.
+     */
+    private volatile Table mOnline = new Table(MIN_CAPACITY);
+
+    /**
+     * Incremented each time the set of online contacts changes.
+     */
+    private volatile int mOnlineVersion = 0;
+
+    /**
+     * Returns the presence status of a contact.
+     *
+     * @param localContactId The local contact ID.
+     * @return The status, OFFLINE if the contact is not in the map.
+     */
+    public OnlineStatus get(long localContactId) {
+        final Table table = mStatus;
+        final int index = table.indexOf(localContactId);
+        final int status = (index < 0) ? OFFLINE : table.mValues[index];
+        final OnlineStatus[] values = OnlineStatus.values();
+        return (status >= 0 && status < values.length) ? values[status] : OnlineStatus.OFFLINE;
+    }
+
+    /**
+     * Returns true if a contact is online or idle.
+     *
+     * @param localContactId The local contact ID.
+     * @return true if the contact is in the online set.
+     */
+    public boolean isOnline(long localContactId) {
+        return mOnline.indexOf(localContactId) >= 0;
+    }
+
+    /**
+     * Stores the presence status of a contact.
+     *
+     * @param localContactId The local contact ID.
+     * @param status The ordinal of the {@link OnlineStatus}.
+     */
+    public synchronized void put(long localContactId, int status) {
+        if (localContactId == EMPTY || localContactId == REMOVED) {
+            return;
+        }
+        mStatus = put(mStatus, localContactId, (byte)status);
+        if (status == OnlineStatus.ONLINE.ordinal() || status == OnlineStatus.IDLE.ordinal()) {
+            if (mOnline.indexOf(localContactId) < 0) {
+                mOnline = put(mOnline, localContactId, (byte)status);
+                mOnlineVersion++;
+            }
+        } else if (mOnline.remove(localContactId)) {
+            mOnlineVersion++;
+        }
+    }
+
+    /**
+     * Removes a contact from the map, it is considered offline afterwards.
+     *
+     * @param localContactId The local contact ID.
+     */
+    public synchronized void remove(long localContactId) {
+        mStatus.remove(localContactId);
+        if (mOnline.remove(localContactId)) {
+            mOnlineVersion++;
+        }
+    }
+
+    /**
+     * Removes all contacts except the given ones from the map.
+     *
+     * @param localContactIds The contacts to keep.
+     */
+    public synchronized void retainAll(Collection<Long> localContactIds) {
+        final Set<Long> keep = new HashSet<Long>(localContactIds);
+        final long[] keys = mStatus.mKeys;
+        for (int i = 0; i < keys.length; i++) {
+            final long key = keys[i];
+            if (key != EMPTY && key != REMOVED && !keep.contains(key)) {
+                remove(key);
+            }
+        }
+    }
+
+    /**
+     * Removes all contacts from the map.
+     */
+    public synchronized void clear() {
+        mStatus = new Table(MIN_CAPACITY);
+        if (mOnline.mSize > 0) {
+            mOnlineVersion++;
+        }
+        mOnline = new Table(MIN_CAPACITY);
+    }
+
+    /**
+     * Returns the local contact IDs of all online or idle contacts.
+     *
+     * @return A new array, in no particular order.
+     */
+    public synchronized long[] getOnlineIds() {
+        final Table table = mOnline;
+        final long[] ids = new long[table.mSize];
+        int count = 0;
+        for (int i = 0; i < table.mKeys.length; i++) {
+            final long key = table.mKeys[i];
+            if (key != EMPTY && key != REMOVED) {
+                ids[count++] = key;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Returns a number which changes whenever the set of online contacts
+     * changes, so that copies of the set know when they are out of date.
+     *
+     * @return The version of the online set.
+     */
+    public int getOnlineVersion() {
+        return mOnlineVersion;
+    }
+
+    /**
+     * Stores a value in a table, first copying it into a bigger one if it is
+     * too full. Must be called holding the lock.
+     *
+     * @return The table now holding the value.
+     */
+    private static Table put(Table table, long key, byte value) {
+        if (!table.hasRoom() && table.indexOf(key) < 0) {
+            int capacity = table.mKeys.length;
+            // grow unless the table is mostly filled with removed slots
+            if ((table.mSize + 1) * 2 > capacity) {
+                capacity *= 2;
+            }
+            final Table bigger = new Table(capacity);
+            for (int i = 0; i < table.mKeys.length; i++) {
+                final long current = table.mKeys[i];
+                if (current != EMPTY && current != REMOVED) {
+                    bigger.put(current, table.mValues[i]);
+                }
+            }
+            bigger.put(key, value);
+            return bigger;
+        }
+        table.put(key, value);
+        return table;
+    }
+
+    /**
+     * Spreads the bits of a local contact ID, which are mostly consecutive.
+     */
+    private static int hash(long key) {
+        int h = (int)(key ^ (key >>> 32));
+        h ^= (h >>> 20) ^ (h >>> 12);
+        return h ^ (h >>> 7) ^ (h >>> 4);
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.database.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.database.Cursor;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+
+import com.vodafone360.people.Settings;
+import com.vodafone360.people.utils.CloseUtils;
+import com.vodafone360.people.utils.LogUtils;
+
+/**
+ * Debug helper which runs EXPLAIN QUERY PLAN on queries issued by the
+ * database tables and records every statement that is resolved with a full
+ * table scan. Only active when {@link Settings#ENABLED_DATABASE_QUERY_PLAN}
+ * is set or the audit has been switched on with {@link #setEnabled(boolean)},
+ * e.g. by a test, otherwise the query is passed straight through to SQLite.
+ */
+public final class QueryPlanUtils {
+
+    /** Prefix which asks SQLite to describe a statement instead of running it. **/
+    private static final String EXPLAIN_QUERY_PLAN = "EXPLAIN QUERY PLAN ";
+
+    /** Name of the column holding the plan description. **/
+    private static final String DETAIL_COLUMN = "detail";
+
+    /** Statements found to scan a whole table since the last reset. **/
+    private static final List<String> sFullScans = new ArrayList<String>();
+
+    /** True if the query plans are checked. **/
+    private static volatile boolean sEnabled = Settings.ENABLED_DATABASE_QUERY_PLAN;
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private QueryPlanUtils() {
+        // Do nothing.
+    }
+
+    /**
+     * Runs a raw query, checking its query plan first when the query plan
+     * audit is enabled.
+     * 
+     * @param db The database to run the query on
+     * @param sql The SQL query
+     * @param args The query arguments, can be null
+     * @return The cursor returned by SQLite
+     */
+    public static Cursor rawQuery(SQLiteDatabase db, String sql, String[] args) {
+        if (sEnabled) {
+            checkQueryPlan(db, sql, args);
+        }
+        return db.rawQuery(sql, args);
+    }
+
+    /**
+     * Switches the query plan audit on or off at runtime.
+     * 
+     * @param enabled true to check the plan of every query passed to
+     *            {@link #rawQuery(SQLiteDatabase, String, String[])}, false
+     *            to fall back to {@link Settings#ENABLED_DATABASE_QUERY_PLAN}
+     */
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled || Settings.ENABLED_DATABASE_QUERY_PLAN;
+    }
+
+    /**
+     * Explains the given query and records it if SQLite has to scan a whole
+     * table to resolve it.
+     * 
+     * @param db The database to explain the query on
+     * @param sql The SQL query
+     * @param args The query arguments, can be null
+     * @return true if the query needs a full table scan, false otherwise
+     */
+    public static boolean checkQueryPlan(SQLiteDatabase db, String sql, String[] args) {
+        boolean fullScan = false;
+        Cursor cursor = null;
+        try {
+            cursor = db.rawQuery(EXPLAIN_QUERY_PLAN + sql, args);
+            final int detailIndex = cursor.getColumnIndex(DETAIL_COLUMN);
+            while (detailIndex >= 0 && cursor.moveToNext()) {
+                final String detail = cursor.getString(detailIndex);
+                if (isFullScan(detail)) {
+                    LogUtils.logW("QueryPlanUtils.checkQueryPlan() Full scan [" + detail
+                            + "] for query [" + sql + "]");
+                    fullScan = true;
+                }
+            }
+        } catch (SQLException e) {
+            LogUtils.logE("QueryPlanUtils.checkQueryPlan() Unable to explain query [" + sql
+                    + "]", e);
+        } finally {
+            CloseUtils.close(cursor);
+        }
+        if (fullScan) {
+            synchronized (sFullScans) {
+                sFullScans.add(sql);
+            }
+        }
+        return fullScan;
+    }
+
+    /**
+     * Checks whether a line of EXPLAIN QUERY PLAN output describes a full
+     * table scan. Handles both the old ("TABLE x") and the newer
+     * ("SCAN TABLE x", "SCAN x") output formats.
+     * 
+     * @param detail The plan detail
+     * @return true if no index or primary key is used to visit the table
+     */
+    public static boolean isFullScan(String detail) {
+        if (detail == null) {
+            return false;
+        }
+        final String plan = detail.toUpperCase();
+        if (!plan.startsWith("SCAN ") && !plan.startsWith("TABLE ")) {
+            return false;
+        }
+        return plan.indexOf(" INDEX") < 0 && plan.indexOf("PRIMARY KEY") < 0
+                && plan.indexOf("ROWID") < 0;
+    }
+
+    /**
+     * Returns the statements found to need a full table scan since the last
+     * call to {@link #clearFullScans()}.
+     * 
+     * @return A copy of the list of statements
+     */
+    public static List<String> getFullScans() {
+        synchronized (sFullScans) {
+            return new ArrayList<String>(sFullScans);
+        }
+    }
+
+    /**
+     * Forgets all the statements recorded so far.
+     */
+    public static void clearFullScans() {
+        synchronized (sFullScans) {
+            sFullScans.clear();
+        }
+    }
+}
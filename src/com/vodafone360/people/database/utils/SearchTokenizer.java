@@ -0,0 +1,117 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.database.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits contact names, organisations, e-mail addresses and phone numbers into
+ * the lower case words stored in the contact search index, and turns search
+ * strings typed by the user into the same words so they can be matched as
+ * prefixes.
+ */
+public final class SearchTokenizer {
+
+    /**
+     * Private constructor to prevent instantiation.
+     */
+    private SearchTokenizer() {
+        // Do nothing.
+    }
+
+    /**
+     * Returns the words of a text: runs of letters and digits, in lower case.
+     * Everything else (spaces, punctuation, '@', '+', brackets...) separates
+     * words. Words which appear several times are only returned once.
+     *
+     * @param text The text to split, may be null.
+     * @return The words in the order they appear, empty if there are none.
+     */
+    public static List<String> tokenize(String text) {
+        final List<String> tokens = new ArrayList<String>();
+        if (text == null) {
+            return tokens;
+        }
+        final String lower = text.toLowerCase();
+        final int length = lower.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && Character.isLetterOrDigit(lower.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                final String token = lower.substring(start, i);
+                if (!tokens.contains(token)) {
+                    tokens.add(token);
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns all the digits of a phone number as one word, so that a number
+     * can be found by typing it without the separators it is stored with.
+     *
+     * @param number The phone number, may be null.
+     * @return The digits, an empty string if there are none.
+     */
+    public static String getDigits(String number) {
+        if (number == null) {
+            return "";
+        }
+        final StringBuilder digits = new StringBuilder(number.length());
+        for (int i = 0; i < number.length(); i++) {
+            final char c = number.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.toString();
+    }
+
+    /**
+     * Returns the smallest string greater than all strings starting with the
+     * given prefix, so that a prefix match can be written as the index
+     * friendly range "token >= prefix AND token < upper bound".
+     *
+     * @param prefix The prefix, not empty.
+     * @return The upper bound, or null if there is none (the prefix only
+     *         consists of the highest character).
+     */
+    public static String getPrefixUpperBound(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            final char c = prefix.charAt(i);
+            if (c != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char)(c + 1);
+            }
+        }
+        return null;
+    }
+}
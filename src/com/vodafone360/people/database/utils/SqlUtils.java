@@ -25,7 +25,12 @@
 
 package com.vodafone360.people.database.utils;
 
+import java.util.Collection;
+
+import android.content.ContentValues;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import com.vodafone360.people.database.tables.ActivitiesTable.TimelineSummaryItem;
 import com.vodafone360.people.datatypes.ActivityItem;
@@ -173,4 +178,133 @@ public final class SqlUtils {
             return null;
         }
     }
+
+    /***
+     * Binds a number to a compiled statement, or NULL if the value is not
+     * present.
+     *
+     * @param statement Compiled SQLite statement.
+     * @param index 1-based index of the parameter to bind.
+     * @param value Value or NULL.
+     */
+    public static void bindLong(final SQLiteStatement statement, final int index,
+            final Number value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, value.longValue());
+        }
+    }
+
+    /***
+     * Binds a boolean to a compiled statement as 1 or 0, or NULL if the value
+     * is not present.
+     *
+     * @param statement Compiled SQLite statement.
+     * @param index 1-based index of the parameter to bind.
+     * @param value Value or NULL.
+     */
+    public static void bindBoolean(final SQLiteStatement statement, final int index,
+            final Boolean value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindLong(index, value ? 1 : 0);
+        }
+    }
+
+    /***
+     * Binds a string to a compiled statement, or NULL if the value is not
+     * present.
+     *
+     * @param statement Compiled SQLite statement.
+     * @param index 1-based index of the parameter to bind.
+     * @param value Value or NULL.
+     */
+    public static void bindString(final SQLiteStatement statement, final int index,
+            final String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
+    }
+
+    /***
+     * Compiles an INSERT statement with one parameter for each of the given
+     * columns.
+     *
+     * @param writableDb Writable SQLite database.
+     * @param table Name of the table.
+     * @param columns Column names, in the order of the statement parameters.
+     * @return The compiled statement.
+     * @see #bindValues(SQLiteStatement, String[], ContentValues)
+     */
+    public static SQLiteStatement compileInsertStatement(final SQLiteDatabase writableDb,
+            final String table, final String[] columns) {
+        final StringBuilder query = new StringBuilder("INSERT INTO ");
+        query.append(table).append(" (");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                query.append(COMMA);
+            }
+            query.append(columns[i]);
+        }
+        query.append(") VALUES (");
+        for (int i = 0; i < columns.length; i++) {
+            query.append(i > 0 ? ",?" : "?");
+        }
+        query.append(')');
+        return writableDb.compileStatement(query.toString());
+    }
+
+    /***
+     * Appends a list of IDs to a query as the contents of an IN clause, e.g.
+     * "(1,2,3)".
+     *
+     * @param query Query to append to.
+     * @param ids IDs to list, must not be empty.
+     * @return The query.
+     */
+    public static StringBuilder appendInList(final StringBuilder query,
+            final Collection<Long> ids) {
+        query.append('(');
+        boolean isFirst = true;
+        for (Long id : ids) {
+            if (!isFirst) {
+                query.append(COMMA);
+            }
+            query.append(id);
+            isFirst = false;
+        }
+        return query.append(')');
+    }
+
+    /***
+     * Binds the given columns of a ContentValues object to a compiled
+     * statement, in order. Columns missing from the values are bound as NULL.
+     *
+     * @param statement Compiled SQLite statement.
+     * @param columns Column names, in the order of the statement parameters.
+     * @param values Values to bind.
+     */
+    public static void bindValues(final SQLiteStatement statement, final String[] columns,
+            final ContentValues values) {
+        for (int i = 0; i < columns.length; i++) {
+            final Object value = values.get(columns[i]);
+            if (value instanceof Boolean) {
+                bindBoolean(statement, i + 1, (Boolean)value);
+            } else if (value instanceof Double || value instanceof Float) {
+                statement.bindDouble(i + 1, ((Number)value).doubleValue());
+            } else if (value instanceof Number) {
+                statement.bindLong(i + 1, ((Number)value).longValue());
+            } else if (value instanceof byte[]) {
+                statement.bindBlob(i + 1, (byte[])value);
+            } else if (value != null) {
+                statement.bindString(i + 1, value.toString());
+            } else {
+                statement.bindNull(i + 1);
+            }
+        }
+    }
 }
\ No newline at end of file
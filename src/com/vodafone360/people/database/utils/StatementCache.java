@@ -0,0 +1,267 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.database.utils;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.database.SQLException;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.vodafone360.people.Settings;
+import com.vodafone360.people.utils.LogUtils;
+
+/**
+ * Keeps the compiled statements of the table helpers for an open database, so
+ * that statements run for every contact or detail of a sync are compiled
+ * once instead of on every call.
+ * <p>
+ * A statement is identified by its SQL, which must therefore not contain
+ * values: they are bound as parameters. The table helpers take a statement
+ * with {@link #acquire(SQLiteDatabase, String)}, bind and execute it and give
+ * it back with {@link #release(SQLiteDatabase, String, SQLiteStatement)}. A
+ * statement is only used by one thread at a time, a thread acquiring a
+ * statement which is in use gets a new one.
+ * <p>
+ * The cache of a database is created by {@link #open(SQLiteDatabase)} when
+ * the DatabaseHelper opens it and closed by {@link #close(SQLiteDatabase)}
+ * before the database is closed. Databases without a cache (e.g. in tests)
+ * compile a statement on each call, as before.
+ */
+public class StatementCache {
+
+    /**
+     * Returns the number of rows changed by the last INSERT, UPDATE or DELETE
+     * statement.
+     */
+    private static final String SQL_CHANGES = "SELECT changes()";
+
+    /**
+     * The cache of each open database.
+     */
+    private static final Map<SQLiteDatabase, StatementCache> sCaches =
+            new HashMap<SQLiteDatabase, StatementCache>();
+
+    /**
+     * Statements which are not in use, by SQL, least recently used first.
+     */
+    private final LinkedHashMap<String, SQLiteStatement> mStatements =
+            new LinkedHashMap<String, SQLiteStatement>(16, 0.75f, true);
+
+    /**
+     * Number of statements taken from the cache.
+     */
+    private int mHits = 0;
+
+    /**
+     * Number of statements compiled because they were not in the cache.
+     */
+    private int mMisses = 0;
+
+    /**
+     * True once the cache has been closed, statements released afterwards are
+     * closed.
+     */
+    private boolean mClosed = false;
+
+    /**
+     * Creates the cache of a database if it does not have one yet.
+     * 
+     * @param db The database which has just been opened
+     * @return The cache of the database
+     */
+    public static StatementCache open(SQLiteDatabase db) {
+        synchronized (sCaches) {
+            StatementCache cache = sCaches.get(db);
+            if (cache == null) {
+                cache = new StatementCache();
+                sCaches.put(db, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Closes all the cached statements of a database and removes its cache.
+     * Must be called before the database is closed.
+     * 
+     * @param db The database
+     */
+    public static void close(SQLiteDatabase db) {
+        final StatementCache cache;
+        synchronized (sCaches) {
+            cache = sCaches.remove(db);
+        }
+        if (cache != null) {
+            cache.closeStatements();
+        }
+    }
+
+    /**
+     * Returns the cache of a database.
+     * 
+     * @param db The database
+     * @return The cache, or null if the database does not have one
+     */
+    public static StatementCache get(SQLiteDatabase db) {
+        synchronized (sCaches) {
+            return sCaches.get(db);
+        }
+    }
+
+    /**
+     * Takes a compiled statement from the cache of a database, compiling it if
+     * the cache does not have it. The statement must be given back with
+     * {@link #release(SQLiteDatabase, String, SQLiteStatement)}.
+     * 
+     * @param db The database
+     * @param sql The SQL of the statement, with parameters instead of values
+     * @return The statement, its parameters may still be bound to the values
+     *         of its previous use
+     * @throws SQLException If the SQL cannot be compiled
+     */
+    public static SQLiteStatement acquire(SQLiteDatabase db, String sql) throws SQLException {
+        final StatementCache cache = get(db);
+        if (cache != null) {
+            final SQLiteStatement statement = cache.take(sql);
+            if (statement != null) {
+                return statement;
+            }
+        }
+        return db.compileStatement(sql);
+    }
+
+    /**
+     * Gives back a statement taken with
+     * {@link #acquire(SQLiteDatabase, String)}. The statement is kept for
+     * the next call, or closed if the database has no cache.
+     * 
+     * @param db The database
+     * @param sql The SQL the statement was acquired with
+     * @param statement The statement, may be null
+     */
+    public static void release(SQLiteDatabase db, String sql, SQLiteStatement statement) {
+        if (statement == null) {
+            return;
+        }
+        final StatementCache cache = get(db);
+        if (cache == null || !cache.put(sql, statement)) {
+            statement.close();
+        }
+    }
+
+    /**
+     * Returns the number of rows changed, inserted or deleted by the last
+     * INSERT, UPDATE or DELETE statement run on a database. Call it in the
+     * same transaction as the statement, otherwise a statement run by another
+     * thread in between is counted instead.
+     * 
+     * @param db The database
+     * @return The number of rows
+     * @throws SQLException If the query fails
+     */
+    public static long changes(SQLiteDatabase db) throws SQLException {
+        final SQLiteStatement statement = acquire(db, SQL_CHANGES);
+        try {
+            return statement.simpleQueryForLong();
+        } finally {
+            release(db, SQL_CHANGES, statement);
+        }
+    }
+
+    /**
+     * Returns the number of statements taken from the cache.
+     * 
+     * @return The number of hits
+     */
+    public synchronized int getHitCount() {
+        return mHits;
+    }
+
+    /**
+     * Returns the number of statements compiled because they were not in the
+     * cache.
+     * 
+     * @return The number of misses
+     */
+    public synchronized int getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * Takes a statement out of the cache.
+     * 
+     * @param sql The SQL of the statement
+     * @return The statement, or null if it has to be compiled
+     */
+    private synchronized SQLiteStatement take(String sql) {
+        final SQLiteStatement statement = mStatements.remove(sql);
+        if (statement != null) {
+            mHits++;
+        } else {
+            mMisses++;
+        }
+        return statement;
+    }
+
+    /**
+     * Puts a statement which is not in use into the cache, closing the least
+     * recently used statement if the cache is full.
+     * 
+     * @param sql The SQL of the statement
+     * @param statement The statement
+     * @return false if the statement has not been kept and must be closed
+     */
+    private synchronized boolean put(String sql, SQLiteStatement statement) {
+        if (mClosed || mStatements.containsKey(sql)) {
+            return false;
+        }
+        mStatements.put(sql, statement);
+        if (mStatements.size() > Settings.STATEMENT_CACHE_SIZE) {
+            final Iterator<SQLiteStatement> eldest = mStatements.values().iterator();
+            eldest.next().close();
+            eldest.remove();
+        }
+        return true;
+    }
+
+    /**
+     * Closes all cached statements, statements in use are closed when they
+     * are released.
+     */
+    private synchronized void closeStatements() {
+        mClosed = true;
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+        LogUtils.logI("StatementCache.closeStatements() hits[" + mHits + "] misses["
+                + mMisses + "]");
+    }
+}
@@ -25,11 +25,14 @@
 
 package com.vodafone360.people.datatypes;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Enumeration;
 import java.util.Hashtable;
 
+import com.caucho.hessian.micro.MicroHessianInput;
 import com.vodafone360.people.datatypes.ContactDetail.DetailKeyTypes;
+import com.vodafone360.people.service.utils.hessian.HessianStreamBinder;
 
 /**
  * BaseDataType encapsulating an Activity Contact which contains contact
@@ -168,6 +171,25 @@ public class ActivityContact extends BaseDataType {
         return zcon;
     }
 
+    /**
+     * Binder populating an ActivityContact directly from the Hessian stream.
+     */
+    public static final HessianStreamBinder<ActivityContact> BINDER = new HessianStreamBinder<ActivityContact>() {
+
+        /** {@inheritDoc} */
+        @Override
+        protected ActivityContact newInstance() {
+            return new ActivityContact();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void bindField(ActivityContact item, String key, MicroHessianInput in)
+                throws IOException {
+            item.setValue(Tags.findTag(key), in.decodeTag());
+        }
+    };
+
     /**
      * Sets the value of the member data item associated with the specified tag.
      * 
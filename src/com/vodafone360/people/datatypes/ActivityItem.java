@@ -25,6 +25,7 @@
 
 package com.vodafone360.people.datatypes;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Enumeration;
@@ -32,6 +33,9 @@ import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
 
+import com.caucho.hessian.micro.MicroHessianInput;
+import com.vodafone360.people.service.utils.hessian.HessianStreamBinder;
+
 /**
  * BaseDataType encapsulating an ActivityItem retrieved from, or to be issued
  * to, Now + server
@@ -489,6 +493,33 @@ public class ActivityItem extends BaseDataType {
         return act;
     }
 
+    /**
+     * Binder populating an ActivityItem directly from the Hessian stream. The
+     * contact list is streamed into ActivityContact objects, all other values
+     * are set the same way as for {@link #createFromHashtable(Hashtable)}.
+     */
+    public static final HessianStreamBinder<ActivityItem> BINDER = new HessianStreamBinder<ActivityItem>() {
+
+        /** {@inheritDoc} */
+        @Override
+        protected ActivityItem newInstance() {
+            return new ActivityItem();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void bindField(ActivityItem item, String key, MicroHessianInput in)
+                throws IOException {
+            final Tags tag = Tags.findTag(key);
+            if (tag == Tags.CONTACT_LIST) {
+                item.contactList = new ArrayList<ActivityContact>();
+                ActivityContact.BINDER.readList(in, in.readTag(), item.contactList);
+            } else {
+                item.setValue(tag, in.decodeTag());
+            }
+        }
+    };
+
     /**
      * Sets the value of the member data item associated with the specified tag.
      * 
@@ -25,6 +25,7 @@
 
 package com.vodafone360.people.datatypes;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
@@ -35,9 +36,11 @@ import java.util.Vector;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.caucho.hessian.micro.MicroHessianInput;
 import com.vodafone360.people.database.persistenceHelper.Persistable;
 import com.vodafone360.people.database.persistenceHelper.Persistable.Entity;
 import com.vodafone360.people.database.persistenceHelper.Persistable.Table;
+import com.vodafone360.people.service.utils.hessian.HessianStreamBinder;
 import com.vodafone360.people.utils.LogUtils;
 
 /**
@@ -326,6 +329,32 @@ public class Contact extends BaseDataType implements Parcelable, Persistable {
         return cont;
     }
 
+    /**
+     * Binder populating a Contact directly from the Hessian stream. The detail
+     * list is streamed into ContactDetail objects, all other values are set
+     * the same way as for {@link #createFromHashtable(Hashtable)}.
+     */
+    public static final HessianStreamBinder<Contact> BINDER = new HessianStreamBinder<Contact>() {
+
+        /** {@inheritDoc} */
+        @Override
+        protected Contact newInstance() {
+            return new Contact();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void bindField(Contact item, String key, MicroHessianInput in)
+                throws IOException {
+            final Tags tag = item.findTag(key);
+            if (tag == Tags.DETAIL_LIST) {
+                ContactDetail.BINDER.readList(in, in.readTag(), item.details);
+            } else {
+                item.setValue(tag, in.decodeTag());
+            }
+        }
+    };
+
     /**
      * Sets the value of the member data item associated with the specified tag.
      * 
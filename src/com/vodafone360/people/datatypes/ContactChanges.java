@@ -25,11 +25,15 @@
 
 package com.vodafone360.people.datatypes;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
+
+import com.caucho.hessian.micro.MicroHessianInput;
+import com.vodafone360.people.service.utils.hessian.HessianStreamBinder;
 import com.vodafone360.people.utils.LogUtils;
 
 /**
@@ -172,6 +176,35 @@ public class ContactChanges extends BaseDataType {
         return this;
     }
 
+    /**
+     * Binder populating ContactChanges directly from the Hessian stream. The
+     * contact list is streamed into Contact objects, all other values are set
+     * the same way as for {@link #createFromHashtable(Hashtable)}.
+     */
+    public static final HessianStreamBinder<ContactChanges> BINDER = new HessianStreamBinder<ContactChanges>() {
+
+        /** {@inheritDoc} */
+        @Override
+        protected ContactChanges newInstance() {
+            return new ContactChanges();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void bindField(ContactChanges item, String key, MicroHessianInput in)
+                throws IOException {
+            final Tags tag = item.findTag(key);
+            if (tag == Tags.CONTACT_LIST) {
+                Contact.BINDER.readList(in, in.readTag(), item.mContacts);
+            } else if (tag == null) {
+                LogUtils.logE("ContactChanges.BINDER: Unknown key - " + key + ", value: \n"
+                        + in.decodeTag());
+            } else {
+                item.setValue(tag, in.decodeTag());
+            }
+        }
+    };
+
     /**
      * Sets the value of the member data item associated with the specified tag.
      * 
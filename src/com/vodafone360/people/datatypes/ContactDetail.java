@@ -26,6 +26,7 @@
 package com.vodafone360.people.datatypes;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Enumeration;
@@ -40,6 +41,8 @@ import android.os.Parcel;
 import android.os.Parcelable;
 import android.text.format.Time;
 
+import com.caucho.hessian.micro.MicroHessianInput;
+import com.vodafone360.people.service.utils.hessian.HessianStreamBinder;
 import com.vodafone360.people.utils.LogUtils;
 
 /**
@@ -437,6 +440,40 @@ public class ContactDetail extends BaseDataType implements Parcelable {
             setValue(tag, value);
         }
         
+        fixPhotoUrl();
+        
+        return this;
+    }
+
+    /**
+     * Binder populating a ContactDetail directly from the Hessian stream.
+     */
+    public static final HessianStreamBinder<ContactDetail> BINDER = new HessianStreamBinder<ContactDetail>() {
+
+        /** {@inheritDoc} */
+        @Override
+        protected ContactDetail newInstance() {
+            return new ContactDetail();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void bindField(ContactDetail item, String key, MicroHessianInput in)
+                throws IOException {
+            item.setValue(Tags.findTag(key), in.decodeTag());
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void onItemComplete(ContactDetail item) {
+            item.fixPhotoUrl();
+        }
+    };
+
+    /**
+     * Removes the white spaces the server may send inside photo URLs.
+     */
+    private void fixPhotoUrl() {
         // FIX for PAND-2379
         // TODO: remove, when BE does not send invalid photo urls
         if (key == DetailKeys.PHOTO && value != null) {
@@ -444,8 +481,6 @@ public class ContactDetail extends BaseDataType implements Parcelable {
         	value = value.replaceAll("\n", ""); 
         	value = value.replaceAll(" ", ""); 
         }
-        
-        return this;
     }
 
     /**
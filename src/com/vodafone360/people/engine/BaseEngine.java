@@ -92,6 +92,13 @@ public abstract class BaseEngine {
      */
     private boolean mDeactivated;
 
+    /**
+     * The EngineManager scheduling this engine, told whenever the next run
+     * time of the engine may have changed. Null if the engine is run outside
+     * the EngineManager.
+     */
+    volatile EngineManager mEngineManager;
+
     /**
      * Class to encapsulate client (UI) request information.
      */
@@ -220,7 +227,7 @@ public abstract class BaseEngine {
             } 
             mUiRequestOutstanding = true;
         }
-        mEventCallback.kickWorkerThread();
+        onNextRunTimeChanged();
     }
     /**
      * Return id for this engine.
@@ -314,7 +321,20 @@ public abstract class BaseEngine {
      */
     public void onCommsInMessage() {
     	mCommsResponseOutstanding = true;
-        mEventCallback.kickWorkerThread();
+        onNextRunTimeChanged();
+    }
+
+    /**
+     * Called when an event changed the next run time of this engine. Lets the
+     * EngineManager reschedule only this engine and wakes the worker thread.
+     */
+    private void onNextRunTimeChanged() {
+        final EngineManager engineManager = mEngineManager;
+        if (engineManager != null) {
+            engineManager.onEngineStateChanged(this);
+        } else {
+            mEventCallback.kickWorkerThread();
+        }
     }
 
     /**
@@ -481,6 +501,7 @@ public abstract class BaseEngine {
      */
     protected void setTimeout(long timeoutVal) {
         mCurrentTimeout = System.currentTimeMillis() + timeoutVal;
+        rescheduleTimeout();
     }
 
     /**
@@ -488,6 +509,19 @@ public abstract class BaseEngine {
      */
     protected void clearTimeout() {
         mCurrentTimeout = null;
+        rescheduleTimeout();
+    }
+
+    /**
+     * Tells the EngineManager the timer changed so the engine is run when it
+     * fires. Does nothing for engines run outside the EngineManager, which
+     * poll getNextRunTime() anyway.
+     */
+    private void rescheduleTimeout() {
+        final EngineManager engineManager = mEngineManager;
+        if (engineManager != null) {
+            engineManager.onEngineStateChanged(this);
+        }
     }
 
     /**
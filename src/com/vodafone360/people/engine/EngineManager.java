@@ -26,9 +26,12 @@
 package com.vodafone360.people.engine;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.vodafone360.people.MainApplication;
 import com.vodafone360.people.Settings;
@@ -55,6 +58,12 @@ import com.vodafone360.people.utils.LogUtils;
  * should be run based on the engine's next run time or whether there is a
  * waiting request for that engine. The EngineManager routes received responses
  * to the appropriate engine.
+ * <p>
+ * The next run times are kept in a queue ordered by time and only the engines
+ * which are due are run. While idle, an engine's next run time is only asked
+ * for again when it reported a change (UI request, comms response, timeout).
+ * After engines have run or on any other kick of the worker thread all engines
+ * are asked again, as the change may affect any of them.
  */
 public class EngineManager {
 
@@ -87,6 +96,59 @@ public class EngineManager {
      */
     private final HashMap<Integer, BaseEngine> mEngineList = new HashMap<Integer, BaseEngine>();
 
+    /**
+     * Next run time of an engine as an entry of {@link #mSchedule}.
+     */
+    private static class ScheduledEngine {
+        private final BaseEngine mEngine;
+
+        /** Absolute next run time, 0 to run as soon as possible. */
+        private long mNextRunTime;
+
+        private ScheduledEngine(BaseEngine engine) {
+            mEngine = engine;
+        }
+    }
+
+    /**
+     * Orders scheduled engines by their next run time.
+     */
+    private static final Comparator<ScheduledEngine> NEXT_RUN_TIME_COMPARATOR =
+        new Comparator<ScheduledEngine>() {
+            @Override
+            public int compare(ScheduledEngine lhs, ScheduledEngine rhs) {
+                if (lhs.mNextRunTime < rhs.mNextRunTime) {
+                    return -1;
+                }
+                return (lhs.mNextRunTime == rhs.mNextRunTime) ? 0 : 1;
+            }
+        };
+
+    /**
+     * The engines waiting to run, earliest next run time first. Engines which
+     * are off (next run time -1) are not queued.
+     */
+    private final PriorityQueue<ScheduledEngine> mSchedule = new PriorityQueue<ScheduledEngine>(
+            EngineId.values().length, NEXT_RUN_TIME_COMPARATOR);
+
+    /**
+     * Schedule entry of each engine, indexed by engine ID ordinal.
+     */
+    private final ScheduledEngine[] mScheduledEngines =
+        new ScheduledEngine[EngineId.values().length];
+
+    /**
+     * Engines which reported a change of their next run time since the last
+     * call to {@link #runEngines()}.
+     */
+    private final ConcurrentLinkedQueue<BaseEngine> mChangedEngines =
+        new ConcurrentLinkedQueue<BaseEngine>();
+
+    /**
+     * Set when the next run time of every engine has to be fetched again.
+     */
+    private volatile boolean mRescheduleAll = true;
+
     /**
      * Reference to the {@RemoteService} object which provides
      * access to the {@link WorkerThread}.
@@ -214,7 +276,9 @@ public class EngineManager {
         if (!newEngine.isDeactivated()) {
             newEngine.onCreate();
             mEngineList.put(newEngine.mEngineId.ordinal(), newEngine);
+            newEngine.mEngineManager = this;
         }
+        mRescheduleAll = true;
         mService.kickWorkerThread();
     }
 
@@ -226,6 +290,8 @@ public class EngineManager {
      */
     private synchronized void closeEngine(BaseEngine engine) {
         mEngineList.remove(engine.engineId().ordinal());
+        engine.mEngineManager = null;
+        mRescheduleAll = true;
         if (!engine.isDeactivated()) {
             engine.onDestroy();
         }
@@ -460,77 +526,89 @@ public class EngineManager {
         }
     }
 
+    /**
+     * Called by an engine when its next run time may have changed. Only this
+     * engine is asked for its next run time on the next call to
+     * {@link #runEngines()}.
+     * 
+     * @param engine The engine which changed.
+     */
+    void onEngineStateChanged(BaseEngine engine) {
+        mChangedEngines.add(engine);
+        mService.wakeWorkerThread();
+    }
+
+    /**
+     * Makes the EngineManager ask all engines for their next run time on the
+     * next call to {@link #runEngines()}. Used whenever the worker thread is
+     * kicked without knowing which engine needs to run.
+     */
+    public static void rescheduleAllEngines() {
+        final EngineManager engineManager = sEngineManager;
+        if (engineManager != null) {
+            engineManager.mRescheduleAll = true;
+        }
+    }
+
     /**
      * Run any waiting engines and return the time in milliseconds from now when
-     * this method needs to be called again.
+     * this method needs to be called again. Only the engines which are due are
+     * run, and only the engines which ran or reported a change are asked for
+     * their next run time.
      * 
      * @return -1 never needs to run, 0 needs to run as soon as possible,
      *         CurrentTime + 60000 in 1 minute, etc.
      */
-    public synchronized long runEngines() { 
+    public synchronized long runEngines() {
+        updateSchedule();
+
         long nextRuntime = -1;
-        Set<Integer> e = mEngineList.keySet();
-        Iterator<Integer> i = e.iterator();
-        while (i.hasNext()) {
-            int engineId = i.next();
-            BaseEngine engine = mEngineList.get(engineId);
-            long currentTime = System.currentTimeMillis();
-            
-            // TODO: Pass mCurrentTime to getNextRunTime() to help with Unit tests
-            long tempRuntime = engine.getNextRunTime(); 
+        final long now = System.currentTimeMillis();
+        final List<ScheduledEngine> dueEngines = new ArrayList<ScheduledEngine>();
+        while (!mSchedule.isEmpty() && mSchedule.peek().mNextRunTime <= now) {
+            dueEngines.add(mSchedule.poll());
+        }
 
+        for (ScheduledEngine scheduledEngine : dueEngines) {
+            final BaseEngine engine = scheduledEngine.mEngine;
+            final long currentTime = System.currentTimeMillis();
             if (Settings.ENABLED_ENGINE_TRACE) {
-                LogUtils.logV("EngineManager.runEngines() " + "engine["
-                        + engine.getClass().getSimpleName() + "] " + "nextRunTime["
-                        + getHumanReadableTime(tempRuntime, currentTime) + "] " + "current["
-                        + getHumanReadableTime(nextRuntime, currentTime) + "]");
-            } else {
-                if (tempRuntime > 0 && tempRuntime < currentTime) {
-                    LogUtils.logD("Engine[" + engine.getClass().getSimpleName() + "] run pending");
-                }
+                LogUtils.logV("EngineManager.runEngines() Run Engine ["
+                        + engine.getClass().getSimpleName() + "] nextRunTime["
+                        + getHumanReadableTime(scheduledEngine.mNextRunTime, currentTime) + "]");
+            } else if (scheduledEngine.mNextRunTime > 0) {
+                LogUtils.logD("Engine[" + engine.getClass().getSimpleName() + "] run pending");
             }
-            if (tempRuntime < 0) {
-                if (Settings.ENABLED_ENGINE_TRACE) {
-                    LogUtils.logV("EngineManager.runEngines() Engine is off, so ignore");
-                }
 
-            } else if (tempRuntime <= currentTime) {
-                if (Settings.ENABLED_ENGINE_TRACE) {
-                    LogUtils.logV("EngineManager.runEngines() Run Engine ["
-                            + engine.getClass().getSimpleName()
-                            + "] and make sure we check it once more before sleeping");
-                }
+            /** TODO: Consider passing mCurrentTime to mEngine.run(). **/ 
+            engine.run();
+            nextRuntime = 0;
+            final long timeForRun = System.currentTimeMillis() - currentTime;
+            if (timeForRun > ENGINE_RUN_TIME_THRESHOLD) {
+                LogUtils.logE("EngineManager.runEngines() Engine ["
+                        + engine.getClass().getSimpleName() + "] took " + timeForRun
+                        + "ms to run");
+            }
+            if (Settings.ENABLED_PROFILE_ENGINES) {
+                StringBuilder string = new StringBuilder();
+                string.append(System.currentTimeMillis());
+                string.append("|");
+                string.append(engine.getClass().getSimpleName());
+                string.append("|");
+                string.append(timeForRun);
+                LogUtils.profileToFile(string.toString());
+            }
 
-                /** TODO: Consider passing mCurrentTime to mEngine.run(). **/ 
-                engine.run();
-                nextRuntime = 0;
-                final long timeForRun = System.currentTimeMillis() - currentTime;
-                if (timeForRun > ENGINE_RUN_TIME_THRESHOLD) {
-                    LogUtils.logE("EngineManager.runEngines() Engine ["
-                            + engine.getClass().getSimpleName() + "] took " + timeForRun
-                            + "ms to run");
-                }
-                if (Settings.ENABLED_PROFILE_ENGINES) {
-                    StringBuilder string = new StringBuilder();
-                    string.append(System.currentTimeMillis());
-                    string.append("|");
-                    string.append(engine.getClass().getSimpleName());
-                    string.append("|");
-                    string.append(timeForRun);
-                    LogUtils.profileToFile(string.toString());
-                }
-            } else {
-                if (nextRuntime != -1) {
-                    nextRuntime = Math.min(nextRuntime, tempRuntime);
-                } else {
-                    nextRuntime = tempRuntime;
-                }
+            // the engine is off the schedule while running, this puts it back
+            scheduleEngine(engine);
+        }
 
-                if (Settings.ENABLED_ENGINE_TRACE) {
-                    LogUtils.logV("EngineManager.runEngines() Set mNextRuntime to ["
-                            + getHumanReadableTime(nextRuntime, currentTime) + "]");
-                }
-            }
+        if (nextRuntime == 0) {
+            // running an engine may change state other engines depend on
+            // (login, first time sync), so check them all once more
+            mRescheduleAll = true;
+        } else if (!mSchedule.isEmpty()) {
+            nextRuntime = mSchedule.peek().mNextRunTime;
         }
         if (Settings.ENABLED_ENGINE_TRACE) {
             LogUtils.logI("EngineManager.getNextRunTime() Return ["
@@ -539,6 +617,61 @@ public class EngineManager {
         return nextRuntime;
     }
 
+    /**
+     * Fetches the next run time of all engines if requested, otherwise only of
+     * the engines which reported a change.
+     */
+    private void updateSchedule() {
+        if (mRescheduleAll) {
+            // clear the flag first so a request arriving meanwhile is not lost
+            mRescheduleAll = false;
+            mChangedEngines.clear();
+            mSchedule.clear();
+            for (BaseEngine engine : mEngineList.values()) {
+                scheduleEngine(engine);
+            }
+        } else {
+            BaseEngine engine;
+            while ((engine = mChangedEngines.poll()) != null) {
+                scheduleEngine(engine);
+            }
+        }
+    }
+
+    /**
+     * Fetches the next run time of an engine and moves it to the matching
+     * position in the schedule, or takes it off the schedule if the engine is
+     * off.
+     * 
+     * @param engine The engine to schedule.
+     */
+    private void scheduleEngine(BaseEngine engine) {
+        final int index = engine.engineId().ordinal();
+        if (mEngineList.get(index) != engine) {
+            // closed in the meantime
+            return;
+        }
+        ScheduledEngine scheduledEngine = mScheduledEngines[index];
+        if (scheduledEngine == null || scheduledEngine.mEngine != engine) {
+            scheduledEngine = new ScheduledEngine(engine);
+            mScheduledEngines[index] = scheduledEngine;
+        } else {
+            mSchedule.remove(scheduledEngine);
+        }
+
+        // TODO: Pass mCurrentTime to getNextRunTime() to help with Unit tests
+        scheduledEngine.mNextRunTime = engine.getNextRunTime();
+        if (Settings.ENABLED_ENGINE_TRACE) {
+            LogUtils.logV("EngineManager.scheduleEngine() engine["
+                    + engine.getClass().getSimpleName() + "] nextRunTime["
+                    + getHumanReadableTime(scheduledEngine.mNextRunTime,
+                            System.currentTimeMillis()) + "]");
+        }
+        if (scheduledEngine.mNextRunTime >= 0) {
+            mSchedule.add(scheduledEngine);
+        }
+    }
+
     /***
      * Display the Absolute Time in a human readable format (for testing only).
      * 
@@ -570,6 +703,7 @@ public class EngineManager {
             for (BaseEngine engine : mEngineList.values()) {
                 engine.onReset();
             }
+            mRescheduleAll = true;
             // Reset engine requests inside this synchronized block to
             // prevent running the engines at the same time
             QueueManager.getInstance().clearAllRequests();
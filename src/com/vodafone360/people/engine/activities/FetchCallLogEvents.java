@@ -302,20 +302,23 @@ public class FetchCallLogEvents implements ISyncHelper {
      * database.
      */
     private void saveTimestamp() {
+        Long oldest = null;
+        Long newest = null;
         long saved = StateTable.fetchOldestPhoneCallTime(mDb.getReadableDatabase());
         if (mOldestPhoneCall < saved) {
-            StateTable.modifyOldestPhoneCallTime(mOldestPhoneCall, mDb.getWritableDatabase());
+            oldest = mOldestPhoneCall;
             LogUtils.logD("FetchCallLogEvents saveTimestamp: oldest timeline update set to = "
                     + mOldestPhoneCall);
             mStatus = ServiceStatus.UPDATED_TIMELINES_FROM_NATIVE;
         }
         saved = StateTable.fetchLatestPhoneCallTime(mDb.getReadableDatabase());
         if (mNewestPhoneCall > saved) {
-            StateTable.modifyLatestPhoneCallTime(mNewestPhoneCall, mDb.getWritableDatabase());
+            newest = mNewestPhoneCall;
             LogUtils.logD("FetchCallLogEvents saveTimestamp: newest timeline update set to = "
                     + mNewestPhoneCall);
             mStatus = ServiceStatus.UPDATED_TIMELINES_FROM_NATIVE;
         }
+        StateTable.modifyPhoneCallTimes(oldest, newest, mDb.getWritableDatabase());
     }
 
     /**
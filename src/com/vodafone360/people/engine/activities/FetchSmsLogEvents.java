@@ -333,29 +333,34 @@ public class FetchSmsLogEvents implements ISyncHelper {
      * This method updates the newest and oldest MMS timestamps in the database.
      */
     private void saveTimeStampMms() {
+        Long oldest = null;
+        Long newest = null;
         long saved = StateTable.fetchOldestMmsTime(mDb.getReadableDatabase());
         if (mOldestMessage < saved) {
-            StateTable.modifyOldestMmsTime(mOldestMessage, mDb.getWritableDatabase());
+            oldest = mOldestMessage;
             LogUtils.logD("FetchMMSEvents saveTimestamp: oldest timeline update set to = "
                     + mOldestMessage);
             mStatus = ServiceStatus.UPDATED_TIMELINES_FROM_NATIVE;
         }
         saved = StateTable.fetchLatestMmsTime(mDb.getReadableDatabase());
         if (mNewestMessage > saved) {
-            StateTable.modifyLatestMmsTime(mNewestMessage, mDb.getWritableDatabase());
+            newest = mNewestMessage;
             LogUtils.logD("FetchMMSEvents saveTimestamp: newest timeline update set to = "
                     + mNewestMessage);
             mStatus = ServiceStatus.UPDATED_TIMELINES_FROM_NATIVE;
         }
+        StateTable.modifyMmsTimes(oldest, newest, mDb.getWritableDatabase());
     }
 
     /**
      * This method updates the newest and oldest SMS timestamps in the database.
      */
     private void saveTimeStampSms() {
+        Long oldest = null;
+        Long newest = null;
         long saved = StateTable.fetchOldestSmsTime(mDb.getReadableDatabase());
         if (mOldestMessage < saved) {
-            StateTable.modifyOldestSmsTime(mOldestMessage, mDb.getWritableDatabase());
+            oldest = mOldestMessage;
             LogUtils.logD("FetchSMSEvents saveTimestamp: oldest timeline update set to = "
                     + mOldestMessage);
             mStatus = ServiceStatus.UPDATED_TIMELINES_FROM_NATIVE;
@@ -374,11 +379,12 @@ public class FetchSmsLogEvents implements ISyncHelper {
                  */
                 mNewestMessage -= 12*60*60*1000;
             }
-            StateTable.modifyLatestSmsTime(mNewestMessage, mDb.getWritableDatabase());
+            newest = mNewestMessage;
             LogUtils.logD("FetchSMSEvents saveTimestamp: newest timeline update set to = "
                     + mNewestMessage);
             mStatus = ServiceStatus.UPDATED_TIMELINES_FROM_NATIVE;
         }
+        StateTable.modifySmsTimes(oldest, newest, mDb.getWritableDatabase());
     }
 
     /**
@@ -183,9 +183,23 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     private DatabaseHelper mDb;
 
     /**
-     * Currently active processor (the processor which is running) or null
+     * Currently active processors (the processors which are running). There
+     * is more than one only when independent processors are started together
+     * (see {@link #startProcessors(SyncTask...)}).
      */
-    private BaseSyncProcessor mActiveProcessor;
+    private final ArrayList<SyncTask> mActiveTasks = new ArrayList<SyncTask>();
+
+    /**
+     * Number of processor timeouts set so far, used to run processors whose
+     * timeouts expire at the same time in the order the timeouts were set.
+     */
+    private long mTimeoutCount = 0;
+
+    /**
+     * Set once the upload of the first time sync has been started, the
+     * download which follows the upload then completes the sync.
+     */
+    private boolean mFirstTimeUploadStarted = false;
 
     /**
      * The factory class which is used for creating processors for a particular
@@ -305,16 +319,6 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
      */
     private final ArrayList<IContactSyncObserver> mEventCallbackList = new ArrayList<IContactSyncObserver>();
 
-    /**
-     * Current progress value (used to check if the progress has changed)
-     */
-    private int mCurrentProgressPercent = 0;
-
-    /**
-     * Flag which is set when the current processor changes the database
-     */
-    private boolean mDbChangedByProcessor;
-
     /**
      * Backup of the previous active request before processing the new one.
      */
@@ -591,21 +595,133 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     }
 
     /**
-     * Helper function to start a processor running.
-     * 
-     * @param processor Processor which was created by processor factory.
+     * A processor run by the engine. Each processor gets its own callback so
+     * that processors running at the same time keep their own timeout and
+     * progress, and complete separately.
      */
-    private void startProcessor(BaseSyncProcessor processor) {
-        if (mActiveProcessor != null) {
-            LogUtils.logE("ContactSyncEngine.startProcessor - Cannot start " + processor.getClass()
-                    + ", because the processor " + mActiveProcessor.getClass() + " is running");
+    private class SyncTask implements IContactSyncCallback {
+
+        /**
+         * State of the engine while the processor is running.
+         */
+        private final State mTaskState;
+
+        /**
+         * The processor created by the processor factory.
+         */
+        private final BaseSyncProcessor mProcessor;
+
+        /**
+         * Time (in milliseconds) at which the processor timeout expires, or
+         * null if the processor has no timeout pending.
+         */
+        private Long mTimeout;
+
+        /**
+         * Order in which the pending timeout was set, see
+         * {@link ContactSyncEngine#mTimeoutCount}.
+         */
+        private long mTimeoutOrder;
+
+        /**
+         * Last progress value reported (used to check if the progress has
+         * changed).
+         */
+        private int mProgressPercent = -1;
+
+        /**
+         * Set when the processor changes the database.
+         */
+        private boolean mDbChanged;
+
+        /**
+         * Creates the processor of the task.
+         * 
+         * @param processorType One of the {@link ProcessorFactory} types.
+         * @param taskState State of the engine while the processor is running.
+         */
+        private SyncTask(int processorType, State taskState) {
+            mTaskState = taskState;
+            mProcessor = mProcessorFactory.create(processorType, this, mDb);
+        }
+
+        @Override
+        public void onProcessorComplete(ServiceStatus status, String failureList, Object data) {
+            onTaskComplete(this, status, failureList);
+        }
+
+        @Override
+        public void onDatabaseChanged() {
+            mDbChanged = true;
+            notifyDatabaseChanged();
+        }
+
+        @Override
+        public BaseEngine getEngine() {
+            return ContactSyncEngine.this;
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+            mTimeout = System.currentTimeMillis() + timeout;
+            mTimeoutOrder = mTimeoutCount++;
+            scheduleTaskTimeout();
+        }
+
+        @Override
+        public void setSyncStatus(final SyncStatus syncStatus) {
+            publishSyncStatus(syncStatus);
+            if (syncStatus.getProgress() != mProgressPercent) {
+                mProgressPercent = syncStatus.getProgress();
+                LogUtils.logI("ContactSyncEngine: Task " + mTaskState + " is " + mProgressPercent
+                        + "% complete");
+                fireProgressEvent(mTaskState, mProgressPercent);
+            }
+        }
+
+        @Override
+        public void setActiveRequestId(int reqId) {
+            setReqId(reqId);
+        }
+    }
+
+    /**
+     * Helper function to start processors running. Processors started together
+     * must be independent of each other: they run at the same time, and the
+     * next task of the sync mode is only started once all of them have
+     * completed. They are all run by the engine thread, so only one of them
+     * writes to the database at any time. Server responses are passed to all
+     * of them, so only one of them may send requests.
+     * 
+     * @param tasks The processors to start, null for a processor which is
+     *            disabled in the settings.
+     * @return true if a processor was started, false if all were disabled.
+     */
+    private boolean startProcessors(SyncTask... tasks) {
+        if (!mActiveTasks.isEmpty()) {
+            LogUtils.logE("ContactSyncEngine.startProcessors - Cannot start processors, because the processor "
+                    + mActiveTasks.get(0).mProcessor.getClass() + " is running");
             throw new RuntimeException(
                     "ContactSyncEngine - Cannot start processor while another is active");
         }
-        mActiveProcessor = processor;
-        mCurrentProgressPercent = -1;
-        mDbChangedByProcessor = false;
-        processor.start();
+        final State previousState = mState;
+        for (SyncTask task : tasks) {
+            if (task != null) {
+                mActiveTasks.add(task);
+                newState(task.mTaskState);
+            }
+        }
+        if (mActiveTasks.isEmpty()) {
+            return false;
+        }
+        // a pause resumes the sync from before the processors started together
+        mLastState = previousState;
+        for (SyncTask task : new ArrayList<SyncTask>(mActiveTasks)) {
+            if (mActiveTasks.contains(task)) {
+                task.mProcessor.start();
+            }
+        }
+        return true;
     }
 
     /**
@@ -720,14 +836,51 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
      */
     @Override
     protected void onTimeoutEvent() {
-        if (mActiveProcessor != null) {
-            mActiveProcessor.onTimeoutEvent();
+        if (!mActiveTasks.isEmpty()) {
+            runTaskTimeout();
         } else {
             startSyncIfRequired();
             setTimeoutIfRequired();
         }
     }
 
+    /**
+     * Passes the timeout event to the active processor whose timeout expired
+     * first, or was set first if they expired at the same time. Processors
+     * which yield with a timeout of 0 are therefore run in turn.
+     */
+    private void runTaskTimeout() {
+        SyncTask next = null;
+        for (SyncTask task : mActiveTasks) {
+            if (task.mTimeout != null
+                    && (next == null || task.mTimeout < next.mTimeout
+                            || (task.mTimeout.equals(next.mTimeout)
+                                    && task.mTimeoutOrder < next.mTimeoutOrder))) {
+                next = task;
+            }
+        }
+        if (next != null && next.mTimeout <= System.currentTimeMillis()) {
+            next.mTimeout = null;
+            next.mProcessor.onTimeoutEvent();
+        }
+        scheduleTaskTimeout();
+    }
+
+    /**
+     * Sets the engine timeout to the first timeout of the active processors.
+     */
+    private void scheduleTaskTimeout() {
+        Long timeout = null;
+        for (SyncTask task : mActiveTasks) {
+            if (task.mTimeout != null && (timeout == null || task.mTimeout < timeout)) {
+                timeout = task.mTimeout;
+            }
+        }
+        if (timeout != null) {
+            super.setTimeout(Math.max(timeout - System.currentTimeMillis(), 0));
+        }
+    }
+
     /**
      * Based on current timeout values schedules a new sync if required.
      */
@@ -770,8 +923,10 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
             LogUtils.logD("ContactSyncEngine.processCommsResponse: Req ID = " + resp.mReqId
                     + ", type = NULL");
         }
-        if (mActiveProcessor != null) {
-            mActiveProcessor.processCommsResponse(resp);
+        for (SyncTask task : new ArrayList<SyncTask>(mActiveTasks)) {
+            if (mActiveTasks.contains(task)) {
+                task.mProcessor.processCommsResponse(resp);
+            }
         }
     }
 
@@ -846,17 +1001,16 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
      */
     private void clearCurrentSyncAndPatchBaseEngine() {
         // Cancel background sync
-        if (mActiveProcessor != null) {
+        if (!mActiveTasks.isEmpty()) {
             // the mActiveUiRequest is already the new one so if
             // onCompleteUiRequest(Error) is called,
             // this will reset it to null even if we didn't start to process it.
             ServiceUiRequest newActiveUiRequest = mActiveUiRequest;
             mActiveUiRequest = mActiveUiRequestBackup;
-            mActiveProcessor.cancel();
 //            cancelSync();
+            cancelTasks();
             // restore the active UI request...
             mActiveUiRequest = newActiveUiRequest;
-            mActiveProcessor = null;
         }
         newState(State.IDLE);
     }
@@ -996,62 +1150,60 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     }
 
     /**
-     * Helper function to start the fetch native contacts processor
+     * Helper function to create the fetch native contacts processor
      * 
      * @param isFirstTimeSync true if importing native contacts for the first time
-     * @return if this type of sync is enabled in the settings, false otherwise.
+     * @return The processor task, null if this type of sync is disabled in
+     *         the settings.
      */
-    private boolean startFetchNativeContacts(boolean isFirstTimeSync) {
+    private SyncTask newFetchNativeContactsTask(boolean isFirstTimeSync) {
         if (mFetchNativeContacts || (Settings.ENABLE_FETCH_NATIVE_CONTACTS && isFirstTimeSync)) {
-            newState(State.FETCHING_NATIVE_CONTACTS);
-            startProcessor(mProcessorFactory.create(ProcessorFactory.FETCH_NATIVE_CONTACTS, this, mDb));
-            return true;
+            return new SyncTask(ProcessorFactory.FETCH_NATIVE_CONTACTS,
+                    State.FETCHING_NATIVE_CONTACTS);
         }
-        return false;
+        return null;
     }
 
     /**
-     * Helper function to start the update native contacts processor
+     * Helper function to create the update native contacts processor
      * 
-     * @return if this type of sync is enabled in the settings, false otherwise.
+     * @return The processor task, null if this type of sync is disabled in
+     *         the settings.
      */
-    private boolean startUpdateNativeContacts() {
+    private SyncTask newUpdateNativeContactsTask() {
         if (mUpdateNativeContacts) {
-            newState(State.UPDATING_NATIVE_CONTACTS);
-            startProcessor(mProcessorFactory.create(ProcessorFactory.UPDATE_NATIVE_CONTACTS, this, mDb));
-            return true;
+            return new SyncTask(ProcessorFactory.UPDATE_NATIVE_CONTACTS,
+                    State.UPDATING_NATIVE_CONTACTS);
         }
-        return false;
+        return null;
     }
 
     /**
-     * Helper function to start the download server contacts processor
+     * Helper function to create the download server contacts processor
      * 
-     * @return if this type of sync is enabled in the settings, false otherwise.
+     * @return The processor task, null if this type of sync is disabled in
+     *         the settings.
      */
-    private boolean startDownloadServerContacts() {
+    private SyncTask newDownloadServerContactsTask() {
         if (Settings.ENABLE_SERVER_CONTACT_SYNC) {
-            newState(State.FETCHING_SERVER_CONTACTS);
-            startProcessor(mProcessorFactory.create(ProcessorFactory.DOWNLOAD_SERVER_CONTACTS, this, mDb));
-            return true;
+            return new SyncTask(ProcessorFactory.DOWNLOAD_SERVER_CONTACTS,
+                    State.FETCHING_SERVER_CONTACTS);
         }
-        else 
-            return false;
+        return null;
     }
 
     /**
-     * Helper function to start the upload server contacts processor
+     * Helper function to create the upload server contacts processor
      * 
-     * @return if this type of sync is enabled in the settings, false otherwise.
+     * @return The processor task, null if this type of sync is disabled in
+     *         the settings.
      */
-    private boolean startUploadServerContacts() {
+    private SyncTask newUploadServerContactsTask() {
         if (Settings.ENABLE_SERVER_CONTACT_SYNC) {
-            newState(State.UPDATING_SERVER_CONTACTS);
-            startProcessor(mProcessorFactory.create(ProcessorFactory.UPLOAD_SERVER_CONTACTS, this, mDb));
-            return true;
+            return new SyncTask(ProcessorFactory.UPLOAD_SERVER_CONTACTS,
+                    State.UPDATING_SERVER_CONTACTS);
         }
-        else
-        	return false;
+        return null;
     }
 
     /**
@@ -1069,9 +1221,10 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     }
 
     /**
-     * Called by a processor when it has completed. Will move to the next task.
-     * When the active contact sync has totally finished, will complete any
-     * pending UI request.
+     * Called by a processor created with the engine as its callback when it has
+     * completed, such a processor is taken to be the first active processor.
+     * Will move to the next task. When the active contact sync has totally
+     * finished, will complete any pending UI request.
      * 
      * @param status Status of the sync from the processor, any error codes will
      *            stop the sync.
@@ -1083,22 +1236,35 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
      */
     @Override
     public void onProcessorComplete(ServiceStatus status, String failureList, Object data) {
-        if (mState == State.IDLE) {
-            return;
+        if (!mActiveTasks.isEmpty()) {
+            onTaskComplete(mActiveTasks.get(0), status, failureList);
         }
-        if (mActiveProcessor != null) {
-            mActiveProcessor.onComplete();
+    }
+
+    /**
+     * Called when one of the active processors has completed. Once all the
+     * processors started together have completed, moves to the next task.
+     * 
+     * @param task The processor task which has completed.
+     * @param status Status of the sync from the processor, any error codes will
+     *            stop the sync.
+     * @param failureList Contains a list of sync failure information.
+     */
+    private void onTaskComplete(SyncTask task, ServiceStatus status, String failureList) {
+        if (!mActiveTasks.remove(task) || mState == State.IDLE) {
+            return;
         }
-        mActiveProcessor = null;
+        task.mProcessor.onComplete();
         mFailureList += failureList;
         if (status != ServiceStatus.SUCCESS) {
-            LogUtils.logE("ContactSyncEngine.onProcessorComplete - Failed during " + mState
-                    + " with error " + status);
+            LogUtils.logE("ContactSyncEngine.onProcessorComplete - Failed during "
+                    + task.mTaskState + " with error " + status);
+            cancelTasks();
             completeSync(status);
             return;
         }
-        if (mDbChangedByProcessor) {
-            switch (mState) {
+        if (task.mDbChanged) {
+            switch (task.mTaskState) {
                 case FETCHING_NATIVE_CONTACTS:
                     mServerSyncRequired = true;
                     break;
@@ -1113,6 +1279,13 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
                     break;
             }
         }
+        if (!mActiveTasks.isEmpty()) {
+            // Wait for the processors started together with this one
+            final State lastState = mLastState;
+            newState(mActiveTasks.get(mActiveTasks.size() - 1).mTaskState);
+            mLastState = lastState;
+            return;
+        }
         switch (mMode) {
             case FULL_SYNC_FIRST_TIME:
                 nextTaskFullSyncFirstTime();
@@ -1135,6 +1308,17 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
         }
     }
 
+    /**
+     * Cancels all the active processors without moving to the next task.
+     */
+    private void cancelTasks() {
+        while (!mActiveTasks.isEmpty()) {
+            final SyncTask task = mActiveTasks.remove(mActiveTasks.size() - 1);
+            task.mProcessor.cancel();
+            task.mProcessor.onComplete();
+        }
+    }
+
     /**
      * Moves to the next state for the full sync first time mode, and runs the
      * appropriate processor. Completes the UI request when the sync is complete
@@ -1144,22 +1328,31 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
         
         switch (mState) {
             case IDLE:
-                if (startFetchNativeContacts(true)) { 
+                mFirstTimeUploadStarted = false;
+                // The server contacts are downloaded while the native
+                // contacts are imported, neither depends on the other
+                if (startProcessors(newDownloadServerContactsTask(),
+                        newFetchNativeContactsTask(true))) { 
                     return;
                 }
                 // Fall through
+            case FETCHING_SERVER_CONTACTS:
             case FETCHING_NATIVE_CONTACTS:
-                setFirstTimeNativeSyncComplete(true);
-                if (startUploadServerContacts()) {
-                    return; 
+                if (!mFirstTimeUploadStarted) {
+                    mFirstTimeUploadStarted = true;
+                    setFirstTimeNativeSyncComplete(true);
+                    if (startProcessors(newUploadServerContactsTask())) {
+                        return; 
+                    }
                 }
                 // Fall through
             case UPDATING_SERVER_CONTACTS:
-                if (startDownloadServerContacts()) {
+                // Download again after the upload to get the changes the
+                // server made while merging the uploaded contacts
+                if (mState == State.UPDATING_SERVER_CONTACTS
+                        && startProcessors(newDownloadServerContactsTask())) {
                     return;
                 }
-                // Fall through
-            case FETCHING_SERVER_CONTACTS:
                 mThumbnailSyncRequired = true;
                 mLastServerSyncTime = System.currentTimeMillis();
                 setFirstTimeSyncComplete(true);
@@ -1180,12 +1373,12 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     private void nextTaskServerSync() {
         switch (mState) {
             case IDLE:
-                if (startUploadServerContacts()) {
+                if (startProcessors(newUploadServerContactsTask())) {
                     return;
                 }
                 // Fall through
             case UPDATING_SERVER_CONTACTS:
-                if (startDownloadServerContacts()) {
+                if (startProcessors(newDownloadServerContactsTask())) {
                     return;
                 }
                 // Fall through
@@ -1212,12 +1405,12 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     private void nextTaskFetchNativeContacts() {
         switch (mState) {
             case IDLE:
-                if (startFetchNativeContacts(false)) {
+                if (startProcessors(newFetchNativeContactsTask(false))) {
                     return;
                 }
                 // Fall through
             case FETCHING_NATIVE_CONTACTS:
-                if (startUploadServerContacts()) {
+                if (startProcessors(newUploadServerContactsTask())) {
                     return;
                 }
                 // Fall through
@@ -1239,7 +1432,7 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     private void nextTaskUpdateNativeContacts() {
         switch (mState) {
             case IDLE:
-                if (startUpdateNativeContacts()) {
+                if (startProcessors(newUpdateNativeContactsTask())) {
                     return;
                 }
                 // Fall through
@@ -1311,7 +1504,7 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
             mDb.fireDatabaseChangedEvent(DatabaseChangeType.CONTACTS, true);
             mDatabaseChanged = false;
         }
-        mActiveProcessor = null;
+        mActiveTasks.clear();
         
         newState(State.IDLE);
         
@@ -1362,13 +1555,24 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     }
 
     /**
-     * Called by the active processor to indicate that the NowPlus database has
-     * changed.
+     * Called by the first active processor to indicate that the NowPlus
+     * database has changed.
      */
     @Override
     public void onDatabaseChanged() {
+        if (!mActiveTasks.isEmpty()) {
+            mActiveTasks.get(0).onDatabaseChanged();
+        } else {
+            notifyDatabaseChanged();
+        }
+    }
+
+    /**
+     * Sends a database change event to the UI, unless one has been sent
+     * recently.
+     */
+    private void notifyDatabaseChanged() {
         mDatabaseChanged = true;
-        mDbChangedByProcessor = true;
         final long currentTime = System.nanoTime();
         if (mLastDbUpdateTime == null
                 || mLastDbUpdateTime.longValue() + UI_REFRESH_WAIT_TIME_NANO < currentTime) {
@@ -1391,23 +1595,42 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
     }
 
     /**
-     * Used by active processor to set a timeout.
+     * Used by the first active processor to set a timeout, or by the engine
+     * when no processor is active.
      * 
      * @param timeout Timeout value based on current time in milliseconds
      */
     @Override
     public void setTimeout(long timeout) {
-        super.setTimeout(timeout);
+        if (!mActiveTasks.isEmpty()) {
+            mActiveTasks.get(0).setTimeout(timeout);
+        } else {
+            super.setTimeout(timeout);
+        }
     }
 
     /**
-     * Used by active processor to set the current progress.
+     * Used by the first active processor to set the current progress.
      * 
      * @param SyncStatus Status of the processor, must not be NULL.
      * @throws InvalidParameterException when SyncStatus is NULL.
      */
     @Override
     public void setSyncStatus(final SyncStatus syncStatus) {
+        if (!mActiveTasks.isEmpty()) {
+            mActiveTasks.get(0).setSyncStatus(syncStatus);
+        } else {
+            publishSyncStatus(syncStatus);
+        }
+    }
+
+    /**
+     * Makes the progress of a processor available to the UI.
+     * 
+     * @param SyncStatus Status of the processor, must not be NULL.
+     * @throws InvalidParameterException when SyncStatus is NULL.
+     */
+    private void publishSyncStatus(final SyncStatus syncStatus) {
         if (syncStatus == null) {
             throw new InvalidParameterException(
                     "ContactSyncEngine.setSyncStatus() SyncStatus cannot be NULL");
@@ -1418,13 +1641,6 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
 
         mCache.setSyncStatus(syncStatus);
         mUiAgent.sendUnsolicitedUiEvent(ServiceUiRequest.UPDATE_SYNC_STATE, null);
-
-        if (mState != State.IDLE && syncStatus.getProgress() != mCurrentProgressPercent) {
-            mCurrentProgressPercent = syncStatus.getProgress();
-            LogUtils.logI("ContactSyncEngine: Task " + mState + " is " + syncStatus.getProgress()
-                    + "% complete");
-            fireProgressEvent(mState, syncStatus.getProgress());
-        }
     }
 
     /**
@@ -1601,7 +1817,7 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
             mFailureList = null;
             mDatabaseChanged = false;
             mLastDbUpdateTime = 0L;
-            mActiveProcessor = null;
+            mActiveTasks.clear();
             mServerSyncTimeout = null;
             mFetchNativeSyncTimeout = null;
             mUpdateNativeSyncTimeout = null;
@@ -1613,8 +1829,6 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
             mNativeFetchSyncRequired = false;
             mNativeUpdateSyncRequired = false;
             mThumbnailSyncRequired = false;
-            mCurrentProgressPercent = 0;
-            mDbChangedByProcessor = false;
             mActiveUiRequestBackup = null;
             
             ApplicationCache.setSyncBusy(false);
@@ -1687,8 +1901,8 @@ public class ContactSyncEngine extends BaseEngine implements IContactSyncCallbac
             // Remove any stale responses from response queue.
             ResponseQueue.getInstance().clearResponseQueue();
     	    
-            // Set active processor to null.
-            mActiveProcessor = null;
+            // Forget the active processors.
+            mActiveTasks.clear();
         }
     }
    
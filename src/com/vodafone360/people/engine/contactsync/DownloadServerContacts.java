@@ -72,21 +72,24 @@ public class DownloadServerContacts extends BaseSyncProcessor {
 
     /**
      * The maximum number of contacts that should be sent by the server for each
-     * page request.
+     * page request when nothing is known about the connection yet. Pages are
+     * never made smaller than this.
      */
     protected static final int MAX_DOWN_PAGE_SIZE = 25;
 
     /**
-     * The number of pages that should be requested in a single RPG request
-     * (using batching).
+     * Initial number of database updates for each engine run (to ensure the
+     * processor doesn't block the worker thread for too long). The number
+     * grows while runs take less than
+     * {@link Settings#CONTACT_DOWNLOAD_RUN_TIME_MS}.
      */
-    private static final int MAX_PAGES_PER_BATCH = 1;
+    private static final int MAX_CONTACT_CHANGES_PER_PAGE = 5;
 
     /**
-     * Maximum number of database updates for each engine run (to ensure the
-     * processor doesn't block the worker thread for too long).
+     * Weight (out of AVERAGE_WEIGHT + 1) of the previous average when a new
+     * round trip or apply time is measured.
      */
-    private static final int MAX_CONTACT_CHANGES_PER_PAGE = 5;
+    private static final int AVERAGE_WEIGHT = 7;
 
     /**
      * Timeout between each run of the engine. Normally set to 0 to ensure the
@@ -122,20 +125,74 @@ public class DownloadServerContacts extends BaseSyncProcessor {
     private Integer mTotalNoOfPages = null;
 
     /**
-     * First page number requested in the batch. The remaining page numbers will
-     * follow from this sequentially.
+     * Maximum number of contacts sent by the server for each page of the
+     * current download.
+     */
+    private int mPageSize;
+
+    /**
+     * Page size used by the next download of this processor. The server
+     * numbers the pages of a download by page size, so it is only adapted to
+     * the round trip times measured once a download has finished.
+     */
+    private int mNextPageSize = MAX_DOWN_PAGE_SIZE;
+
+    /**
+     * Number of the next page to request from the server.
+     */
+    private int mNextRequestPageNo;
+
+    /**
+     * Number of the next page to apply to the database. Pages are applied in
+     * order whatever order they are received in.
+     */
+    private int mNextApplyPageNo;
+
+    /**
+     * Pages received from the server which have not been applied yet, keyed
+     * by page number.
+     */
+    private final Map<Integer, ContactChanges> mReceivedPages = new HashMap<Integer, ContactChanges>();
+
+    /**
+     * Time (from System.nanoTime()) at which each outstanding page request was
+     * sent, keyed by request ID.
+     */
+    private final Map<Integer, Long> mPageReqTimes = new HashMap<Integer, Long>();
+
+    /**
+     * Maximum number of pages which are either requested or received but not
+     * applied yet.
      */
-    private int mBatchFirstPageNo;
+    private int mWindowSize;
 
     /**
-     * Total number of pages requested by batch.
+     * Average round trip time of a page request in milliseconds, -1 until the
+     * first page is received.
      */
-    private int mBatchNoOfPages;
+    private long mAverageRttMs;
 
     /**
-     * Number of pages received so far from the batch
+     * Average time taken to apply a page to the database in milliseconds, -1
+     * until the first page is applied.
      */
-    private int mBatchPageReceivedCount;
+    private long mAverageApplyMs;
+
+    /**
+     * Set to true while a page is being applied to the database over several
+     * engine runs.
+     */
+    private boolean mApplyingPage;
+
+    /**
+     * Time in nanoseconds spent so far applying the current page.
+     */
+    private long mPageApplyTime;
+
+    /**
+     * Number of modified contacts processed in each engine run.
+     */
+    private int mContactChangesPerRun;
 
     /**
      * Total number of pages done (used with {@link #mTotalNoOfPages} for
@@ -201,7 +258,7 @@ public class DownloadServerContacts extends BaseSyncProcessor {
     private final ArrayList<ContactDetail> mDeleteDetailList = new ArrayList<ContactDetail>();
 
     /**
-     * Maintains all the request IDs when sending a batch of requests.
+     * Maps the request ID of each outstanding page request to its page number.
      */
     protected final Map<Integer, Integer> mPageReqIds = new HashMap<Integer, Integer>();
 
@@ -226,7 +283,8 @@ public class DownloadServerContacts extends BaseSyncProcessor {
     private long mDbSyncTime = 0;
 
     /**
-     * Set to true when there are no more pages to fetch from the server.
+     * Set to true when the last page has been passed to
+     * {@link #syncContactChangesPage(ContactChanges)}.
      */
     private boolean mIsComplete;
 
@@ -270,9 +328,19 @@ public class DownloadServerContacts extends BaseSyncProcessor {
         }
         mToRevision = -1; // Sync with head revision
         mTotalNoOfPages = null;
-        mBatchNoOfPages = 1;
-        mBatchFirstPageNo = 0;
-        mBatchPageReceivedCount = 0;
+        mLastPageSize = -1;
+        mPageSize = mNextPageSize;
+        mNextRequestPageNo = 0;
+        mNextApplyPageNo = 0;
+        mReceivedPages.clear();
+        mPageReqIds.clear();
+        mPageReqTimes.clear();
+        mWindowSize = Settings.CONTACT_DOWNLOAD_INITIAL_WINDOW;
+        mAverageRttMs = -1;
+        mAverageApplyMs = -1;
+        mApplyingPage = false;
+        mPageApplyTime = 0;
+        mContactChangesPerRun = MAX_CONTACT_CHANGES_PER_PAGE;
         mDbSyncTime = 0;
         mNoOfPagesDone = 0;
         mTotalContactsAdded = 0;
@@ -297,35 +365,44 @@ public class DownloadServerContacts extends BaseSyncProcessor {
         }
         mInternalState = InternalState.FETCHING_FIRST_PAGE;
         LogUtils.logD("DownloadServerContacts.fetchFirstBatch - from rev " + mFromRevision
-                + ", to rev " + mToRevision + ", page size " + MAX_DOWN_PAGE_SIZE);
-        int reqId = Contacts.getContactsChanges(getEngine(), 0, MAX_DOWN_PAGE_SIZE, mFromRevision
+                + ", to rev " + mToRevision + ", page size " + mPageSize);
+        int reqId = Contacts.getContactsChanges(getEngine(), 0, mPageSize, mFromRevision
                 .longValue(), mToRevision.longValue(), false);
         setReqId(reqId);
+        mPageReqTimes.put(reqId, System.nanoTime());
+        mNextRequestPageNo = 1;
         return ServiceStatus.SUCCESS;
     }
 
     /**
-     * Requests the next batch of contact change pages from the server
+     * Requests further contact change pages from the server, so that up to
+     * {@link #mWindowSize} pages are either outstanding or waiting to be
+     * applied.
      * 
      * @return SUCCESS or a suitable error code
      */
     private ServiceStatus fetchNextBatch() {
-        mBatchNoOfPages = Math.min(mTotalNoOfPages - mBatchFirstPageNo, MAX_PAGES_PER_BATCH);
-        if (mBatchNoOfPages == 0) {
+        if (mNextRequestPageNo >= mTotalNoOfPages
+                || mPageReqIds.size() + mReceivedPages.size() >= mWindowSize) {
             return ServiceStatus.SUCCESS;
         }
-        mBatchPageReceivedCount = 0;
         if (NetworkAgent.getAgentState() != NetworkAgent.AgentState.CONNECTED) {
             return NetworkAgent.getServiceStatusfromDisconnectReason();
         }
 
-        mPageReqIds.clear();
         LogUtils.logD("DownloadServerContacts.fetchNextBatch - from rev " + mFromRevision
-                + ", to rev " + mToRevision + ", page size " + MAX_DOWN_PAGE_SIZE);
-        for (int i = 0; i < mBatchNoOfPages; i++) {
-            int reqId = Contacts.getContactsChanges(getEngine(), i + mBatchFirstPageNo,
-                    MAX_DOWN_PAGE_SIZE, mFromRevision.longValue(), mToRevision.longValue(), true);
-            mPageReqIds.put(reqId, i + mBatchFirstPageNo);
+                + ", to rev " + mToRevision + ", page size " + mPageSize + ", window "
+                + mWindowSize);
+        while (mNextRequestPageNo < mTotalNoOfPages
+                && mPageReqIds.size() + mReceivedPages.size() < mWindowSize) {
+            int reqId = Contacts.getContactsChanges(getEngine(), mNextRequestPageNo, mPageSize,
+                    mFromRevision.longValue(), mToRevision.longValue(), true);
+            if (reqId == -1) {
+                return ServiceStatus.ERROR_COMMS;
+            }
+            mPageReqIds.put(reqId, mNextRequestPageNo);
+            mPageReqTimes.put(reqId, System.nanoTime());
+            mNextRequestPageNo++;
         }
         // AA: see if we can do that inside the Queue
         QueueManager.getInstance().fireQueueStateChanged();
@@ -344,8 +421,8 @@ public class DownloadServerContacts extends BaseSyncProcessor {
     /**
      * Called by framework when a response is received from the server. In case
      * of the first page this will only be called if the request ID matches.
-     * Processes the page and if the page is the last one in the batch, sends a
-     * new batch of requests to the server.
+     * Keeps the page until all the pages before it have been applied, and
+     * requests more pages if the window allows it.
      * 
      * @param response from server
      */
@@ -359,6 +436,7 @@ public class DownloadServerContacts extends BaseSyncProcessor {
                 return;
             }
         }
+        updateRoundTripTime(mPageReqTimes.remove(resp.mReqId));
         LogUtils.logD("DownloadServerContacts.processCommsResponse() - Page " + pageNo);
         ServiceStatus status = BaseEngine.getResponseStatus(BaseDataType.CONTACT_CHANGES_DATA_TYPE,
                 resp.mDataTypes);
@@ -372,50 +450,204 @@ public class DownloadServerContacts extends BaseSyncProcessor {
                 LogUtils.logW("DownloadServerContacts.processCommsResponse - Changes = "
                         + contactChanges);
             }
-            mBatchPageReceivedCount++;
-            if (mBatchPageReceivedCount == mBatchNoOfPages) {
-                mLastPageSize = contactChanges.mContacts.size();
-                
-                // Page batch is now complete
-                if (mInternalState == InternalState.FETCHING_FIRST_PAGE) {
-                    mTotalNoOfPages = contactChanges.mNumberOfPages;
-                    mToRevision = contactChanges.mVersionAnchor;
-                    mInternalState = InternalState.FETCHING_NEXT_BATCH;
-                }
-                mBatchFirstPageNo += mBatchNoOfPages;
+            if (mInternalState == InternalState.FETCHING_FIRST_PAGE) {
+                mTotalNoOfPages = contactChanges.mNumberOfPages;
+                mToRevision = contactChanges.mVersionAnchor;
+                mInternalState = InternalState.FETCHING_NEXT_BATCH;
                 if (mTotalNoOfPages == null || mToRevision == null) {
                     complete(ServiceStatus.ERROR_COMMS_BAD_RESPONSE);
                     return;
                 }
-                if (mBatchFirstPageNo < mTotalNoOfPages.intValue()) {
-                    status = fetchNextBatch();
-                    if (ServiceStatus.SUCCESS != status) {
-                        complete(status);
-                        return;
-                    }
-                } else {
-                    mIsComplete = true;
-                }
             }
-            
-  
-            
-            status = syncContactChangesPage(contactChanges);
+            if (pageNo == mTotalNoOfPages.intValue() - 1) {
+                mLastPageSize = contactChanges.mContacts.size();
+            }
+            mReceivedPages.put(pageNo, contactChanges);
+
+            status = fetchNextBatch();
+            if (ServiceStatus.SUCCESS != status) {
+                complete(status);
+                return;
+            }
+            if (!mApplyingPage) {
+                applyNextPages();
+            }
+            return;
+        }
+        complete(status);
+    }
+
+    /**
+     * Applies the received pages which follow the last page applied, in page
+     * order. Stops at the first page which needs further engine runs to be
+     * applied ({@link #onTimeoutEvent()} continues from there) or when the
+     * next page has not been received yet ({@link #processCommsResponse}
+     * continues from there). Completes the download after the last page.
+     */
+    private void applyNextPages() {
+        ContactChanges contactChanges;
+        while ((contactChanges = mReceivedPages.remove(mNextApplyPageNo)) != null) {
+            final long startTime = System.nanoTime();
+            mApplyingPage = true;
+            mNextApplyPageNo++;
+            mIsComplete = (mNextApplyPageNo >= mTotalNoOfPages.intValue());
+            ServiceStatus status = syncContactChangesPage(contactChanges);
             mNoOfPagesDone++;
-            LogUtils.logI("DownloadServerContacts.processCommsResponse() - Contact changes page "
-                    + mNoOfPagesDone + "/" + mTotalNoOfPages + " received, no of contacts = "
+            LogUtils.logI("DownloadServerContacts.applyNextPages() - Contact changes page "
+                    + mNoOfPagesDone + "/" + mTotalNoOfPages + " applied, no of contacts = "
                     + contactChanges.mContacts.size());
             if (ServiceStatus.SUCCESS != status) {
-                LogUtils.logE("DownloadServerContacts.processCommsResponse() - Error syncing page: " + status);
+                LogUtils.logE("DownloadServerContacts.applyNextPages() - Error syncing page: " + status);
+                complete(status);
+                return;
+            }
+            // The page has left the window
+            status = fetchNextBatch();
+            if (ServiceStatus.SUCCESS != status) {
                 complete(status);
                 return;
             }
-            if (mIsComplete && mContactsChangedList.size() == 0 && !mSyncDataPending) {
-                downloadSyncSuccessful();
+            mPageApplyTime = System.nanoTime() - startTime;
+            if (mContactsChangedList.size() > 0 || mSyncDataPending) {
+                return;
+            }
+            status = onPageApplied();
+            if (ServiceStatus.SUCCESS != status) {
+                complete(status);
+                return;
+            }
+        }
+        if (mIsComplete) {
+            downloadSyncSuccessful();
+        }
+    }
+
+    /**
+     * Continues applying the current page to the database and moves on to the
+     * next pages once it is done.
+     */
+    private void applyPendingChanges() {
+        final long startTime = System.nanoTime();
+        final boolean busy = applyPageChanges();
+        mPageApplyTime += System.nanoTime() - startTime;
+        if (!busy) {
+            ServiceStatus status = onPageApplied();
+            if (ServiceStatus.SUCCESS != status) {
+                complete(status);
+                return;
+            }
+            applyNextPages();
+        }
+    }
+
+    /**
+     * Writes the next part of the current page to the database.
+     * 
+     * @return true if a timeout has been set to write the rest of the page (or
+     *         the processor has completed with an error), false if the page
+     *         has been fully written.
+     */
+    private boolean applyPageChanges() {
+        if (mContactsChangedList.size() > 0) {
+            processContactChangesNextPage();
+            return true;
+        }
+        if (mSyncDataPending) {
+            if (addContactList() || modifyContactList() || deleteContactList()
+                    || addDetailList() || modifyDetailList() || deleteDetailList()) {
+                setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
+                return true;
             }
+            mSyncDataPending = false;
+        }
+        return false;
+    }
+
+    /**
+     * Records the time taken to apply the page which has just been written to
+     * the database, and requests more pages if the window has grown.
+     * 
+     * @return SUCCESS or a suitable error code
+     */
+    private ServiceStatus onPageApplied() {
+        if (!mApplyingPage) {
+            return ServiceStatus.SUCCESS;
+        }
+        mApplyingPage = false;
+        mAverageApplyMs = average(mAverageApplyMs, mPageApplyTime / NANOSECONDS_IN_MS);
+        updateWindowSize();
+        return fetchNextBatch();
+    }
+
+    /**
+     * Records the round trip time of a page request.
+     * 
+     * @param sendTime Time the request was sent (from System.nanoTime()), or
+     *            null if not known.
+     */
+    private void updateRoundTripTime(Long sendTime) {
+        if (sendTime == null) {
             return;
         }
-        complete(status);
+        mAverageRttMs = average(mAverageRttMs, (System.nanoTime() - sendTime) / NANOSECONDS_IN_MS);
+        updateWindowSize();
+    }
+
+    /**
+     * Sizes the window from the average round trip and apply times, once
+     * both are known.
+     */
+    private void updateWindowSize() {
+        if (mAverageRttMs < 0 || mAverageApplyMs < 0) {
+            return;
+        }
+        mWindowSize = calculateWindowSize(mAverageRttMs, mAverageApplyMs);
+    }
+
+    /**
+     * Calculates a window so that the pages requested while one page is
+     * being applied arrive before they are needed: one page is applied per
+     * averageApplyMs and each takes averageRttMs to arrive.
+     * 
+     * @param averageRttMs Average round trip time of a page request
+     * @param averageApplyMs Average time taken to apply a page
+     * @return The number of pages to keep requested or waiting to be applied,
+     *         between 1 and {@link Settings#CONTACT_DOWNLOAD_MAX_WINDOW}
+     */
+    protected int calculateWindowSize(long averageRttMs, long averageApplyMs) {
+        final long windowSize = 1 + averageRttMs / Math.max(averageApplyMs, 1);
+        return (int)Math.min(windowSize, Settings.CONTACT_DOWNLOAD_MAX_WINDOW);
+    }
+
+    /**
+     * Chooses the page size of the next download. Pages are made bigger while
+     * they come back quickly, and smaller when they take longer than
+     * {@link Settings#CONTACT_DOWNLOAD_TARGET_RTT_MS}.
+     */
+    private void updatePageSize() {
+        if (mAverageRttMs < 0 || mTotalNoOfPages == null || mTotalNoOfPages.intValue() < 2) {
+            // Not enough full pages to tell
+            return;
+        }
+        if (mAverageRttMs < Settings.CONTACT_DOWNLOAD_TARGET_RTT_MS / 2) {
+            mNextPageSize = Math.min(mPageSize * 2, Settings.CONTACT_DOWNLOAD_MAX_PAGE_SIZE);
+        } else if (mAverageRttMs > Settings.CONTACT_DOWNLOAD_TARGET_RTT_MS) {
+            mNextPageSize = Math.max(mPageSize / 2, MAX_DOWN_PAGE_SIZE);
+        }
+    }
+
+    /**
+     * Adds a measurement to a running average.
+     * 
+     * @param average The current average, negative if there is none yet.
+     * @param value The value measured.
+     * @return The new average.
+     */
+    private static long average(long average, long value) {
+        if (average < 0) {
+            return value;
+        }
+        return (average * AVERAGE_WEIGHT + value) / (AVERAGE_WEIGHT + 1);
     }
     
     /***
@@ -439,16 +671,16 @@ public class DownloadServerContacts extends BaseSyncProcessor {
             }
         }
 
-        int totalNumberOfContacts = ((mTotalNoOfPages*10)-1)*MAX_DOWN_PAGE_SIZE/10;    
+        int totalNumberOfContacts = ((mTotalNoOfPages*10)-1)*mPageSize/10;    
         if (mLastPageSize != -1) {
-            totalNumberOfContacts = (mTotalNoOfPages-1) * MAX_DOWN_PAGE_SIZE + mLastPageSize;
+            totalNumberOfContacts = (mTotalNoOfPages-1) * mPageSize + mLastPageSize;
         }
 
-        int progress = (incOfCurrentPage + (mNoOfPagesDone * MAX_DOWN_PAGE_SIZE))*100 / totalNumberOfContacts;
+        int progress = (incOfCurrentPage + (mNoOfPagesDone * mPageSize))*100 / totalNumberOfContacts;
         setSyncStatus(new SyncStatus(progress, name,
                 Task.DOWNLOAD_SERVER_CONTACTS,
                 TaskStatus.RECEIVED_CONTACTS,
-                incOfCurrentPage + mNoOfPagesDone * MAX_DOWN_PAGE_SIZE,
+                incOfCurrentPage + mNoOfPagesDone * mPageSize,
                 totalNumberOfContacts));
     }
 
@@ -514,7 +746,8 @@ public class DownloadServerContacts extends BaseSyncProcessor {
      * {@link #mContactsChangedList}.
      */
     private void processContactChangesNextPage() {
-        final int count = Math.min(mContactsChangedList.size(), MAX_CONTACT_CHANGES_PER_PAGE);
+        final int count = Math.min(mContactsChangedList.size(), mContactChangesPerRun);
+        final long runStartTime = System.nanoTime();
         for (int i = 0; i < count; i++) {
             final Contact srcContact = mContactsChangedList.get(0);
             mContactsChangedList.remove(0);
@@ -538,13 +771,14 @@ public class DownloadServerContacts extends BaseSyncProcessor {
                 return;
             }
         }
-        if (mContactsChangedList.size() == 0 && !mSyncDataPending) {
-            if (mIsComplete) {
-                downloadSyncSuccessful();
-            }
-            return;
+        final long runTimeMs = (System.nanoTime() - runStartTime) / NANOSECONDS_IN_MS;
+        if (runTimeMs > Settings.CONTACT_DOWNLOAD_RUN_TIME_MS) {
+            mContactChangesPerRun = Math.max(mContactChangesPerRun / 2,
+                    MAX_CONTACT_CHANGES_PER_PAGE);
+        } else if (count == mContactChangesPerRun
+                && runTimeMs < Settings.CONTACT_DOWNLOAD_RUN_TIME_MS / 2) {
+            mContactChangesPerRun = Math.min(mContactChangesPerRun * 2, mPageSize);
         }
-
         setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
     }
 
@@ -739,42 +973,7 @@ public class DownloadServerContacts extends BaseSyncProcessor {
                 break;
             case FETCHING_FIRST_PAGE:
             case FETCHING_NEXT_BATCH:
-                if (mContactsChangedList.size() > 0) {
-                    processContactChangesNextPage();
-                    return;
-                }
-                if (mSyncDataPending) {
-                    if (addContactList()) {
-                        setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
-                        return;
-                    }
-                    if (modifyContactList()) {
-                        setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
-                        return;
-                    }
-                    if (deleteContactList()) {
-                        setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
-                        return;
-                    }
-                    if (addDetailList()) {
-                        setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
-                        return;
-                    }
-                    if (modifyDetailList()) {
-                        setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
-                        return;
-                    }
-                    if (deleteDetailList()) {
-                        setTimeout(TIMEOUT_BETWEEN_PAGES_MS);
-                        return;
-                    }
-
-                    mSyncDataPending = false;
-                    if (mIsComplete) {
-                        downloadSyncSuccessful();
-                        return;
-                    }
-                }
+                applyPendingChanges();
                 break;
             default:
                 // do nothing.
@@ -961,8 +1160,49 @@ public class DownloadServerContacts extends BaseSyncProcessor {
     private void downloadSyncSuccessful() {
         LogUtils.logI("DownloadServerContacts.downloadSyncSuccessful() - Total DB access time = "
                 + (mDbSyncTime / NANOSECONDS_IN_MS) + "ms, no of contacts added = "
-                + mTotalContactsAdded);
+                + mTotalContactsAdded + ", average page round trip = " + mAverageRttMs
+                + "ms, page size = " + mPageSize);
+        updatePageSize();
         StateTable.modifyContactRevision(mToRevision, mDb.getWritableDatabase());
         complete(ServiceStatus.SUCCESS);
     }
+
+    /**
+     * Returns the maximum number of contacts the server sends per page in the
+     * current download.
+     * 
+     * @return The page size.
+     */
+    protected int getPageSize() {
+        return mPageSize;
+    }
+
+    /**
+     * Returns the maximum number of pages which are either requested or
+     * received but not applied yet.
+     * 
+     * @return The window size.
+     */
+    protected int getWindowSize() {
+        return mWindowSize;
+    }
+
+    /**
+     * Returns the number of the next page to apply to the database.
+     * 
+     * @return The page number.
+     */
+    protected int getNextApplyPageNo() {
+        return mNextApplyPageNo;
+    }
+
+    /**
+     * Returns the number of pages received which are waiting for an earlier
+     * page before they can be applied.
+     * 
+     * @return The number of pages.
+     */
+    protected int getReceivedPageCount() {
+        return mReceivedPages.size();
+    }
 }
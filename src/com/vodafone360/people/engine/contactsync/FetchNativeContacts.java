@@ -70,7 +70,7 @@ public class FetchNativeContacts extends BaseSyncProcessor {
 
     @Override
     protected void doCancel() {
-        
+        mNativeImporter.cancel();
     }
 
     @Override
@@ -26,6 +26,7 @@
 package com.vodafone360.people.engine.contactsync;
 
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 
 import android.content.ContentResolver;
 import android.content.Context;
@@ -360,6 +361,52 @@ public abstract class NativeContactsApi {
      */
     public abstract ContactChange[] getContact(long nabContactId);
 
+    /**
+     * Reads the data of several contacts one after the other, see
+     * {@link NativeContactsApi#openContactReader(long, long)}.
+     */
+    public static interface ContactReader {
+        /**
+         * Gets data for one Contact. The IDs have to be requested in ascending
+         * order.
+         * 
+         * @param nabContactId Native ID for the contact
+         * @return A {@link ContactChange} array with contact's data or null
+         */
+        ContactChange[] getContact(long nabContactId);
+
+        /**
+         * Releases the resources held by the reader, it cannot be used
+         * afterwards.
+         */
+        void close();
+    }
+
+    /**
+     * Opens a reader to get the data of the contacts whose native IDs are
+     * within the given range, in ascending ID order. Meant for reading the
+     * whole address book, {@link #getContact(long)} should be used to read
+     * single contacts. This implementation reads each contact with
+     * {@link #getContact(long)}.
+     * 
+     * @param firstNabContactId The lowest native ID which will be requested
+     * @param lastNabContactId The highest native ID which will be requested
+     * @return The reader, to be closed once finished with
+     */
+    public ContactReader openContactReader(long firstNabContactId, long lastNabContactId) {
+        return new ContactReader() {
+            @Override
+            public ContactChange[] getContact(long nabContactId) {
+                return NativeContactsApi.this.getContact(nabContactId);
+            }
+
+            @Override
+            public void close() {
+                // Nothing to release
+            }
+        };
+    }
+
     /**
      * Adds a contact. Note that the returned ID data will be the same size of
      * ccList plus one change containing the NAB Contact ID (at the first
@@ -394,6 +441,106 @@ public abstract class NativeContactsApi {
      * @param nabContactId Native ID of the contact to remove
      */
     public abstract void removeContact(long nabContactId);
+
+    /**
+     * Writes several contacts to the native address book, see
+     * {@link NativeContactsApi#openContactWriter()}. Contacts are written in
+     * the order they are given but may only be stored when the writer is
+     * executed.
+     */
+    public static interface ContactWriter {
+        /**
+         * Adds a contact, see
+         * {@link NativeContactsApi#addContact(Account, ContactChange[])}.
+         * 
+         * @param account Account to be associated with the added contact
+         * @param ccList The Contact data as a {@link ContactChange} array
+         */
+        void addContact(Account account, ContactChange[] ccList);
+
+        /**
+         * Updates a contact, see
+         * {@link NativeContactsApi#updateContact(ContactChange[])}.
+         * 
+         * @param ccList The Contact data as a {@link ContactChange} array
+         */
+        void updateContact(ContactChange[] ccList);
+
+        /**
+         * Removes a contact.
+         * 
+         * @param nabContactId Native ID of the contact to remove
+         */
+        void removeContact(long nabContactId);
+
+        /**
+         * Tells if enough contacts have been written for the writer to be
+         * executed.
+         * 
+         * @return true if the writer should be executed before writing more
+         *         contacts
+         */
+        boolean isFull();
+
+        /**
+         * Stores the contacts written since the last execution.
+         * 
+         * @return For each contact written, in the same order, the IDs array
+         *         returned by addContact() or updateContact() or null if the
+         *         contact was removed
+         */
+        ContactChange[][] execute();
+    }
+
+    /**
+     * Number of contacts after which the writer returned by
+     * {@link #openContactWriter()} is full.
+     */
+    private static final int MAX_WRITER_CONTACT_COUNT = 2;
+
+    /**
+     * Opens a writer to add, update and remove many contacts. Only one writer
+     * may be used at a time and no other contact may be written until it has
+     * been executed. This implementation writes each contact immediately with
+     * {@link #addContact(Account, ContactChange[])},
+     * {@link #updateContact(ContactChange[])} or {@link #removeContact(long)}.
+     * 
+     * @return The writer
+     */
+    public ContactWriter openContactWriter() {
+        return new ContactWriter() {
+            private final ArrayList<ContactChange[]> mIdChangeLists = new ArrayList<ContactChange[]>();
+
+            @Override
+            public void addContact(Account account, ContactChange[] ccList) {
+                mIdChangeLists.add(NativeContactsApi.this.addContact(account, ccList));
+            }
+
+            @Override
+            public void updateContact(ContactChange[] ccList) {
+                mIdChangeLists.add(NativeContactsApi.this.updateContact(ccList));
+            }
+
+            @Override
+            public void removeContact(long nabContactId) {
+                NativeContactsApi.this.removeContact(nabContactId);
+                mIdChangeLists.add(null);
+            }
+
+            @Override
+            public boolean isFull() {
+                return mIdChangeLists.size() >= MAX_WRITER_CONTACT_COUNT;
+            }
+
+            @Override
+            public ContactChange[][] execute() {
+                final ContactChange[][] idChangeLists = mIdChangeLists
+                        .toArray(new ContactChange[mIdChangeLists.size()][]);
+                mIdChangeLists.clear();
+                return idChangeLists;
+            }
+        };
+    }
     
     /**
      * Used to retrieve the master Auto-sync setting for the system.
@@ -217,11 +217,221 @@ public class NativeContactsApi2 extends NativeContactsApi {
      */
     private boolean mYield = true;
 
+    /**
+     * Number of operations after which a {@link ContactWriter} batch is full.
+     * The batch has no yield points so it is applied in one transaction, and
+     * it stays well below the number of operations the provider accepts
+     * without one.
+     */
+    private static final int MAX_BATCH_OPERATIONS = 200;
+
     /**
      * Batch used for Contact Writing operations.
      */
     private BatchOperation mBatch = new BatchOperation();
 
+    /**
+     * Index in the batch of the operation inserting the raw contact which the
+     * new details refer to.
+     */
+    private int mRawContactOperationIndex = 0;
+
+    /**
+     * A contact written to the batch, with what is needed to get its new IDs
+     * from the results of the batch.
+     */
+    private static class PendingContact {
+        /**
+         * The changes written, null for a removed contact.
+         */
+        private final ContactChange[] mCcList;
+
+        /**
+         * TYPE_ADD_CONTACT, TYPE_UPDATE_CONTACT or TYPE_DELETE_CONTACT.
+         */
+        private final int mType;
+
+        /**
+         * Index in the batch of the first operation of the contact.
+         */
+        private final int mFirstOperation;
+
+        /**
+         * Number of operations of the contact in the batch.
+         */
+        private int mOperationCount = 0;
+
+        /**
+         * Index of the Organization in the changes, -1 if there is none.
+         */
+        private int mMarkedOrganizationIndex = -1;
+
+        /**
+         * Index of the Title in the changes, -1 if there is none.
+         */
+        private int mMarkedTitleIndex = -1;
+
+        /**
+         * NAB ID of the Organization detail which already existed when the
+         * contact was updated.
+         */
+        private long mExistingOrganizationId = ContactChange.INVALID_ID;
+
+        /**
+         * The account a new contact is added to.
+         */
+        private Account mAccount;
+
+        /**
+         * NAB ID of a removed contact.
+         */
+        private long mNabContactId = ContactChange.INVALID_ID;
+
+        private PendingContact(ContactChange[] ccList, int type, int firstOperation) {
+            mCcList = ccList;
+            mType = type;
+            mFirstOperation = firstOperation;
+        }
+    }
+
+    /**
+     * Writes contacts into a single batch which is applied at once. As the
+     * batch has no yield points it is either applied completely or not at
+     * all, in which case its contacts are written again one by one so a
+     * single bad contact does not fail the others.
+     */
+    private class BatchContactWriter implements ContactWriter {
+        /**
+         * The contacts written since the batch was last executed.
+         */
+        private final ArrayList<PendingContact> mContacts = new ArrayList<PendingContact>();
+
+        private BatchContactWriter() {
+            mBatch.clear();
+        }
+
+        /**
+         * @see ContactWriter#addContact(Account, ContactChange[])
+         */
+        @Override
+        public void addContact(Account account, ContactChange[] ccList) {
+            mContacts.add(addContactToBatch(account, ccList));
+        }
+
+        /**
+         * @see ContactWriter#updateContact(ContactChange[])
+         */
+        @Override
+        public void updateContact(ContactChange[] ccList) {
+            mContacts.add(updateContactToBatch(ccList));
+        }
+
+        /**
+         * @see ContactWriter#removeContact(long)
+         */
+        @Override
+        public void removeContact(long nabContactId) {
+            mContacts.add(removeContactToBatch(nabContactId));
+        }
+
+        /**
+         * Adds the operation removing a contact to the batch.
+         * 
+         * @param nabContactId The NAB ID of the contact to remove
+         * @return The contact written to the batch
+         */
+        private PendingContact removeContactToBatch(long nabContactId) {
+            final PendingContact contact = new PendingContact(null,
+                    ContactChange.TYPE_DELETE_CONTACT, mBatch.size());
+            contact.mNabContactId = nabContactId;
+            ContentProviderOperation.Builder builder = ContentProviderOperation.newDelete(
+                    addCallerIsSyncAdapterParameter(ContentUris.withAppendedId(
+                            RawContacts.CONTENT_URI, nabContactId)));
+            mBatch.add(builder.build());
+            contact.mOperationCount = 1;
+            return contact;
+        }
+
+        /**
+         * @see ContactWriter#isFull()
+         */
+        @Override
+        public boolean isFull() {
+            return mBatch.size() >= MAX_BATCH_OPERATIONS;
+        }
+
+        /**
+         * @see ContactWriter#execute()
+         */
+        @Override
+        public ContactChange[][] execute() {
+            final ContentProviderResult[] results = mBatch.execute();
+            final int count = mContacts.size();
+            final ContactChange[][] idChangeLists = new ContactChange[count][];
+            if (results == null && count > 1) {
+                LogUtils.logW("NativeContactsApi2.BatchContactWriter.execute() "
+                        + "the batch failed, writing its " + count + " contacts one by one");
+                for (int i = 0; i < count; i++) {
+                    idChangeLists[i] = executeSingle(mContacts.get(i));
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    idChangeLists[i] = getIds(mContacts.get(i), results);
+                }
+            }
+            mContacts.clear();
+
+            return idChangeLists;
+        }
+
+        /**
+         * Writes one contact of a failed batch in a batch of its own.
+         * 
+         * @param contact The contact to write again, may be null
+         * @return The new IDs of the contact, null if there are none or the
+         *         contact could not be written either
+         */
+        private ContactChange[] executeSingle(PendingContact contact) {
+            if (contact == null) {
+                return null;
+            }
+            mBatch.clear();
+            switch (contact.mType) {
+                case ContactChange.TYPE_ADD_CONTACT:
+                    contact = addContactToBatch(contact.mAccount, contact.mCcList);
+                    break;
+                case ContactChange.TYPE_UPDATE_CONTACT:
+                    contact = updateContactToBatch(contact.mCcList);
+                    break;
+                default:
+                    contact = removeContactToBatch(contact.mNabContactId);
+                    break;
+            }
+            return getIds(contact, mBatch.execute());
+        }
+
+        /**
+         * Gets the new IDs of a contact from the results of its batch.
+         * 
+         * @param contact The contact written to the batch, may be null
+         * @param results The results of the batch
+         * @return The new IDs of the contact, null if there are none
+         */
+        private ContactChange[] getIds(PendingContact contact, ContentProviderResult[] results) {
+            if (contact == null) {
+                return null;
+            }
+            switch (contact.mType) {
+                case ContactChange.TYPE_ADD_CONTACT:
+                    return getNewContactIds(contact, results);
+                case ContactChange.TYPE_UPDATE_CONTACT:
+                    return getUpdatedContactIds(contact, results);
+                default:
+                    return null;
+            }
+        }
+    }
+
     /**
      * Inner class for applying batches. TODO: Move to own class if batches
      * become supported in other areas
@@ -597,20 +807,131 @@ public class NativeContactsApi2 extends NativeContactsApi {
         return null;
     }
 
+    /**
+     * @see NativeContactsApi#openContactReader(long, long)
+     */
+    @Override
+    public ContactReader openContactReader(long firstNabContactId, long lastNabContactId) {
+        return new DataContactReader(firstNabContactId, lastNabContactId);
+    }
+
+    /**
+     * Reads contacts from a single query on the Data table sorted by raw
+     * contact ID, instead of one query per contact. Contacts of the range
+     * which are not requested (e.g. belonging to other accounts) are skipped.
+     */
+    private class DataContactReader implements ContactReader {
+        /**
+         * Cursor on the Data rows of the range, positioned on the first row
+         * which has not been read yet.
+         */
+        private Cursor mCursor;
+
+        /**
+         * Index of the raw contact ID column.
+         */
+        private int mRawContactIdIndex;
+
+        /**
+         * Last ID read from the cursor, IDs below it are read on their own.
+         */
+        private long mLastNabContactId = -1;
+
+        private DataContactReader(long firstNabContactId, long lastNabContactId) {
+            mCursor = mCr.query(Data.CONTENT_URI, null, Data.RAW_CONTACT_ID + ">=? AND "
+                    + Data.RAW_CONTACT_ID + "<=?", new String[] {
+                    String.valueOf(firstNabContactId), String.valueOf(lastNabContactId)
+            }, Data.RAW_CONTACT_ID);
+            if (mCursor != null) {
+                mRawContactIdIndex = mCursor.getColumnIndexOrThrow(Data.RAW_CONTACT_ID);
+                mCursor.moveToFirst();
+            }
+        }
+
+        /**
+         * @see ContactReader#getContact(long)
+         */
+        @Override
+        public ContactChange[] getContact(long nabContactId) {
+            if (mCursor == null || nabContactId <= mLastNabContactId) {
+                return NativeContactsApi2.this.getContact(nabContactId);
+            }
+            mLastNabContactId = nabContactId;
+
+            // Skip the rows of contacts which are not requested
+            while (!mCursor.isAfterLast() && mCursor.getLong(mRawContactIdIndex) < nabContactId) {
+                mCursor.moveToNext();
+            }
+
+            mHaveReadOrganization = false;
+            mHaveReadBirthday = false;
+            List<ContactChange> ccList = null;
+            while (!mCursor.isAfterLast() && mCursor.getLong(mRawContactIdIndex) == nabContactId) {
+                if (ccList == null) {
+                    ccList = new ArrayList<ContactChange>();
+                }
+                readDetail(mCursor, ccList, nabContactId);
+                mCursor.moveToNext();
+            }
+
+            if (ccList == null) {
+                return null;
+            }
+            return ccList.toArray(new ContactChange[ccList.size()]);
+        }
+
+        /**
+         * @see ContactReader#close()
+         */
+        @Override
+        public void close() {
+            CursorUtils.closeCursor(mCursor);
+            mCursor = null;
+        }
+    }
+
     /**
      * @see NativeContactsApi#addContact(Account, ContactChange[])
      */
     @Override
     public ContactChange[] addContact(Account account, ContactChange[] ccList) {
-        // Make sure to reset all the member variables we need
-        mYield = true;
+        mBatch.clear();
+        final PendingContact contact = addContactToBatch(account, ccList);
+
+        // Execute the batch and Generate ID changes from it
+        return getNewContactIds(contact, mBatch.execute());
+    }
+
+    /**
+     * @see NativeContactsApi#openContactWriter()
+     */
+    @Override
+    public ContactWriter openContactWriter() {
+        return new BatchContactWriter();
+    }
+
+    /**
+     * Adds the operations creating a new contact to the batch.
+     * 
+     * @param account The account the contact is added to
+     * @param ccList The contact to add
+     * @return The contact written to the batch
+     */
+    private PendingContact addContactToBatch(Account account, ContactChange[] ccList) {
+        final PendingContact contact = new PendingContact(ccList,
+                ContactChange.TYPE_ADD_CONTACT, mBatch.size());
+        contact.mAccount = account;
+
+        // Make sure to reset all the member variables we need, a batch of
+        // several contacts is kept in one transaction
+        mYield = mBatch.size() == 0;
         mMarkedOrganizationIndex = mMarkedTitleIndex = -1;
         mValues.clear();
-        mBatch.clear();
 
         mValues.put(RawContacts.ACCOUNT_TYPE, account.getType());
         mValues.put(RawContacts.ACCOUNT_NAME, account.getName());
 
+        mRawContactOperationIndex = mBatch.size();
         ContentProviderOperation.Builder builder = ContentProviderOperation.newInsert(
                 addCallerIsSyncAdapterParameter(RawContacts.CONTENT_URI)).withYieldAllowed(mYield)
                 .withValues(mValues);
@@ -645,8 +966,10 @@ public class NativeContactsApi2 extends NativeContactsApi {
         // Add 360 profile detail
          addProfileAction(ccList[0].getInternalContactId());
 
-        // Execute the batch and Generate ID changes from it
-        return executeNewContactBatch(ccList);
+        contact.mOperationCount = mBatch.size() - contact.mFirstOperation;
+        contact.mMarkedOrganizationIndex = mMarkedOrganizationIndex;
+        contact.mMarkedTitleIndex = mMarkedTitleIndex;
+        return contact;
     }
 
     /**
@@ -654,14 +977,32 @@ public class NativeContactsApi2 extends NativeContactsApi {
      */
     @Override
     public ContactChange[] updateContact(ContactChange[] ccList) {
+        mBatch.clear();
+        final PendingContact contact = updateContactToBatch(ccList);
+        if (contact == null) {
+            return null;
+        }
+
+        // Execute the batch and Generate ID changes from it
+        return getUpdatedContactIds(contact, mBatch.execute());
+    }
+
+    /**
+     * Adds the operations updating a contact to the batch.
+     * 
+     * @param ccList The changes of the contact
+     * @return The contact written to the batch, null if the changes are
+     *         invalid
+     */
+    private PendingContact updateContactToBatch(ContactChange[] ccList) {
         if (ccList == null || ccList.length == 0) {
             LogUtils.logW("NativeContactsApi2.updateContact() nothing to update - empty ccList!");
             return null;
         }
 
-        // Make sure to reset all the member variables we need
-        mYield = true;
-        mBatch.clear();
+        // Make sure to reset all the member variables we need, a batch of
+        // several contacts is kept in one transaction
+        mYield = mBatch.size() == 0;
         mValues.clear();
         mMarkedOrganizationIndex = mMarkedTitleIndex = -1;
         mExistingOrganizationId = ContactChange.INVALID_ID;
@@ -675,6 +1016,9 @@ public class NativeContactsApi2 extends NativeContactsApi {
             return null;
         }
 
+        final PendingContact contact = new PendingContact(ccList,
+                ContactChange.TYPE_UPDATE_CONTACT, mBatch.size());
+
         final int ccListSize = ccList.length;
 
         for (int i = 0; i < ccListSize; i++) {
@@ -730,8 +1074,11 @@ public class NativeContactsApi2 extends NativeContactsApi {
 
         updateOrganization(ccList, nabContactId);
 
-        // Execute the batch and Generate ID changes from it
-        return executeUpdateContactBatch(ccList);
+        contact.mOperationCount = mBatch.size() - contact.mFirstOperation;
+        contact.mMarkedOrganizationIndex = mMarkedOrganizationIndex;
+        contact.mMarkedTitleIndex = mMarkedTitleIndex;
+        contact.mExistingOrganizationId = mExistingOrganizationId;
+        return contact;
     }
 
     /**
@@ -1291,7 +1638,7 @@ public class NativeContactsApi2 extends NativeContactsApi {
 
             if (isNewContact) {
                 // New Contact needs Back Reference
-                builder.withValueBackReference(Data.RAW_CONTACT_ID, 0);
+                builder.withValueBackReference(Data.RAW_CONTACT_ID, mRawContactOperationIndex);
             }
             mYield = false;
             mBatch.add(builder.build());
@@ -1796,36 +2143,35 @@ public class NativeContactsApi2 extends NativeContactsApi {
     }
 
     /**
-     * Executes a pending Batch Operation related to adding a new Contact.
+     * Generates the ID changes of a new Contact from the results of the batch
+     * it was written to.
      * 
-     * @param ccList The original {@link ContactChange} for the new Contact
+     * @param contact The new Contact as written to the batch
+     * @param results The results of the batch, null if it failed
      * @return {@link ContactChange} array containing new IDs (may contain some
      *         null elements)
      */
-    private ContactChange[] executeNewContactBatch(ContactChange[] ccList) {
-        if (mBatch.size() == 0) {
-            // Nothing to execute
-            LogUtils.logW("NativeContactsApi2.executeNewContactBatch() - the batch is empty, probably none of the changes are supported");
-            return null;
-        }
-        final ContentProviderResult[] results = mBatch.execute();
-
+    private ContactChange[] getNewContactIds(PendingContact contact,
+            ContentProviderResult[] results) {
         if (results == null || results.length == 0) {
-            LogUtils.logE("NativeContactsApi2.executeNewContactBatch()"
+            LogUtils.logE("NativeContactsApi2.getNewContactIds()"
                     + "Batch execution result is null or empty!");
             return null;
         }
+        final ContactChange[] ccList = contact.mCcList;
+        final int markedOrganizationIndex = contact.mMarkedOrganizationIndex;
+        final int markedTitleIndex = contact.mMarkedTitleIndex;
         // -1 because we skip the Profile detail
-        final int resultsSize = results.length - 1;
+        final int resultsEnd = contact.mFirstOperation + contact.mOperationCount - 1;
 
-        if (results[0].uri == null) {
+        if (results[contact.mFirstOperation].uri == null) {
             // Contact was not created
-            LogUtils.logE("NativeContactsApi2.executeNewContactBatch()"
+            LogUtils.logE("NativeContactsApi2.getNewContactIds()"
                     + "NAB Contact ID not found for created contact");
             return null;
         }
 
-        final long nabContactId = ContentUris.parseId(results[0].uri);
+        final long nabContactId = ContentUris.parseId(results[contact.mFirstOperation].uri);
 
         final ContactChange[] idChangeList = new ContactChange[ccList.length + 1];
         // Update NAB Contact ID CC
@@ -1834,20 +2180,20 @@ public class NativeContactsApi2 extends NativeContactsApi {
         idChangeList[0].setNabContactId(nabContactId);
 
         // Start after contact id in the results index
-        int resultsIndex = 1, ccListIndex = 0;
-        final boolean haveOrganization = mMarkedOrganizationIndex != -1 || mMarkedTitleIndex != -1;
-        while (resultsIndex < resultsSize) {
-            if (ccListIndex == mMarkedOrganizationIndex || ccListIndex == mMarkedTitleIndex) {
+        int resultsIndex = contact.mFirstOperation + 1, ccListIndex = 0;
+        final boolean haveOrganization = markedOrganizationIndex != -1 || markedTitleIndex != -1;
+        while (resultsIndex < resultsEnd) {
+            if (ccListIndex == markedOrganizationIndex || ccListIndex == markedTitleIndex) {
                 ccListIndex++;
                 continue;
             }
 
             if (results[resultsIndex].uri == null) {
-                throw new RuntimeException("NativeContactsApi2.executeNewContactBatch()"
+                throw new RuntimeException("NativeContactsApi2.getNewContactIds()"
                         + "Unexpected null URI for NAB Contact:" + nabContactId);
             }
 
-            if (resultsIndex == resultsSize - 1 && haveOrganization) {
+            if (resultsIndex == resultsEnd - 1 && haveOrganization) {
                 // for readability we leave Organization/Title for outside the
                 // loop
                 break;
@@ -1868,20 +2214,20 @@ public class NativeContactsApi2 extends NativeContactsApi {
 
         if (haveOrganization) {
             final long nabDetailId = ContentUris.parseId(results[resultsIndex].uri);
-            if (mMarkedOrganizationIndex > -1) {
+            if (markedOrganizationIndex > -1) {
                 final ContactChange idChange = ContactChange.createIdsChange(
-                        ccList[mMarkedOrganizationIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
+                        ccList[markedOrganizationIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
                 idChange.setNabContactId(nabContactId);
                 idChange.setNabDetailId(nabDetailId);
-                idChangeList[mMarkedOrganizationIndex + 1] = idChange;
+                idChangeList[markedOrganizationIndex + 1] = idChange;
             }
 
-            if (mMarkedTitleIndex > -1) {
+            if (markedTitleIndex > -1) {
                 final ContactChange idChange = ContactChange.createIdsChange(
-                        ccList[mMarkedTitleIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
+                        ccList[markedTitleIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
                 idChange.setNabContactId(nabContactId);
                 idChange.setNabDetailId(nabDetailId);
-                idChangeList[mMarkedTitleIndex + 1] = idChange;
+                idChangeList[markedTitleIndex + 1] = idChange;
             }
         }
 
@@ -1889,33 +2235,38 @@ public class NativeContactsApi2 extends NativeContactsApi {
     }
 
     /**
-     * Executes a pending Batch Operation related to updating a Contact.
+     * Generates the ID changes of an updated Contact from the results of the
+     * batch it was written to.
      * 
-     * @param ccList The original {@link ContactChange} for the Contact update
+     * @param contact The Contact update as written to the batch
+     * @param results The results of the batch, null if it failed
      * @return {@link ContactChange} array containing new IDs (may contain some
      *         null elements)
      */
-    private ContactChange[] executeUpdateContactBatch(ContactChange[] ccList) {
-        if (mBatch.size() == 0) {
+    private ContactChange[] getUpdatedContactIds(PendingContact contact,
+            ContentProviderResult[] results) {
+        if (contact.mOperationCount == 0) {
             // Nothing to execute
-            LogUtils.logW("NativeContactsApi2.executeUpdateContactBatch() - the batch is empty, probably none of the changes are supported");
+            LogUtils.logW("NativeContactsApi2.getUpdatedContactIds() - the batch is empty, probably none of the changes are supported");
             return null;
         }
-        final ContentProviderResult[] results = mBatch.execute();
-        final int resultsSize = results.length;
-        if (results == null || resultsSize == 0) {
+        if (results == null || results.length == 0) {
             // Assuming this can happen in case of no added details
-            LogUtils.logE("NativeContactsApi2.executeUpdateContactBatch()"
+            LogUtils.logE("NativeContactsApi2.getUpdatedContactIds()"
                     + "Batch execution result is null or empty!");
             return null;
         }
+        final ContactChange[] ccList = contact.mCcList;
+        final int markedOrganizationIndex = contact.mMarkedOrganizationIndex;
+        final int markedTitleIndex = contact.mMarkedTitleIndex;
+        final int resultsEnd = contact.mFirstOperation + contact.mOperationCount;
 
-        // Start after contact id in the results index
-        int resultsIndex = 0, ccListIndex = 0;
-        final boolean haveOrganization = mMarkedOrganizationIndex != -1 || mMarkedTitleIndex != -1;
+        // Start at the first operation of the contact in the results index
+        int resultsIndex = contact.mFirstOperation, ccListIndex = 0;
+        final boolean haveOrganization = markedOrganizationIndex != -1 || markedTitleIndex != -1;
         final ContactChange[] idChangeList = new ContactChange[ccList.length];
-        while (resultsIndex < resultsSize) {
-            if (ccListIndex == mMarkedOrganizationIndex || ccListIndex == mMarkedTitleIndex) {
+        while (resultsIndex < resultsEnd) {
+            if (ccListIndex == markedOrganizationIndex || ccListIndex == markedTitleIndex) {
                 ccListIndex++;
                 continue;
             }
@@ -1926,7 +2277,7 @@ public class NativeContactsApi2 extends NativeContactsApi {
                 continue;
             }
 
-            if (resultsIndex == resultsSize - 1 && haveOrganization) {
+            if (resultsIndex == resultsEnd - 1 && haveOrganization) {
                 // for readability we leave Organization/Title for outside the
                 // loop
                 break;
@@ -1948,30 +2299,30 @@ public class NativeContactsApi2 extends NativeContactsApi {
 
         if (haveOrganization) {
             long nabDetailId = ContactChange.INVALID_ID;
-            if (mExistingOrganizationId != nabDetailId) {
-                nabDetailId = mExistingOrganizationId;
+            if (contact.mExistingOrganizationId != nabDetailId) {
+                nabDetailId = contact.mExistingOrganizationId;
             } else if (results[resultsIndex].uri != null) {
                 nabDetailId = ContentUris.parseId(results[resultsIndex].uri);
             } else {
-                throw new RuntimeException("NativeContactsApi2.executeUpdateContactBatch()"
+                throw new RuntimeException("NativeContactsApi2.getUpdatedContactIds()"
                         + "Unexpected null Organization URI for NAB Contact:"
                         + ccList[0].getNabContactId());
             }
 
-            if (mMarkedOrganizationIndex > -1
-                    && ccList[mMarkedOrganizationIndex].getType() == ContactChange.TYPE_ADD_DETAIL) {
+            if (markedOrganizationIndex > -1
+                    && ccList[markedOrganizationIndex].getType() == ContactChange.TYPE_ADD_DETAIL) {
                 final ContactChange idChange = ContactChange.createIdsChange(
-                        ccList[mMarkedOrganizationIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
+                        ccList[markedOrganizationIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
                 idChange.setNabDetailId(nabDetailId);
-                idChangeList[mMarkedOrganizationIndex] = idChange;
+                idChangeList[markedOrganizationIndex] = idChange;
             }
 
-            if (mMarkedTitleIndex > -1
-                    && ccList[mMarkedTitleIndex].getType() == ContactChange.TYPE_ADD_DETAIL) {
+            if (markedTitleIndex > -1
+                    && ccList[markedTitleIndex].getType() == ContactChange.TYPE_ADD_DETAIL) {
                 final ContactChange idChange = ContactChange.createIdsChange(
-                        ccList[mMarkedTitleIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
+                        ccList[markedTitleIndex], ContactChange.TYPE_UPDATE_NAB_DETAIL_ID);
                 idChange.setNabDetailId(nabDetailId);
-                idChangeList[mMarkedTitleIndex] = idChange;
+                idChangeList[markedTitleIndex] = idChange;
             }
         }
 
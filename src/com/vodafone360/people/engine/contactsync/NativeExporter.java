@@ -25,6 +25,8 @@
 
 package com.vodafone360.people.engine.contactsync;
 
+import java.util.ArrayList;
+
 import com.vodafone360.people.engine.contactsync.NativeContactsApi.Account;
 import com.vodafone360.people.utils.LogUtils;
 import com.vodafone360.people.utils.VersionUtils;
@@ -49,12 +51,6 @@ public class NativeExporter {
      */
     public final static int RESULT_ERROR = 1;
     
-    /**
-     * Number of contacts to be processed "per tick".
-     * @see #tick()
-     */
-    private final static int MAX_CONTACTS_OPERATION_COUNT = 2;
-    
     /**
      * Handler to the People Contacts API.
      */
@@ -116,6 +112,17 @@ public class NativeExporter {
      */
     private Account mAccount = null;
     
+    /**
+     * Writer of the Native Contacts, executed once "per tick".
+     * @see #tick()
+     */
+    private NativeContactsApi.ContactWriter mContactWriter;
+    
+    /**
+     * The ContactChange arrays written to the Native side since the writer was last executed.
+     */
+    private final ArrayList<ContactChange[]> mWrittenChanges = new ArrayList<ContactChange[]>();
+    
     /**
      * Constructor.
      * 
@@ -220,6 +227,7 @@ public class NativeExporter {
         
         // check if we have some work to do
         if (mSyncableContactsIds != null) {
+            mContactWriter = mNativeContactsApi.openContactWriter();
             mState = STATE_ITERATE_THROUGH_IDS;    
         } else {
             complete(RESULT_OK);
@@ -233,20 +241,20 @@ public class NativeExporter {
         
         LogUtils.logD("NativeExporter.iterateThroughSyncableIds()");
         
-        final int limit = Math.min(mSyncableContactsIds.length, mCurrentSyncableIdIndex + MAX_CONTACTS_OPERATION_COUNT);
-        
-        while (mCurrentSyncableIdIndex < limit) {
+        while (mCurrentSyncableIdIndex < mSyncableContactsIds.length && !mContactWriter.isFull()) {
             
             final ContactChange[] changes = mPeopleContactsApi.getNativeSyncableContactChanges(mSyncableContactsIds[mCurrentSyncableIdIndex]);
             
-            if (changes != null) {
+            if (changes != null && exportContactChanges(changes)) {
                 
-                exportContactChanges(changes);
+                mWrittenChanges.add(changes);
             }
 
             mCurrentSyncableIdIndex++;
         }
         
+        syncBackContactChanges();
+        
         if (mCurrentSyncableIdIndex == mSyncableContactsIds.length) {
             // Nothing else to do
             complete(RESULT_OK);
@@ -254,14 +262,12 @@ public class NativeExporter {
     }
     
     /**
-     * Exports the contact changes to the native address book.
+     * Writes the contact changes to the native address book.
      * 
      * @param changes the array of ContactChange that represent a full contact, a deleted contact or an updated contact
+     * @return true if the changes were written and have to be synced back once the writer is executed
      */
-    private void exportContactChanges(ContactChange[] changes) {
-        
-        // the ContactChange array that we'll get back from native
-        ContactChange[] nativeResponse = null;
+    private boolean exportContactChanges(ContactChange[] changes) {
         
         switch(changes[0].getType()) {
             
@@ -270,35 +276,66 @@ public class NativeExporter {
                 
                 //the account can be null (theoretically)
                 if (mAccount != null) {
-                    nativeResponse = mNativeContactsApi.addContact(mAccount, changes);
-                    // sync back the native IDs on People side
-                    if (!mPeopleContactsApi.syncBackNewNativeContact(changes, nativeResponse)) {
-                        LogUtils.logE("NativeExporter.exportContactChanges() - Add Contact failed!");
-                    }    
+                    mContactWriter.addContact(mAccount, changes);
+                    return true;
                 }
                 break;
             case ContactChange.TYPE_DELETE_CONTACT:
                 // delete the contact on Native side
-                mNativeContactsApi.removeContact(changes[0].getNabContactId());
-                // acknowledge the people side about deletion
-                if (!mPeopleContactsApi.syncBackDeletedNativeContact(changes[0])) {
-                    LogUtils.logE("NativeExporter.exportContactChanges() - Syncing back Contact deletion to Client side failed!");
-                }
-                break;
+                mContactWriter.removeContact(changes[0].getNabContactId());
+                return true;
             case ContactChange.TYPE_UPDATE_CONTACT:
             case ContactChange.TYPE_ADD_DETAIL:
             case ContactChange.TYPE_DELETE_DETAIL:
             case ContactChange.TYPE_UPDATE_DETAIL:
                 // update the contact on Native side
-                nativeResponse = mNativeContactsApi.updateContact(changes);
-                // acknowledge People side about deleted details and added details Native IDs
-                if (!mPeopleContactsApi.syncBackUpdatedNativeContact(changes, nativeResponse)) {
-                    LogUtils.logE("NativeExporter.exportContactChanges() - Update Contact failed!");
-                }
-                break;
+                mContactWriter.updateContact(changes);
+                return true;
             default:
                 LogUtils.logE("NativeExporter.exportContactChanges() - Aborted exporting because of unknown type("+changes[0].getType()+")!");
                 break;
         }
+        
+        return false;
+    }
+    
+    /**
+     * Executes the Native Contacts writer and syncs back the Native IDs it returns to the People side.
+     */
+    private void syncBackContactChanges() {
+        
+        // the ContactChange arrays that we'll get back from native
+        final ContactChange[][] nativeResponses = mContactWriter.execute();
+        
+        final int count = mWrittenChanges.size();
+        for (int i = 0; i < count; i++) {
+            
+            final ContactChange[] changes = mWrittenChanges.get(i);
+            final ContactChange[] nativeResponse = nativeResponses[i];
+            
+            switch(changes[0].getType()) {
+                
+                case ContactChange.TYPE_ADD_CONTACT:
+                    // sync back the native IDs on People side
+                    if (!mPeopleContactsApi.syncBackNewNativeContact(changes, nativeResponse)) {
+                        LogUtils.logE("NativeExporter.syncBackContactChanges() - Add Contact failed!");
+                    }
+                    break;
+                case ContactChange.TYPE_DELETE_CONTACT:
+                    // acknowledge the people side about deletion
+                    if (!mPeopleContactsApi.syncBackDeletedNativeContact(changes[0])) {
+                        LogUtils.logE("NativeExporter.syncBackContactChanges() - Syncing back Contact deletion to Client side failed!");
+                    }
+                    break;
+                default:
+                    // acknowledge People side about deleted details and added details Native IDs
+                    if (!mPeopleContactsApi.syncBackUpdatedNativeContact(changes, nativeResponse)) {
+                        LogUtils.logE("NativeExporter.syncBackContactChanges() - Update Contact failed!");
+                    }
+                    break;
+            }
+        }
+        
+        mWrittenChanges.clear();
     }
 }
@@ -28,6 +28,7 @@ package com.vodafone360.people.engine.contactsync;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.Map;
 
 import android.text.TextUtils;
 
@@ -133,6 +134,30 @@ public class NativeImporter {
      */
     private long[] mNativeContactsIds;
 
+    /**
+     * Reader of the native contacts data, open while iterating through the
+     * native ids.
+     */
+    private NativeContactsApi.ContactReader mContactReader;
+
+    /**
+     * The fingerprints of the native contacts as they were last imported, by
+     * native id.
+     */
+    private Map<Long, Long> mNativeFingerprints;
+
+    /**
+     * Native ids of the contacts imported during the current tick.
+     */
+    private DynamicArrayLong mImportedIds = new DynamicArrayLong();
+
+    /**
+     * Fingerprints of the contacts imported during the current tick.
+     * 
+     * @see #mImportedIds
+     */
+    private DynamicArrayLong mImportedFingerprints = new DynamicArrayLong();
+
     /**
      * The list of native ids from the people side.
      */
@@ -271,6 +296,26 @@ public class NativeImporter {
 
         mState = STATE_DONE;
         mResult = result;
+        closeContactReader();
+    }
+
+    /**
+     * Cancels the import and releases the resources it holds.
+     */
+    public void cancel() {
+
+        complete(RESULT_ERROR);
+    }
+
+    /**
+     * Closes the reader of the native contacts data if it is open.
+     */
+    private void closeContactReader() {
+
+        if (mContactReader != null) {
+            mContactReader.close();
+            mContactReader = null;
+        }
     }
 
     /**
@@ -406,6 +451,10 @@ public class NativeImporter {
         // Get a list of native ids for the contacts we have in the People
         // database
         mPeopleNativeContactsIds = mPeopleContactsApi.getNativeContactsIds();
+        if (mPeopleNativeContactsIds != null) {
+
+            mNativeFingerprints = mPeopleContactsApi.getNativeFingerprints();
+        }
 
         mTotalIds = mNativeContactsIds.length;
         if (mPeopleNativeContactsIds != null) {
@@ -413,6 +462,12 @@ public class NativeImporter {
             mTotalIds += mPeopleNativeContactsIds.length;
         }
 
+        // the native ids are sorted so all the contacts can be read in one go
+        if (mNativeContactsIds.length > 0) {
+            mContactReader = mNativeContactsApi.openContactReader(mNativeContactsIds[0],
+                    mNativeContactsIds[mNativeContactsIds.length - 1]);
+        }
+
         mState = STATE_ITERATE_THROUGH_IDS;
     }
 
@@ -467,9 +522,13 @@ public class NativeImporter {
             mCurrentNativeIndex++;
         }
 
+        storeFingerprints();
+
         // check if we are done with ids list from native
         if (mCurrentNativeIndex == mNativeContactsIds.length) {
 
+            closeContactReader();
+
             // we've gone through the native list, any remaining ids from the
             // people list are deleted ones
             if (mPeopleNativeContactsIds != null) {
@@ -524,7 +583,7 @@ public class NativeImporter {
     private void addNewContact(long nativeId) {
 
         // get the contact data
-        final ContactChange[] contactChanges = mNativeContactsApi.getContact(nativeId);
+        final ContactChange[] contactChanges = mContactReader.getContact(nativeId);
 
         if (contactChanges != null) {
 
@@ -544,6 +603,8 @@ public class NativeImporter {
                 forceNabDetailId(contactChanges);
             }
 
+            final long fingerprint = computeFingerprint(contactChanges);
+
             // add the contact to the People database
             if (!mPeopleContactsApi.addNativeContact(contactChanges)) {
 
@@ -552,6 +613,9 @@ public class NativeImporter {
                 LogUtils
                         .logE("NativeImporter.addNewContact() - failed to import native contact id="
                                 + nativeId);
+            } else if (!mIsFirstImportOn2X) {
+
+                addFingerprint(nativeId, fingerprint);
             }
         }
     }
@@ -565,7 +629,25 @@ public class NativeImporter {
     private void checkExistingContact(long nativeId) {
 
         // get the native version of that contact
-        final ContactChange[] nativeContact = mNativeContactsApi.getContact(nativeId);
+        final ContactChange[] nativeContact = mContactReader.getContact(nativeId);
+        long fingerprint = 0;
+
+        if (nativeContact != null) {
+
+            // set the native detail ids like computeDelta() does so that the
+            // fingerprint is the same whether or not they were forced
+            forceNabDetailId(nativeContact);
+            fingerprint = computeFingerprint(nativeContact);
+
+            final Long importedFingerprint = (mNativeFingerprints != null) ? mNativeFingerprints
+                    .get(nativeId) : null;
+            if (importedFingerprint != null && importedFingerprint.longValue() == fingerprint) {
+
+                // the native contact has not changed since it was last
+                // imported, no need to load the people version
+                return;
+            }
+        }
 
         // get the people version of that contact
         final ContactChange[] peopleContact = mPeopleContactsApi.getContact((int)nativeId);
@@ -590,15 +672,92 @@ public class NativeImporter {
             // general case, find the delta
             final ContactChange[] delta = computeDelta(peopleContact, nativeContact);
 
-            if (delta != null) {
+            // update CAB with delta changes, the fingerprint is only kept
+            // once the contact is in sync so a failed update is retried
+            if (delta == null || mPeopleContactsApi.updateNativeContact(delta)) {
 
-                // update CAB with delta changes
-                mPeopleContactsApi.updateNativeContact(delta);
+                addFingerprint(nativeId, fingerprint);
             }
         }
 
     }
 
+    /**
+     * Computes the fingerprint of a native contact from the key, native detail
+     * id, flags and value of its details. The order of the details does not
+     * matter.
+     * 
+     * @param contact the native contact
+     * @return the fingerprint
+     */
+    private static long computeFingerprint(ContactChange[] contact) {
+
+        long fingerprint = contact.length;
+
+        for (int i = 0; i < contact.length; i++) {
+
+            final ContactChange change = contact[i];
+            long hash = change.getKey();
+            hash = hash * 31 + change.getNabDetailId();
+            hash = hash * 31 + change.getFlags();
+
+            final String value = change.getValue();
+            if (value != null) {
+
+                final int length = value.length();
+                for (int j = 0; j < length; j++) {
+                    hash = hash * 1125899906842597L + value.charAt(j);
+                }
+            } else {
+
+                hash = hash * 31 + 1;
+            }
+
+            // mix the bits before summing so that similar details do not
+            // cancel each other
+            hash ^= hash >>> 33;
+            hash *= 0xff51afd7ed558ccdL;
+            hash ^= hash >>> 33;
+            hash *= 0xc4ceb9fe1a85ec53L;
+            hash ^= hash >>> 33;
+            fingerprint += hash;
+        }
+
+        return fingerprint;
+    }
+
+    /**
+     * Queues the fingerprint of a contact which has been imported, it is stored
+     * at the end of the tick.
+     * 
+     * @param nativeId the native id of the contact
+     * @param fingerprint the fingerprint of the native contact
+     */
+    private void addFingerprint(long nativeId, long fingerprint) {
+
+        mImportedIds.add(nativeId);
+        mImportedFingerprints.add(fingerprint);
+    }
+
+    /**
+     * Stores the fingerprints of the contacts imported during the tick in one
+     * go.
+     */
+    private void storeFingerprints() {
+
+        if (mImportedIds.size() > 0) {
+
+            if (!mPeopleContactsApi.setNativeFingerprints(mImportedIds.toArray(),
+                    mImportedFingerprints.toArray())) {
+
+                LogUtils.logE("NativeImporter.storeFingerprints() - failed to store "
+                        + mImportedIds.size() + " fingerprints");
+            }
+            mImportedIds = new DynamicArrayLong();
+            mImportedFingerprints = new DynamicArrayLong();
+        }
+    }
+
     /**
      * Native ContactChange Comparator class. This class compares ContactChange
      * and tells which one is greater depending on the key and then the native
@@ -27,6 +27,7 @@ package com.vodafone360.people.engine.contactsync;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import android.database.sqlite.SQLiteDatabase;
 
@@ -132,6 +133,46 @@ public class PeopleContactsApi {
         return null;
     }
     
+    /**
+     * Gets the fingerprints of the native contacts as they were when last
+     * imported into the people database.
+     * 
+     * @return a map of the fingerprints by native contact id, null if an error occurred
+     */
+    public Map<Long, Long> getNativeFingerprints() {
+        
+        try {
+            
+            return ContactsTable.getNativeFingerprints(mDbh.getReadableDatabase());
+        } catch (Exception e) {
+            
+            LogUtils.logE("getNativeFingerprints(), error: "+e);
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Stores the fingerprints of native contacts which have been imported into
+     * the people database.
+     * 
+     * @param nativeIds the native ids of the contacts
+     * @param fingerprints the fingerprint of each contact
+     * @return true if successful, false otherwise
+     */
+    public boolean setNativeFingerprints(long[] nativeIds, long[] fingerprints) {
+        
+        try {
+            
+            return ContactsTable.setNativeFingerprints(nativeIds, fingerprints, mDbh.getWritableDatabase());
+        } catch (Exception e) {
+            
+            LogUtils.logE("setNativeFingerprints(), error: "+e);
+        }
+        
+        return false;
+    }
+    
     /**
      * Gets an array of contacts people ids that need to be synced back to native.
      *
@@ -217,8 +258,9 @@ public class PeopleContactsApi {
      *       to prevent syncing back to native
      * 
      * @param contact the contact changes to apply to the contact
+     * @return true if all the changes were applied, false otherwise
      */
-    public void updateNativeContact(ContactChange[] contact) {
+    public boolean updateNativeContact(ContactChange[] contact) {
         
         mAddedDetails.clear();
         mDeletedDetails.clear();
@@ -244,18 +286,25 @@ public class PeopleContactsApi {
             }
         }
         
+        boolean result = true;
+        
         if (mAddedDetails.size() > 0) {
-            mDbh.syncAddContactDetailList(mAddedDetails, true, false);
+            result &= ServiceStatus.SUCCESS == mDbh.syncAddContactDetailList(mAddedDetails, true,
+                    false);
         }
         if (mDeletedDetails.size() > 0) {
-            mDbh.syncDeleteContactDetailList(mDeletedDetails, true, false);
+            result &= ServiceStatus.SUCCESS == mDbh.syncDeleteContactDetailList(mDeletedDetails,
+                    true, false);
         }
         if (mUpdatedDetails.size() > 0) {
-            mDbh.syncModifyContactDetailList(mUpdatedDetails, true, false);
+            result &= ServiceStatus.SUCCESS == mDbh.syncModifyContactDetailList(mUpdatedDetails,
+                    true, false);
         }
         
         // TODO: Throttle the event
         mDbh.fireDatabaseChangedEvent(DatabaseChangeType.CONTACTS, true);
+        
+        return result;
     }
     
     /**
@@ -220,10 +220,20 @@ public class RemoteService extends Service implements IWorkerThreadControl,
     }
 
     /***
-     * Ensures that the WorkerThread runs at least once.
+     * Ensures that the WorkerThread runs at least once and checks all engines
+     * as it is not known which engine the kick is for.
      */
     @Override
     public void kickWorkerThread() {
+        EngineManager.rescheduleAllEngines();
+        wakeWorkerThread();
+    }
+
+    /***
+     * Ensures that the WorkerThread runs at least once. Used by the
+     * EngineManager when it already knows which engines need to be checked.
+     */
+    public void wakeWorkerThread() {
         synchronized (this) {
             if (!mIsStarted) {
                 // Thread will be kicked anyway once we have finished
@@ -231,7 +241,7 @@ public class RemoteService extends Service implements IWorkerThreadControl,
                 return;
             }
             if (mWorkerThread == null || !mWorkerThread.wakeUp()) {
-                LogUtils.logV("RemoteService.kickWorkerThread() Start thread");
+                LogUtils.logV("RemoteService.wakeWorkerThread() Start thread");
                 mWorkerThread = new WorkerThread(mHandler);
                 mWorkerThread.start();
             }
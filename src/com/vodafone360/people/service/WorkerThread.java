@@ -35,9 +35,10 @@ import com.vodafone360.people.utils.LogUtils;
  * The worker thread is the main thread of execution within the People Client
  * service. It is responsible for running engines via the EngineManager The
  * WorkerThread remains active while there are engines with pending run times,
- * becoming dormant otherwise The WorkerThread can be woken up when a request is
- * issued or via an Alarm set to trigger an engine runtime update check It is
- * extremely important that the WorkerThread does not become blocked.
+ * waiting until the earliest of them, and ends when no engine is waiting. The
+ * WorkerThread can be woken up when a request is issued or a response
+ * received. It is extremely important that the WorkerThread does not become
+ * blocked.
  */
 public class WorkerThread extends Thread {
     
@@ -52,7 +53,8 @@ public class WorkerThread extends Thread {
     private final static String WORKER_THREAD_NAME = "WorkerThread";
 
     /**
-     * Small wait time before looping around the engines again
+     * Small wait time before looping around the engines again when engines are
+     * still due after running and no new event arrived
      */
     private final static long LOOP_SLEEP_TIME_MS = 300;
 
@@ -129,8 +131,9 @@ public class WorkerThread extends Thread {
     }
 
     /***
-     * Loop through all the engines until no more work can be done right now,
-     * then set an Alarm if more work is required.
+     * Run the engines which are due until no more work can be done right now,
+     * then wait until the next engine is due or an event wakes the thread.
+     * The thread ends when no engine is waiting to run.
      */
     @Override
     public void run() {
@@ -141,8 +144,6 @@ public class WorkerThread extends Thread {
         }
 
         do {
-            numberOfRunsWithoutPause++;
-            boolean prepareForShutdown = false;
             long nextRunTime = mEngineManager.runEngines();
             long currentTime = System.currentTimeMillis();
             if (Settings.ENABLED_ENGINE_TRACE) {
@@ -151,49 +152,57 @@ public class WorkerThread extends Thread {
                         + "[" + numberOfRunsWithoutPause + "]");
             }
 
-            if (nextRunTime == -1) {
-                if (Settings.ENABLED_ENGINE_TRACE) {
-                    LogUtils.logV("WorkerThread.run() No Engines waiting, so stop thread without "
-                            + "creating a new Alarm");
-                }
-                prepareForShutdown = true;
-
-            } else if (nextRunTime == 0) {
-                if (Settings.ENABLED_ENGINE_TRACE) {
-                    LogUtils.logV("WorkerThread.run() Engine waiting to run, so loop thread again");
-                }
-
-            } else if (nextRunTime < currentTime) {
-                if (Settings.ENABLED_ENGINE_TRACE) {
-                    LogUtils.logV("WorkerThread.run() Next process is already ["
-                            + (currentTime - nextRunTime) + "ms] late, so loop again");
-                }
-
+            final boolean runAgain = nextRunTime == 0
+                    || (nextRunTime != -1 && nextRunTime <= currentTime);
+            if (runAgain) {
+                numberOfRunsWithoutPause++;
             } else {
-                if (Settings.ENABLED_ENGINE_TRACE) {
-                    LogUtils.logV("WorkerThread.run() No Engines ready yet, so set Alarm and then"
-                            + " end thread");
-                }
-                prepareForShutdown = true;
+                numberOfRunsWithoutPause = 0;
             }
 
+            boolean forcePause = false;
             if (numberOfRunsWithoutPause > MAX_RUNS_WITHOUT_PAUSE) {
                 LogUtils.logE("WorkerThread.run() WorkerThread is looping like crazy, pausing for"
                         + " [" + FORCE_PAUSE_MS + "ms] to save device resources.");
-                prepareForShutdown = true;
-                mLoopOneMoreTime = false;
+                forcePause = true;
                 nextRunTime = System.currentTimeMillis() + FORCE_PAUSE_MS;
             }
 
-            LogUtils.logV("WorkerThread.run() prepareForShutdown[" + prepareForShutdown + "]"
-                    + " mLoopOneMoreTime[" + mLoopOneMoreTime + "]");
-            if (prepareForShutdown && !mLoopOneMoreTime) {
-                setWakeupTime(nextRunTime);
-                mShutdownThread = true;
-                mLoopOneMoreTime = false;
-            } else {
+            synchronized (mWakeLock) {
+                LogUtils.logV("WorkerThread.run() nextRunTime[" + nextRunTime + "]"
+                        + " mLoopOneMoreTime[" + mLoopOneMoreTime + "]");
+                if (mShutdownThread) {
+                    // closed while running the engines
+
+                } else if (forcePause) {
+                    setWakeupTime(nextRunTime);
+                    mShutdownThread = true;
+
+                } else if (mLoopOneMoreTime) {
+                    if (Settings.ENABLED_ENGINE_TRACE) {
+                        LogUtils.logV("WorkerThread.run() Woken up meanwhile, so loop again");
+                    }
+
+                } else if (nextRunTime == -1) {
+                    if (Settings.ENABLED_ENGINE_TRACE) {
+                        LogUtils.logV("WorkerThread.run() No Engines waiting, so stop thread");
+                    }
+                    mShutdownThread = true;
+
+                } else if (runAgain) {
+                    if (Settings.ENABLED_ENGINE_TRACE) {
+                        LogUtils.logV("WorkerThread.run() Engine waiting to run, so loop again");
+                    }
+                    threadLoopSleep(LOOP_SLEEP_TIME_MS);
+
+                } else {
+                    if (Settings.ENABLED_ENGINE_TRACE) {
+                        LogUtils.logV("WorkerThread.run() No Engines ready yet, so wait for ["
+                                + (nextRunTime - currentTime) + "ms]");
+                    }
+                    threadLoopSleep(nextRunTime - System.currentTimeMillis());
+                }
                 mLoopOneMoreTime = false;
-                threadLoopSleep();
             }
 
         } while (!mShutdownThread);
@@ -201,16 +210,19 @@ public class WorkerThread extends Thread {
     }
 
     /***
-     * Pause the thread between cycles to stop it overloading the device and
-     * possibly blocking the UI.
+     * Pause the thread until it is woken up or the given time has passed.
+     * Must be called holding mWakeLock.
+     * 
+     * @param timeMs The maximum time to wait in milliseconds.
      */
-    private void threadLoopSleep() {
-        synchronized (mWakeLock) {
-            try {
-                mWakeLock.wait(LOOP_SLEEP_TIME_MS);
-            } catch (InterruptedException e) {
-                // Do nothing
-            }
+    private void threadLoopSleep(long timeMs) {
+        if (timeMs <= 0) {
+            return;
+        }
+        try {
+            mWakeLock.wait(timeMs);
+        } catch (InterruptedException e) {
+            // Do nothing
         }
     }
 
@@ -237,7 +249,10 @@ public class WorkerThread extends Thread {
      */
     protected void close() {
         LogUtils.logV("WorkerThread.close()");
-        mShutdownThread = true;
+        synchronized (mWakeLock) {
+            mShutdownThread = true;
+            mWakeLock.notifyAll();
+        }
         try {
             join();
         } catch (InterruptedException e) {
@@ -47,6 +47,8 @@ import com.vodafone360.people.database.tables.GroupsTable;
 import com.vodafone360.people.database.tables.NativeChangeLogTable;
 import com.vodafone360.people.database.tables.PresenceTable;
 import com.vodafone360.people.database.tables.StateTable;
+import com.vodafone360.people.database.utils.ContactListPager;
+import com.vodafone360.people.engine.meprofile.SyncMeDbUtils;
 import com.vodafone360.people.utils.LogUtils;
 
 /***
@@ -67,6 +69,27 @@ public class DatabaseProvider extends ContentProvider {
     /** Content URI. **/
     public static final Uri CONTENT_URI = Uri.parse("content://"
             + Intents.DATABASE_URI);
+    /**
+     * URI query parameter limiting the number of rows returned, so that large
+     * tables can be read page by page (e.g. with a selection starting after
+     * the last row of the previous page) instead of in one cursor.
+     */
+    public static final String LIMIT_PARAMETER = "limit";
+
+    /**
+     * Path of the main contact list, sorted by name and read page by page so
+     * scrolling through it only keeps a few pages in memory. Filtered with
+     * the {@link #GROUP_PARAMETER} and {@link #SEARCH_PARAMETER} parameters,
+     * projection, selection and sort order are not supported.
+     */
+    public static final String CONTACT_LIST_PATH = "ContactList";
+
+    /** URI query parameter holding the ID of a group to list. */
+    public static final String GROUP_PARAMETER = "group";
+
+    /** URI query parameter holding a search string for the contact list. */
+    public static final String SEARCH_PARAMETER = "search";
+
     /**
      * List of table names, used to check whether the incoming query matches to
      * any table in the database.
@@ -143,6 +166,11 @@ public class DatabaseProvider extends ContentProvider {
      * Example query:
      * "content://com.vodafone360.people.service.aidl.databaseaccess/Activities"
      *
+     * The number of rows can be limited with the {@link #LIMIT_PARAMETER}
+     * parameter, e.g. ".../ContactSummary?limit=50". The contact list as shown
+     * by the UI is available under {@link #CONTACT_LIST_PATH}, e.g.
+     * ".../ContactList?search=jo".
+     *
      * This method is synchronised, as we need it to be thread safe.  I.e.
      * several concurrent queries could be made from multiple processes.
      *
@@ -177,6 +205,12 @@ public class DatabaseProvider extends ContentProvider {
             queriedTable = queriedTable.replaceFirst("/", "");
         }
 
+        if (CONTACT_LIST_PATH.equals(queriedTable)) {
+            return new ContactListPager(mDatabaseHelper.getReadableDatabase(),
+                    SyncMeDbUtils.getMeProfileLocalContactId(mDatabaseHelper),
+                    getGroupFilter(uri), uri.getQueryParameter(SEARCH_PARAMETER));
+        }
+
         final SQLiteQueryBuilder qBuilder = new SQLiteQueryBuilder();
         boolean matchedATable = false;
         for (String table : TABLE_NAMES) {
@@ -198,7 +232,7 @@ public class DatabaseProvider extends ContentProvider {
         if (matchedATable) {
             return qBuilder.query(mDatabaseHelper.getReadableDatabase(),
                     projection, selection, selectionArgs, null, null,
-                    sortOrder);
+                    sortOrder, getLimit(uri));
         } else {
             LogUtils.logE("DatabaseProvider.query() Oops! Someone tried to "
                     + "query a database table that wasn't there; passing out "
@@ -209,6 +243,46 @@ public class DatabaseProvider extends ContentProvider {
         }
     }
 
+    /***
+     * Returns the row limit requested by a URI.
+     *
+     * @param uri Database URI.
+     * @return The limit, or null if the URI has no valid limit.
+     */
+    private static String getLimit(final Uri uri) {
+        final String limit = uri.getQueryParameter(LIMIT_PARAMETER);
+        if (limit == null) {
+            return null;
+        }
+        try {
+            return String.valueOf(Math.max(Integer.parseInt(limit), 0));
+        } catch (NumberFormatException e) {
+            LogUtils.logE("DatabaseProvider.getLimit() Ignoring invalid limit["
+                    + limit + "]");
+            return null;
+        }
+    }
+
+    /***
+     * Returns the group filter requested by a URI.
+     *
+     * @param uri Database URI.
+     * @return The group ID, or null if the URI has no valid group.
+     */
+    private static Long getGroupFilter(final Uri uri) {
+        final String group = uri.getQueryParameter(GROUP_PARAMETER);
+        if (group == null) {
+            return null;
+        }
+        try {
+            return Long.valueOf(group);
+        } catch (NumberFormatException e) {
+            LogUtils.logE("DatabaseProvider.getGroupFilter() Ignoring invalid group["
+                    + group + "]");
+            return null;
+        }
+    }
+
     /***
      * Updates entries in the database. Not yet supported.
      *
@@ -70,14 +70,13 @@ public class QueueManager {
     }
 
     /**
-     * Adds a response to the response queue.
+     * Adds a response to the response queue. The response queue only takes
+     * the lock for removing the matching request from the request queue.
      * 
      * @param response The response to add to the queue.
      */
     public void addResponse(DecodedResponse response) {
-        synchronized (lock) {
-            mResponseQueue.addToResponseQueue(response);
-        }
+        mResponseQueue.addToResponseQueue(response);
     }
 
     /**
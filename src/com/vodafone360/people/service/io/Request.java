@@ -38,6 +38,7 @@ import com.vodafone360.people.engine.EngineManager.EngineId;
 import com.vodafone360.people.engine.login.LoginEngine;
 import com.vodafone360.people.service.io.rpg.RpgMessage;
 import com.vodafone360.people.service.io.rpg.RpgMessageTypes;
+import com.vodafone360.people.service.io.rpg.RpgOutputStream;
 import com.vodafone360.people.service.transport.http.HttpConnectionThread;
 import com.vodafone360.people.service.utils.AuthUtils;
 import com.vodafone360.people.service.utils.hessian.HessianEncoder;
@@ -482,8 +483,13 @@ public class Request {
             return;
         }
 
-        byte[] body;
         calculateAuth();
+        if (writeRpgHeader && (os instanceof RpgOutputStream)) {
+            writeToRpgOutputStream((RpgOutputStream)os);
+            return;
+        }
+
+        byte[] body;
         try {
             body = makeBody();
             if (!writeRpgHeader) {
@@ -496,22 +502,7 @@ public class Request {
             return;
         }
 
-        int requestType = 0;
-        if (mType == Request.Type.PRESENCE_LIST) {
-            requestType = RpgMessageTypes.RPG_GET_PRESENCE;
-        } else if (mType == Request.Type.AVAILABILITY) {
-            requestType = RpgMessageTypes.RPG_SET_AVAILABILITY;
-        } else if (mType == Request.Type.CREATE_CONVERSATION) {
-            requestType = RpgMessageTypes.RPG_CREATE_CONV;
-        } else if (mType == Request.Type.SEND_CHAT_MESSAGE) {
-            requestType = RpgMessageTypes.RPG_SEND_IM;
-        } else if (mType == Request.Type.EXTERNAL_RPG_RESPONSE) {
-            requestType = RpgMessageTypes.RPG_EXT_REQ;
-        } else {
-            requestType = RpgMessageTypes.RPG_INT_REQ;
-        }
-
-        byte[] message = RpgMessage.createRpgMessage(body, requestType, mRequestId);
+        byte[] message = RpgMessage.createRpgMessage(body, getRpgRequestType(), mRequestId);
         
 
         try {
@@ -522,6 +513,61 @@ public class Request {
         }
     }
 
+    /**
+     * Writes the RPG message of this request to the RPG output stream without
+     * building intermediate byte arrays: the RPG header is written first, the
+     * body is encoded straight behind it and the payload length is filled in
+     * afterwards. Nothing is left in the stream if the body cannot be encoded.
+     * 
+     * @param os The RPG output stream to write the message to.
+     */
+    private void writeToRpgOutputStream(RpgOutputStream os) {
+        final int headerOffset = os.startMessage(getRpgRequestType(), mRequestId);
+        try {
+            final int bodyOffset = os.size();
+            HessianEncoder.writeHessianCall(mApiMethodName, mParameters, os);
+            setBodyVersion(os, bodyOffset);
+            os.endMessage(headerOffset);
+        } catch (IOException ioe) {
+            os.truncate(headerOffset);
+            HttpConnectionThread.logE("Request.writeToRpgOutputStream()",
+                    "Failed writing RPG request: " + mRequestId, ioe);
+        }
+    }
+
+    /**
+     * Overwrites the Hessian version of the call written at the given offset,
+     * see makeBody().
+     * 
+     * @param os The RPG output stream holding the body.
+     * @param bodyOffset The offset of the body in the stream.
+     */
+    private static void setBodyVersion(RpgOutputStream os, int bodyOffset) {
+        os.setByte(bodyOffset + 1, 1);
+        os.setByte(bodyOffset + 2, 0);
+    }
+
+    /**
+     * Gets the RPG message type used for sending this request.
+     * 
+     * @return The RPG message type of this request.
+     */
+    private int getRpgRequestType() {
+        if (mType == Request.Type.PRESENCE_LIST) {
+            return RpgMessageTypes.RPG_GET_PRESENCE;
+        } else if (mType == Request.Type.AVAILABILITY) {
+            return RpgMessageTypes.RPG_SET_AVAILABILITY;
+        } else if (mType == Request.Type.CREATE_CONVERSATION) {
+            return RpgMessageTypes.RPG_CREATE_CONV;
+        } else if (mType == Request.Type.SEND_CHAT_MESSAGE) {
+            return RpgMessageTypes.RPG_SEND_IM;
+        } else if (mType == Request.Type.EXTERNAL_RPG_RESPONSE) {
+            return RpgMessageTypes.RPG_EXT_REQ;
+        } else {
+            return RpgMessageTypes.RPG_INT_REQ;
+        }
+    }
+
     /**
      * Creates the body of the request using the parameter list.
      * 
@@ -26,6 +26,8 @@
 package com.vodafone360.people.service.io;
 
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import com.vodafone360.people.Settings;
@@ -46,9 +48,18 @@ public class RequestQueue {
     private final static int MILLIS_PER_SECOND = 1000;
 
     /**
-     * The queue data, a List-array of Request items.
+     * The queue data, all queued Request items mapped by their request ID in
+     * the order they were added.
      */
-    private final List<Request> mRequests = new ArrayList<Request>();
+    private final LinkedHashMap<Integer, Request> mRequests = new LinkedHashMap<Integer, Request>();
+
+    /**
+     * The requests which have not been sent yet, one map per authentication
+     * type (USE_API, USE_RPG and USE_BOTH) indexed by the authentication type.
+     * Requests which became active are dropped lazily when the ready requests
+     * are collected.
+     */
+    private final List<LinkedHashMap<Integer, Request>> mReadyRequests;
 
     /**
      * A unique ID identifying this request
@@ -70,6 +81,10 @@ public class RequestQueue {
         // Generate initial request ID based on current timestamp.
         mCurrentRequestId = (int)(System.currentTimeMillis() / MILLIS_PER_SECOND);
         mTimeOutWatcher = new TimeOutWatcher();
+        mReadyRequests = new ArrayList<LinkedHashMap<Integer, Request>>(Request.USE_BOTH + 1);
+        for (int i = 0; i <= Request.USE_BOTH; i++) {
+            mReadyRequests.add(new LinkedHashMap<Integer, Request>());
+        }
     }
 
     /**
@@ -159,7 +174,9 @@ public class RequestQueue {
         synchronized (QueueManager.getInstance().lock) {
             mCurrentRequestId++;
             req.setRequestId(mCurrentRequestId);
-            mRequests.add(req);
+            final Integer requestId = Integer.valueOf(mCurrentRequestId);
+            mRequests.put(requestId, req);
+            getReadyRequests(req).put(requestId, req);
             // add the request to the watcher thread
             if (req.getTimeout() > 0 && (!req.isFireAndForget() || 
 //                  We now use the timeout mechanism for Request.Type.AVAILABILITY of request,
@@ -200,12 +217,33 @@ public class RequestQueue {
         }
     }
 
-    /*
-     * Get number of items currently in the list of requests
-     * @return number of request items
+    /**
+     * Returns the map of ready requests the given request belongs to
+     * according to its authentication type.
+     * 
+     * @param request The request to get the ready requests for.
+     * @return The ready requests of the authentication type of the request.
      */
-    private int requestCount() {
-        return mRequests.size();
+    private LinkedHashMap<Integer, Request> getReadyRequests(Request request) {
+        return mReadyRequests.get(request.getAuthenticationType());
+    }
+
+    /**
+     * Removes a request from the queue and from its ready requests and stops
+     * watching it for a timeout.
+     * 
+     * @param request The request to remove.
+     */
+    private void dequeueRequest(Request request) {
+        final Integer requestId = Integer.valueOf(request.getRequestId());
+        mRequests.remove(requestId);
+        getReadyRequests(request).remove(requestId);
+
+        // remove the request from the watcher (the request not
+        // necessarily times out before)
+        if (request.getExpiryDate() > 0) {
+            mTimeOutWatcher.removeRequest(request);
+        }
     }
 
     /**
@@ -215,7 +253,7 @@ public class RequestQueue {
      */
     protected List<Request> getAllRequests() {
         synchronized (QueueManager.getInstance().lock) {
-            return mRequests;
+            return new ArrayList<Request>(mRequests.values());
         }
     }
 
@@ -254,38 +292,52 @@ public class RequestQueue {
      */
     private List<Request> getRequests(boolean needsRpgForRequest) {
         synchronized (QueueManager.getInstance().lock) {
-            List<Request> requests = new ArrayList<Request>();
-            if (null == mRequests) {
-                return requests;
-            }
-
-            Request request = null;
-            for (int i = 0; i < mRequests.size(); i++) {
-                request = mRequests.get(i);
-                if ((null == request) || (request.isActive())) {
-                    LogUtils.logD("Skipping active or null request in request queue.");
-                    continue;
-                }
-
-                HttpConnectionThread.logD("RequestQueu.getRequests()",
-                        "Request Auth Type (USE_API=1, USE_RPG=2, USE_BOTH=3): "
-                                + request.getAuthenticationType());
-                // all api and rpg requests
-                if (request.getAuthenticationType() == Request.USE_BOTH) {
-                    requests.add(request);
-                } else if ((!needsRpgForRequest)
-                        && (request.getAuthenticationType() == Request.USE_API)) {
-                    requests.add(request);
-                } else if ((needsRpgForRequest)
-                        && (request.getAuthenticationType() == Request.USE_RPG)) {
-                    requests.add(request); // all rpg requests
+            final Iterator<Request> typeRequests = mReadyRequests.get(
+                    needsRpgForRequest ? Request.USE_RPG : Request.USE_API).values().iterator();
+            final Iterator<Request> bothRequests = mReadyRequests.get(Request.USE_BOTH).values()
+                    .iterator();
+            final List<Request> requests = new ArrayList<Request>();
+
+            // merge both ready lists by request ID to keep the queue order
+            Request typeRequest = nextReadyRequest(typeRequests);
+            Request bothRequest = nextReadyRequest(bothRequests);
+            while ((null != typeRequest) || (null != bothRequest)) {
+                if ((null == bothRequest)
+                        || ((null != typeRequest) && (typeRequest.getRequestId() < bothRequest
+                                .getRequestId()))) {
+                    requests.add(typeRequest);
+                    typeRequest = nextReadyRequest(typeRequests);
+                } else {
+                    requests.add(bothRequest);
+                    bothRequest = nextReadyRequest(bothRequests);
                 }
             }
 
+            HttpConnectionThread.logD("RequestQueue.getRequests()", "Returning "
+                    + requests.size() + (needsRpgForRequest ? " RPG" : " API") + " requests");
             return requests;
         }
     }
 
+    /**
+     * Returns the next request of the given ready requests which has not been
+     * sent yet. Requests that became active are removed from the ready
+     * requests on the way.
+     * 
+     * @param iterator The iterator over the ready requests.
+     * @return The next ready request or null if there is none.
+     */
+    private Request nextReadyRequest(Iterator<Request> iterator) {
+        while (iterator.hasNext()) {
+            final Request request = iterator.next();
+            if (!request.isActive()) {
+                return request;
+            }
+            iterator.remove();
+        }
+        return null;
+    }
+
     /**
      * Return Request from specified request ID. Only used for unit tests.
      * 
@@ -293,78 +345,75 @@ public class RequestQueue {
      * @return Request with or null if request does not exist
      */
     protected Request getRequest(int requestId) {
-        Request req = null;
-        int reqCount = requestCount();
-        for (int i = 0; i < reqCount; i++) {
-            Request tmp = mRequests.get(i);
-            if (tmp.getRequestId() == requestId) {
-                req = tmp;
-                break;
-            }
+        synchronized (QueueManager.getInstance().lock) {
+            return mRequests.get(Integer.valueOf(requestId));
         }
-        return req;
     }
     
     /**
-     * Removes the request for the given response (request) ID from the queue and searches
-     * the queue for requests older than
-     * Settings.REMOVE_REQUEST_FROM_QUEUE_MILLIS and removes them as well.
+     * Removes the request for the given response (request) ID from the queue and removes
+     * the requests at the head of the queue which are older than
+     * Settings.REMOVE_REQUEST_FROM_QUEUE_MILLIS as well.
      * 
      * @param responseId The response object id.
      * @return Returns the removed request, can be null if the request was not found.
      */
     protected Request removeRequest(int responseId) {
         synchronized (QueueManager.getInstance().lock) {
+            final Request request = mRequests.get(Integer.valueOf(responseId));
+            if (request != null) {
+                dequeueRequest(request);
+                logRequestDuration(request);
+            }
 
-            for (int i = 0; i < requestCount(); i++) {
-                Request request = mRequests.get(i);
-                // the request we were looking for
-                if (request.getRequestId() == responseId) {
-                    // reassure the engine id is set (important for SystemNotifications) 
-                    mRequests.remove(i--);
-
-                    // remove the request from the watcher (the request not
-                    // necessarily times out before)
-                    if (request.getExpiryDate() > 0) {
-                        mTimeOutWatcher.removeRequest(request);
-                        LogUtils
-                                .logV("RequestQueue.removeRequest() Request expired after ["
-                                        + (System.currentTimeMillis() - request.getAuthTimestamp())
-                                        + "ms]");
-                    } else {
-                        LogUtils
-                                .logV("RequestQueue.removeRequest() Request took ["
-                                        + (System.currentTimeMillis() - request.getAuthTimestamp())
-                                        + "ms]");
-                    }
-
-                    return request;
-                } else if ((System.currentTimeMillis() - request.getCreationTimestamp()) > Settings.REMOVE_REQUEST_FROM_QUEUE_MILLIS) { // request
-                    // is older than 15 minutes
-                    mRequests.remove(i--);
+            // the queue is ordered by creation so only the head needs to be
+            // checked for requests older than 15 minutes
+            final long now = System.currentTimeMillis();
+            List<Request> oldRequests = null;
+            final Iterator<Request> iterator = mRequests.values().iterator();
+            while (iterator.hasNext()) {
+                final Request oldRequest = iterator.next();
+                if ((now - oldRequest.getCreationTimestamp()) <= Settings.REMOVE_REQUEST_FROM_QUEUE_MILLIS) {
+                    break;
+                }
+                if (oldRequests == null) {
+                    oldRequests = new ArrayList<Request>();
+                }
+                oldRequests.add(oldRequest);
+            }
 
-                    ResponseQueue.getInstance().addToResponseQueue(new DecodedResponse(request.getRequestId(), null, request.mEngineId, 
+            if (oldRequests != null) {
+                for (Request oldRequest : oldRequests) {
+                    dequeueRequest(oldRequest);
+                    logRequestDuration(oldRequest);
+                }
+                // the responses are added once the queue is consistent again
+                for (Request oldRequest : oldRequests) {
+                    ResponseQueue.getInstance().addToResponseQueue(new DecodedResponse(oldRequest.getRequestId(), null, oldRequest.mEngineId, 
                             DecodedResponse.ResponseType.TIMED_OUT_RESPONSE.ordinal()));
-
-                    // remove the request from the watcher (the request not
-                    // necessarily times out before)
-                    if (request.getExpiryDate() > 0) {
-                        mTimeOutWatcher.removeRequest(request);
-                        LogUtils
-                                .logV("RequestQueue.removeRequest() Request expired after ["
-                                        + (System.currentTimeMillis() - request.getAuthTimestamp())
-                                        + "ms]");
-                    } else {
-                        LogUtils
-                                .logV("RequestQueue.removeRequest() Request took ["
-                                        + (System.currentTimeMillis() - request.getAuthTimestamp())
-                                        + "ms]");
-                    }
                 }
-
             }
 
-            return null;
+            return request;
+        }
+    }
+
+    /**
+     * Logs how long the given request has been waiting for its response.
+     * 
+     * @param request The request which has been removed from the queue.
+     */
+    private void logRequestDuration(Request request) {
+        if (request.getExpiryDate() > 0) {
+            LogUtils
+                    .logV("RequestQueue.removeRequest() Request expired after ["
+                            + (System.currentTimeMillis() - request.getAuthTimestamp())
+                            + "ms]");
+        } else {
+            LogUtils
+                    .logV("RequestQueue.removeRequest() Request took ["
+                            + (System.currentTimeMillis() - request.getAuthTimestamp())
+                            + "ms]");
         }
     }
 
@@ -388,23 +437,15 @@ public class RequestQueue {
         synchronized (QueueManager.getInstance().lock) {
             ResponseQueue rQ = ResponseQueue.getInstance();
 
-            for (int i = 0; i < mRequests.size(); i++) {
-                Request request = mRequests.get(i);
-
+            // adding a response removes requests, so iterate over a copy
+            for (Request request : new ArrayList<Request>(mRequests.values())) {
                 if (request.isActive() && (!rQ.responseExists(request.getRequestId()))) {
                     if (!rpgOnly
                             || (rpgOnly && ((request.getAuthenticationType() == Request.USE_RPG) || (request
                                     .getAuthenticationType() == Request.USE_BOTH)))) {
                         LogUtils.logE("RequestQueue.clearActiveRequests() Deleting request "
                                 + request.getRequestId());
-                        mRequests.remove(i);
-                        // AA: I added the line below
-                        // remove the request from the watcher (the request not
-                        // necessarily times out before)
-                        if (request.getExpiryDate() > 0) {
-                            mTimeOutWatcher.removeRequest(request);
-                        }
-                        i--;
+                        dequeueRequest(request);
                         rQ.addToResponseQueue(new DecodedResponse(request.getRequestId(), null, 
                         		request.mEngineId, DecodedResponse.ResponseType.TIMED_OUT_RESPONSE.ordinal()));
                     }
@@ -422,18 +463,11 @@ public class RequestQueue {
         synchronized (QueueManager.getInstance().lock) {
             ResponseQueue responseQueue = ResponseQueue.getInstance();
 
-            for (int i = 0; i < mRequests.size(); i++) {
-                Request request = mRequests.get(i);
-
+            // adding a response removes requests, so iterate over a copy
+            for (Request request : new ArrayList<Request>(mRequests.values())) {
                 LogUtils.logE("RequestQueue.clearActiveRequests() Deleting request "
                         + request.getRequestId());
-                mRequests.remove(i--);
-
-                // remove the request from the watcher (the request not
-                // necessarily times out before)
-                if (request.getExpiryDate() > 0) {
-                    mTimeOutWatcher.removeRequest(request);
-                }
+                dequeueRequest(request);
 
                 responseQueue.addToResponseQueue(new DecodedResponse(request.getRequestId(), null, request.mEngineId, 
                 		DecodedResponse.ResponseType.TIMED_OUT_RESPONSE.ordinal()));
@@ -473,8 +507,9 @@ public class RequestQueue {
         sb.append(mRequests.size());
         sb.append("; Request method-name [isActive]: ");
 
-        for (int i = 0; i < mRequests.size(); i++) {
-            Request request = mRequests.get(i);
+        final Iterator<Request> iterator = mRequests.values().iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
 
             if (null == request) {
                 sb.append("null request");
@@ -485,7 +520,7 @@ public class RequestQueue {
                 sb.append("]");
             }
 
-            if (i < (mRequests.size() - 1)) {
+            if (iterator.hasNext()) {
                 sb.append(", ");
             }
         }
@@ -26,8 +26,8 @@
 package com.vodafone360.people.service.io;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import com.vodafone360.people.datatypes.BaseDataType;
 import com.vodafone360.people.engine.BaseEngine;
@@ -45,9 +45,11 @@ import com.vodafone360.people.utils.LogUtils;
 public class ResponseQueue {
 
     /**
-     * The list of responses held by this queue. An array-list of Responses.
+     * The responses held by this queue, one lock-free queue per engine indexed
+     * by the ordinal of its EngineId. Responses without a source engine are
+     * held in the queue of EngineId.UNDEFINED.
      */
-    private final List<DecodedResponse> mResponses = new ArrayList<DecodedResponse>();
+    private final List<ConcurrentLinkedQueue<DecodedResponse>> mResponses;
 
     /**
      * The engine manager holding the various engines to cross check where
@@ -162,6 +164,11 @@ public class ResponseQueue {
      * Protected constructor to highlight the singleton nature of this class.
      */
     protected ResponseQueue() {
+        final EngineId[] engineIds = EngineId.values();
+        mResponses = new ArrayList<ConcurrentLinkedQueue<DecodedResponse>>(engineIds.length);
+        for (int i = 0; i < engineIds.length; i++) {
+            mResponses.add(new ConcurrentLinkedQueue<DecodedResponse>());
+        }
     }
 
     /**
@@ -181,39 +188,50 @@ public class ResponseQueue {
     }
 
     /**
-     * Adds a response item to the queue.
+     * Returns the queue holding the responses for the given engine.
      * 
-     * @param reqId The request ID to add the response for.
-     * @param data The response data to add to the queue.
-     * @param source The corresponding engine that fired off the request for the
-     *            response.
+     * @param source The engine to get the queue for, null for responses that
+     *            could not be matched to an engine.
+     * @return The queue of responses of the given engine.
+     */
+    private ConcurrentLinkedQueue<DecodedResponse> getQueue(EngineId source) {
+        if (source == null) {
+            source = EngineId.UNDEFINED;
+        }
+        return mResponses.get(source.ordinal());
+    }
+
+    /**
+     * Adds a response item to the queue. The request is removed from the
+     * request queue first so that the response is put straight onto the queue
+     * of the engine which issued it. Only the request removal needs the queue
+     * manager lock, adding the response itself is lock-free.
+     * 
+     * @param response The decoded response to add to the queue.
      */
     public void addToResponseQueue(final DecodedResponse response) {
-        synchronized (QueueManager.getInstance().lock) {
-            ServiceStatus status = BaseEngine.getResponseStatus(BaseDataType.UNKNOWN_DATA_TYPE, response.mDataTypes);
-            if (status == ServiceStatus.ERROR_INVALID_SESSION) {
-                EngineManager em = EngineManager.getInstance();
-                if (em != null) {
-                    LogUtils.logE("Logging out the current user because of invalide session");
-                    em.getLoginEngine().logoutAndRemoveUser();
-                    return;
-                }
-            }
-            synchronized (mResponses) {
-            	mResponses.add(response);
+        ServiceStatus status = BaseEngine.getResponseStatus(BaseDataType.UNKNOWN_DATA_TYPE, response.mDataTypes);
+        if (status == ServiceStatus.ERROR_INVALID_SESSION) {
+            EngineManager em = EngineManager.getInstance();
+            if (em != null) {
+                LogUtils.logE("Logging out the current user because of invalide session");
+                em.getLoginEngine().logoutAndRemoveUser();
+                return;
             }
+        }
 
-            Request request = RequestQueue.getInstance().removeRequest(response.mReqId);
-            if (request != null) {
-                // we suppose the response being handled by the same engine 
-                // that issued the request with the given id
-                response.mSource = request.mEngineId;
-            }
-            
-            mEngMgr = EngineManager.getInstance();
-            if (mEngMgr != null) {
-                mEngMgr.onCommsInMessage(response.mSource);
-            }
+        Request request = RequestQueue.getInstance().removeRequest(response.mReqId);
+        if (request != null) {
+            // we suppose the response being handled by the same engine 
+            // that issued the request with the given id
+            response.mSource = request.mEngineId;
+        }
+
+        getQueue(response.mSource).add(response);
+
+        mEngMgr = EngineManager.getInstance();
+        if (mEngMgr != null) {
+            mEngMgr.onCommsInMessage(response.mSource);
         }
     }
 
@@ -226,31 +244,17 @@ public class ResponseQueue {
      *         if no response was found.
      */
     public DecodedResponse getNextResponse(EngineId source) {
+        final DecodedResponse resp = getQueue(source).poll();
 
-        DecodedResponse resp = null;
-        
-        synchronized (mResponses) {
-	        Iterator<DecodedResponse> iterator = mResponses.iterator();
-	        
-	        while (iterator.hasNext()) {
-	            resp = iterator.next();
-	            
-	            if ((null != resp) && (resp.mSource == source)) {
-	            	// remove response if the source engine is equal to the response's engine
-	            	iterator.remove();
-	            	
-	                if (source != null) {
-	                    LogUtils.logV("ResponseQueue.getNextResponse() Returning a response to engine["
-	                            + source.name() + "]");
-	                }
-	                
-	                return resp;
-	            } else if ((null == resp) || (null == resp.mSource)) {
-	            	LogUtils.logE("Either the response or its source was null. Response: " + resp);
-	            }
-	        }
+        if (resp != null) {
+            if (source != null) {
+                LogUtils.logV("ResponseQueue.getNextResponse() Returning a response to engine["
+                        + source.name() + "]");
+            } else {
+                LogUtils.logE("The source of the response was null. Response: " + resp);
+            }
         }
-        return null;
+        return resp;
     }
 
     /**
@@ -259,26 +263,25 @@ public class ResponseQueue {
      * @param reqId Request ID.
      * @return true If we have a response for this ID.
      */
-    protected synchronized boolean responseExists(int reqId) {
-        boolean exists = false;
-        
-        synchronized (mResponses) {
-        	int responseCount = mResponses.size();
-        	
-	        for (int i = 0; i < responseCount; i++) {
-	            if (mResponses.get(i).mReqId != null && mResponses.get(i).mReqId.intValue() == reqId) {
-	                exists = true;
-	                break;
-	            }
-	        }
+    protected boolean responseExists(int reqId) {
+        final int queueCount = mResponses.size();
+        for (int i = 0; i < queueCount; i++) {
+            for (DecodedResponse resp : mResponses.get(i)) {
+                if (resp.mReqId != null && resp.mReqId.intValue() == reqId) {
+                    return true;
+                }
+            }
         }
-        return exists;
+        return false;
     }
     
     /**
      * Clear response queue holding any stale responses.
      */
     public void clearResponseQueue() {
-        mResponses.clear();
+        final int queueCount = mResponses.size();
+        for (int i = 0; i < queueCount; i++) {
+            mResponses.get(i).clear();
+        }
     }
 }
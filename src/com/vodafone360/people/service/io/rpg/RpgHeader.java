@@ -37,6 +37,9 @@ public class RpgHeader {
     /** RPG header length. */
     public final static int HEADER_LENGTH = 16;
 
+    /** Offset of the 4 payload length bytes within the RPG header. */
+    public final static int PAYLOAD_LENGTH_OFFSET = 11;
+
     /** RPG header delimiter byte. */
     public static final int DELIMITER_BYTE = 0xFF;
 
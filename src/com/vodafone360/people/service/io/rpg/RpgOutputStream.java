@@ -0,0 +1,123 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.service.io.rpg;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Reusable buffer for batching RPG messages before they are written to the
+ * connection. A message is started by writing its RPG header with an empty
+ * payload length, the Hessian body is then written straight into the buffer
+ * and the payload length is back-patched once the message is complete. The
+ * whole batch is handed to the connection with a single writeTo() call
+ * without copying the buffer.
+ */
+public class RpgOutputStream extends ByteArrayOutputStream {
+
+    /** The size the buffer is allocated with and shrunk back to. */
+    private final int mInitialSize;
+
+    /**
+     * Constructor.
+     * 
+     * @param size The initial size of the buffer in bytes.
+     */
+    public RpgOutputStream(int size) {
+        super(size);
+        mInitialSize = size;
+    }
+
+    /**
+     * Starts a new RPG message by writing its header with a payload length of
+     * 0. The length is filled in by endMessage().
+     * 
+     * @param type RPG message type.
+     * @param requestId Request ID.
+     * @return The offset of the header of the message in the buffer.
+     */
+    public synchronized int startMessage(int type, int requestId) {
+        final RpgHeader rpgHdr = new RpgHeader();
+        rpgHdr.setReqType(type);
+        rpgHdr.setReqId(requestId);
+        rpgHdr.setPayloadLength(0);
+        rpgHdr.setCompression(false);
+
+        final int headerOffset = count;
+        write(rpgHdr.createHeader(), 0, RpgHeader.HEADER_LENGTH);
+        return headerOffset;
+    }
+
+    /**
+     * Completes the RPG message started at the given offset by back-patching
+     * the length of everything written since its header.
+     * 
+     * @param headerOffset The offset returned by startMessage().
+     */
+    public synchronized void endMessage(int headerOffset) {
+        final byte[] lengthBytes = RpgHelper.intToSignedBytes(count - headerOffset
+                - RpgHeader.HEADER_LENGTH);
+        System.arraycopy(lengthBytes, 0, buf, headerOffset + RpgHeader.PAYLOAD_LENGTH_OFFSET,
+                lengthBytes.length);
+    }
+
+    /**
+     * Overwrites a byte which has already been written to the buffer.
+     * 
+     * @param index The position of the byte in the buffer.
+     * @param value The new value of the byte.
+     */
+    public synchronized void setByte(int index, int value) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index " + index + " not written yet");
+        }
+        buf[index] = (byte)value;
+    }
+
+    /**
+     * Discards everything written after the given offset, e.g. a message that
+     * failed to encode.
+     * 
+     * @param size The number of bytes to keep.
+     */
+    public synchronized void truncate(int size) {
+        if (size >= 0 && size < count) {
+            count = size;
+        }
+    }
+
+    /**
+     * Resets the buffer and releases its memory if it has grown beyond the
+     * given capacity, e.g. after sending a large avatar upload.
+     * 
+     * @param maxCapacity The largest buffer size which is kept for reuse.
+     */
+    public synchronized void reset(int maxCapacity) {
+        reset();
+        if (buf.length > maxCapacity) {
+            buf = new byte[mInitialSize];
+        }
+    }
+}
@@ -29,8 +29,10 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
 
+import com.vodafone360.people.Settings;
 import com.vodafone360.people.datatypes.BaseDataType;
 import com.vodafone360.people.datatypes.PushEvent;
 import com.vodafone360.people.datatypes.ServerError;
@@ -53,24 +55,52 @@ import com.vodafone360.people.utils.LogUtils;
  * specific data types and added to the response queue. The Response queue
  * stores request id (except for unsolicited Push msgs) and a source/destination
  * engine to allow appropriate routing.
+ * <p>
+ * Responses are decoded by a small pool of worker threads. Push messages and
+ * presence responses are queued in a priority lane which is always served
+ * first and decoded by one worker at a time so their order is kept. All other
+ * responses (e.g. contact pages) are queued in a bulk lane which is decoded by
+ * the remaining workers in parallel. Both lanes are bounded, adding a response
+ * to a full lane blocks the transport until a worker has taken a response.
  */
 public class DecoderThread implements Runnable {
 
     private static final String THREAD_NAME = "DecoderThread";
 
-    private static final long THREAD_SLEEP_TIME = 300; // ms
-
     private volatile boolean mRunning = false;
 
-    private final List<RawResponse> mResponses = new ArrayList<RawResponse>();
+    /** Responses which are decoded before any bulk response. */
+    private final LinkedList<RawResponse> mPriorityResponses = new LinkedList<RawResponse>();
+
+    /** Responses which are decoded when no priority response is waiting. */
+    private final LinkedList<RawResponse> mBulkResponses = new LinkedList<RawResponse>();
+
+    /** True while a worker is decoding a response of the priority lane. */
+    private boolean mIsDecodingPriorityResponse = false;
+
+    /** Number of worker threads started by {@link #startThread()}. */
+    private final int mWorkerCount;
+
+    /** Number of worker threads which have not finished yet. */
+    private int mActiveWorkers = 0;
+
+    /** Maximum number of responses waiting in each lane. */
+    private final int mLaneCapacity;
+
+    /** Number of responses decoded since the decoder was created. */
+    private long mDecodedCount = 0;
+
+    /** Sum of the latencies of all decoded responses in milliseconds. */
+    private long mTotalLatency = 0;
+
+    /** Largest latency of a decoded response in milliseconds. */
+    private long mMaxLatency = 0;
 
     private ResponseQueue mRespQueue = null;
 
-    /**
-     * The hessian decoder is here declared as member and will be reused instead
-     * of making new instances on every need
-     */
-    private HessianDecoder mHessianDecoder = new HessianDecoder();
+    /** Buffers for the data of responses read by the transport. */
+    private final ResponseBufferPool mBufferPool = new ResponseBufferPool(
+            Settings.RESPONSE_BUFFER_POOL_SIZE, Settings.RESPONSE_BUFFER_MAX_POOLED_SIZE);
 
     /**
      * Container class for raw undecoded response data. Holds a request id
@@ -82,53 +112,155 @@ public class DecoderThread implements Runnable {
 
         public byte[] mData;
 
+        /** Offset of the response data in mData. */
+        public int mOffset = 0;
+
+        /** Number of bytes of response data in mData. */
+        public int mLength;
+
         public boolean mIsCompressed = false;
 
         public boolean mIsPushMessage = false;
         
         public long mTimeStamp = 0;
 
+        /**
+         * True if the response is decoded before bulk responses, set when the
+         * response is added to the decoder.
+         */
+        private boolean mIsPriority = false;
+
+        /** The pool mData is given back to after decoding, or null. */
+        private ResponseBufferPool mBufferPool = null;
+
         public RawResponse(int reqId, byte[] data, boolean isCompressed, boolean isPushMessage) {
+            this(reqId, data, 0, (data != null) ? data.length : 0, isCompressed, isPushMessage);
+        }
+
+        /**
+         * Constructs a raw response holding a slice of the given array.
+         * 
+         * @param reqId The request ID or 0 for push messages.
+         * @param data The array holding the response data.
+         * @param offset The offset of the response data in the array.
+         * @param length The number of bytes of response data.
+         * @param isCompressed True if the data is GZip compressed.
+         * @param isPushMessage True if the response is a push message.
+         */
+        public RawResponse(int reqId, byte[] data, int offset, int length, boolean isCompressed,
+                boolean isPushMessage) {
             mReqId = reqId;
             mData = data;
+            mOffset = offset;
+            mLength = length;
             mIsCompressed = isCompressed;
             mIsPushMessage = isPushMessage;
             mTimeStamp = System.currentTimeMillis();
         }
+
+        /**
+         * Sets the pool the data array was taken from. The array is given back
+         * to the pool as soon as the response has been decoded.
+         * 
+         * @param pool The pool the data array belongs to.
+         */
+        public void setBufferPool(ResponseBufferPool pool) {
+            mBufferPool = pool;
+        }
+
+        /**
+         * Gives the data array back to its pool, if any. The data must not
+         * be used afterwards.
+         */
+        private void releaseBuffer() {
+            if (mBufferPool != null) {
+                mBufferPool.release(mData);
+                mBufferPool = null;
+                mData = null;
+            }
+        }
     }
 
     /**
-     * Start decoder thread
+     * Start decoder worker threads. Workers of a previous run which have not
+     * finished yet are reused.
      */
-    protected void startThread() {
+    protected synchronized void startThread() {
         mRunning = true;
-        Thread decoderThread = new Thread(this);
-        decoderThread.setName(THREAD_NAME);
-        decoderThread.start();
+        while (mActiveWorkers < mWorkerCount) {
+            Thread decoderThread = new Thread(this);
+            decoderThread.setName(THREAD_NAME + mActiveWorkers);
+            mActiveWorkers++;
+            decoderThread.start();
+        }
     }
 
     /**
-     * Stop decoder thread
+     * Stop decoder worker threads
      */
     protected synchronized void stopThread() {
         this.mRunning = false;
-        this.notify();
+        this.notifyAll();
     }
 
+    /**
+     * Creates a decoder with the worker count and lane capacity defined in
+     * {@link Settings}.
+     */
     public DecoderThread() {
+        this(Settings.DECODER_THREAD_COUNT, Settings.DECODER_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Creates a decoder.
+     * 
+     * @param workerCount The number of threads decoding responses, at least 1.
+     * @param laneCapacity The maximum number of responses waiting in each
+     *            priority lane, at least 1.
+     */
+    public DecoderThread(int workerCount, int laneCapacity) {
+        mWorkerCount = Math.max(1, workerCount);
+        mLaneCapacity = Math.max(1, laneCapacity);
         mRespQueue = ResponseQueue.getInstance();
     }
 
     /**
-     * Add raw response to decoding queue
+     * Add raw response to decoding queue. Blocks while the lane of the response
+     * is full and the decoder is running.
      * 
      * @param resp raw data
      */
     public void addToDecode(RawResponse resp) {
+        resp.mIsPriority = isPriorityResponse(resp);
+        final LinkedList<RawResponse> lane = (resp.mIsPriority) ? mPriorityResponses
+                : mBulkResponses;
         synchronized (this) {
-            mResponses.add(resp);
-            this.notify();
+            while (mRunning && lane.size() >= mLaneCapacity) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    // Do nothing
+                }
+            }
+            lane.addLast(resp);
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Checks if a response is decoded before bulk responses. This is the case
+     * for push messages (e.g. chat and presence changes) and for responses to
+     * requests of the presence engine.
+     * 
+     * @param resp The response to check.
+     * @return true if the response belongs to the priority lane.
+     */
+    private boolean isPriorityResponse(RawResponse resp) {
+        if (resp.mIsPushMessage) {
+            return true;
         }
+        final Request request = QueueManager.getInstance().getRequest(resp.mReqId);
+        return (request != null) && (request.mEngineId == EngineId.PRESENCE_ENGINE);
     }
 
     public synchronized boolean getIsRunning() {
@@ -136,115 +268,206 @@ public class DecoderThread implements Runnable {
     }
 
     /**
-     * Thread's run function If the decoding queue contains any entries we
-     * decode the first response and add the decoded data to the response queue.
-     * If the decode queue is empty, the thread will become inactive. It is
-     * resumed when a raw data entry is added to the decode queue.
+     * Returns the number of responses waiting to be decoded.
+     * 
+     * @return The number of responses in both lanes.
      */
-    public void run() {
-        LogUtils.logI("DecoderThread.run() [Start thread]");
+    public synchronized int getQueuedCount() {
+        return mPriorityResponses.size() + mBulkResponses.size();
+    }
+
+    /**
+     * Returns the average time between receiving a response and adding the
+     * decoded response to the response queue.
+     * 
+     * @return The average latency in milliseconds, 0 if nothing was decoded.
+     */
+    public synchronized long getAverageLatency() {
+        return (mDecodedCount == 0) ? 0 : mTotalLatency / mDecodedCount;
+    }
+
+    /**
+     * Returns the largest time between receiving a response and adding the
+     * decoded response to the response queue.
+     * 
+     * @return The maximum latency in milliseconds.
+     */
+    public synchronized long getMaxLatency() {
+        return mMaxLatency;
+    }
+
+    /**
+     * Returns the pool of buffers the transport reads response data into.
+     * Buffers of responses added with a RawResponse referencing this pool are
+     * given back after decoding.
+     * 
+     * @return The response buffer pool.
+     */
+    public ResponseBufferPool getBufferPool() {
+        return mBufferPool;
+    }
+
+    /**
+     * Takes the next response to decode. Priority responses are taken first,
+     * unless another worker is still decoding a priority response. Waits while
+     * there is nothing to decode.
+     * 
+     * @return The response or null if the decoder was stopped, in which case
+     *         the calling worker has to finish.
+     */
+    private synchronized RawResponse takeNextResponse() {
         while (mRunning) {
-            EngineId engineId = EngineId.UNDEFINED;
-            Type type = Type.PUSH_MSG;
-            int reqId = -1;
+            RawResponse resp = null;
+            if (!mIsDecodingPriorityResponse && !mPriorityResponses.isEmpty()) {
+                mIsDecodingPriorityResponse = true;
+                resp = mPriorityResponses.removeFirst();
+            } else if (!mBulkResponses.isEmpty()) {
+                resp = mBulkResponses.removeFirst();
+            }
+
+            if (resp != null) {
+                // wake up transports waiting for space in a lane
+                notifyAll();
+                return resp;
+            }
+
             try {
-                if (mResponses.size() > 0) {
-                    LogUtils.logI("DecoderThread.run() Decoding [" + mResponses.size()
-                            + "x] responses");
-
-                    // Decode first entry in queue
-                    RawResponse decode = mResponses.get(0);
-                    reqId = decode.mReqId;
-
-                    if (!decode.mIsPushMessage) {
-                        // Attempt to get type from request
-                        Request request = QueueManager.getInstance().getRequest(reqId);
-                        if (request != null) {
-                            type = request.mType;
-                            engineId = request.mEngineId;
-                            
-                            long backendResponseTime = decode.mTimeStamp - request.getAuthTimestamp();
-                            
-                            LogUtils.logD("Backend response time was " + backendResponseTime + "ms");
-                        } else {
-                            type = Type.COMMON;
-                        }
-                    }
-                    
-                    DecodedResponse response = mHessianDecoder.decodeHessianByteArray(reqId, decode.mData, type, decode.mIsCompressed, engineId);
-
-                    // if we have a push message let's try to find out to which engine it should be routed
-                    if ((response.getResponseType() == DecodedResponse.ResponseType.PUSH_MESSAGE.ordinal()) && (response.mDataTypes.get(0) != null)) {
-                    	// for push messages we have to override the engine id as it is parsed inside the hessian decoder 
-                    	engineId = ((PushEvent) response.mDataTypes.get(0)).mEngineId;
-                        response.mSource = engineId;
-                        // TODO mSource should get the engineId inside the decoder once types for mDataTypes is out. see PAND-1805.
-                    }
+                LogUtils.logV("DecoderThread.takeNextResponse() [Waiting for more responses]");
+                wait();
+            } catch (InterruptedException ie) {
+                // Do nothing
+            }
+        }
+        mActiveWorkers--;
+        return null;
+    }
 
-                    // This is usually the case for SYSTEM_NOTIFICATION messages
-                    // or where the server is returning an error for requests
-                    // sent by the engines. IN this case, if there is no special
-                    // handling for the engine, we get the engine ID based on
-                    // the request ID.
-                    if (type == Type.PUSH_MSG && reqId != 0 && engineId == EngineId.UNDEFINED) {
-                        Request request = QueueManager.getInstance().getRequest(reqId);
-                        if (request != null) {
-                            engineId = request.mEngineId;
-                        }
-                    }
+    /**
+     * Called by a worker once a response has been decoded. Updates the latency
+     * statistics and releases the priority lane.
+     * 
+     * @param resp The decoded response.
+     * @param latency The time from receiving until queueing the decoded
+     *            response in milliseconds.
+     */
+    private synchronized void onResponseDecoded(RawResponse resp, long latency) {
+        if (resp.mIsPriority) {
+            mIsDecodingPriorityResponse = false;
+            notifyAll();
+        }
+        mDecodedCount++;
+        mTotalLatency += latency;
+        if (latency > mMaxLatency) {
+            mMaxLatency = latency;
+        }
+    }
 
-                    if (engineId == EngineId.UNDEFINED) {
-                        LogUtils.logE("DecoderThread.run() Unknown engine for message with type["
-                                + type.name() + "]");
-                        // TODO: Throw Exception for undefined messages, as
-                        // otherwise they might always remain on the Queue?
-                    }
+    /**
+     * Worker thread run function. Takes the next response from the decoding
+     * lanes, decodes it and adds the decoded data to the response queue. If
+     * both lanes are empty, the worker will become inactive. It is resumed when
+     * a raw data entry is added to the decoder.
+     */
+    public void run() {
+        LogUtils.logI("DecoderThread.run() [Start thread]");
+        // the hessian decoder is not thread safe so every worker has its own
+        final HessianDecoder hessianDecoder = new HessianDecoder();
+        try {
+            RawResponse decode = takeNextResponse();
+            while (decode != null) {
+                decodeResponse(hessianDecoder, decode);
+                decode.releaseBuffer();
+                final long latency = System.currentTimeMillis() - decode.mTimeStamp;
+                LogUtils.logD("DecoderThread.run() Response[" + decode.mReqId
+                        + "] queued after " + latency + "ms");
+                onResponseDecoded(decode, latency);
+                decode = takeNextResponse();
+            }
+        } finally {
+            hessianDecoder.release();
+        }
+        LogUtils.logI("DecoderThread.run() [End thread]");
+    }
 
-                    // Add data to response queue
-                    HttpConnectionThread.logV("DecoderThread.run()", "Add message[" + decode.mReqId
-                            + "] to ResponseQueue for engine[" + engineId + "] with data [" + response.mDataTypes
-                            + "]");
-                    mRespQueue.addToResponseQueue(response);
+    /**
+     * Decodes a response and adds the decoded data to the response queue. If
+     * the response cannot be decoded an error is reported back to the engine.
+     * 
+     * @param hessianDecoder The decoder of the calling worker.
+     * @param decode The response to decode.
+     */
+    private void decodeResponse(HessianDecoder hessianDecoder, RawResponse decode) {
+        EngineId engineId = EngineId.UNDEFINED;
+        Type type = Type.PUSH_MSG;
+        int reqId = decode.mReqId;
+        try {
+            if (!decode.mIsPushMessage) {
+                // Attempt to get type from request
+                Request request = QueueManager.getInstance().getRequest(reqId);
+                if (request != null) {
+                    type = request.mType;
+                    engineId = request.mEngineId;
 
-                    // Remove item from our list of responses.
-                    mResponses.remove(0);
+                    long backendResponseTime = decode.mTimeStamp - request.getAuthTimestamp();
 
-                    // be nice to the other threads
-                    Thread.sleep(THREAD_SLEEP_TIME);
+                    LogUtils.logD("Backend response time was " + backendResponseTime + "ms");
                 } else {
-                    synchronized (this) {
-                        // No waiting responses, so the thread should sleep.
-                        try {
-                            LogUtils.logV("DecoderThread.run() [Waiting for more responses]");
-                            wait();
-                        } catch (InterruptedException ie) {
-                            // Do nothing
-                        }
-                    }
-                }
-            } catch (Throwable t) {
-                /*
-                 * Keep thread running regardless of error. When something goes
-                 * wrong we should remove response from queue and report error
-                 * back to engine.
-                 */
-                if (mResponses.size() > 0) {
-                    mResponses.remove(0);
+                    type = Type.COMMON;
                 }
-                if (type != Type.PUSH_MSG && engineId != EngineId.UNDEFINED) {
-                    List<BaseDataType> list = new ArrayList<BaseDataType>();
-                    // this error type was chosen to make engines remove request
-                    // or retry
-                    // we may consider using other error code later
-                    ServerError error = new ServerError(ServerError.ErrorType.INTERNALERROR);
-                    error.errorDescription = "Decoder thread was unable to decode server message";
-                    list.add(error);
-                    mRespQueue.addToResponseQueue(new DecodedResponse(reqId, list, engineId, DecodedResponse.ResponseType.SERVER_ERROR.ordinal()));
+            }
+
+            DecodedResponse response = hessianDecoder.decodeHessianByteArray(reqId, decode.mData,
+                    decode.mOffset, decode.mLength, type, decode.mIsCompressed, engineId);
+
+            // if we have a push message let's try to find out to which engine it should be routed
+            if ((response.getResponseType() == DecodedResponse.ResponseType.PUSH_MESSAGE.ordinal()) && (response.mDataTypes.get(0) != null)) {
+            	// for push messages we have to override the engine id as it is parsed inside the hessian decoder 
+            	engineId = ((PushEvent) response.mDataTypes.get(0)).mEngineId;
+                response.mSource = engineId;
+                // TODO mSource should get the engineId inside the decoder once types for mDataTypes is out. see PAND-1805.
+            }
+
+            // This is usually the case for SYSTEM_NOTIFICATION messages
+            // or where the server is returning an error for requests
+            // sent by the engines. IN this case, if there is no special
+            // handling for the engine, we get the engine ID based on
+            // the request ID.
+            if (type == Type.PUSH_MSG && reqId != 0 && engineId == EngineId.UNDEFINED) {
+                Request request = QueueManager.getInstance().getRequest(reqId);
+                if (request != null) {
+                    engineId = request.mEngineId;
                 }
-                LogUtils.logE("DecoderThread.run() Throwable on reqId[" + reqId + "]", t);
             }
+
+            if (engineId == EngineId.UNDEFINED) {
+                LogUtils.logE("DecoderThread.decodeResponse() Unknown engine for message with type["
+                        + type.name() + "]");
+                // TODO: Throw Exception for undefined messages, as
+                // otherwise they might always remain on the Queue?
+            }
+
+            // Add data to response queue
+            HttpConnectionThread.logV("DecoderThread.decodeResponse()", "Add message[" + decode.mReqId
+                    + "] to ResponseQueue for engine[" + engineId + "] with data [" + response.mDataTypes
+                    + "]");
+            mRespQueue.addToResponseQueue(response);
+        } catch (Throwable t) {
+            /*
+             * Keep thread running regardless of error. When something goes
+             * wrong we should report the error back to engine.
+             */
+            if (type != Type.PUSH_MSG && engineId != EngineId.UNDEFINED) {
+                List<BaseDataType> list = new ArrayList<BaseDataType>();
+                // this error type was chosen to make engines remove request
+                // or retry
+                // we may consider using other error code later
+                ServerError error = new ServerError(ServerError.ErrorType.INTERNALERROR);
+                error.errorDescription = "Decoder thread was unable to decode server message";
+                list.add(error);
+                mRespQueue.addToResponseQueue(new DecodedResponse(reqId, list, engineId, DecodedResponse.ResponseType.SERVER_ERROR.ordinal()));
+            }
+            LogUtils.logE("DecoderThread.decodeResponse() Throwable on reqId[" + reqId + "]", t);
         }
-        LogUtils.logI("DecoderThread.run() [End thread]");
     }
 
     /**
@@ -273,54 +496,15 @@ public class DecoderThread implements Runnable {
                 for (RpgMessage mRpgMessage : mRpgMessages) {
                     body = mRpgMessage.body();
                     rpgHeader = mRpgMessage.header();
-                    // Determine RPG mssageType (internal response, push
-                    // etc)
-                    final int mMessageType = rpgHeader.reqType();
                     HttpConnectionThread.logD("DecoderThread.handleResponse()",
                             "Non-RPG_POLL_MESSAGE");
                     // Reset blank header counter
                     final boolean mZipped = mRpgMessage.header().compression();
                     if (body != null && (body.length > 0)) {
-                        switch (mMessageType) {
-                            case RpgMessageTypes.RPG_EXT_RESP:
-                                // External message response
-                                HttpConnectionThread
-                                        .logD(
-                                                "DecoderThread.handleResponse()",
-                                                "RpgMessageTypes.RPG_EXT_RESP - "
-                                                        + "Add External Message RawResponse to Decode queue:"
-                                                        + rpgHeader.reqId() + "mBody.len="
-                                                        + body.length);
-                                addToDecode(new RawResponse(rpgHeader.reqId(), body, mZipped, false));
-                                break;
-                            case RpgMessageTypes.RPG_PUSH_MSG:
-                                // Define push message callback to
-                                // notify controller
-                                HttpConnectionThread.logD("DecoderThread.handleResponse()",
-                                        "RpgMessageTypes.RPG_PUSH_MSG - Add Push "
-                                                + "Message RawResponse to Decode queue:" + 0
-                                                + "mBody.len=" + body.length);
-                                addToDecode(new RawResponse(rpgHeader.reqId(), body, mZipped, true));
-                                break;
-                            case RpgMessageTypes.RPG_INT_RESP:
-                                // Internal message response
-                                HttpConnectionThread.logD("DecoderThread.handleResponse()",
-                                        "RpgMessageTypes.RPG_INT_RESP - Add RawResponse to Decode queue:"
-                                                + rpgHeader.reqId() + "mBody.len=" + body.length);
-                                addToDecode(new RawResponse(rpgHeader.reqId(), body, mZipped, false));
-                                break;
-                            case RpgMessageTypes.RPG_PRESENCE_RESPONSE:
-                                HttpConnectionThread.logD("DecoderThread.handleResponse()",
-                                        "RpgMessageTypes.RPG_PRESENCE_RESPONSE - "
-                                                + "Add RawResponse to Decode queue - mZipped["
-                                                + mZipped + "]" + "mBody.len=" + body.length);
-                                addToDecode(new RawResponse(rpgHeader.reqId(), body, mZipped, false));
-                                break;
-                            default:
-                                // FIXME after the refactoring we need to add an
-                                // error to the responsedecoder
-                                break;
-                        }
+                        // Determine RPG mssageType (internal response, push
+                        // etc)
+                        addRpgMessageToDecode(rpgHeader.reqType(), new RawResponse(rpgHeader
+                                .reqId(), body, mZipped, false));
                     }
                 }
             } finally {
@@ -337,4 +521,56 @@ public class DecoderThread implements Runnable {
             }
         }
     }
+
+    /**
+     * Adds the body of a single RPG message to the decoding queue if the RPG
+     * message type is one that gets decoded.
+     * 
+     * @param messageType The RPG message type (internal response, push etc).
+     * @param resp The body of the message, marked as push message by this
+     *            method if the message type requires it.
+     * @return true if the response was added, false if the message type is not
+     *         decoded.
+     */
+    public boolean addRpgMessageToDecode(int messageType, RawResponse resp) {
+        switch (messageType) {
+            case RpgMessageTypes.RPG_EXT_RESP:
+                // External message response
+                HttpConnectionThread
+                        .logD(
+                                "DecoderThread.addRpgMessageToDecode()",
+                                "RpgMessageTypes.RPG_EXT_RESP - "
+                                        + "Add External Message RawResponse to Decode queue:"
+                                        + resp.mReqId + "mBody.len="
+                                        + resp.mLength);
+                break;
+            case RpgMessageTypes.RPG_PUSH_MSG:
+                // Define push message callback to
+                // notify controller
+                HttpConnectionThread.logD("DecoderThread.addRpgMessageToDecode()",
+                        "RpgMessageTypes.RPG_PUSH_MSG - Add Push "
+                                + "Message RawResponse to Decode queue:" + 0
+                                + "mBody.len=" + resp.mLength);
+                resp.mIsPushMessage = true;
+                break;
+            case RpgMessageTypes.RPG_INT_RESP:
+                // Internal message response
+                HttpConnectionThread.logD("DecoderThread.addRpgMessageToDecode()",
+                        "RpgMessageTypes.RPG_INT_RESP - Add RawResponse to Decode queue:"
+                                + resp.mReqId + "mBody.len=" + resp.mLength);
+                break;
+            case RpgMessageTypes.RPG_PRESENCE_RESPONSE:
+                HttpConnectionThread.logD("DecoderThread.addRpgMessageToDecode()",
+                        "RpgMessageTypes.RPG_PRESENCE_RESPONSE - "
+                                + "Add RawResponse to Decode queue - mZipped["
+                                + resp.mIsCompressed + "]" + "mBody.len=" + resp.mLength);
+                break;
+            default:
+                // FIXME after the refactoring we need to add an
+                // error to the responsedecoder
+                return false;
+        }
+        addToDecode(resp);
+        return true;
+    }
 }
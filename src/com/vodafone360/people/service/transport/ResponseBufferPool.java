@@ -0,0 +1,124 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.service.transport;
+
+import java.util.ArrayList;
+
+/**
+ * Pool of byte buffers holding the payloads of responses read from the
+ * network. A buffer is taken by the transport when a response is read and
+ * given back once the response has been decoded, so reading responses does
+ * not allocate a new array for each of them. Buffers larger than the maximum
+ * pooled size are not kept.
+ */
+public class ResponseBufferPool {
+
+    /** The smallest buffer allocated by the pool. */
+    private static final int MIN_BUFFER_SIZE = 1024; // bytes
+
+    /** The buffers which are not in use. */
+    private final ArrayList<byte[]> mFreeBuffers = new ArrayList<byte[]>();
+
+    /** Maximum number of buffers kept in the pool. */
+    private final int mMaxBuffers;
+
+    /** Maximum size of a buffer kept in the pool. */
+    private final int mMaxBufferSize;
+
+    /**
+     * Constructor.
+     * 
+     * @param maxBuffers Maximum number of buffers kept in the pool.
+     * @param maxBufferSize Maximum size in bytes of a buffer kept in the pool.
+     */
+    public ResponseBufferPool(int maxBuffers, int maxBufferSize) {
+        mMaxBuffers = maxBuffers;
+        mMaxBufferSize = maxBufferSize;
+    }
+
+    /**
+     * Takes a buffer of at least the given size from the pool. The smallest
+     * fitting buffer is used, a new one is allocated if none fits.
+     * 
+     * @param size The minimum size of the buffer in bytes.
+     * @return A buffer with a length of at least size bytes.
+     */
+    public synchronized byte[] acquire(int size) {
+        int bestIndex = -1;
+        for (int i = 0; i < mFreeBuffers.size(); i++) {
+            final int length = mFreeBuffers.get(i).length;
+            if ((length >= size)
+                    && ((bestIndex == -1) || (length < mFreeBuffers.get(bestIndex).length))) {
+                bestIndex = i;
+            }
+        }
+        if (bestIndex != -1) {
+            return mFreeBuffers.remove(bestIndex);
+        }
+
+        // round up to the next power of two so the buffer can be reused
+        int capacity = MIN_BUFFER_SIZE;
+        while ((capacity < size) && (capacity > 0)) {
+            capacity <<= 1;
+        }
+        return new byte[(capacity < size) ? size : capacity];
+    }
+
+    /**
+     * Gives a buffer back to the pool. The buffer must not be used by the
+     * caller anymore.
+     * 
+     * @param buffer The buffer taken by acquire().
+     */
+    public synchronized void release(byte[] buffer) {
+        if ((buffer == null) || (buffer.length > mMaxBufferSize)) {
+            return;
+        }
+        if (mFreeBuffers.size() >= mMaxBuffers) {
+            // drop the smallest buffer to keep the more useful large ones
+            int smallestIndex = 0;
+            for (int i = 1; i < mFreeBuffers.size(); i++) {
+                if (mFreeBuffers.get(i).length < mFreeBuffers.get(smallestIndex).length) {
+                    smallestIndex = i;
+                }
+            }
+            if (mFreeBuffers.get(smallestIndex).length >= buffer.length) {
+                return;
+            }
+            mFreeBuffers.remove(smallestIndex);
+        }
+        mFreeBuffers.add(buffer);
+    }
+
+    /**
+     * Returns the number of buffers currently held by the pool.
+     * 
+     * @return The number of free buffers.
+     */
+    public synchronized int getFreeCount() {
+        return mFreeBuffers.size();
+    }
+}
@@ -37,13 +37,8 @@ import java.util.List;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
 
 import android.util.Log;
 
@@ -55,6 +50,7 @@ import com.vodafone360.people.service.io.QueueManager;
 import com.vodafone360.people.service.io.Request;
 import com.vodafone360.people.service.io.ResponseQueue;
 import com.vodafone360.people.service.io.ResponseQueue.DecodedResponse;
+import com.vodafone360.people.service.io.rpg.RpgOutputStream;
 import com.vodafone360.people.service.transport.DecoderThread;
 import com.vodafone360.people.service.transport.DecoderThread.RawResponse;
 import com.vodafone360.people.service.transport.IConnection;
@@ -70,12 +66,13 @@ public class HttpConnectionThread implements Runnable, IConnection {
 
     private volatile boolean mIsConnectionRunning;
 
+    /** True while this connection holds a reference on the SharedHttpClient. */
+    private boolean mHoldsHttpClient;
+
     private PollThread mPollThread;
 
     private DecoderThread mDecoder;
 
-    private HttpClient mHttpClient;
-
     private int mRetryCount;
 
     private URI mRpgUrl;
@@ -84,10 +81,18 @@ public class HttpConnectionThread implements Runnable, IConnection {
 
     //protected static final int E_HTTP_PROTOCOL = 2;
 
+    private static final int BYTE_ARRAY_OUTPUT_STREAM_SIZE = 2048; // bytes
+
     private final Object mSendLock = new Object();
 
     private final Object mRunLock = new Object();
 
+    /**
+     * Guards taking requests off the queue, as both this thread and the poll
+     * thread send them.
+     */
+    private final Object mPrepareLock = new Object();
+
     public HttpConnectionThread(DecoderThread decoder) {
         super();
         mIsPolling = false;
@@ -103,26 +108,19 @@ public class HttpConnectionThread implements Runnable, IConnection {
     public synchronized void startThread() {
         logI("RpgHttpConnectionThread.startThread()", "Starting Thread");
 
-        setHttpClient();
         mIsConnectionRunning = true;
+        if (!mHoldsHttpClient) {
+            SharedHttpClient.getInstance().acquire();
+            mHoldsHttpClient = true;
+        }
 
         mThread = new Thread(this);
         mThread.start();
     }
 
     /**
-     * Sets HTTP settings.
-     */
-    public void setHttpClient() {
-        int connectionTimeout = Settings.HTTP_CONNECTION_TIMEOUT;
-        HttpParams myHttpParams = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(myHttpParams, connectionTimeout);
-        HttpConnectionParams.setSoTimeout(myHttpParams, connectionTimeout);
-        mHttpClient = new DefaultHttpClient(myHttpParams); // get http
-    }
-
-    /**
-     * Stops the current thread.
+     * Stops the current thread and gives the shared HTTP client back. Its
+     * connections are only closed if no other connection uses the client.
      */
     public synchronized void stopThread() {
         mIsConnectionRunning = false;
@@ -131,9 +129,9 @@ public class HttpConnectionThread implements Runnable, IConnection {
         if (mPollThread != null) {
             mPollThread.stopConnection();
         }
-        if (mHttpClient != null) {
-            mHttpClient.getConnectionManager().shutdown();
-            mHttpClient = null;
+        if (mHoldsHttpClient) {
+            mHoldsHttpClient = false;
+            SharedHttpClient.getInstance().release();
         }
     }
 
@@ -171,8 +169,8 @@ public class HttpConnectionThread implements Runnable, IConnection {
                     }
                 }
 
-                List<Request> requests = QueueManager.getInstance().getApiRequests();
-                if ((requests.size() > 0) && mPollThread.getHasCoverage()) {
+                if (QueueManager.getInstance().getApiRequests().size() > 0
+                        && mPollThread.getHasCoverage()) {
                     if (null == mRpgUrl) { // TODO move this out of the loop
                                            // once we have a proper authMgr
                         try {
@@ -186,9 +184,9 @@ public class HttpConnectionThread implements Runnable, IConnection {
                     mRetryCount = 0;
                     List<Integer> reqIds = new ArrayList<Integer>();
                     try {
-                        byte[] reqData = prepareRPGRequests(requests, reqIds);
+                        byte[] reqData = prepareRPGRequests(reqIds);
 
-                        if (null != LoginEngine.getSession()) {
+                        if (null != reqData && null != LoginEngine.getSession()) {
                             synchronized (mSendLock) {
                                 if (mIsConnectionRunning) {
                                     if (Settings.sEnableProtocolTrace) {
@@ -202,9 +200,12 @@ public class HttpConnectionThread implements Runnable, IConnection {
                                             Settings.HTTP_HEADER_CONTENT_TYPE);
                                     if (mIsConnectionRunning
                                             && SettingsManager
-                                                    .getBooleanProperty(Settings.ENABLE_RPG_KEY)
-                                            && handleRpgResponse(response, reqIds)) {
-                                        mPollThread.startRpgPolling();
+                                                    .getBooleanProperty(Settings.ENABLE_RPG_KEY)) {
+                                        if (handleRpgResponse(response, reqIds)) {
+                                            mPollThread.startRpgPolling();
+                                        }
+                                    } else {
+                                        finishResponse(response);
                                     }
                                 }
                             }
@@ -231,34 +232,49 @@ public class HttpConnectionThread implements Runnable, IConnection {
      * Takes all requests objects and writes its serialized data to a byte array
      * for further posting to the RPG.
      * 
-     * @param requests A list of requests to serialize.
-     * @param reqIds
-     * @return The serialized requests with RPG headers. Returns NULL id list of requests is NULL.
+     * @param reqIds The list the IDs of the written requests are added to.
+     * @return The serialized requests with RPG headers. Returns NULL if there
+     *         were no requests to send.
      */
-    private byte[] prepareRPGRequests(List<Request> requests, List<Integer> reqIds) {
-        if (null == requests) {
+    private byte[] prepareRPGRequests(List<Integer> reqIds) {
+        RpgOutputStream baos = new RpgOutputStream(BYTE_ARRAY_OUTPUT_STREAM_SIZE);
+        if (writeRpgRequests(baos, reqIds) == 0) {
             return null;
         }
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try {
-            for (Request request : requests) {
-                request.writeToOutputStream(baos, true);
-                request.setActive(true);
-                reqIds.add(request.getRequestId());
+        return baos.toByteArray();
+    }
+
+    /**
+     * Takes the queued requests off the request queue, marks them active and
+     * writes them with their RPG headers to the passed stream. Used by this
+     * thread and by the poll thread which sends the requests along with the
+     * next poll.
+     * 
+     * @param os The stream to write the requests to.
+     * @param reqIds The list the IDs of the written requests are added to.
+     * @return The number of requests written.
+     */
+    int writeRpgRequests(RpgOutputStream os, List<Integer> reqIds) {
+        synchronized (mPrepareLock) {
+            final List<Request> requests = QueueManager.getInstance().getApiRequests();
+            if (null == requests) {
+                return 0;
             }
-            baos.flush();
-        } catch (IOException ioe) {
-            LogUtils.logE("HttpConnectionThread.prepareRPGRequests() Failed writing to BAOS", ioe);
-        } finally {
+            int count = 0;
             try {
-                baos.close();
+                for (Request request : requests) {
+                    request.writeToOutputStream(os, true);
+                    request.setActive(true);
+                    reqIds.add(request.getRequestId());
+                    count++;
+                }
+                os.flush();
             } catch (IOException ioe) {
-                LogUtils.logE("HttpConnectionThread.prepareRPGRequests() Failed closing BAOS", ioe);
+                LogUtils.logE("HttpConnectionThread.writeRpgRequests() Failed writing to BAOS",
+                        ioe);
             }
+            return count;
         }
-        byte[] reqData = baos.toByteArray();
-
-        return reqData;
     }
 
     /**
@@ -291,7 +307,8 @@ public class HttpConnectionThread implements Runnable, IConnection {
             httpPost.addHeader("Cache-Control", "no-cache");
             httpPost.setEntity(new ByteArrayEntity(postData));
             try {
-                response = mHttpClient.execute(httpPost);
+                response = SharedHttpClient.getInstance().execute(httpPost,
+                        Settings.HTTP_CONNECTION_TIMEOUT);
             } catch (Exception e) {
                 e.printStackTrace();
                 // repeat the request N times
@@ -318,7 +335,10 @@ public class HttpConnectionThread implements Runnable, IConnection {
      */
     private boolean handleRpgResponse(HttpResponse response, List<Integer> reqIds) throws Exception {
         boolean ret = false;
-        if (null != response) {
+        try {
+            if (null == response) {
+                throw new Exception("Response was null.");
+            }
             if (null != response.getStatusLine()) {
                 int respCode = response.getStatusLine().getStatusCode();
                 logI("RpgHttpConnectionThread.handleRpgResponse()",
@@ -338,12 +358,11 @@ public class HttpConnectionThread implements Runnable, IConnection {
                     default:
                         addErrorToResponseQueue(reqIds);
                 }
-                finishResponse(response);
             } else {
                 throw new Exception("Status line of response was null.");
             }
-        } else {
-            throw new Exception("Response was null.");
+        } finally {
+            finishResponse(response);
         }
         return ret;
     }
@@ -351,9 +370,12 @@ public class HttpConnectionThread implements Runnable, IConnection {
     /**
      * Finishes reading the response in order to unblock the current connection.
      * 
-     * @param response The response to finish reading on.
+     * @param response The response to finish reading on, may be null.
      */
     private void finishResponse(HttpResponse response) {
+        if (null == response) {
+            return;
+        }
         HttpEntity entity = response.getEntity();
         if (entity != null) {
             try {
@@ -379,7 +401,10 @@ public class HttpConnectionThread implements Runnable, IConnection {
      */
     public void handleApiResponse(HttpResponse response, List<Integer> reqIds) throws Exception {
         byte[] ret = null;
-        if (null != response) {
+        try {
+            if (null == response) {
+                throw new Exception("Response was null.");
+            }
             if (null != response.getStatusLine()) {
                 int respCode = response.getStatusLine().getStatusCode();
                 logI("RpgHttpConnectionThread.handleApiResponse()", "HTTP Got response status: "
@@ -409,7 +434,6 @@ public class HttpConnectionThread implements Runnable, IConnection {
                                 baos.close();
                                 baos = null;
                             }
-                            entity.consumeContent();
                         }
 
                         if (Settings.sEnableProtocolTrace) {
@@ -435,8 +459,9 @@ public class HttpConnectionThread implements Runnable, IConnection {
             } else {
                 throw new Exception("Status line of response was null.");
             }
-        } else {
-            throw new Exception("Response was null.");
+        } finally {
+            // hands the connection back to the pool on every path
+            finishResponse(response);
         }
     }
 
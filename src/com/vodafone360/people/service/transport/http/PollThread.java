@@ -39,13 +39,8 @@ import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.HttpStatus;
 import org.apache.http.client.ClientProtocolException;
-import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.ByteArrayEntity;
-import org.apache.http.impl.client.DefaultHttpClient;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.HttpConnectionParams;
-import org.apache.http.params.HttpParams;
 
 import android.util.Log;
 
@@ -57,6 +52,7 @@ import com.vodafone360.people.service.io.rpg.RpgHeader;
 import com.vodafone360.people.service.io.rpg.RpgHelper;
 import com.vodafone360.people.service.io.rpg.RpgMessage;
 import com.vodafone360.people.service.io.rpg.RpgMessageTypes;
+import com.vodafone360.people.service.io.rpg.RpgOutputStream;
 import com.vodafone360.people.service.transport.DecoderThread;
 import com.vodafone360.people.service.transport.DecoderThread.RawResponse;
 import com.vodafone360.people.service.utils.AuthUtils;
@@ -81,6 +77,8 @@ public class PollThread implements Runnable {
 
     private static final long NETWORK_RETRY_INTERVAL = 30000;
 
+    private static final int BYTE_ARRAY_OUTPUT_STREAM_SIZE = 2048; // bytes
+
     private HttpConnectionThread mRpgRequesterThread;
 
     private DecoderThread mDecoder;
@@ -99,7 +97,8 @@ public class PollThread implements Runnable {
 
     private URI mUrl;
 
-    private HttpClient mHttpClient;
+    /** The poll currently waiting for the server, aborted on stop. */
+    private volatile HttpPost mCurrentPost;
 
     private RpgHeader mHeader;
 
@@ -118,7 +117,6 @@ public class PollThread implements Runnable {
      */
     protected synchronized void startConnection(DecoderThread decoder) {
         mDecoder = decoder;
-        setHttpClient();
 
         mIsConnectionRunning = true;
         try {
@@ -128,24 +126,24 @@ public class PollThread implements Runnable {
             mHeader = new RpgHeader();
             mMode = ACTIVE_MODE;
 
+            // held by the poll thread until it ends, see run()
+            SharedHttpClient.getInstance().acquire();
             Thread t = new Thread(this);
-            t.start();
+            try {
+                t.start();
+            } catch (RuntimeException e) {
+                SharedHttpClient.getInstance().release();
+                throw e;
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
-    private void setHttpClient() {
-        int connectionTimeout = 2 * Settings.HTTP_CONNECTION_TIMEOUT;
-        HttpParams myHttpParams = new BasicHttpParams();
-        HttpConnectionParams.setConnectionTimeout(myHttpParams, connectionTimeout);
-        HttpConnectionParams.setSoTimeout(myHttpParams, connectionTimeout);
-        mHttpClient = new DefaultHttpClient(myHttpParams);
-    }
-
     /**
-     * Attempts to stop the connection. This method might only take effect after
-     * a maximum of 30 seconds when the poll returns.
+     * Stops the connection. A poll waiting for the server is aborted, its
+     * connection is closed while the other pooled connections are kept alive
+     * for the next start.
      */
     protected synchronized void stopConnection() {
         mIsConnectionRunning = false;
@@ -155,18 +153,30 @@ public class PollThread implements Runnable {
         }
         mDecoder = null;
         mHeader = null;
-        if (mHttpClient != null) {
-            mHttpClient.getConnectionManager().shutdown();
-            mHttpClient = null;
+        final HttpPost currentPost = mCurrentPost;
+        if (currentPost != null) {
+            currentPost.abort();
         }
     }
 
     /**
      * Carries out an initial poll with a short interval to have the RPG set up
      * the presence roosters then does poll after poll with the default polling
-     * interval to keep the connection alive.
+     * interval to keep the connection alive. Gives back the shared HTTP client
+     * acquired by startConnection() when done.
      */
     public void run() {
+        try {
+            runPolls();
+        } finally {
+            SharedHttpClient.getInstance().release();
+        }
+    }
+
+    /**
+     * Polls until the connection is stopped.
+     */
+    private void runPolls() {
         try {
             invokePoll(SHORT_POLLING_INTERVAL, mBatchsize, ACTIVE_MODE);
         } catch (Exception e1) {
@@ -178,7 +188,7 @@ public class PollThread implements Runnable {
                     mRetryCount = 0;
                     if (mMode == ACTIVE_MODE) {
                         try {
-                            invokePoll(LONG_POLLING_INTERVAL, mBatchsize, mMode);
+                            invokePoll(LONG_POLLING_INTERVAL, mBatchsize, mMode, true);
                         } catch (ClientProtocolException cpe) {
                             mHasErrorOccured = true;
                         } catch (IOException ioe) {
@@ -221,13 +231,55 @@ public class PollThread implements Runnable {
      * @param mode The mode to use. ACTIVE_MODE and IDLE_MODE are available.
      */
     protected void invokePoll(int pollInterval, int batchSize, byte mode) throws Exception {
+        invokePoll(pollInterval, batchSize, mode, false);
+    }
+
+    /**
+     * Invokes a poll on the RPG with the passed arguments, optionally sending
+     * the queued RPG requests in the same HTTP request ahead of the poll. Their
+     * responses come back through the poll like those of requests sent by the
+     * HttpConnectionThread.
+     * 
+     * @param pollInterval The polling interval the server takes as an argument.
+     * @param batchSize The maximum batch size of the client.
+     * @param mode The mode to use. ACTIVE_MODE and IDLE_MODE are available.
+     * @param sendQueuedRequests True to send the queued requests with the
+     *            poll.
+     */
+    private void invokePoll(int pollInterval, int batchSize, byte mode,
+            boolean sendQueuedRequests) throws Exception {
         if (mIsConnectionRunning) {
             byte[] pollData = serializeRPGPoll(pollInterval, batchSize, mode);
             if (pollData != null) {
-                HttpResponse response = postHTTPRequest(pollData, mUrl,
-                        Settings.HTTP_HEADER_CONTENT_TYPE);
-                if (mMode == ACTIVE_MODE)
-                    handleResponse(response);
+                List<Integer> reqIds = new ArrayList<Integer>();
+                if (sendQueuedRequests) {
+                    RpgOutputStream os = new RpgOutputStream(BYTE_ARRAY_OUTPUT_STREAM_SIZE);
+                    if (mRpgRequesterThread.writeRpgRequests(os, reqIds) > 0) {
+                        LogUtils.logD("PollThread.invokePoll() Sending requests " + reqIds
+                                + " with the poll");
+                        os.write(pollData);
+                        pollData = os.toByteArray();
+                    }
+                }
+
+                HttpResponse response = null;
+                try {
+                    response = postHTTPRequest(pollData, mUrl, Settings.HTTP_HEADER_CONTENT_TYPE);
+                } catch (Exception e) {
+                    if (reqIds.size() > 0) {
+                        mRpgRequesterThread.addErrorToResponseQueue(reqIds);
+                    }
+                    throw e;
+                }
+                try {
+                    if (mMode == ACTIVE_MODE)
+                        handleResponse(response);
+                } finally {
+                    // hands the connection back to the pool
+                    if (response != null) {
+                        consumeResponse(response);
+                    }
+                }
             }
         }
     }
@@ -259,15 +311,19 @@ public class PollThread implements Runnable {
             httpPost.addHeader("Content-Type", contentType);
             httpPost.setEntity(new ByteArrayEntity(postData));
             Log.d("POLLTIMETEST", "POLL Requesting URI " + httpPost.getRequestLine());
+            mCurrentPost = httpPost;
             try {
-                response = mHttpClient.execute(httpPost);
+                response = SharedHttpClient.getInstance().execute(httpPost,
+                        2 * Settings.HTTP_CONNECTION_TIMEOUT);
             } catch (Exception e) {
                 e.printStackTrace();
-                if (mRetryCount < Settings.HTTP_MAX_RETRY_COUNT) {
-                    postHTTPRequest(postData, uri, contentType);
+                if (mIsConnectionRunning && mRetryCount < Settings.HTTP_MAX_RETRY_COUNT) {
+                    response = postHTTPRequest(postData, uri, contentType);
                 } else {
                     throw e;
                 }
+            } finally {
+                mCurrentPost = null;
             }
         }
         return response;
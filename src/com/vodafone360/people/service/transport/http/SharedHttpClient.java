@@ -0,0 +1,171 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.service.transport.http;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.conn.ssl.SSLSocketFactory;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+import com.vodafone360.people.Settings;
+
+/**
+ * Holds the one HttpClient shared by the API sender, the authentication
+ * requests and the RPG poll. Connections are kept alive in a bounded pool so
+ * switching between sending and polling does not pay the connect (and TLS
+ * handshake) costs again. The client is created on first use. Users hold it
+ * with acquire() and give it back with release(), requests are only executed
+ * while held. The pool is shut down once the last user has released it, after
+ * which the next request creates a new one.
+ */
+public class SharedHttpClient {
+
+    private HttpClient mHttpClient;
+
+    /** Number of users currently holding the client. */
+    private int mUserCount;
+
+    /**
+     * Returns the instance of the shared client.
+     * 
+     * @return The instance of SharedHttpClient.
+     */
+    public static SharedHttpClient getInstance() {
+        return SharedHttpClientHolder.sInstance;
+    }
+
+    /**
+     * Use Initialization on demand holder pattern
+     */
+    private static class SharedHttpClientHolder {
+        private static final SharedHttpClient sInstance = new SharedHttpClient();
+    }
+
+    private SharedHttpClient() {
+    }
+
+    /**
+     * Returns the shared client, creating it with a new connection pool if it
+     * was not set up yet or was shut down.
+     * 
+     * @return The shared HttpClient.
+     */
+    public synchronized HttpClient getHttpClient() {
+        if (null == mHttpClient) {
+            final HttpParams params = new BasicHttpParams();
+            HttpConnectionParams.setConnectionTimeout(params, Settings.HTTP_CONNECTION_TIMEOUT);
+            HttpConnectionParams.setSoTimeout(params, Settings.HTTP_CONNECTION_TIMEOUT);
+            HttpConnectionParams.setStaleCheckingEnabled(params, true);
+            ConnManagerParams.setMaxTotalConnections(params, Settings.HTTP_MAX_CONNECTIONS);
+            ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(
+                    Settings.HTTP_MAX_CONNECTIONS));
+            ConnManagerParams.setTimeout(params, Settings.HTTP_CONNECTION_TIMEOUT);
+
+            final SchemeRegistry registry = new SchemeRegistry();
+            registry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+            registry.register(new Scheme("https", SSLSocketFactory.getSocketFactory(), 443));
+
+            mHttpClient = new DefaultHttpClient(new ThreadSafeClientConnManager(params, registry),
+                    params);
+        }
+        return mHttpClient;
+    }
+
+    /**
+     * Executes a request on a pooled connection. Connections idle for longer
+     * than Settings.HTTP_IDLE_CONNECTION_TIMEOUT are closed first as the
+     * server will have dropped them anyway. The response entity has to be
+     * consumed for the connection to go back to the pool, the caller must hold
+     * the client (see acquire()) until then.
+     * 
+     * @param post The request to execute.
+     * @param soTimeout The socket read timeout for this request in
+     *            milliseconds.
+     * @return The response of the server.
+     * @throws IOException Thrown if the request failed or if no user holds
+     *             the client.
+     */
+    public HttpResponse execute(HttpPost post, int soTimeout) throws IOException {
+        final HttpClient client;
+        synchronized (this) {
+            if (mUserCount == 0) {
+                // nobody would release a pool created now
+                throw new IOException("The shared HTTP client is not held by any user");
+            }
+            client = getHttpClient();
+        }
+        client.getConnectionManager().closeIdleConnections(Settings.HTTP_IDLE_CONNECTION_TIMEOUT,
+                TimeUnit.MILLISECONDS);
+        HttpConnectionParams.setSoTimeout(post.getParams(), soTimeout);
+        return client.execute(post);
+    }
+
+    /**
+     * Registers a user of the shared client. Every call has to be matched by
+     * a call to release().
+     */
+    public synchronized void acquire() {
+        mUserCount++;
+    }
+
+    /**
+     * Unregisters a user of the shared client. The pooled connections are
+     * closed once no user holds the client any more.
+     */
+    public synchronized void release() {
+        if (mUserCount > 0) {
+            mUserCount--;
+        }
+        if (mUserCount == 0) {
+            shutdown();
+        }
+    }
+
+    /**
+     * Closes all pooled connections and drops the client.
+     */
+    private synchronized void shutdown() {
+        if (null != mHttpClient) {
+            final ClientConnectionManager connectionManager = mHttpClient.getConnectionManager();
+            mHttpClient = null;
+            connectionManager.shutdown();
+        }
+    }
+}
@@ -43,6 +43,7 @@ import com.vodafone360.people.service.io.Request;
 import com.vodafone360.people.service.transport.DecoderThread;
 import com.vodafone360.people.service.transport.IConnection;
 import com.vodafone360.people.service.transport.http.HttpConnectionThread;
+import com.vodafone360.people.service.transport.http.SharedHttpClient;
 import com.vodafone360.people.service.utils.hessian.HessianUtils;
 import com.vodafone360.people.utils.LogUtils;
 
@@ -72,7 +73,6 @@ public class AuthenticationManager extends Thread implements IConnection {
         mDecoder = decoder;
 
         mHttpConnection = new HttpConnectionThread(mDecoder);
-        mHttpConnection.setHttpClient();
 
         try {
             mApiUrl = (new URL(SettingsManager.getProperty(Settings.SERVER_URL_HESSIAN_KEY)))
@@ -134,9 +134,15 @@ public class AuthenticationManager extends Thread implements IConnection {
                                             true));
                 }
 
-                HttpResponse resp = mHttpConnection.postHTTPRequest(payload, mApiUrl,
-                        Settings.HTTP_HEADER_CONTENT_TYPE);
-                mHttpConnection.handleApiResponse(resp, reqIds);
+                // hold the shared client until the response has been read
+                SharedHttpClient.getInstance().acquire();
+                try {
+                    HttpResponse resp = mHttpConnection.postHTTPRequest(payload, mApiUrl,
+                            Settings.HTTP_HEADER_CONTENT_TYPE);
+                    mHttpConnection.handleApiResponse(resp, reqIds);
+                } finally {
+                    SharedHttpClient.getInstance().release();
+                }
             } catch (Exception e) {
                 mHttpConnection.addErrorToResponseQueue(reqIds);
             }
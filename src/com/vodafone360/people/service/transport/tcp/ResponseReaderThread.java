@@ -27,9 +27,7 @@ package com.vodafone360.people.service.transport.tcp;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.net.Socket;
@@ -39,6 +37,8 @@ import java.net.SocketTimeoutException;
 import com.vodafone360.people.Settings;
 import com.vodafone360.people.service.io.rpg.RpgHeader;
 import com.vodafone360.people.service.transport.DecoderThread;
+import com.vodafone360.people.service.transport.ResponseBufferPool;
+import com.vodafone360.people.service.transport.DecoderThread.RawResponse;
 import com.vodafone360.people.service.transport.http.HttpConnectionThread;
 import com.vodafone360.people.service.utils.hessian.HessianUtils;
 import com.vodafone360.people.utils.LogUtils;
@@ -94,6 +94,12 @@ public class ResponseReaderThread implements Runnable {
      */
     private Socket mSocket;
 
+    /**
+     * The RPG header of the response currently being read. Reused for every
+     * response.
+     */
+    private final byte[] mHeader = new byte[RpgHeader.HEADER_LENGTH];
+
     /**
      * 
      * Constructs a new response reader used for reading bytes from a socket
@@ -192,11 +198,7 @@ public class ResponseReaderThread implements Runnable {
             HttpConnectionThread.logD("ResponseReaderThread.run()", "Reading next response...");
             
             try {
-                byte[] response = readNextResponse();
-
-                if ((null != response) && (response.length >= RpgHeader.HEADER_LENGTH)) {
-                    mDecoder.handleResponse(response);
-                }
+                readNextResponse();
             } catch (Throwable t) {
                 HttpConnectionThread.logE("RpgTcpResponseReader.run()",
                         "Could not read Response. Unknown: ", t);
@@ -218,8 +220,10 @@ public class ResponseReaderThread implements Runnable {
 
     /**
      * <p>
-     * Attempts to read all the bytes from the DataInputStream and writes them
-     * to a byte array where they are processed for further use.
+     * Attempts to read the next RPG message from the DataInputStream and hands
+     * it to the decoder. The header is read into a buffer reused for every
+     * response and the payload into a buffer of the decoder's buffer pool,
+     * which the decoder gives back once the payload has been decoded.
      * </p>
      * <p>
      * As this method uses InputStream.read() it blocks the execution until a
@@ -232,15 +236,8 @@ public class ResponseReaderThread implements Runnable {
      *             write a byte from or to a stream.
      * @throws EOFException Thrown if the end of the stream has been reached
      *             unexpectedly.
-     * @return A byte-array if the response was read successfully or null if the
-     *         response could not be read.
      */
-    private byte[] readNextResponse() throws IOException, EOFException {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(baos);
-
-        int offset = 0;
-
+    private void readNextResponse() throws IOException, EOFException {
         for (int i = 0; i < 2; i++) { // read delimiter, this method blocks
             int tag = -1;
 
@@ -250,7 +247,7 @@ public class ResponseReaderThread implements Runnable {
                 HttpConnectionThread.logW("ResponseReaderThread.readNextResponse()",
                         "Socket timed out reading!");
                 checkForDuplicateThreads();
-                return null;
+                return;
             }
 
             if (tag != RpgHeader.DELIMITER_BYTE) {
@@ -259,33 +256,73 @@ public class ResponseReaderThread implements Runnable {
                 }
                 HttpConnectionThread.logI("RpgTcpResponseReader.readResponses()",
                         "Returning... Tag is " + tag + " (" + (char)tag + ")");
-                return null;
+                return;
             }
         }
-        final byte msgType = mIs.readByte();
-        final int reqId = mIs.readInt();
-        final int other = mIs.readInt();
-        final int payloadSize = mIs.readInt();
-        final byte compression = mIs.readByte();
-        dos.writeByte(RpgHeader.DELIMITER_BYTE);
-        dos.writeByte(RpgHeader.DELIMITER_BYTE);
-        dos.writeByte(msgType);
-        dos.writeInt(reqId);
-        dos.writeInt(other);
-        dos.writeInt(payloadSize);
-        dos.writeByte(compression);
-
-        byte[] payload = new byte[payloadSize];
-
-        // read the payload
-        while (offset < payloadSize) {
-            offset += mIs.read(payload, offset, payloadSize - offset);
+        final byte[] header = mHeader;
+        header[0] = (byte)RpgHeader.DELIMITER_BYTE;
+        header[1] = (byte)RpgHeader.DELIMITER_BYTE;
+        mIs.readFully(header, 2, RpgHeader.HEADER_LENGTH - 2);
+        final byte msgType = header[2];
+        final int reqId = readInt(header, 3);
+        final int payloadSize = readInt(header, RpgHeader.PAYLOAD_LENGTH_OFFSET);
+        final byte compression = header[15];
+        if (payloadSize < 0) {
+            throw new IOException("Invalid payload size " + payloadSize);
+        }
+
+        final ResponseBufferPool pool = mDecoder.getBufferPool();
+        final byte[] payload = pool.acquire(payloadSize);
+        boolean isQueued = false;
+        try {
+            // read the payload
+            mIs.readFully(payload, 0, payloadSize);
+
+            if (Settings.sEnableProtocolTrace || Settings.sEnableSuperExpensiveResponseFileLogging) {
+                logResponse(payload, payloadSize);
+            }
+
+            if (payloadSize > 0) {
+                final RawResponse response = new RawResponse(reqId, payload, 0, payloadSize,
+                        (compression == 1), false);
+                response.setBufferPool(pool);
+                isQueued = mDecoder.addRpgMessageToDecode(msgType, response);
+            }
+        } finally {
+            if (!isQueued) {
+                pool.release(payload);
+            }
         }
+    }
+
+    /**
+     * Reads a big-endian integer from the given array.
+     * 
+     * @param data The array to read from.
+     * @param offset The offset of the most significant byte.
+     * @return The integer.
+     */
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24) | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8) | (data[offset + 3] & 0xFF);
+    }
 
-        dos.write(payload);
-        dos.flush();
-        dos.close();
-        final byte[] response = baos.toByteArray();
+    /**
+     * Logs the response held by the header buffer and the given payload for
+     * debugging. Copies the whole response, so only called when protocol
+     * tracing or response file logging is enabled.
+     * 
+     * @param payload The buffer holding the payload.
+     * @param payloadSize The size of the payload.
+     * @throws IOException Thrown if the response could not be traced.
+     */
+    private void logResponse(byte[] payload, int payloadSize) throws IOException {
+        final byte[] response = new byte[RpgHeader.HEADER_LENGTH + payloadSize];
+        System.arraycopy(mHeader, 0, response, 0, RpgHeader.HEADER_LENGTH);
+        System.arraycopy(payload, 0, response, RpgHeader.HEADER_LENGTH, payloadSize);
+        final byte msgType = mHeader[2];
+        final int reqId = readInt(mHeader, 3);
+        final byte compression = mHeader[15];
 
         if (Settings.sEnableProtocolTrace) {
             if (reqId != 0) { // regular response
@@ -309,9 +346,6 @@ public class ResponseReaderThread implements Runnable {
                       + "_resp_" + ((int)msgType)
                       + ((compression == 1) ? ".gzip_w_rpg_header" : ".txt"));
           } // end log file containing response to SD card
-  
-
-        return response;
     }
 
     /**
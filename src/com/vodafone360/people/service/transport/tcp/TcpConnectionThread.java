@@ -27,7 +27,6 @@ package com.vodafone360.people.service.transport.tcp;
 
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
@@ -42,6 +41,7 @@ import com.vodafone360.people.engine.login.LoginEngine;
 import com.vodafone360.people.service.RemoteService;
 import com.vodafone360.people.service.io.QueueManager;
 import com.vodafone360.people.service.io.Request;
+import com.vodafone360.people.service.io.rpg.RpgOutputStream;
 import com.vodafone360.people.service.transport.ConnectionManager;
 import com.vodafone360.people.service.transport.DecoderThread;
 import com.vodafone360.people.service.transport.IConnection;
@@ -76,6 +76,12 @@ public class TcpConnectionThread implements Runnable, IConnection {
     private static final int FIRST_ATTEMPT = 1;
     
     private static final int BYTE_ARRAY_OUTPUT_STREAM_SIZE = 2048; // bytes
+
+    /**
+     * The largest batch buffer kept between sends, bigger buffers (e.g. from
+     * avatar uploads) are released after sending.
+     */
+    private static final int MAX_BYTE_ARRAY_OUTPUT_STREAM_SIZE = 64 * 1024; // bytes
     
     private Thread mThread;
 
@@ -105,11 +111,11 @@ public class TcpConnectionThread implements Runnable, IConnection {
 
     private long mLastErrorRetryTime;
 
-    private ByteArrayOutputStream mBaos;
+    private RpgOutputStream mBaos;
 
     public TcpConnectionThread(DecoderThread decoder, RemoteService service) {
         mSocket = new Socket();
-        mBaos = new ByteArrayOutputStream(BYTE_ARRAY_OUTPUT_STREAM_SIZE);
+        mBaos = new RpgOutputStream(BYTE_ARRAY_OUTPUT_STREAM_SIZE);
  
         mIsRetrying = new Boolean(false);
         mFailedRetrying = new Boolean(false);
@@ -206,12 +212,10 @@ public class TcpConnectionThread implements Runnable, IConnection {
                             }
                         }
 
-                        mBaos.flush();
-                        byte[] payload = mBaos.toByteArray();
-
-                        if (null != payload) {
+                        if (mBaos.size() > 0) {
                             // log file containing response to SD card
                             if (Settings.sEnableSuperExpensiveResponseFileLogging) {
+                                final byte[] payload = mBaos.toByteArray();
                                 StringBuffer sb = new StringBuffer();
                                 for (int i = 0; i < reqIdList.size(); i++) {
                                     sb.append(reqIdList.get(i));
@@ -239,13 +243,15 @@ public class TcpConnectionThread implements Runnable, IConnection {
                                                 + userID
                                                 + " >>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>>"
                                                 + HessianUtils.getInHessian(
-                                                        new ByteArrayInputStream(payload), true)
+                                                        new ByteArrayInputStream(mBaos
+                                                                .toByteArray()), true)
                                                 + "\n  ");
                             }
 
                             try {
                                 synchronized (mOs) {
-                                    mOs.write(payload);
+                                    // the whole batch in a single write
+                                    mBaos.writeTo(mOs);
                                     mOs.flush();
                                 }
                             } catch (IOException ioe) {
@@ -253,8 +259,8 @@ public class TcpConnectionThread implements Runnable, IConnection {
                                         "Could not send request", ioe);
                                 notifyOfNetworkProblems();
                             }
-                            payload = null;
                         }
+                        mBaos.reset(MAX_BYTE_ARRAY_OUTPUT_STREAM_SIZE);
                     }
                 }
 
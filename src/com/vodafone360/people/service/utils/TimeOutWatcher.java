@@ -26,8 +26,11 @@
 package com.vodafone360.people.service.utils;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.PriorityQueue;
 
 import com.vodafone360.people.datatypes.BaseDataType;
 import com.vodafone360.people.datatypes.ServerError;
@@ -40,22 +43,44 @@ import com.vodafone360.people.utils.LogUtils;
  * TimeOutWatcher utility... This is a utility class that is intended to
  * dispatch time-outs for each sent request individually. The thread should be
  * managing only the requests which can expire, i.e. don't add request with
- * timeout "-1" TODO: Consider using the WorkerThread to check for timeouts,
- * that would save us one thread! !!! Also ResponseQueue, RequestQueue and
- * TimeOutWatcher should be managed together and used via a common mutex !!!
+ * timeout "-1". The watched requests are kept in a min-heap ordered by expiry
+ * date. Removing a request only marks its heap entry as cancelled, cancelled
+ * entries are discarded when they reach the top of the heap. The watcher uses
+ * its own lock, so the QueueManager lock is never held while the thread
+ * sleeps. An expired request stays watched until its timeout is dispatched
+ * under the QueueManager lock, so a response removing the request in the
+ * meantime wins and no timeout is sent for it. TODO: Consider using the
+ * WorkerThread to check for timeouts, that would save us one thread!
  */
 public class TimeOutWatcher implements Runnable {
 
+    /**
+     * The lock protecting the watched requests and used for waking up the
+     * watcher thread.
+     */
+    private final Object mLock = new Object();
+
     /**
      * Flag to determine whether or not the watcher is running.
      */
     private boolean mIsRunning = false;
 
     /**
-     * The list of watched requests sorted by their expiry dates in ascending
-     * order.
+     * The heap of watched requests sorted by their expiry dates in ascending
+     * order. May contain cancelled entries.
+     */
+    private PriorityQueue<WatchedRequest> mHeap;
+
+    /**
+     * The heap entries of the requests currently being watched.
      */
-    private LinkedList<Request> mRequests;
+    private IdentityHashMap<Request, WatchedRequest> mRequests;
+
+    /**
+     * Sequence number given to each added request, keeps requests with the
+     * same expiry date in the order they were added.
+     */
+    private long mSequence = 0;
 
     /**
      * The thread watching for timed out requests.
@@ -75,20 +100,35 @@ public class TimeOutWatcher implements Runnable {
      */
     @Override
     public void run() {
+        List<WatchedRequest> expiredRequests;
+        do {
+            expiredRequests = waitForExpiredRequests();
+            if (expiredRequests != null) {
+                // the lock is released, adding the responses takes the
+                // QueueManager lock first
+                fireRequestsExpired(expiredRequests);
+            }
+        } while (expiredRequests != null);
+    }
 
+    /**
+     * Sleeps until one or more watched requests have expired.
+     * 
+     * @return The expired requests or null if the watcher has been stopped.
+     */
+    private List<WatchedRequest> waitForExpiredRequests() {
         long nextRuntime, currentTime;
 
-        // need to synchronize it all but calling wait() will release the lock
-        synchronized (QueueManager.getInstance().lock) {
+        synchronized (mLock) {
             while (mIsRunning) {
                 nextRuntime = getNextRuntime();
                 LogUtils.logV("TimeOutWatcher.run(): nextRuntime=" + nextRuntime);
                 if (nextRuntime < 0) {
                     // nothing to watch at the moment, let's wait for a
-                    // notification for "synchronized(this)"
+                    // notification
                     try {
                         LogUtils.logV("TimeOutWatcher.run(): nothing to watch, calling wait()");
-                        QueueManager.getInstance().lock.wait();
+                        mLock.wait();
                     } catch (InterruptedException e) {
                         LogUtils.logW("TimeOutWatcher.run(): "
                                 + "InterruptedException whithin this.wait() => " + e);
@@ -103,138 +143,160 @@ public class TimeOutWatcher implements Runnable {
                         try {
                             LogUtils.logV("TimeOutWatcher.run(): no time out yet, calling wait("
                                     + nextRuntime + ")");
-                            QueueManager.getInstance().lock.wait(nextRuntime);
+                            mLock.wait(nextRuntime);
                         } catch (InterruptedException e) {
                             LogUtils.logW("TimeOutWatcher.run(): "
                                     + "InterruptedException within this.wait(nextRuntime) => " + e);
                         }
                     } else {
-                        // one or more request have timed out, send them a time
-                        // out event
-                        sendTimeoutEvent(currentTime);
+                        // one or more request have timed out
+                        return removeExpiredRequests(currentTime);
                     }
                 }
             }
             mThread = null;
+            return null;
         }
     }
 
     /**
      * Starts the TimeOutWatcher thread and performs initialization. Note: this
-     * method shall be called within synchronized(this) block.
+     * method shall be called within synchronized(mLock) block.
      */
     private void startThread() {
         mIsRunning = true;
-        mRequests = new LinkedList<Request>();
-        mThread = new Thread(this);
+        mHeap = new PriorityQueue<WatchedRequest>(16, EXPIRY_COMPARATOR);
+        mRequests = new IdentityHashMap<Request, WatchedRequest>();
+        mThread = new Thread(this, "TimeOutWatcher");
         mThread.start();
     }
 
     /**
      * Stops the TimeOutWatcher thread and releases the memory. Note: this
-     * method shall be called within synchronized(this) block.
+     * method shall be called within synchronized(mLock) block.
      */
     private void stopThread() {
 
         if (mIsRunning) {
-            mRequests.clear();
+            mHeap = null;
             mRequests = null;
             // let the thread die
             mIsRunning = false;
-            QueueManager.getInstance().lock.notify();
+            mLock.notify();
         }
     }
 
     /**
-     * Finds the closest time to perform a new check on timeouts.
+     * Finds the closest time to perform a new check on timeouts. Cancelled
+     * entries found at the top of the heap are discarded. Note: this method
+     * shall be called within synchronized(mLock) block.
      * 
      * @return the next time when a timeout check is needed, -1 if no nothing to
      *         perform
      */
     private long getNextRuntime() {
-        // just get the first one as the list of requests is sorted
-        final Request request = mRequests.peek();
+        WatchedRequest watched = mHeap.peek();
+        while ((watched != null) && watched.mCancelled) {
+            mHeap.poll();
+            watched = mHeap.peek();
+        }
 
-        if (request == null) {
+        if (watched == null) {
             return -1;
         }
-        return request.getExpiryDate();
+        return watched.mExpiryDate;
     }
 
     /**
-     * Sends a timeout event for all the expired requests.
+     * Removes all the requests which have expired from the heap. They are
+     * still watched until fireRequestExpired() dispatches their timeouts.
+     * Note: this method shall be called within synchronized(mLock) block.
      * 
-     * @param currentTime the current time until when a timeout event needs to
-     *            be sent
+     * @param currentTime the current time until when the requests have expired
+     * @return The expired requests in the order of their expiry dates.
      */
-    private void sendTimeoutEvent(long currentTime) {
-        LogUtils.logV("TimeOutWatcher.sendTimeoutEvent(" + currentTime + ")");
-
-        while (mRequests.size() > 0) {
-            final Request request = mRequests.get(0);
-            if (request.getExpiryDate() <= currentTime) {
-                LogUtils.logW("TimeOutWatcher.sendTimeoutEvent(): "
+    private List<WatchedRequest> removeExpiredRequests(long currentTime) {
+        LogUtils.logV("TimeOutWatcher.removeExpiredRequests(" + currentTime + ")");
+
+        final List<WatchedRequest> expiredRequests = new ArrayList<WatchedRequest>();
+        WatchedRequest watched = mHeap.peek();
+        while ((watched != null) && (watched.mExpiryDate <= currentTime)) {
+            mHeap.poll();
+            if (!watched.mCancelled) {
+                final Request request = watched.mRequest;
+                LogUtils.logW("TimeOutWatcher.removeExpiredRequests(): "
                         + "Expired request found with reqId=[" + request.getRequestId()
                         + "], type=["+request.mType+"] and timeout=" + request.getTimeout() + " milliseconds");
-                fireRequestExpired(request);
-                // no need to remove the request, this happened during previous
-                // method call... (removeRequest is called when adding a
-                // response)
-            } else {
-                // the list is ordered by expiry date, no need to check the rest
-                // of it
-                break;
+                expiredRequests.add(watched);
             }
+            watched = mHeap.peek();
         }
+        return expiredRequests;
     }
 
     /**
-     * Inserts a request in the requests list while maintaining it sorted by
-     * ascending order of expiry date.
-     * 
-     * @param request the request to insert
+     * Removes the cancelled entries from the heap once they outnumber the
+     * watched requests, so requests answered long before their timeout do not
+     * pile up. Note: this method shall be called within synchronized(mLock)
+     * block.
      */
-    private int insertRequestByExpiryDate(Request request) {
-        for (int i = 0; i < mRequests.size(); i++) {
-            final Request currentRequest = mRequests.get(i);
-            if (currentRequest.getExpiryDate() > request.getExpiryDate()) {
-                // add the request before the current one
-                mRequests.add(i, request);
-                return i;
-            }
+    private void purgeCancelledRequests() {
+        if (mHeap.size() > (2 * mRequests.size()) + 16) {
+            mHeap.clear();
+            mHeap.addAll(mRequests.values());
         }
-        // the request is either the first one or the last one
-        mRequests.add(request);
-        if (mRequests.size() == 1) {
-            // was the only one
-            return 0;
+    }
+
+    /**
+     * Creates a TimeOut event for each of the given requests and adds it to
+     * the response queue.
+     * 
+     * @param requests the requests that have timed out
+     */
+    private void fireRequestsExpired(List<WatchedRequest> requests) {
+        final int count = requests.size();
+        for (int i = 0; i < count; i++) {
+            fireRequestExpired(requests.get(i));
         }
-        // was added at the end
-        return mRequests.size() - 1;
     }
 
     /**
-     * Creates a TimeOut event and adds it to the response queue. FIXME: this
-     * assumes that adding a request to the response queue will trigger a
-     * synchronous removeRequest() call with the same thread.
+     * Creates a TimeOut event and adds it to the response queue, unless the
+     * request has been removed from being watched since it expired.
      * 
-     * @param request the request that has timed out
+     * @param watched the heap entry of the request that has timed out
      */
-    private void fireRequestExpired(Request request) {
-        // create a list with a server error containing a timeout
-        final List<BaseDataType> data = new ArrayList<BaseDataType>(1);
-        final ServerError timeoutError = new ServerError(ServerError.ErrorType.REQUEST_TIMEOUT, request.getRequestId());
-        timeoutError.errorDescription = "TimeOutWatcher detected that the request id=["
-                + request.getRequestId() + "] has timed out.";
-        data.add(timeoutError);
-        // set the request as expired
-        request.expired = true;
-        // add the timeout error to the response queue
-        LogUtils.logW("TimeOutWatcher.fireRequestExpired(): "
-                + "adding a timeout error to the response queue for reqId=["
-                + request.getRequestId() + "]");
-        QueueManager.getInstance().addResponse(
-                new DecodedResponse(request.getRequestId(), data, request.mEngineId, DecodedResponse.ResponseType.SERVER_ERROR.ordinal()));
+    private void fireRequestExpired(WatchedRequest watched) {
+        final Request request = watched.mRequest;
+        // responses remove their request under the QueueManager lock, holding
+        // it until the timeout is queued means the engine gets either one
+        synchronized (QueueManager.getInstance().lock) {
+            synchronized (mLock) {
+                if ((mRequests == null) || (mRequests.get(request) != watched)) {
+                    LogUtils.logV("TimeOutWatcher.fireRequestExpired(): reqId=["
+                            + request.getRequestId() + "] has been answered meanwhile");
+                    return;
+                }
+                mRequests.remove(request);
+                watched.mCancelled = true;
+                purgeCancelledRequests();
+            }
+
+            // create a list with a server error containing a timeout
+            final List<BaseDataType> data = new ArrayList<BaseDataType>(1);
+            final ServerError timeoutError = new ServerError(ServerError.ErrorType.REQUEST_TIMEOUT, request.getRequestId());
+            timeoutError.errorDescription = "TimeOutWatcher detected that the request id=["
+                    + request.getRequestId() + "] has timed out.";
+            data.add(timeoutError);
+            // set the request as expired
+            request.expired = true;
+            // add the timeout error to the response queue
+            LogUtils.logW("TimeOutWatcher.fireRequestExpired(): "
+                    + "adding a timeout error to the response queue for reqId=["
+                    + request.getRequestId() + "]");
+            QueueManager.getInstance().addResponse(
+                    new DecodedResponse(request.getRequestId(), data, request.mEngineId, DecodedResponse.ResponseType.SERVER_ERROR.ordinal()));
+        }
     }
 
     /**
@@ -244,54 +306,47 @@ public class TimeOutWatcher implements Runnable {
      * @param request the request to add
      */
     public void addRequest(Request request) {
-        synchronized (QueueManager.getInstance().lock) {
+        synchronized (mLock) {
             // make sure to add requests with a valid timeout
             if ((request != null) && (request.getExpiryDate() >= 0)) {
                 if (!mIsRunning) {
                     // start the thread if not already existing
                     startThread();
                 }
-                // insert the request in the sorted requests list
-                final int index = insertRequestByExpiryDate(request);
+                final WatchedRequest watched = new WatchedRequest(request, mSequence++);
+                final WatchedRequest previous = mRequests.put(request, watched);
+                if (previous != null) {
+                    previous.mCancelled = true;
+                }
+                mHeap.add(watched);
                 // check if request is added in front of the others. If not, no
                 // need to notify, we can still sleep!
-                if (index == 0) {
+                if (mHeap.peek() == watched) {
                     LogUtils.logV("TimeOutWatcher.addRequest(): wake up the thread");
-                    QueueManager.getInstance().lock.notify();
+                    mLock.notify();
                 }
             }
         }
     }
 
     /**
-     * Removes a request from being watched for timeouts.
+     * Removes a request from being watched for timeouts. The heap entry is
+     * only marked as cancelled, the thread does not need to be woken up.
      * 
      * @param request the request to remove
      */
     public void removeRequest(Request request) {
+        synchronized (mLock) {
+            // The TimeOutWatcher is not initialized or has been stopped
+            // already, just ignore the request
+            if (!mIsRunning || (request == null)) {
+                return;
+            }
 
-        // The TimeOutWatcher is not initialized or has been stopped already,
-        // just ignore the request
-        if (!mIsRunning)
-            return;
-
-        synchronized (QueueManager.getInstance().lock) {
-            if ((request != null) && (request.getExpiryDate() >= 0) && mRequests != null) {
-                int index = -1;
-                for (int i = 0; i < mRequests.size(); i++) {
-                    final Request currentRequest = mRequests.get(i);
-                    if (currentRequest == request) {
-                        index = i;
-                        mRequests.remove(i);
-                        break;
-                    }
-                }
-                // check if the first request was removed. If not, no need to
-                // notify, we can still sleep!
-                if (index == 0) {
-                    LogUtils.logV("TimeOutWatcher.removeRequest(): wake up the thread");
-                    QueueManager.getInstance().lock.notify();
-                }
+            final WatchedRequest watched = mRequests.remove(request);
+            if (watched != null) {
+                watched.mCancelled = true;
+                purgeCancelledRequests();
             }
         }
     }
@@ -300,7 +355,7 @@ public class TimeOutWatcher implements Runnable {
      * Kills the TimeOutWatcher (releases memory and running thread).
      */
     public void kill() {
-        synchronized (QueueManager.getInstance().lock) {
+        synchronized (mLock) {
             stopThread();
         }
     }
@@ -309,22 +364,69 @@ public class TimeOutWatcher implements Runnable {
      * Sends a timeout event for all the requests.
      */
     public void invalidateAllRequests() {
-        synchronized (QueueManager.getInstance().lock) {
+        final WatchedRequest[] watched;
+        synchronized (mLock) {
             LogUtils.logV("TimeOutWatcher.invalidateAllRequests()");
 
-            if (mRequests == null)
+            if ((mRequests == null) || (mRequests.size() == 0)) {
                 return;
+            }
+            watched = mRequests.values().toArray(new WatchedRequest[mRequests.size()]);
+            Arrays.sort(watched, EXPIRY_COMPARATOR);
+        }
 
-            while (mRequests.size() > 0) {
-                final Request request = mRequests.get(0);
-                LogUtils.logV("TimeOutWatcher.invalidateAllRequests(): "
-                        + "forcing a timeout for reqId=[" + request.getRequestId()
-                        + "] and timeout=" + request.getTimeout() + " milliseconds");
-                fireRequestExpired(request);
-                // no need to remove the request, this happened during previous
-                // method call... (removeRequest is called when adding a
-                // response)
+        for (int i = 0; i < watched.length; i++) {
+            final Request request = watched[i].mRequest;
+            LogUtils.logV("TimeOutWatcher.invalidateAllRequests(): "
+                    + "forcing a timeout for reqId=[" + request.getRequestId()
+                    + "] and timeout=" + request.getTimeout() + " milliseconds");
+            fireRequestExpired(watched[i]);
+        }
+    }
+
+    /**
+     * Orders the heap entries by expiry date and then by the order in which
+     * they were added.
+     */
+    private static final Comparator<WatchedRequest> EXPIRY_COMPARATOR = new Comparator<WatchedRequest>() {
+        @Override
+        public int compare(WatchedRequest lhs, WatchedRequest rhs) {
+            if (lhs.mExpiryDate != rhs.mExpiryDate) {
+                return (lhs.mExpiryDate < rhs.mExpiryDate) ? -1 : 1;
+            }
+            if (lhs.mSequence != rhs.mSequence) {
+                return (lhs.mSequence < rhs.mSequence) ? -1 : 1;
             }
+            return 0;
+        }
+    };
+
+    /**
+     * Heap entry of a watched request.
+     */
+    private static class WatchedRequest {
+        /** The watched request. */
+        private final Request mRequest;
+
+        /** The expiry date of the request when it was added. */
+        private final long mExpiryDate;
+
+        /** The order in which the request was added. */
+        private final long mSequence;
+
+        /** True if the request is not watched anymore. */
+        private boolean mCancelled = false;
+
+        /**
+         * Constructor.
+         * 
+         * @param request The watched request.
+         * @param sequence The order in which the request was added.
+         */
+        private WatchedRequest(Request request, long sequence) {
+            mRequest = request;
+            mExpiryDate = request.getExpiryDate();
+            mSequence = sequence;
         }
     }
 
@@ -339,7 +441,7 @@ public class TimeOutWatcher implements Runnable {
      * Gets the current number of requests being watched for timeouts.
      */
     public int getRequestsCount() {
-        synchronized (QueueManager.getInstance().lock) {
+        synchronized (mLock) {
             if (mRequests != null) {
                 return mRequests.size();
             }
@@ -349,16 +451,23 @@ public class TimeOutWatcher implements Runnable {
     }
 
     /**
-     * Gets an array containing all the requests being watched for timeouts.
+     * Gets an array containing all the requests being watched for timeouts
+     * sorted by their expiry dates in ascending order.
      * 
      * @return array containing all requests, NULL if list of requests
      *         maintained internally is NLL or empty.
      */
     public Request[] getRequestsArray() {
-        synchronized (QueueManager.getInstance().lock) {
+        synchronized (mLock) {
             if (mRequests != null && mRequests.size() > 0) {
-                final Request[] requests = new Request[mRequests.size()];
-                return mRequests.toArray(requests);
+                final WatchedRequest[] watched = mRequests.values().toArray(
+                        new WatchedRequest[mRequests.size()]);
+                Arrays.sort(watched, EXPIRY_COMPARATOR);
+                final Request[] requests = new Request[watched.length];
+                for (int i = 0; i < watched.length; i++) {
+                    requests[i] = watched[i].mRequest;
+                }
+                return requests;
             }
 
             return null;
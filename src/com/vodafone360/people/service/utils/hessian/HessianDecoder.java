@@ -32,7 +32,6 @@ import java.util.ArrayList;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Vector;
-import java.util.zip.GZIPInputStream;
 
 import com.caucho.hessian.micro.MicroHessianInput;
 import com.vodafone360.people.datatypes.ActivityItem;
@@ -66,6 +65,7 @@ import com.vodafone360.people.service.io.rpg.PushMessageTypes;
 import com.vodafone360.people.service.io.rpg.RpgPushMessage;
 import com.vodafone360.people.utils.CloseUtils;
 import com.vodafone360.people.utils.LogUtils;
+import com.vodafone360.people.utils.ReusableGzipInputStream;
 
 /**
  * Hessian decoding . TODO: Currently casting every response to a Map, losing
@@ -90,12 +90,63 @@ public class HessianDecoder {
 
     private static final String KEY_USER_PROFILE_LIST = "userprofilelist";
 
+    /**
+     * Lists in a response map whose elements are bound directly from the
+     * Hessian stream, keyed by the map key of the list.
+     */
+    private static final Hashtable<String, StreamedList> STREAMED_LISTS = new Hashtable<String, StreamedList>();
+
+    static {
+        STREAMED_LISTS.put(KEY_CONTACT_LIST, new StreamedList(Contact.BINDER,
+                DecodedResponse.ResponseType.GET_CONTACTCHANGES_RESPONSE));
+        STREAMED_LISTS.put(KEY_ACTIVITY_LIST, new StreamedList(ActivityItem.BINDER,
+                DecodedResponse.ResponseType.GET_ACTIVITY_RESPONSE));
+    }
+
     /**
      * The MicroHessianInput is here declared as member and will be reused
      * instead of making new instances on every need
      */
     private MicroHessianInput mMicroHessianInput = new MicroHessianInput();
 
+    /**
+     * Size of the window holding compressed input while decompressing.
+     */
+    private static final int GZIP_WINDOW_SIZE = 4096;
+
+    /**
+     * Decompresses zipped responses, reused like the MicroHessianInput so the
+     * inflater and its window are only allocated once per decoder.
+     */
+    private final ReusableGzipInputStream mGzipInputStream = new ReusableGzipInputStream(
+            GZIP_WINDOW_SIZE);
+
+    /**
+     * True if data types with a HessianStreamBinder are populated directly
+     * from the Hessian stream, false if every response is decoded into
+     * Hashtables first.
+     */
+    private boolean mStreamingEnabled = true;
+
+    /**
+     * Enables or disables the streaming decode mode. When disabled every
+     * response is decoded into Hashtables and Vectors before the data types
+     * are created from them.
+     * 
+     * @param enabled True to bind data types directly from the stream.
+     */
+    public void setStreamingEnabled(boolean enabled) {
+        mStreamingEnabled = enabled;
+    }
+
+    /**
+     * Frees the native memory used to decompress zipped responses. To be
+     * called once the decoder is not used anymore.
+     */
+    public void release() {
+        mGzipInputStream.release();
+    }
+
     /**
      * 
      * Parse Hessian encoded byte array placing parsed contents into List.
@@ -113,17 +164,42 @@ public class HessianDecoder {
      */
     public DecodedResponse decodeHessianByteArray(int requestId, byte[] data, Request.Type type,
             boolean isZipped, EngineId engineId) throws IOException {
+        return decodeHessianByteArray(requestId, data, 0, data.length, type, isZipped, engineId);
+    }
+
+    /**
+     * 
+     * Parse a slice of a Hessian encoded byte array placing parsed contents
+     * into List. The array is not copied.
+     * 
+     * @param requestId The request ID that the response was received for.
+     * @param data byte array containing Hessian encoded data
+     * @param offset The offset of the Hessian encoded data in the array.
+     * @param length The number of bytes of Hessian encoded data.
+     * @param type Event type Shows whether we have a push or common message type.
+     * @param isZipped True if the response is gzipped, otherwise false.
+     * @param engineId The engine ID the response should be reported back to.
+     * 
+     * @return The response containing the decoded objects.
+     * 
+     * @throws IOException Thrown if there is something wrong with reading the (gzipped) hessian encoded input stream.
+     * 
+     */
+    public DecodedResponse decodeHessianByteArray(int requestId, byte[] data, int offset,
+            int length, Request.Type type, boolean isZipped, EngineId engineId)
+            throws IOException {
         InputStream is = null;
         InputStream bis = null;
         
         if (isZipped == true) {
             LogUtils.logV("HessianDecoder.decodeHessianByteArray() Handle zipped data");
-            bis = new ByteArrayInputStream(data);
-            is = new GZIPInputStream(bis, data.length);
+            bis = new ByteArrayInputStream(data, offset, length);
+            mGzipInputStream.reset(bis);
+            is = mGzipInputStream;
 
         } else {
             LogUtils.logV("HessianDecoder.decodeHessianByteArray() Handle non-zipped data");
-            is = new ByteArrayInputStream(data);
+            is = new ByteArrayInputStream(data, offset, length);
         }
 
         DecodedResponse response = null;
@@ -232,14 +308,21 @@ public class HessianDecoder {
 
         } else if ((type == Request.Type.COMMON) || (type == Request.Type.SIGN_IN) ||	// if we have a common request or sign in request
         			(type == Request.Type.GET_MY_IDENTITIES) || (type == Request.Type.GET_AVAILABLE_IDENTITIES)) {
-            Hashtable<String, Object> map = (Hashtable<String, Object>)mMicroHessianInput
-                    .readHashMap(tag);
+            Hashtable<String, Object> map = null;
+            if (mStreamingEnabled) {
+                map = new Hashtable<String, Object>();
+                responseType = streamResponseMap(tag, map, resultList);
+            } else {
+                map = (Hashtable<String, Object>)mMicroHessianInput.readHashMap(tag);
+            }
 
             if (null == map) {
                 return null;
             }
 
-            if (map.containsKey(KEY_SESSION)) {
+            if (responseType != DecodedResponse.ResponseType.UNKNOWN.ordinal()) {
+                LogUtils.logV("HessianDecoder.decodeResponse() Response list was streamed");
+            } else if (map.containsKey(KEY_SESSION)) {
                 AuthSessionHolder auth = new AuthSessionHolder();
                 Hashtable<String, Object> authHash = (Hashtable<String, Object>)map
                         .get(KEY_SESSION);
@@ -295,6 +378,13 @@ public class HessianDecoder {
                 
                 responseType = DecodedResponse.ResponseType.GET_ACTIVITY_RESPONSE.ordinal();
             }
+        } else if (mStreamingEnabled && (type == Request.Type.CONTACT_CHANGES_OR_UPDATES)) {
+            ContactChanges contactChanges = ContactChanges.BINDER.readItem(mMicroHessianInput,
+                    tag);
+            if (contactChanges != null) {
+                resultList.add(contactChanges);
+            }
+            responseType = DecodedResponse.ResponseType.GET_CONTACTCHANGES_RESPONSE.ordinal();
         } else if ((type != Request.Type.COMMON) && (type != Request.Type.SIGN_IN)) {
             // get initial hash table
             // TODO: we cast every response to a Map, losing e.g. push event
@@ -313,6 +403,46 @@ public class HessianDecoder {
         return decodedResponse;
     }
 
+    /**
+     * Reads the response map from the stream. Lists registered in
+     * {@link #STREAMED_LISTS} are bound directly into data types which are
+     * added to the result list, all other values are put into the given map.
+     * 
+     * @param tag The map tag which was already read from the stream.
+     * @param map The map that will be populated with the values which were not
+     *            streamed.
+     * @param resultList The list that will be populated with the streamed data
+     *            types.
+     * @return The type of the streamed list (to be found in
+     *         DecodedResponse.ResponseType) or UNKNOWN if no list was
+     *         streamed.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    private int streamResponseMap(int tag, Hashtable<String, Object> map,
+            List<BaseDataType> resultList) throws IOException {
+        int responseType = DecodedResponse.ResponseType.UNKNOWN.ordinal();
+        if (!mMicroHessianInput.startMap(tag)) {
+            return responseType;
+        }
+
+        String key = mMicroHessianInput.readMapKey();
+        while (key != null) {
+            final StreamedList streamedList = STREAMED_LISTS.get(key);
+            if (streamedList != null) {
+                streamedList.mBinder.readList(mMicroHessianInput, mMicroHessianInput.readTag(),
+                        resultList);
+                responseType = streamedList.mResponseType;
+            } else {
+                final Object value = mMicroHessianInput.decodeTag();
+                if (value != null) {
+                    map.put(key, value);
+                }
+            }
+            key = mMicroHessianInput.readMapKey();
+        }
+        return responseType;
+    }
+
     private void parseExternalResponse(List<BaseDataType> clist, InputStream is, int tag)
             throws IOException {
         mMicroHessianInput.init(is);
@@ -573,4 +703,29 @@ public class HessianDecoder {
             list.add(PushEvent.createPushEvent(msg, engineId));
         }
     }
+
+    /**
+     * A list in a response map whose elements are bound directly from the
+     * Hessian stream.
+     */
+    private static class StreamedList {
+        /** The binder creating the elements of the list. */
+        private final HessianStreamBinder<? extends BaseDataType> mBinder;
+
+        /** The response type of a response containing the list. */
+        private final int mResponseType;
+
+        /**
+         * Constructor.
+         * 
+         * @param binder The binder creating the elements of the list.
+         * @param responseType The response type of a response containing the
+         *            list.
+         */
+        private StreamedList(HessianStreamBinder<? extends BaseDataType> binder,
+                DecodedResponse.ResponseType responseType) {
+            mBinder = binder;
+            mResponseType = responseType.ordinal();
+        }
+    }
 }
@@ -27,6 +27,7 @@ package com.vodafone360.people.service.utils.hessian;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
@@ -51,13 +52,27 @@ public class HessianEncoder {
 
         // write our hash table to Hessian format
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        MicroHessianOutput mho = new MicroHessianOutput(bos);
+        writeHessianCall(function, ht, bos);
+        CloseUtils.close(bos);
+        return bos.toByteArray();
+    }
+
+    /**
+     * Write a Hessian encoded call with the Hashtable as its parameters
+     * directly to the given stream.
+     * 
+     * @param function Name of the called function
+     * @param ht Hashtable to encode
+     * @param os Stream to write the encoded call to
+     * @throws IOException
+     */
+    public static void writeHessianCall(String function, Hashtable<String, Object> ht,
+            OutputStream os) throws IOException {
+        MicroHessianOutput mho = new MicroHessianOutput(os);
 
         mho.startCall(function);
         writeHashtable(ht, mho);
         mho.completeCall();
-        CloseUtils.close(bos);
-        return bos.toByteArray();
     }
 
     private static void writeHashtable(Hashtable<String, Object> ht, MicroHessianOutput mho)
@@ -0,0 +1,145 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.service.utils.hessian;
+
+import java.io.IOException;
+import java.util.List;
+
+import com.caucho.hessian.micro.MicroHessianInput;
+import com.vodafone360.people.datatypes.BaseDataType;
+import com.vodafone360.people.utils.LogUtils;
+
+/**
+ * Binds the fields of a data type directly from the Hessian token stream. Data
+ * types which are received in large numbers (contacts, contact details,
+ * activities) provide a binder so that the HessianDecoder can populate them
+ * while reading the stream instead of building an intermediate tree of
+ * Hashtables and Vectors first.
+ * <p>
+ * Values of keys which a binder does not stream itself are read with
+ * {@link MicroHessianInput#decodeTag()} and handed to the Hashtable based
+ * setters of the data type.
+ * 
+ * @param <T> The data type populated by this binder.
+ */
+public abstract class HessianStreamBinder<T extends BaseDataType> {
+
+    /**
+     * Creates an empty instance of the data type which will be populated from
+     * the stream.
+     * 
+     * @return The new data type.
+     */
+    protected abstract T newInstance();
+
+    /**
+     * Reads the value of the given map key from the stream and stores it in
+     * the data type. The value has to be consumed completely, also when the
+     * key is unknown.
+     * 
+     * @param item The data type which is populated.
+     * @param key The map key of the value.
+     * @param in The Hessian input positioned at the value.
+     * @throws IOException Thrown if the stream cannot be read.
+     */
+    protected abstract void bindField(T item, String key, MicroHessianInput in)
+            throws IOException;
+
+    /**
+     * Called once all the fields of the map have been bound. Can be
+     * overwritten to post process the data type.
+     * 
+     * @param item The populated data type.
+     */
+    protected void onItemComplete(T item) {
+    }
+
+    /**
+     * Reads a data type from a Hessian map.
+     * 
+     * @param in The Hessian input.
+     * @param tag The tag of the map which was already read from the stream.
+     * @return The populated data type, or null if the map was null or one of
+     *         its fields could not be bound. In both cases the whole map has
+     *         been consumed.
+     * @throws IOException Thrown if the stream cannot be read or is not a map.
+     */
+    public T readItem(MicroHessianInput in, int tag) throws IOException {
+        if (!in.startMap(tag)) {
+            return null;
+        }
+
+        final T item = newInstance();
+        boolean isValid = true;
+        String key = in.readMapKey();
+        while (key != null) {
+            try {
+                bindField(item, key, in);
+            } catch (RuntimeException e) {
+                // the value may be only partly consumed, so the item is
+                // dropped but the stream stays in sync because nested
+                // binders catch their own errors
+                LogUtils.logE("HessianStreamBinder.readItem() Unable to bind key[" + key
+                        + "] of " + item.getClass().getSimpleName() + ": " + e);
+                isValid = false;
+            }
+            key = in.readMapKey();
+        }
+
+        if (!isValid) {
+            return null;
+        }
+        onItemComplete(item);
+        return item;
+    }
+
+    /**
+     * Reads a Hessian list of maps and adds a data type for every map to the
+     * given list. Maps which could not be bound are skipped.
+     * 
+     * @param in The Hessian input.
+     * @param tag The tag of the list which was already read from the stream.
+     * @param list The list the data types are added to.
+     * @return The number of data types added to the list.
+     * @throws IOException Thrown if the stream cannot be read or is not a list.
+     */
+    public int readList(MicroHessianInput in, int tag, List<? super T> list)
+            throws IOException {
+        if (!in.startList(tag)) {
+            return 0;
+        }
+
+        int count = 0;
+        while (in.hasMoreElements()) {
+            final T item = readItem(in, in.readTag());
+            if (item != null) {
+                list.add(item);
+                count++;
+            }
+        }
+        return count;
+    }
+}
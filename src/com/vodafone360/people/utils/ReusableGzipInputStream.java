@@ -0,0 +1,326 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * GZIP decompressing InputStream which can be reset and reused for the next
+ * compressed stream. Unlike GZIPInputStream, which allocates a new Inflater
+ * and a new input buffer for every stream, the Inflater and the fixed-size
+ * window holding the compressed input are created once and kept. Like
+ * GZIPInputStream, concatenated GZIP members are read as one stream. Call
+ * release() to free the native memory of the Inflater when the stream is not
+ * needed anymore.
+ */
+public class ReusableGzipInputStream extends InputStream {
+
+    /** GZIP header magic number. */
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    /** GZIP compression method, the only one defined. */
+    private static final int DEFLATED = 8;
+
+    /** GZIP header flags. */
+    private static final int FHCRC = 2, FEXTRA = 4, FNAME = 8, FCOMMENT = 16;
+
+    /** Length of the GZIP trailer holding CRC-32 and uncompressed size. */
+    private static final int TRAILER_LENGTH = 8;
+
+    /** Inflater reused for every stream, created by the first reset(). */
+    private Inflater mInflater;
+
+    /** Checksum of the uncompressed data. */
+    private final CRC32 mCrc = new CRC32();
+
+    /** Window holding the compressed input handed to the inflater. */
+    private final byte[] mWindow;
+
+    /** Number of valid bytes in the window. */
+    private int mWindowLength = 0;
+
+    /**
+     * Position of the next window byte which has neither been handed to the
+     * inflater nor read as part of a GZIP header or trailer.
+     */
+    private int mWindowPosition = 0;
+
+    /** Buffer for single byte reads. */
+    private final byte[] mSingleByte = new byte[1];
+
+    /** The stream holding the compressed data. */
+    private InputStream mIn;
+
+    /** True once the end of the compressed data has been reached. */
+    private boolean mEof = true;
+
+    /**
+     * Constructor.
+     * 
+     * @param windowSize The size of the window holding the compressed input.
+     */
+    public ReusableGzipInputStream(int windowSize) {
+        mWindow = new byte[windowSize];
+    }
+
+    /**
+     * Starts decompressing a new GZIP stream. Reads the GZIP header.
+     * 
+     * @param in The stream holding the compressed data.
+     * @throws IOException Thrown if the GZIP header could not be read.
+     */
+    public void reset(InputStream in) throws IOException {
+        if (mInflater == null) {
+            mInflater = new Inflater(true);
+        } else {
+            mInflater.reset();
+        }
+        mCrc.reset();
+        mWindowLength = 0;
+        mWindowPosition = 0;
+        mIn = in;
+        mEof = false;
+        readHeader();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(mSingleByte, 0, 1) == -1) ? -1 : (mSingleByte[0] & 0xff);
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (mEof || (mIn == null)) {
+            return -1;
+        }
+        if (length == 0) {
+            return 0;
+        }
+        try {
+            int count;
+            while ((count = mInflater.inflate(buffer, offset, length)) == 0) {
+                if (mInflater.finished()) {
+                    // give back what the inflater did not use of the window
+                    mWindowPosition = mWindowLength - mInflater.getRemaining();
+                    readTrailer();
+                    if (!readNextMember()) {
+                        mEof = true;
+                        return -1;
+                    }
+                } else if (mInflater.needsDictionary()) {
+                    throw new ZipException("Preset dictionary not supported");
+                } else if (mInflater.needsInput()) {
+                    if (!fillWindow()) {
+                        throw new EOFException("Unexpected end of ZLIB input stream");
+                    }
+                    mInflater.setInput(mWindow, mWindowPosition, mWindowLength
+                            - mWindowPosition);
+                    mWindowPosition = mWindowLength;
+                }
+            }
+            mCrc.update(buffer, offset, count);
+            return count;
+        } catch (DataFormatException dfe) {
+            final String message = dfe.getMessage();
+            throw new ZipException((message != null) ? message : "Invalid ZLIB data format");
+        }
+    }
+
+    @Override
+    public int available() throws IOException {
+        return mEof ? 0 : 1;
+    }
+
+    /**
+     * Stops reading the current stream. The inflater and window are kept for
+     * the next call to reset().
+     */
+    @Override
+    public void close() throws IOException {
+        mIn = null;
+        mEof = true;
+    }
+
+    /**
+     * Frees the native memory held by the inflater. The stream can still be
+     * reused after calling reset().
+     */
+    public void release() {
+        if (mInflater != null) {
+            mInflater.end();
+            mInflater = null;
+        }
+        mIn = null;
+        mEof = true;
+    }
+
+    /**
+     * Reads the next chunk of compressed data into the window, unless bytes
+     * which have not been used yet are left in it.
+     * 
+     * @return True if the window holds unused bytes, false at the end of the
+     *         compressed data.
+     * @throws IOException Thrown if the compressed data could not be read.
+     */
+    private boolean fillWindow() throws IOException {
+        if (mWindowPosition < mWindowLength) {
+            return true;
+        }
+        mWindowPosition = 0;
+        mWindowLength = mIn.read(mWindow, 0, mWindow.length);
+        if (mWindowLength <= 0) {
+            mWindowLength = 0;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Starts the next GZIP member if the compressed data continues after the
+     * trailer of the current one.
+     * 
+     * @return True if another member follows, false at the end of the data.
+     * @throws IOException Thrown if the data following the trailer is not a
+     *             valid GZIP header.
+     */
+    private boolean readNextMember() throws IOException {
+        if (!fillWindow()) {
+            return false;
+        }
+        mInflater.reset();
+        mCrc.reset();
+        readHeader();
+        return true;
+    }
+
+    /**
+     * Reads and checks the GZIP header, skipping the optional fields.
+     * 
+     * @throws IOException Thrown if the header is invalid.
+     */
+    private void readHeader() throws IOException {
+        if (readUShort() != GZIP_MAGIC) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (readUByte() != DEFLATED) {
+            throw new ZipException("Unsupported compression method");
+        }
+        final int flags = readUByte();
+        // skip modification time, extra flags and operating system
+        skipBytes(6);
+        if ((flags & FEXTRA) == FEXTRA) {
+            skipBytes(readUShort());
+        }
+        if ((flags & FNAME) == FNAME) {
+            while (readUByte() != 0) {
+                // skip file name
+            }
+        }
+        if ((flags & FCOMMENT) == FCOMMENT) {
+            while (readUByte() != 0) {
+                // skip comment
+            }
+        }
+        if ((flags & FHCRC) == FHCRC) {
+            skipBytes(2);
+        }
+    }
+
+    /**
+     * Reads the GZIP trailer and checks the CRC-32 and size of the
+     * uncompressed data.
+     * 
+     * @throws IOException Thrown if the trailer does not match the data.
+     */
+    private void readTrailer() throws IOException {
+        final byte[] trailer = new byte[TRAILER_LENGTH];
+        for (int i = 0; i < TRAILER_LENGTH; i++) {
+            if (!fillWindow()) {
+                throw new EOFException("Unexpected end of GZIP trailer");
+            }
+            trailer[i] = mWindow[mWindowPosition++];
+        }
+        final long crc = readUInt(trailer, 0);
+        final long size = readUInt(trailer, 4);
+        if ((crc != mCrc.getValue()) || (size != (mInflater.getTotalOut() & 0xffffffffL))) {
+            throw new ZipException("Corrupt GZIP trailer");
+        }
+    }
+
+    /**
+     * Reads an unsigned byte from the compressed stream.
+     * 
+     * @return The byte.
+     * @throws IOException Thrown if the end of the stream has been reached.
+     */
+    private int readUByte() throws IOException {
+        if (!fillWindow()) {
+            throw new EOFException();
+        }
+        return mWindow[mWindowPosition++] & 0xff;
+    }
+
+    /**
+     * Reads an unsigned little-endian short from the compressed stream.
+     * 
+     * @return The short.
+     * @throws IOException Thrown if the end of the stream has been reached.
+     */
+    private int readUShort() throws IOException {
+        final int b = readUByte();
+        return (readUByte() << 8) | b;
+    }
+
+    /**
+     * Skips the given number of bytes of the compressed stream.
+     * 
+     * @param count The number of bytes to skip.
+     * @throws IOException Thrown if the end of the stream has been reached.
+     */
+    private void skipBytes(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            readUByte();
+        }
+    }
+
+    /**
+     * Reads an unsigned little-endian integer from the given array.
+     * 
+     * @param data The array to read from.
+     * @param offset The offset of the least significant byte.
+     * @return The integer.
+     */
+    private static long readUInt(byte[] data, int offset) {
+        return ((data[offset] & 0xffL)) | ((data[offset + 1] & 0xffL) << 8)
+                | ((data[offset + 2] & 0xffL) << 16) | ((data[offset + 3] & 0xffL) << 24);
+    }
+}
@@ -41,6 +41,7 @@ import com.vodafone360.people.database.tables.ContactDetailsTable;
 import com.vodafone360.people.database.tables.ContactSummaryTable;
 import com.vodafone360.people.database.tables.ContactsTable;
 import com.vodafone360.people.database.tables.ContactDetailsTable.NativeIdInfo;
+import com.vodafone360.people.database.utils.QueryPlanUtils;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.service.ServiceStatus;
@@ -828,4 +829,57 @@ public class NowPlusContactDetailsTableTest extends NowPlusTableTestCase {
 		Log.i(LOG_TAG, fnName + " has completed successfully");
 		Log.i(LOG_TAG, "***********************************************");
 	}
+
+	/*
+	 * test that the sync queries look up the details through an index
+	 */
+	public void testSyncQueriesUseIndexes() {
+		final String fnName = "testSyncQueriesUseIndexes";
+		mTestStep = 1;
+
+		Log.i(LOG_TAG, "***** EXECUTING " + fnName + "*****");
+		Log.i(LOG_TAG, "Validates the query plans of the sync queries");
+
+		SQLiteDatabase writeableDb = mTestDatabase.getWritableDatabase();
+		SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+
+		startSubTest(fnName, "Creating table");
+		createTable();
+
+		long localContactId = 0;
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			ContactDetail detail = new ContactDetail();
+			detail.localContactID = TestModule.generateRandomLong();
+			detail.serverContactId = TestModule.generateRandomLong();
+			detail.nativeContactId = TestModule.generateRandomInt();
+			mTestModule.createDummyDetailsData(detail);
+			ContactDetailsTable.addContactDetail(detail, true, true, writeableDb);
+			localContactId = detail.localContactID;
+		}
+
+		startSubTest(fnName, "Running the sync queries");
+		QueryPlanUtils.clearFullScans();
+		QueryPlanUtils.setEnabled(true);
+		try {
+			ContactDetailsTable.syncServerFetchContactChanges(readableDb, true).close();
+			ContactDetailsTable.syncServerFetchContactChanges(readableDb, false).close();
+			ContactDetailsTable.syncServerFetchNoOfChanges(readableDb);
+			ContactDetailsTable.syncNativeFetchContactChanges(readableDb, true).close();
+			ContactDetailsTable.syncNativeFetchContactChanges(readableDb, false).close();
+			ContactDetailsTable.syncNativeFetchNoOfChanges(readableDb);
+			ContactDetailsTable.fetchContactDetails(localContactId,
+					new ArrayList<ContactDetail>(), readableDb);
+			ContactDetailsTable.getContactChanges(localContactId, true, readableDb);
+		} finally {
+			QueryPlanUtils.setEnabled(false);
+		}
+		assertEquals(new ArrayList<String>(), QueryPlanUtils.getFullScans());
+		assertFalse(QueryPlanUtils.checkQueryPlan(readableDb,
+				ContactDetailsTable.QUERY_NATIVE_SYNCABLE_CONTACTS_LOCAL_IDS, null));
+		QueryPlanUtils.clearFullScans();
+
+		Log.i(LOG_TAG, "***********************************************");
+		Log.i(LOG_TAG, fnName + " has completed successfully");
+		Log.i(LOG_TAG, "***********************************************");
+	}
 }
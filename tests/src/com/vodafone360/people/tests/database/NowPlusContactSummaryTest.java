@@ -25,9 +25,14 @@
 
 package com.vodafone360.people.tests.database;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.List;
 
+import android.content.ContentValues;
 import android.content.Context;
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.test.ApplicationTestCase;
@@ -38,6 +43,8 @@ import android.util.Log;
 import com.vodafone360.people.MainApplication;
 import com.vodafone360.people.database.tables.ContactDetailsTable;
 import com.vodafone360.people.database.tables.ContactSummaryTable;
+import com.vodafone360.people.database.tables.ContactSummaryTable.ContactListPosition;
+import com.vodafone360.people.database.utils.ContactListPager;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.datatypes.ContactSummary;
@@ -147,6 +154,194 @@ public class NowPlusContactSummaryTest extends ApplicationTestCase<MainApplicati
         compareContactWithContactSummary(contact, contactSummary);
     }
 
+    /**
+     * Tests filtering the contact list by words of the name, organisation and
+     * phone number.
+     */
+    @SmallTest
+    public void testSearchContactSummary() {
+
+        Log.i(LOG_TAG, "***** EXECUTING testSearchContactSummary *****");
+        final SQLiteDatabase writableDb = mTestDatabase.getWritableDatabase();
+        ContactSummaryTable.create(writableDb);
+
+        final Contact john = createNamedContact(20L, "John", "Smith");
+        final ContactDetail org = new ContactDetail();
+        final VCardHelper.Organisation organisation = new VCardHelper.Organisation();
+        organisation.name = "Vodafone";
+        org.setOrg(organisation, null);
+        john.details.add(org);
+        assertEquals(ServiceStatus.SUCCESS, ContactSummaryTable.addContact(john, writableDb));
+
+        final Contact jo = createNamedContact(21L, "Jo", "Brown");
+        final ContactDetail phone = new ContactDetail();
+        phone.setTel("+44 7700-900123", null);
+        jo.details.add(phone);
+        assertEquals(ServiceStatus.SUCCESS, ContactSummaryTable.addContact(jo, writableDb));
+
+        // whole word matches rank before prefix matches
+        assertSearchResult("jo", 21L, 20L);
+        assertSearchResult("JOHN", 20L);
+        assertSearchResult("smi jo", 20L);
+        assertSearchResult("voda", 20L);
+        assertSearchResult("447700", 21L);
+        assertSearchResult("ohn");
+
+        assertEquals(ServiceStatus.SUCCESS, ContactSummaryTable.deleteContact(20L, writableDb));
+        assertSearchResult("jo", 21L);
+    }
+
+    /**
+     * Reads the contact list page by page and checks it matches the full,
+     * sorted list, including contacts with the same name.
+     */
+    @SmallTest
+    public void testContactSummaryPages() {
+
+        Log.i(LOG_TAG, "***** EXECUTING testContactSummaryPages *****");
+        final SQLiteDatabase writableDb = mTestDatabase.getWritableDatabase();
+        ContactSummaryTable.create(writableDb);
+
+        final String[] names = {"Carol", "alice", "Bob", "Alice", "bob", "Dave", "Alice"};
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(ServiceStatus.SUCCESS, ContactSummaryTable.addContact(
+                    createNamedContact(100L + i, names[i], null), writableDb));
+        }
+        assertEquals(names.length, ContactSummaryTable.fetchContactListCount(null, null, null,
+                mTestDatabase.getReadableDatabase()));
+
+        final List<Long> paged = new ArrayList<Long>();
+        ContactListPosition after = null;
+        while (true) {
+            final Cursor cursor = ContactSummaryTable.openContactSummaryPage(null, null, null,
+                    after, 2, mTestDatabase.getReadableDatabase());
+            assertNotNull(cursor);
+            try {
+                assertTrue(cursor.getCount() <= 2);
+                if (!cursor.moveToFirst()) {
+                    break;
+                }
+                do {
+                    paged.add(ContactSummaryTable.getQueryData(cursor).localContactID);
+                    after = ContactSummaryTable.getPosition(cursor);
+                } while (cursor.moveToNext());
+            } finally {
+                cursor.close();
+            }
+        }
+        assertEquals(Arrays.asList(101L, 103L, 106L, 102L, 104L, 100L, 105L), paged);
+    }
+
+    /**
+     * Moves a ContactListPager through the contact list and checks its pages
+     * are cached, read ahead and evicted: a change of the database only shows
+     * once the page holding it is read again.
+     */
+    @SmallTest
+    public void testContactListPager() {
+
+        Log.i(LOG_TAG, "***** EXECUTING testContactListPager *****");
+        final SQLiteDatabase writableDb = mTestDatabase.getWritableDatabase();
+        final SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+        ContactSummaryTable.create(writableDb);
+
+        final String[] names = {"Judy", "Carol", "Ivan", "alice", "Frank", "Bob", "Heidi",
+                "Erin", "Dave", "Grace"};
+        for (int i = 0; i < names.length; i++) {
+            assertEquals(ServiceStatus.SUCCESS, ContactSummaryTable.addContact(
+                    createNamedContact(100L + i, names[i], null), writableDb));
+        }
+
+        // 3 contacts per page, 2 pages cached, next page read at the last row
+        final ContactListPager pager = new ContactListPager(readableDb, null, null, null, 3, 2, 1);
+        try {
+            assertEquals(names.length, pager.getCount());
+            assertEquals(ContactSummaryTable.getFullQueryColumnNames().length,
+                    pager.getColumnCount());
+            final long[] sorted = {103L, 105L, 101L, 108L, 107L, 104L, 109L, 106L, 102L, 100L};
+            for (int i = 0; i < sorted.length; i++) {
+                assertTrue(pager.moveToNext());
+                assertEquals(sorted[i], pager.getLong(ContactSummaryTable.LOCALCONTACT_ID));
+            }
+            assertFalse(pager.moveToNext());
+            assertTrue(pager.isAfterLast());
+
+            // page 0 is read again, the next one is read ahead at position 2
+            assertTrue(pager.requery());
+            assertTrue(pager.moveToPosition(0));
+            assertEquals("alice", pager.getString(ContactSummaryTable.FORMATTED_NAME));
+            renameContact(105L, "Bobby", writableDb);
+            assertTrue(pager.moveToPosition(1));
+            assertEquals("Bob", pager.getString(ContactSummaryTable.FORMATTED_NAME));
+            assertTrue(pager.moveToPosition(2));
+            renameContact(108L, "Dan", writableDb);
+            assertTrue(pager.moveToPosition(3));
+            assertEquals("Dave", pager.getString(ContactSummaryTable.FORMATTED_NAME));
+
+            // reading page 2 pushes page 0 out of the cache, page 1 stays
+            assertTrue(pager.moveToPosition(6));
+            assertEquals(109L, pager.getLong(ContactSummaryTable.LOCALCONTACT_ID));
+            assertTrue(pager.moveToPosition(3));
+            assertEquals("Dave", pager.getString(ContactSummaryTable.FORMATTED_NAME));
+            assertTrue(pager.moveToPosition(1));
+            assertEquals("Bobby", pager.getString(ContactSummaryTable.FORMATTED_NAME));
+
+            // a requery drops every cached page
+            assertTrue(pager.requery());
+            assertTrue(pager.moveToPosition(3));
+            assertEquals("Dan", pager.getString(ContactSummaryTable.FORMATTED_NAME));
+            assertFalse(pager.moveToPosition(names.length));
+        } finally {
+            pager.close();
+        }
+    }
+
+    /**
+     * Changes the display name of a contact summary without changing its
+     * position in the contact list.
+     */
+    private static void renameContact(long localContactId, String displayName,
+            SQLiteDatabase writableDb) {
+        final ContentValues values = new ContentValues();
+        values.put(ContactSummaryTable.Field.DISPLAYNAME.toString(), displayName);
+        assertEquals(1, writableDb.update(ContactSummaryTable.TABLE_NAME, values,
+                ContactSummaryTable.Field.LOCALCONTACTID + "=" + localContactId, null));
+    }
+
+    /**
+     * Checks the local contact IDs returned for a search string, in order.
+     */
+    private void assertSearchResult(String constraint, Long... localContactIds) {
+        final Cursor cursor = ContactSummaryTable.openContactSummaryCursor(null, constraint,
+                null, mTestDatabase.getReadableDatabase());
+        assertNotNull(cursor);
+        try {
+            assertEquals(constraint, localContactIds.length, cursor.getCount());
+            for (Long localContactId : localContactIds) {
+                assertTrue(cursor.moveToNext());
+                assertEquals(localContactId, ContactSummaryTable.getQueryData(cursor).localContactID);
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Creates a contact with only a name detail.
+     */
+    private static Contact createNamedContact(Long localContactId, String firstName,
+            String surname) {
+        final Contact contact = new Contact();
+        contact.localContactID = localContactId;
+        final VCardHelper.Name name = new VCardHelper.Name();
+        name.firstname = firstName;
+        name.surname = surname;
+        final ContactDetail detail = new ContactDetail();
+        detail.setName(name);
+        contact.details.add(detail);
+        return contact;
+    }
+
     public void testSetAllUsersOffline() {
         Log.i(LOG_TAG, "Create ContactSummaryTable");
         ContactSummaryTable.create(mTestDatabase.getWritableDatabase());
@@ -27,6 +27,7 @@ package com.vodafone360.people.tests.database;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -39,9 +40,11 @@ import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 import android.util.Log;
 
+import com.vodafone360.people.database.DatabaseHelper;
 import com.vodafone360.people.database.DatabaseHelper.ServerIdInfo;
 import com.vodafone360.people.database.tables.ContactsTable;
 import com.vodafone360.people.database.tables.ContactsTable.ContactIdInfo;
+import com.vodafone360.people.database.utils.QueryPlanUtils;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.service.ServiceStatus;
 import com.vodafone360.people.tests.TestModule;
@@ -426,4 +429,102 @@ public class NowPlusContactsTableTest extends NowPlusTableTestCase {
 			assertEquals(contactIdInfo.nativeId, fetchedContact.nativeContactId);
 		}
 	}
+
+	@MediumTest
+	public void testNativeFingerprints() {
+		final String fnName = "testNativeFingerprints";
+		mTestStep = 1;
+
+		Log.i(LOG_TAG, "***** EXECUTING " + fnName + "*****");
+		SQLiteDatabase writableDb = mTestDatabase.getWritableDatabase();
+		SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+
+		startSubTest(fnName, "Creating table");
+		createTable();
+
+		startSubTest(fnName, "Add native contacts");
+		final int count = 3;
+		long[] localIds = new long[count];
+		long[] nativeIds = new long[count];
+		long[] fingerprints = new long[count];
+		for (int i = 0; i < count; i++) {
+			Contact contact = mTestModule.createDummyContactData();
+			contact.nativeContactId = 1000 + i;
+			assertEquals(ServiceStatus.SUCCESS, ContactsTable.addContact(contact, writableDb));
+			localIds[i] = contact.localContactID;
+			nativeIds[i] = contact.nativeContactId;
+			fingerprints[i] = 0x123456789L * (i + 1);
+		}
+		assertTrue(ContactsTable.getNativeFingerprints(readableDb).isEmpty());
+
+		startSubTest(fnName, "Set fingerprints");
+		assertTrue(ContactsTable.setNativeFingerprints(nativeIds, fingerprints, writableDb));
+		HashMap<Long, Long> stored = ContactsTable.getNativeFingerprints(readableDb);
+		assertEquals(count, stored.size());
+		for (int i = 0; i < count; i++) {
+			assertEquals(Long.valueOf(fingerprints[i]), stored.get(nativeIds[i]));
+		}
+
+		startSubTest(fnName, "Change native IDs");
+		assertTrue(ContactsTable.setNativeContactId(localIds[0], 2000, writableDb));
+		List<ContactIdInfo> contactIdList = new ArrayList<ContactIdInfo>();
+		ContactIdInfo contactInfo = new ContactIdInfo();
+		contactInfo.localId = localIds[1];
+		contactInfo.nativeId = 2001;
+		contactIdList.add(contactInfo);
+		assertEquals(ServiceStatus.SUCCESS,
+				ContactsTable.syncSetNativeIds(contactIdList, writableDb));
+		stored = ContactsTable.getNativeFingerprints(readableDb);
+		assertEquals(1, stored.size());
+		assertEquals(Long.valueOf(fingerprints[2]), stored.get(nativeIds[2]));
+
+		startSubTest(fnName, "Check the update uses the native ID index");
+		assertFalse(QueryPlanUtils.checkQueryPlan(readableDb, "UPDATE "
+				+ ContactsTable.TABLE_NAME + " SET NativeFingerprint=? WHERE NativeContactId=?",
+				new String[] {
+				"1", "1000"
+		}));
+		QueryPlanUtils.clearFullScans();
+	}
+
+	@MediumTest
+	public void testUpgradeAddsNativeFingerprint() {
+		final String fnName = "testUpgradeAddsNativeFingerprint";
+		mTestStep = 1;
+
+		Log.i(LOG_TAG, "***** EXECUTING " + fnName + "*****");
+		SQLiteDatabase writableDb = mTestDatabase.getWritableDatabase();
+		SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+
+		startSubTest(fnName, "Creating the version 67 table");
+		writableDb.execSQL("CREATE TABLE " + ContactsTable.TABLE_NAME
+				+ " (LocalId INTEGER PRIMARY KEY AUTOINCREMENT, ServerId LONG UNIQUE, "
+				+ "UserId LONG, AboutMe TEXT, Friend BOOLEAN, Gender TEXT, Updated INTEGER, "
+				+ "NativeContactId INTEGER, Synctophone BOOLEAN);");
+		writableDb.execSQL("INSERT INTO " + ContactsTable.TABLE_NAME
+				+ " (LocalId, NativeContactId) VALUES (1, 1000)");
+
+		startSubTest(fnName, "Upgrading to version 68");
+		new DatabaseHelper(getContext(), TestDatabase.DATA_BASE_NAME).onUpgrade(writableDb,
+				67, 68);
+
+		Contact contact = new Contact();
+		assertEquals(ServiceStatus.SUCCESS, ContactsTable.fetchContact(1L, contact,
+				readableDb));
+		assertEquals(Integer.valueOf(1000), contact.nativeContactId);
+		assertTrue(ContactsTable.getNativeFingerprints(readableDb).isEmpty());
+		assertTrue(ContactsTable.setNativeFingerprints(new long[] {
+			1000
+		}, new long[] {
+			42
+		}, writableDb));
+		assertEquals(Long.valueOf(42), ContactsTable.getNativeFingerprints(readableDb).get(
+				1000L));
+
+		assertFalse(QueryPlanUtils.checkQueryPlan(readableDb, "SELECT LocalId FROM "
+				+ ContactsTable.TABLE_NAME + " WHERE NativeContactId=?", new String[] {
+			"1000"
+		}));
+		QueryPlanUtils.clearFullScans();
+	}
 }
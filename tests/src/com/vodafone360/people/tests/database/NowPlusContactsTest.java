@@ -39,11 +39,13 @@ import com.vodafone360.people.MainApplication;
 import com.vodafone360.people.database.DatabaseHelper;
 import com.vodafone360.people.database.DatabaseHelper.ServerIdInfo;
 import com.vodafone360.people.database.tables.ContactDetailsTable;
+import com.vodafone360.people.database.tables.ContactSearchTable;
 import com.vodafone360.people.database.tables.ContactSummaryTable;
 import com.vodafone360.people.database.tables.ContactsTable;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.datatypes.ContactSummary;
+import com.vodafone360.people.datatypes.VCardHelper;
 import com.vodafone360.people.engine.meprofile.SyncMeDbUtils;
 import com.vodafone360.people.service.ServiceStatus;
 import com.vodafone360.people.tests.TestModule;
@@ -55,6 +57,9 @@ public class NowPlusContactsTest extends ApplicationTestCase<MainApplication> {
 	
 	final static int NUM_OF_CONTACTS = 3;
 
+	/** First name of contacts whose summary cannot be updated. **/
+	private static final String FAILING_SEARCH_WORD = "Unsearchable";
+
 	private static MainApplication mApplication = null;
 	private static DatabaseHelper mDatabaseHelper = null;
 	final TestModule mTestModule = new TestModule();
@@ -404,6 +409,224 @@ public class NowPlusContactsTest extends ApplicationTestCase<MainApplication> {
     }
 	
 	
+	@SmallTest
+	public void testSyncAddContactListFailedContact() {
+		Log.i(LOG_TAG, "***** EXECUTING testSyncAddContactListFailedContact *****");
+		assertTrue(initialise());
+		mDatabaseHelper.removeUserData();
+		assertEquals(ServiceStatus.SUCCESS, mTestUtility.waitForEvent(
+		        WAIT_EVENT_TIMEOUT_MS, DbTestUtility.CONTACTS_INT_EVENT_MASK));
+
+		// the second contact reuses the server ID of the first one
+		List<Contact> contactList = new ArrayList<Contact>();
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			Contact contact = mTestModule.createDummyContactData();
+			contact.contactID = (i == 1) ? 1L : (long)(i + 1);
+			contactList.add(contact);
+		}
+		List<Contact> failedList = new ArrayList<Contact>();
+		assertEquals(ServiceStatus.ERROR_DATABASE_CORRUPT,
+		        mDatabaseHelper.syncAddContactList(contactList, false, false, failedList));
+
+		assertEquals(1, failedList.size());
+		assertSame(contactList.get(1), failedList.get(0));
+		assertNull(contactList.get(1).localContactID);
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			if (i == 1) {
+				continue;
+			}
+			Contact addedContact = new Contact();
+			assertEquals(ServiceStatus.SUCCESS, mDatabaseHelper.fetchContact(
+			        contactList.get(i).localContactID, addedContact));
+			assertTrue(TestModule.doContactsMatch(addedContact, contactList.get(i)));
+		}
+		shutdown();
+	}
+
+	/***
+	 * Adds a page of contacts of which one cannot update its summary and
+	 * checks that only this contact is dropped while the others are kept.
+	 */
+	@SmallTest
+	public void testSyncAddContactListFailedSummary() {
+		Log.i(LOG_TAG, "***** EXECUTING testSyncAddContactListFailedSummary *****");
+		assertTrue(initialise());
+		mDatabaseHelper.removeUserData();
+		assertEquals(ServiceStatus.SUCCESS, mTestUtility.waitForEvent(
+		        WAIT_EVENT_TIMEOUT_MS, DbTestUtility.CONTACTS_INT_EVENT_MASK));
+
+		List<Contact> contactList = new ArrayList<Contact>();
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			Contact contact = new Contact();
+			contact.contactID = (long)(i + 1);
+			contact.details.add(createNameDetail(null,
+			        (i == 1) ? FAILING_SEARCH_WORD : "First" + i, "Last" + i));
+			contactList.add(contact);
+		}
+		List<Contact> failedList = new ArrayList<Contact>();
+		setSearchWordsFailing(true);
+		try {
+			assertEquals(ServiceStatus.ERROR_DATABASE_CORRUPT,
+			        mDatabaseHelper.syncAddContactList(contactList, false, false, failedList));
+		} finally {
+			setSearchWordsFailing(false);
+		}
+
+		assertEquals(1, failedList.size());
+		assertSame(contactList.get(1), failedList.get(0));
+		assertNull(contactList.get(1).localContactID);
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			if (i == 1) {
+				continue;
+			}
+			Contact addedContact = new Contact();
+			assertEquals(ServiceStatus.SUCCESS, mDatabaseHelper.fetchContact(
+			        contactList.get(i).localContactID, addedContact));
+			ContactSummary summary = new ContactSummary();
+			assertEquals(ServiceStatus.SUCCESS, ContactSummaryTable.fetchSummaryItem(
+			        contactList.get(i).localContactID, summary,
+			        mDatabaseHelper.getReadableDatabase()));
+			assertEquals(contactList.get(i).details.get(0).getName().toString(),
+			        summary.formattedName);
+		}
+		shutdown();
+	}
+
+	/***
+	 * Modifies the names of several contacts in one batch of which one
+	 * cannot update its summary and checks that the summaries of the others
+	 * are still updated.
+	 */
+	@SmallTest
+	public void testSyncModifyContactDetailListFailedSummary() {
+		Log.i(LOG_TAG, "***** EXECUTING testSyncModifyContactDetailListFailedSummary *****");
+		assertTrue(initialise());
+		mDatabaseHelper.removeUserData();
+		assertEquals(ServiceStatus.SUCCESS, mTestUtility.waitForEvent(
+		        WAIT_EVENT_TIMEOUT_MS, DbTestUtility.CONTACTS_INT_EVENT_MASK));
+
+		List<ContactDetail> detailList = new ArrayList<ContactDetail>();
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			Contact contact = new Contact();
+			assertEquals(ServiceStatus.SUCCESS, mDatabaseHelper.addContact(contact));
+			detailList.add(createNameDetail(contact.localContactID,
+			        (i == 1) ? FAILING_SEARCH_WORD : "First" + i, "Last" + i));
+		}
+		assertEquals(ServiceStatus.SUCCESS,
+		        mDatabaseHelper.syncAddContactDetailList(detailList, false, false));
+
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			VCardHelper.Name name = new VCardHelper.Name();
+			name.firstname = "Changed" + i;
+			name.surname = "Last" + i;
+			detailList.get(i).setName(name);
+		}
+		setSearchWordsFailing(true);
+		try {
+			assertEquals(ServiceStatus.ERROR_DATABASE_CORRUPT,
+			        mDatabaseHelper.syncModifyContactDetailList(detailList, false, false));
+		} finally {
+			setSearchWordsFailing(false);
+		}
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			if (i != 1) {
+				assertTrue(isContactDetailInSummary(detailList.get(i)));
+			}
+		}
+		shutdown();
+	}
+
+	/***
+	 * Makes deleting the search words of contacts named
+	 * {@link #FAILING_SEARCH_WORD} fail, so updating their summary fails.
+	 * 
+	 * @param failing true to make the deletes fail, false to allow them
+	 *            again
+	 */
+	private static void setSearchWordsFailing(boolean failing) {
+		SQLiteDatabase db = mDatabaseHelper.getWritableDatabase();
+		if (failing) {
+			db.execSQL("CREATE TEMP TRIGGER FailingSearchWords BEFORE DELETE ON "
+			        + ContactSearchTable.TABLE_NAME + " WHEN OLD."
+			        + ContactSearchTable.Field.TOKEN + " = '"
+			        + FAILING_SEARCH_WORD.toLowerCase() + "' BEGIN SELECT RAISE(ABORT, "
+			        + "'Search words cannot be deleted'); END");
+		} else {
+			db.execSQL("DROP TRIGGER IF EXISTS FailingSearchWords");
+		}
+	}
+
+	/***
+	 * Applies a batch of name details to several contacts and checks that
+	 * the summary of each contact follows, also when the batch fails part
+	 * way through.
+	 */
+	@SmallTest
+	public void testSyncContactDetailListSummaries() {
+		Log.i(LOG_TAG, "***** EXECUTING testSyncContactDetailListSummaries *****");
+		assertTrue(initialise());
+		mDatabaseHelper.removeUserData();
+		assertEquals(ServiceStatus.SUCCESS, mTestUtility.waitForEvent(
+		        WAIT_EVENT_TIMEOUT_MS, DbTestUtility.CONTACTS_INT_EVENT_MASK));
+
+		List<ContactDetail> detailList = new ArrayList<ContactDetail>();
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			Contact contact = new Contact();
+			assertEquals(ServiceStatus.SUCCESS, mDatabaseHelper.addContact(contact));
+			detailList.add(createNameDetail(contact.localContactID, "First" + i, "Last" + i));
+		}
+
+		// added names
+		assertEquals(ServiceStatus.SUCCESS,
+		        mDatabaseHelper.syncAddContactDetailList(detailList, false, false));
+		for (ContactDetail detail : detailList) {
+			assertTrue(isContactDetailInSummary(detail));
+		}
+
+		// modified names
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			VCardHelper.Name name = new VCardHelper.Name();
+			name.firstname = "Changed" + i;
+			name.surname = "Last" + i;
+			detailList.get(i).setName(name);
+		}
+		assertEquals(ServiceStatus.SUCCESS,
+		        mDatabaseHelper.syncModifyContactDetailList(detailList, false, false));
+		for (ContactDetail detail : detailList) {
+			assertTrue(isContactDetailInSummary(detail));
+		}
+
+		// a batch failing on its last detail still updates the summaries of
+		// the details applied before
+		List<ContactDetail> failingList = new ArrayList<ContactDetail>();
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			Contact contact = new Contact();
+			assertEquals(ServiceStatus.SUCCESS, mDatabaseHelper.addContact(contact));
+			failingList.add(createNameDetail(contact.localContactID, "Partial" + i, "Last" + i));
+		}
+		failingList.add(createNameDetail(null, "Unknown", "Contact"));
+		assertEquals(ServiceStatus.ERROR_NOT_FOUND,
+		        mDatabaseHelper.syncAddContactDetailList(failingList, false, false));
+		for (int i = 0; i < NUM_OF_CONTACTS; i++) {
+			assertTrue(isContactDetailInSummary(failingList.get(i)));
+		}
+		shutdown();
+	}
+
+	/***
+	 * Creates a name detail for the given contact.
+	 */
+	private static ContactDetail createNameDetail(Long localContactId, String firstName,
+	        String surname) {
+		VCardHelper.Name name = new VCardHelper.Name();
+		name.firstname = firstName;
+		name.surname = surname;
+		ContactDetail detail = new ContactDetail();
+		detail.setName(name);
+		detail.localContactID = localContactId;
+		return detail;
+	}
+
 	@SmallTest
     public void testFetchContactInfo() {
 		Log.i(LOG_TAG, "***** EXECUTING testFetchContactInfo *****");
@@ -523,6 +523,72 @@ public class NowPlusStateTableTest extends NowPlusTableTestCase {
         assertEquals(myLastTimelineUpdate, StateTable.fetchLatestPhoneCallTime(readableDb));
     }
 
+    /*
+     * Test modifying the oldest and latest timestamps together, and that the
+     * cached values match the database after a reload.
+     */
+    public void testModifyTimestampPairs() {
+        SQLiteDatabase writableDb = mTestDatabase.getWritableDatabase();
+        SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+        createTable();
+
+        assertEquals(ServiceStatus.SUCCESS, StateTable.modifySmsTimes(100L, 200L, writableDb));
+        assertEquals(100L, StateTable.fetchOldestSmsTime(readableDb));
+        assertEquals(200L, StateTable.fetchLatestSmsTime(readableDb));
+
+        // null leaves the stored value untouched
+        assertEquals(ServiceStatus.SUCCESS, StateTable.modifySmsTimes(null, 300L, writableDb));
+        assertEquals(100L, StateTable.fetchOldestSmsTime(readableDb));
+        assertEquals(300L, StateTable.fetchLatestSmsTime(readableDb));
+
+        assertEquals(ServiceStatus.SUCCESS, StateTable.modifyPhoneCallTimes(10L, null, writableDb));
+        assertEquals(ServiceStatus.SUCCESS, StateTable.modifyMmsTimes(20L, 30L, writableDb));
+        assertTrue(StateTable.modifyContactRevision(5, writableDb));
+
+        StateTable.clearCache();
+        assertTrue(StateTable.loadCache(readableDb));
+        assertEquals(100L, StateTable.fetchOldestSmsTime(readableDb));
+        assertEquals(300L, StateTable.fetchLatestSmsTime(readableDb));
+        assertEquals(10L, StateTable.fetchOldestPhoneCallTime(readableDb));
+        assertEquals(0L, StateTable.fetchLatestPhoneCallTime(readableDb));
+        assertEquals(20L, StateTable.fetchOldestMmsTime(readableDb));
+        assertEquals(30L, StateTable.fetchLatestMmsTime(readableDb));
+        assertEquals(Integer.valueOf(5), StateTable.fetchContactRevision(readableDb));
+    }
+
+    /*
+     * Test that a change made inside a transaction which is rolled back does
+     * not remain in the cache, while a committed one does.
+     */
+    public void testCacheAfterRollback() {
+        SQLiteDatabase writableDb = mTestDatabase.getWritableDatabase();
+        SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+        createTable();
+
+        final Long myContactID = TestModule.generateRandomLong();
+        assertEquals(ServiceStatus.SUCCESS, StateTable.modifyMeProfileID(myContactID, writableDb));
+        assertEquals(myContactID, StateTable.fetchMeProfileId(readableDb));
+
+        writableDb.beginTransaction();
+        try {
+            assertEquals(ServiceStatus.SUCCESS, StateTable.modifyMeProfileID(null, writableDb));
+            // the change is visible inside the transaction
+            assertNull(StateTable.fetchMeProfileId(readableDb));
+        } finally {
+            writableDb.endTransaction();
+        }
+        assertEquals(myContactID, StateTable.fetchMeProfileId(readableDb));
+
+        writableDb.beginTransaction();
+        try {
+            assertEquals(ServiceStatus.SUCCESS, StateTable.modifyMeProfileID(null, writableDb));
+            writableDb.setTransactionSuccessful();
+        } finally {
+            writableDb.endTransaction();
+        }
+        assertNull(StateTable.fetchMeProfileId(readableDb));
+    }
+
     /*
      * test fetch and modify profile revision
      */
@@ -0,0 +1,268 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.tests.database;
+
+import java.util.List;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.vodafone360.people.database.tables.ContactDetailsTable;
+import com.vodafone360.people.database.tables.ContactDetailsTable.Field;
+import com.vodafone360.people.database.utils.PhoneNumberIndex;
+import com.vodafone360.people.datatypes.ContactDetail;
+import com.vodafone360.people.service.ServiceStatus;
+import com.vodafone360.people.tests.TestModule;
+
+/**
+ * Tests the phone number index used to look up contacts by number, both on
+ * its own and through {@link ContactDetailsTable#fetchContactInfo}.
+ */
+public class PhoneNumberIndexTest extends NowPlusTableTestCase {
+
+	/**
+	 * Query loading the index, the same as the one used by the contact
+	 * details table.
+	 */
+	private static final String QUERY_PHONE_NUMBERS = "SELECT " + Field.DETAILLOCALID
+			+ ", " + Field.STRINGVAL + " FROM " + ContactDetailsTable.TABLE_NAME + " WHERE "
+			+ Field.KEY + " = ?";
+
+	/**
+	 * Arguments of {@link #QUERY_PHONE_NUMBERS}.
+	 */
+	private static final String[] QUERY_ARGS = {
+		String.valueOf(ContactDetail.DetailKeys.VCARD_PHONE.ordinal())
+	};
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		// also empties the index shared by the contact details table
+		ContactDetailsTable.create(mTestDatabase.getWritableDatabase());
+	}
+
+	/**
+	 * Numbers which only differ in formatting or the international prefix
+	 * must share a key.
+	 */
+	@SmallTest
+	public void testGetKeyMatchingNumbers() {
+		final String key = PhoneNumberIndex.getKey("07967 123456");
+		assertEquals("6543217", key);
+		assertEquals(key, PhoneNumberIndex.getKey("+44 7967 123456"));
+		assertEquals(key, PhoneNumberIndex.getKey("(07967) 123-456"));
+		assertEquals(key, PhoneNumberIndex.getKey("00447967123456"));
+	}
+
+	/**
+	 * Pause and wait suffixes, and the digits dialled after them, are not
+	 * part of the key.
+	 */
+	@SmallTest
+	public void testGetKeyPauseAndWait() {
+		final String key = PhoneNumberIndex.getKey("07967 123456");
+		assertEquals(key, PhoneNumberIndex.getKey("07967 123456,1234"));
+		assertEquals(key, PhoneNumberIndex.getKey("07967 123456;1234#"));
+		assertEquals(key, PhoneNumberIndex.getKey("+44 7967 123456,,;9"));
+		assertEquals(key, PhoneNumberIndex.getKey("07967 123456,"));
+		assertEquals("", PhoneNumberIndex.getKey(",1234567"));
+	}
+
+	/**
+	 * Numbers with different trailing digits must not share a key.
+	 */
+	@SmallTest
+	public void testGetKeyDifferentNumbers() {
+		assertFalse(PhoneNumberIndex.getKey("07967 123456").equals(
+				PhoneNumberIndex.getKey("07967 123457")));
+	}
+
+	/**
+	 * Short numbers and numbers without dialable characters.
+	 */
+	@SmallTest
+	public void testGetKeyShortNumbers() {
+		assertEquals("321", PhoneNumberIndex.getKey("123"));
+		assertEquals("#121*", PhoneNumberIndex.getKey("*121#"));
+		assertEquals("", PhoneNumberIndex.getKey("Vodafone"));
+		assertEquals("", PhoneNumberIndex.getKey(null));
+	}
+
+	/**
+	 * The index is loaded from the details already in the database and then
+	 * picks up added details without loading again.
+	 */
+	@MediumTest
+	public void testFindLoadsAndAdds() {
+		final SQLiteDatabase writeableDb = mTestDatabase.getWritableDatabase();
+		final SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+		final ContactDetail stored = addPhoneDetail("07967 123456", writeableDb);
+		final ContactDetail other = addPhoneDetail("0161 496 0000", writeableDb);
+
+		final PhoneNumberIndex index = new PhoneNumberIndex();
+		List<Long> found = index.find("(07967) 123-456", QUERY_PHONE_NUMBERS, QUERY_ARGS,
+				readableDb);
+		assertEquals(1, found.size());
+		assertEquals(stored.localDetailID, found.get(0));
+		found = index.find("+44 161 496 0000", QUERY_PHONE_NUMBERS, QUERY_ARGS, readableDb);
+		assertEquals(1, found.size());
+		assertEquals(other.localDetailID, found.get(0));
+		assertTrue(index.find("07967 123457", QUERY_PHONE_NUMBERS, QUERY_ARGS, readableDb)
+				.isEmpty());
+
+		// added to the table behind the index's back, it must not be loaded again
+		addPhoneDetail("07967 123457", writeableDb);
+		assertTrue(index.find("07967 123457", QUERY_PHONE_NUMBERS, QUERY_ARGS, readableDb)
+				.isEmpty());
+		index.add(99, "07967 123457");
+		found = index.find("07967123457", QUERY_PHONE_NUMBERS, QUERY_ARGS, readableDb);
+		assertEquals(1, found.size());
+		assertEquals(Long.valueOf(99), found.get(0));
+
+		// cleared, the index is loaded again from the table
+		index.clear();
+		found = index.find("07967123457", QUERY_PHONE_NUMBERS, QUERY_ARGS, readableDb);
+		assertEquals(1, found.size());
+		assertFalse(found.contains(Long.valueOf(99)));
+	}
+
+	/**
+	 * A number stored in one format is found when looked up in another.
+	 */
+	@MediumTest
+	public void testFetchContactInfoNumberFormats() {
+		final SQLiteDatabase writeableDb = mTestDatabase.getWritableDatabase();
+		final SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+		final ContactDetail mobile = addPhoneDetail("07967 123456", writeableDb);
+		final ContactDetail nameDetail = mTestModule.createDummyDetailsName();
+		nameDetail.localContactID = mobile.localContactID;
+		assertEquals(ServiceStatus.SUCCESS, ContactDetailsTable.addContactDetail(nameDetail,
+				true, true, writeableDb));
+		final ContactDetail landline = addPhoneDetail("+44 20 7946 0000", writeableDb);
+
+		final String[] mobileFormats = {
+				"07967 123456", "07967123456", "(07967) 123-456", "+44 7967 123456"
+		};
+		for (String number : mobileFormats) {
+			final ContactDetail phoneDetail = new ContactDetail();
+			final ContactDetail fetchedName = new ContactDetail();
+			assertEquals(number, ServiceStatus.SUCCESS, ContactDetailsTable.fetchContactInfo(
+					number, phoneDetail, fetchedName, readableDb));
+			assertEquals(number, mobile.localDetailID, phoneDetail.localDetailID);
+			assertEquals(number, nameDetail.localDetailID, fetchedName.localDetailID);
+		}
+
+		final String[] landlineFormats = {
+				"020 7946 0000", "020-7946-0000", "+442079460000"
+		};
+		for (String number : landlineFormats) {
+			final ContactDetail phoneDetail = new ContactDetail();
+			assertEquals(number, ServiceStatus.SUCCESS, ContactDetailsTable.fetchContactInfo(
+					number, phoneDetail, null, readableDb));
+			assertEquals(number, landline.localDetailID, phoneDetail.localDetailID);
+		}
+
+		// an extension dialled after a pause or wait still finds the number
+		final String[] extensionFormats = {
+				"020 7946 0000,123", "+442079460000;123"
+		};
+		for (String number : extensionFormats) {
+			final ContactDetail phoneDetail = new ContactDetail();
+			assertEquals(number, ServiceStatus.SUCCESS, ContactDetailsTable.fetchContactInfo(
+					number, phoneDetail, null, readableDb));
+			assertEquals(number, landline.localDetailID, phoneDetail.localDetailID);
+		}
+
+		// same index key as the mobile, but a different number
+		assertEquals(ServiceStatus.ERROR_NOT_FOUND, ContactDetailsTable.fetchContactInfo(
+				"01632 7123456", new ContactDetail(), null, readableDb));
+		assertEquals(ServiceStatus.ERROR_NOT_FOUND, ContactDetailsTable.fetchContactInfo(
+				"07967 123457", new ContactDetail(), null, readableDb));
+		assertEquals(ServiceStatus.ERROR_NOT_FOUND, ContactDetailsTable.fetchContactInfo(
+				null, new ContactDetail(), null, readableDb));
+	}
+
+	/**
+	 * Index entries left behind by a modified or deleted detail must not
+	 * match anymore.
+	 */
+	@MediumTest
+	public void testFetchContactInfoStaleEntries() {
+		final SQLiteDatabase writeableDb = mTestDatabase.getWritableDatabase();
+		final SQLiteDatabase readableDb = mTestDatabase.getReadableDatabase();
+		final ContactDetail detail = addPhoneDetail("07967 123456", writeableDb);
+
+		// load the index before changing the detail
+		ContactDetail fetched = new ContactDetail();
+		assertEquals(ServiceStatus.SUCCESS, ContactDetailsTable.fetchContactInfo(
+				"07967123456", fetched, null, readableDb));
+		assertEquals(detail.localDetailID, fetched.localDetailID);
+
+		detail.setTel("0161 496 0000", ContactDetail.DetailKeyTypes.CELL);
+		assertEquals(ServiceStatus.SUCCESS, ContactDetailsTable.modifyDetail(detail, true,
+				true, writeableDb));
+		assertEquals(ServiceStatus.ERROR_NOT_FOUND, ContactDetailsTable.fetchContactInfo(
+				"07967123456", new ContactDetail(), null, readableDb));
+		fetched = new ContactDetail();
+		assertEquals(ServiceStatus.SUCCESS, ContactDetailsTable.fetchContactInfo(
+				"01614960000", fetched, null, readableDb));
+		assertEquals(detail.localDetailID, fetched.localDetailID);
+
+		// a new detail with the old number is found despite the stale entry
+		final ContactDetail reused = addPhoneDetail("+44 7967 123456", writeableDb);
+		fetched = new ContactDetail();
+		assertEquals(ServiceStatus.SUCCESS, ContactDetailsTable.fetchContactInfo(
+				"07967 123456", fetched, null, readableDb));
+		assertEquals(reused.localDetailID, fetched.localDetailID);
+
+		assertTrue(ContactDetailsTable.deleteDetailByDetailId(detail.localDetailID,
+				writeableDb));
+		assertEquals(ServiceStatus.ERROR_NOT_FOUND, ContactDetailsTable.fetchContactInfo(
+				"0161 496 0000", new ContactDetail(), null, readableDb));
+		assertTrue(ContactDetailsTable.deleteDetailByDetailId(reused.localDetailID,
+				writeableDb));
+		assertEquals(ServiceStatus.ERROR_NOT_FOUND, ContactDetailsTable.fetchContactInfo(
+				"07967 123456", new ContactDetail(), null, readableDb));
+	}
+
+	/**
+	 * Adds a phone detail with the given number for a new contact.
+	 * 
+	 * @param number The phone number.
+	 * @param writeableDb A writable SQLite database object.
+	 * @return The added detail.
+	 */
+	private static ContactDetail addPhoneDetail(String number, SQLiteDatabase writeableDb) {
+		final ContactDetail detail = new ContactDetail();
+		detail.localContactID = TestModule.generateRandomLong();
+		detail.setTel(number, ContactDetail.DetailKeyTypes.CELL);
+		assertEquals(ServiceStatus.SUCCESS, ContactDetailsTable.addContactDetail(detail,
+				true, true, writeableDb));
+		return detail;
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.tests.database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.vodafone360.people.database.utils.PresenceMap;
+import com.vodafone360.people.datatypes.ContactSummary.OnlineStatus;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the primitive presence map and its set of online contacts.
+ */
+public class PresenceMapTest extends TestCase {
+
+	/**
+	 * Statuses are stored per contact, unknown contacts are offline.
+	 */
+	public void testPutGetRemove() {
+		final PresenceMap map = new PresenceMap();
+		assertEquals(OnlineStatus.OFFLINE, map.get(1));
+		map.put(1, OnlineStatus.ONLINE.ordinal());
+		map.put(2, OnlineStatus.INVISIBLE.ordinal());
+		assertEquals(OnlineStatus.ONLINE, map.get(1));
+		assertEquals(OnlineStatus.INVISIBLE, map.get(2));
+		map.put(1, OnlineStatus.IDLE.ordinal());
+		assertEquals(OnlineStatus.IDLE, map.get(1));
+		map.remove(1);
+		assertEquals(OnlineStatus.OFFLINE, map.get(1));
+		assertEquals(OnlineStatus.INVISIBLE, map.get(2));
+		map.put(3, 100);
+		assertEquals(OnlineStatus.OFFLINE, map.get(3));
+	}
+
+	/**
+	 * The online set follows the statuses and its version changes with it.
+	 */
+	public void testOnlineIds() {
+		final PresenceMap map = new PresenceMap();
+		int version = map.getOnlineVersion();
+		map.put(1, OnlineStatus.OFFLINE.ordinal());
+		assertEquals(version, map.getOnlineVersion());
+		assertEquals(0, map.getOnlineIds().length);
+
+		map.put(1, OnlineStatus.ONLINE.ordinal());
+		map.put(2, OnlineStatus.IDLE.ordinal());
+		map.put(3, OnlineStatus.INVISIBLE.ordinal());
+		assertTrue(version != map.getOnlineVersion());
+		assertEquals(Arrays.asList(1L, 2L), sortedOnlineIds(map));
+		assertTrue(map.isOnline(2));
+		assertFalse(map.isOnline(3));
+
+		version = map.getOnlineVersion();
+		map.put(1, OnlineStatus.IDLE.ordinal());
+		assertEquals(version, map.getOnlineVersion());
+		map.put(2, OnlineStatus.OFFLINE.ordinal());
+		assertTrue(version != map.getOnlineVersion());
+		assertEquals(Arrays.asList(1L), sortedOnlineIds(map));
+
+		version = map.getOnlineVersion();
+		map.clear();
+		assertTrue(version != map.getOnlineVersion());
+		assertEquals(0, map.getOnlineIds().length);
+		assertEquals(OnlineStatus.OFFLINE, map.get(3));
+	}
+
+	/**
+	 * Only the given contacts are kept.
+	 */
+	public void testRetainAll() {
+		final PresenceMap map = new PresenceMap();
+		for (long id = 1; id <= 10; id++) {
+			map.put(id, OnlineStatus.ONLINE.ordinal());
+		}
+		map.retainAll(Arrays.asList(2L, 4L, 11L));
+		assertEquals(Arrays.asList(2L, 4L), sortedOnlineIds(map));
+		assertEquals(OnlineStatus.ONLINE, map.get(4));
+		assertEquals(OnlineStatus.OFFLINE, map.get(5));
+	}
+
+	/**
+	 * The tables grow and reuse removed slots without losing entries.
+	 */
+	public void testManyContacts() {
+		final PresenceMap map = new PresenceMap();
+		for (int round = 0; round < 3; round++) {
+			for (long id = 1; id <= 5000; id++) {
+				map.put(id, (id % 2 == 0) ? OnlineStatus.ONLINE.ordinal()
+						: OnlineStatus.INVISIBLE.ordinal());
+			}
+			assertEquals(2500, map.getOnlineIds().length);
+			for (long id = 1; id <= 5000; id++) {
+				assertEquals((id % 2 == 0) ? OnlineStatus.ONLINE : OnlineStatus.INVISIBLE,
+						map.get(id));
+			}
+			for (long id = 1; id <= 5000; id += 3) {
+				map.remove(id);
+			}
+			for (long id = 1; id <= 5000; id++) {
+				if (id % 3 == 1) {
+					assertEquals(OnlineStatus.OFFLINE, map.get(id));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the online IDs of a map in ascending order.
+	 */
+	private static List<Long> sortedOnlineIds(PresenceMap map) {
+		final long[] ids = map.getOnlineIds();
+		Arrays.sort(ids);
+		final List<Long> list = new ArrayList<Long>();
+		for (long id : ids) {
+			list.add(id);
+		}
+		return list;
+	}
+}
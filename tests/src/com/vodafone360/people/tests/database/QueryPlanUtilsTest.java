@@ -0,0 +1,63 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.tests.database;
+
+import com.vodafone360.people.database.utils.QueryPlanUtils;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the detection of full table scans in EXPLAIN QUERY PLAN output.
+ */
+public class QueryPlanUtilsTest extends TestCase {
+
+	/**
+	 * Plans which visit every row of a table.
+	 */
+	public void testFullScan() {
+		assertTrue(QueryPlanUtils.isFullScan("TABLE ContactDetails"));
+		assertTrue(QueryPlanUtils.isFullScan("SCAN TABLE ContactDetails"));
+		assertTrue(QueryPlanUtils.isFullScan("SCAN ContactDetails"));
+	}
+
+	/**
+	 * Plans which use an index or the primary key.
+	 */
+	public void testIndexedLookup() {
+		assertFalse(QueryPlanUtils.isFullScan(
+				"TABLE ContactDetails WITH INDEX ContactDetailsContactIndex"));
+		assertFalse(QueryPlanUtils.isFullScan(
+				"TABLE ContactDetails USING PRIMARY KEY"));
+		assertFalse(QueryPlanUtils.isFullScan("SEARCH TABLE ContactDetails USING INDEX "
+				+ "ContactDetailsKeyValueIndex (Key=? AND StringVal=?)"));
+		assertFalse(QueryPlanUtils.isFullScan(
+				"SCAN TABLE ContactGroupRelations USING COVERING INDEX "
+				+ "ContactGroupRelationsContactIndex"));
+		assertFalse(QueryPlanUtils.isFullScan(
+				"SEARCH ContactSources USING INTEGER PRIMARY KEY (rowid=?)"));
+		assertFalse(QueryPlanUtils.isFullScan(null));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.tests.database;
+
+import java.util.Arrays;
+
+import com.vodafone360.people.database.utils.SearchTokenizer;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the splitting of contact data and search strings into search words.
+ */
+public class SearchTokenizerTest extends TestCase {
+
+	/**
+	 * Words are lower case runs of letters and digits, each returned once.
+	 */
+	public void testTokenize() {
+		assertEquals(Arrays.asList("john", "smith"), SearchTokenizer.tokenize("John  SMITH"));
+		assertEquals(Arrays.asList("j", "smith", "vodafone", "com"),
+				SearchTokenizer.tokenize("j.smith@vodafone.com"));
+		assertEquals(Arrays.asList("44", "7700", "900123"),
+				SearchTokenizer.tokenize("+44 (7700) 900123"));
+		assertEquals(Arrays.asList("élodie"), SearchTokenizer.tokenize("Élodie élodie"));
+		assertTrue(SearchTokenizer.tokenize(" .-@ ").isEmpty());
+		assertTrue(SearchTokenizer.tokenize(null).isEmpty());
+	}
+
+	/**
+	 * Phone numbers are also indexed as one word of digits.
+	 */
+	public void testGetDigits() {
+		assertEquals("447700900123", SearchTokenizer.getDigits("+44 (7700) 900-123"));
+		assertEquals("", SearchTokenizer.getDigits("n/a"));
+		assertEquals("", SearchTokenizer.getDigits(null));
+	}
+
+	/**
+	 * The upper bound of a prefix range.
+	 */
+	public void testGetPrefixUpperBound() {
+		assertEquals("jp", SearchTokenizer.getPrefixUpperBound("jo"));
+		assertEquals("b", SearchTokenizer.getPrefixUpperBound("a" + Character.MAX_VALUE));
+		assertNull(SearchTokenizer.getPrefixUpperBound(String.valueOf(Character.MAX_VALUE)));
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.tests.database;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import com.vodafone360.people.database.utils.StatementCache;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the reuse of compiled statements by the statement cache.
+ */
+public class StatementCacheTest extends TestCase {
+
+	private static final String INSERT = "INSERT INTO Test (Value) VALUES (?)";
+
+	private static final String DELETE = "DELETE FROM Test WHERE Value=?";
+
+	private SQLiteDatabase mDb;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mDb = SQLiteDatabase.create(null);
+		mDb.execSQL("CREATE TABLE Test (Value INTEGER)");
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		StatementCache.close(mDb);
+		mDb.close();
+		super.tearDown();
+	}
+
+	/**
+	 * A released statement is handed out again and counted as a hit.
+	 */
+	@SmallTest
+	public void testReuse() {
+		final StatementCache cache = StatementCache.open(mDb);
+		final SQLiteStatement first = StatementCache.acquire(mDb, INSERT);
+		// in use, so a second statement is compiled
+		final SQLiteStatement second = StatementCache.acquire(mDb, INSERT);
+		assertNotSame(first, second);
+		StatementCache.release(mDb, INSERT, first);
+		StatementCache.release(mDb, INSERT, second);
+
+		assertSame(first, StatementCache.acquire(mDb, INSERT));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		StatementCache.release(mDb, INSERT, first);
+	}
+
+	/**
+	 * Statements work the same with and without a cache, and report the
+	 * number of changed rows.
+	 */
+	@SmallTest
+	public void testExecute() {
+		assertNull(StatementCache.get(mDb));
+		insert(1);
+		StatementCache.open(mDb);
+		insert(1);
+		insert(2);
+
+		final SQLiteStatement delete = StatementCache.acquire(mDb, DELETE);
+		try {
+			delete.bindLong(1, 1);
+			delete.execute();
+			assertEquals(2, StatementCache.changes(mDb));
+		} finally {
+			StatementCache.release(mDb, DELETE, delete);
+		}
+	}
+
+	/**
+	 * Inserts a value with the cached INSERT statement.
+	 */
+	private void insert(long value) {
+		final SQLiteStatement insert = StatementCache.acquire(mDb, INSERT);
+		try {
+			insert.bindLong(1, value);
+			insert.executeInsert();
+		} finally {
+			StatementCache.release(mDb, INSERT, insert);
+		}
+	}
+}
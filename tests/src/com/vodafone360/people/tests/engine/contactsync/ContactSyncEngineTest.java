@@ -1264,6 +1264,98 @@ public class ContactSyncEngineTest extends InstrumentationTestCase {
     /**
      * Handles all the needed responses depending on the engine state.
      */
+    /**
+     * Verifies the processor groups of the first time sync: the server
+     * contacts are downloaded while the native contacts are fetched, the
+     * upload only starts once both have completed and is followed by another
+     * download.
+     */
+    public void testFirstTimeSync_processorGroups() {
+        final RecordingProcessorFactory factory = new RecordingProcessorFactory(0);
+        minimalEngineSetup(new HelperClasses.EngineCallbackBase(), factory);
+        NetworkAgent.setAgentState(AgentState.CONNECTED);
+
+        mContactSyncEngine.addUiStartFullSync();
+        mContactSyncEngine.run();
+        assertEquals(2, factory.mTypes.size());
+        assertEquals(ProcessorFactory.DOWNLOAD_SERVER_CONTACTS, factory.mTypes.get(0).intValue());
+        assertEquals(ProcessorFactory.FETCH_NATIVE_CONTACTS, factory.mTypes.get(1).intValue());
+        assertTrue(factory.mLog.contains("start " + ProcessorFactory.DOWNLOAD_SERVER_CONTACTS));
+        assertTrue(factory.mLog.contains("start " + ProcessorFactory.FETCH_NATIVE_CONTACTS));
+
+        // the upload waits for the other processor of the group
+        factory.mProcessors.get(1).finish(ServiceStatus.SUCCESS);
+        assertEquals(2, factory.mTypes.size());
+        factory.mProcessors.get(0).finish(ServiceStatus.SUCCESS);
+        assertEquals(3, factory.mTypes.size());
+        assertEquals(ProcessorFactory.UPLOAD_SERVER_CONTACTS, factory.mTypes.get(2).intValue());
+
+        // the upload is followed by a download
+        factory.mProcessors.get(2).finish(ServiceStatus.SUCCESS);
+        assertEquals(4, factory.mTypes.size());
+        assertEquals(ProcessorFactory.DOWNLOAD_SERVER_CONTACTS, factory.mTypes.get(3).intValue());
+        assertFalse(mContactSyncEngine.isFirstTimeSyncComplete());
+
+        factory.mProcessors.get(3).finish(ServiceStatus.SUCCESS);
+        assertEquals(4, factory.mTypes.size());
+        assertTrue(mContactSyncEngine.isFirstTimeSyncComplete());
+    }
+
+    /**
+     * Verifies that a processor failing during the first time sync cancels
+     * the processor started together with it.
+     */
+    public void testFirstTimeSync_failureCancelsSibling() {
+        final RecordingProcessorFactory factory = new RecordingProcessorFactory(0);
+        minimalEngineSetup(new HelperClasses.EngineCallbackBase(), factory);
+        NetworkAgent.setAgentState(AgentState.CONNECTED);
+
+        mContactSyncEngine.addUiStartFullSync();
+        mContactSyncEngine.run();
+        assertEquals(2, factory.mTypes.size());
+
+        factory.mProcessors.get(0).finish(ServiceStatus.ERROR_COMMS);
+        assertTrue(factory.mLog.contains("cancel " + ProcessorFactory.FETCH_NATIVE_CONTACTS));
+        assertFalse(factory.mLog.contains("cancel " + ProcessorFactory.DOWNLOAD_SERVER_CONTACTS));
+
+        // a late completion of the cancelled processor does not move the sync on
+        factory.mProcessors.get(1).finish(ServiceStatus.SUCCESS);
+        assertEquals(2, factory.mTypes.size());
+        assertFalse(mContactSyncEngine.isFirstTimeSyncComplete());
+    }
+
+    /**
+     * Verifies that the processors started together which yield with a
+     * timeout of 0 are run in turn.
+     */
+    public void testFirstTimeSync_alternatingTimeouts() {
+        final int timeoutCount = 3;
+        final RecordingProcessorFactory factory = new RecordingProcessorFactory(timeoutCount);
+        minimalEngineSetup(new HelperClasses.EngineCallbackBase(), factory);
+        NetworkAgent.setAgentState(AgentState.CONNECTED);
+
+        mContactSyncEngine.addUiStartFullSync();
+        mContactSyncEngine.run();
+        assertEquals(2, factory.mTypes.size());
+
+        for (int i = 0; i < 2 * timeoutCount; i++) {
+            mContactSyncEngine.run();
+        }
+
+        final ArrayList<String> timeouts = new ArrayList<String>();
+        for (String entry : factory.mLog) {
+            if (entry.startsWith("timeout")) {
+                timeouts.add(entry);
+            }
+        }
+        assertEquals(2 * timeoutCount, timeouts.size());
+        for (int i = 0; i < timeouts.size(); i++) {
+            final int expectedType = (i % 2 == 0) ? ProcessorFactory.DOWNLOAD_SERVER_CONTACTS
+                    : ProcessorFactory.FETCH_NATIVE_CONTACTS;
+            assertEquals("timeout " + expectedType, timeouts.get(i));
+        }
+    }
+
     private static class FirstTimeSyncFrameworkHandler extends ContactSyncFrameworkBase {
 
         public FirstTimeSyncFrameworkHandler() {
@@ -1349,6 +1441,106 @@ public class ContactSyncEngineTest extends InstrumentationTestCase {
         }
     }
 
+    /**
+     * Processor which only completes when the test calls
+     * {@link #finish(ServiceStatus)}, and yields with a timeout of 0 a given
+     * number of times.
+     */
+    private static class ControlledSyncProcessor extends BaseSyncProcessor {
+
+        private final int mType;
+
+        private final List<String> mLog;
+
+        private int mTimeoutsLeft;
+
+        protected ControlledSyncProcessor(int type, IContactSyncCallback callback,
+                List<String> log, int timeoutCount) {
+            super(callback, null);
+            mType = type;
+            mLog = log;
+            mTimeoutsLeft = timeoutCount;
+        }
+
+        @Override
+        protected void doCancel() {
+            mLog.add("cancel " + mType);
+        }
+
+        @Override
+        protected void doStart() {
+            mLog.add("start " + mType);
+            if (mTimeoutsLeft > 0) {
+                setTimeout(0);
+            }
+        }
+
+        @Override
+        public void onTimeoutEvent() {
+            mLog.add("timeout " + mType);
+            if (--mTimeoutsLeft > 0) {
+                setTimeout(0);
+            }
+        }
+
+        @Override
+        public void processCommsResponse(DecodedResponse resp) {
+        }
+
+        /**
+         * Completes the processor.
+         * 
+         * @param status The status to complete with
+         */
+        public void finish(ServiceStatus status) {
+            complete(status);
+        }
+    }
+
+    /**
+     * Processor factory recording the types of the processors it creates and
+     * what happens to them.
+     */
+    private static class RecordingProcessorFactory implements ProcessorFactory {
+
+        /**
+         * Types of the created processors, in creation order.
+         */
+        final ArrayList<Integer> mTypes = new ArrayList<Integer>();
+
+        /**
+         * The created processors, in creation order.
+         */
+        final ArrayList<ControlledSyncProcessor> mProcessors = new ArrayList<ControlledSyncProcessor>();
+
+        /**
+         * Starts, timeouts and cancellations of the processors, as
+         * "start|timeout|cancel &lt;type&gt;".
+         */
+        final ArrayList<String> mLog = new ArrayList<String>();
+
+        private final int mTimeoutCount;
+
+        /**
+         * @param timeoutCount The number of times each processor yields with
+         *            a timeout of 0
+         */
+        RecordingProcessorFactory(int timeoutCount) {
+            mTimeoutCount = timeoutCount;
+        }
+
+        @Override
+        public BaseSyncProcessor create(int type, IContactSyncCallback callback,
+                DatabaseHelper dbHelper) {
+            Log.i(LOG_TAG, "create(), type=" + type);
+            final ControlledSyncProcessor processor = new ControlledSyncProcessor(type, callback,
+                    mLog, mTimeoutCount);
+            mTypes.add(Integer.valueOf(type));
+            mProcessors.add(processor);
+            return processor;
+        }
+    }
+
     /**
      * Class used to log the calls to the different methods of
      * IContactSyncObserver.
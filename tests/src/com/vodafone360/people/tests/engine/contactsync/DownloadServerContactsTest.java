@@ -40,8 +40,10 @@ import android.test.suitebuilder.annotation.Suppress;
 import android.util.Log;
 
 import com.vodafone360.people.MainApplication;
+import com.vodafone360.people.Settings;
 import com.vodafone360.people.database.DatabaseHelper;
 import com.vodafone360.people.database.tables.ContactSummaryTable;
+import com.vodafone360.people.database.tables.StateTable;
 import com.vodafone360.people.datatypes.BaseDataType;
 import com.vodafone360.people.datatypes.Contact;
 import com.vodafone360.people.datatypes.ContactChanges;
@@ -113,9 +115,35 @@ public class DownloadServerContactsTest extends InstrumentationTestCase implemen
         RUN_WITH_NEW_CONTACTS,
         RUN_WITH_DELETED_CONTACTS,
         RUN_WITH_MODIFIED_CONTACTS,
-        RUN_WITH_DELETED_DETAILS
+        RUN_WITH_DELETED_DETAILS,
+        RUN_WITH_HELD_PAGES
     }
 
+    /**
+     * Number of pages of the downloads testing the sliding window.
+     */
+    private static final int WINDOW_TEST_NO_PAGES = 3;
+
+    /**
+     * A page request which is only answered when the test decides to.
+     */
+    private static class HeldPage {
+        final int mReqId;
+
+        final int mPageNo;
+
+        HeldPage(int reqId, int pageNo) {
+            mReqId = reqId;
+            mPageNo = pageNo;
+        }
+    }
+
+    /**
+     * Page requests held in the {@link State#RUN_WITH_HELD_PAGES} state, in
+     * the order they were sent.
+     */
+    private final List<HeldPage> mHeldPages = new ArrayList<HeldPage>();
+
     EngineTestFramework mEngineTester = null;
 
     MainApplication mApplication = null;
@@ -125,6 +153,8 @@ public class DownloadServerContactsTest extends InstrumentationTestCase implemen
     Context mContext;
 
     class DownloadServerContactProcessorTest extends DownloadServerContacts {
+        private int mFixedWindowSize;
+
         DownloadServerContactProcessorTest(IContactSyncCallback callback, DatabaseHelper db) {
             super(callback, db);
         }
@@ -151,7 +181,43 @@ public class DownloadServerContactsTest extends InstrumentationTestCase implemen
         }
 
         public int getDownloadPageSize() {
-            return MAX_DOWN_PAGE_SIZE;
+            return getPageSize();
+        }
+
+        public int getOutstandingPageCount() {
+            return mPageReqIds.size();
+        }
+
+        public int getPendingPageCount() {
+            return getReceivedPageCount();
+        }
+
+        public int getApplyPageNo() {
+            return getNextApplyPageNo();
+        }
+
+        public int getCurrentWindowSize() {
+            return getWindowSize();
+        }
+
+        public int testCalculateWindowSize(long averageRttMs, long averageApplyMs) {
+            return super.calculateWindowSize(averageRttMs, averageApplyMs);
+        }
+
+        /**
+         * Makes the window this size once it is calculated, 0 to calculate
+         * it from the timings.
+         */
+        public void setFixedWindowSize(int windowSize) {
+            mFixedWindowSize = windowSize;
+        }
+
+        @Override
+        protected int calculateWindowSize(long averageRttMs, long averageApplyMs) {
+            if (mFixedWindowSize > 0) {
+                return mFixedWindowSize;
+            }
+            return super.calculateWindowSize(averageRttMs, averageApplyMs);
         }
     }
 
@@ -234,6 +300,10 @@ public class DownloadServerContactsTest extends InstrumentationTestCase implemen
     @Override
     public void reportBackToEngine(int reqId, EngineId engine) {
         Log.d(LOG_TAG, "reportBackToEngine");
+        if (mState == State.RUN_WITH_HELD_PAGES) {
+            holdPage(reqId);
+            return;
+        }
         ResponseQueue respQueue = ResponseQueue.getInstance();
         List<BaseDataType> data = new ArrayList<BaseDataType>();
         try {
@@ -273,6 +343,136 @@ public class DownloadServerContactsTest extends InstrumentationTestCase implemen
         Log.d(LOG_TAG, "reportBackToEngine - message added to response queue");
     }
 
+    /**
+     * Keeps a page request to be answered later by the test.
+     */
+    private void holdPage(int reqId) {
+        Integer pageNo = mProcessor.testGetPageFromReqId(reqId);
+        assertTrue(pageNo != null);
+        synchronized (mHeldPages) {
+            mHeldPages.add(new HeldPage(reqId, pageNo));
+            mHeldPages.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the given number of page requests have been held.
+     * 
+     * @return The held requests in the order they were sent
+     */
+    private List<HeldPage> waitForHeldPages(int count) {
+        long endTime = System.currentTimeMillis() + MAX_WAIT_FOR_PAGE_MS;
+        synchronized (mHeldPages) {
+            while (mHeldPages.size() < count && System.currentTimeMillis() < endTime) {
+                try {
+                    mHeldPages.wait(WAIT_FOR_PAGE_MS);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            assertEquals(count, mHeldPages.size());
+            return new ArrayList<HeldPage>(mHeldPages);
+        }
+    }
+
+    /**
+     * Waits until the processor keeps the given number of received pages
+     * which cannot be applied yet.
+     */
+    private void waitForPendingPages(int count) {
+        long endTime = System.currentTimeMillis() + MAX_WAIT_FOR_PAGE_MS;
+        while (mProcessor.getPendingPageCount() != count && System.currentTimeMillis() < endTime) {
+            try {
+                Thread.sleep(WAIT_FOR_PAGE_MS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        assertEquals(count, mProcessor.getPendingPageCount());
+    }
+
+    /**
+     * Starts a download whose page requests are held, answers the first page
+     * and waits for the requests of the other pages.
+     * 
+     * @return The held requests, the first page first
+     */
+    private List<HeldPage> startHeldDownload() {
+        synchronized (mHeldPages) {
+            mHeldPages.clear();
+        }
+        mState = State.RUN_WITH_HELD_PAGES;
+        // the window grows from its initial size once the first page is applied
+        mProcessor.setFixedWindowSize(WINDOW_TEST_NO_PAGES);
+        mEng.mProcessorCompleteFlag = false;
+        mProcessor.start();
+
+        List<HeldPage> pages = waitForHeldPages(1);
+        assertEquals(0, pages.get(0).mPageNo);
+        answerPage(pages.get(0));
+        pages = waitForHeldPages(WINDOW_TEST_NO_PAGES);
+        for (int i = 0; i < WINDOW_TEST_NO_PAGES; i++) {
+            assertEquals(i, pages.get(i).mPageNo);
+        }
+        return pages;
+    }
+
+    /**
+     * Answers a held page request with a page of new contacts.
+     */
+    private void answerPage(HeldPage page) {
+        List<BaseDataType> data = new ArrayList<BaseDataType>();
+        ContactChanges contactChanges = new ContactChanges();
+        contactChanges.mCurrentServerVersion = CURRENT_SERVER_VERSION;
+        contactChanges.mServerRevisionBefore = CURRENT_SERVER_VERSION;
+        contactChanges.mServerRevisionAfter = CURRENT_SERVER_VERSION;
+        contactChanges.mVersionAnchor = CURRENT_SERVER_VERSION;
+        contactChanges.mNumberOfPages = WINDOW_TEST_NO_PAGES;
+        int pageSize = mProcessor.getDownloadPageSize();
+        for (int i = 0; i < pageSize; i++) {
+            Contact newContact = mTestModule.createDummyContactData();
+            newContact.contactID = getHeldPageContactId(page.mPageNo, i);
+            newContact.userID = generateTestUserID(newContact.contactID);
+            contactChanges.mContacts.add(newContact);
+        }
+        data.add(contactChanges);
+        answerRequest(page.mReqId, data);
+    }
+
+    /**
+     * Answers a held page request with a server error.
+     */
+    private void answerPageWithError(HeldPage page, ServerError.ErrorType errorType) {
+        List<BaseDataType> data = new ArrayList<BaseDataType>();
+        data.add(new ServerError(errorType));
+        answerRequest(page.mReqId, data);
+    }
+
+    private void answerRequest(int reqId, List<BaseDataType> data) {
+        ResponseQueue.getInstance().addToResponseQueue(new DecodedResponse(reqId, data,
+                mEng.engineId(), DecodedResponse.ResponseType.SERVER_ERROR.ordinal()));
+        mEng.onCommsInMessage();
+    }
+
+    private long getHeldPageContactId(int pageNo, int index) {
+        return FIRST_MODIFIED_CONTACT_ID + pageNo * mProcessor.getDownloadPageSize() + index;
+    }
+
+    /**
+     * Checks whether the contacts of a page answered by
+     * {@link #answerPage(HeldPage)} are in the database.
+     */
+    private boolean isHeldPageInDatabase(int pageNo) {
+        for (int i = 0; i < mProcessor.getDownloadPageSize(); i++) {
+            Contact contact = new Contact();
+            if (ServiceStatus.SUCCESS != mDb.fetchContactByServerId(getHeldPageContactId(
+                    pageNo, i), contact)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private void reportBackWithNoChanges(int reqId, List<BaseDataType> data) {
         Log.d(LOG_TAG, "reportBackWithNoChanges");
         Integer pageNo = mProcessor.testGetPageFromReqId(reqId);
@@ -923,4 +1123,99 @@ public class DownloadServerContactsTest extends InstrumentationTestCase implemen
         Log.i(LOG_TAG, "*************************************************************************");
         Log.i(LOG_TAG, "");
     }
+
+    /*
+     * Answers the pages of a download in reverse order and checks that a page
+     * is only applied once all the pages before it have been applied.
+     */
+    @MediumTest
+    public void testOutOfOrderPages() {
+        final String fnName = "testOutOfOrderPages";
+        Log.i(LOG_TAG, "***** EXECUTING " + fnName + " *****");
+        mTestStep = 1;
+
+        startSubTest(fnName, "Requesting the pages");
+        List<HeldPage> pages = startHeldDownload();
+        assertEquals(WINDOW_TEST_NO_PAGES, mProcessor.getCurrentWindowSize());
+        assertEquals(WINDOW_TEST_NO_PAGES - 1, mProcessor.getOutstandingPageCount());
+
+        startSubTest(fnName, "Answering the last page first");
+        answerPage(pages.get(2));
+        waitForPendingPages(1);
+        assertEquals(1, mProcessor.getApplyPageNo());
+        assertFalse(isHeldPageInDatabase(2));
+
+        startSubTest(fnName, "Answering the missing page");
+        answerPage(pages.get(1));
+        assertEquals(ServiceStatus.SUCCESS, mEng.waitForProcessorComplete(MAX_PROCESSOR_TIME));
+        assertEquals(0, mProcessor.getPendingPageCount());
+        for (int i = 0; i < WINDOW_TEST_NO_PAGES; i++) {
+            assertTrue(isHeldPageInDatabase(i));
+        }
+        assertEquals(Integer.valueOf(CURRENT_SERVER_VERSION), StateTable.fetchContactRevision(mDb
+                .getReadableDatabase()));
+
+        Log.i(LOG_TAG, "*************************************************************************");
+        Log.i(LOG_TAG, fnName + " has completed successfully");
+        Log.i(LOG_TAG, "*************************************************************************");
+        Log.i(LOG_TAG, "");
+    }
+
+    /*
+     * Loses a page while a later page is waiting for it and checks that the
+     * download fails without applying the later page or storing the revision.
+     */
+    @MediumTest
+    public void testLostPage() {
+        final String fnName = "testLostPage";
+        Log.i(LOG_TAG, "***** EXECUTING " + fnName + " *****");
+        mTestStep = 1;
+        Integer revision = StateTable.fetchContactRevision(mDb.getReadableDatabase());
+
+        startSubTest(fnName, "Requesting the pages");
+        List<HeldPage> pages = startHeldDownload();
+
+        startSubTest(fnName, "Answering the last page");
+        answerPage(pages.get(2));
+        waitForPendingPages(1);
+
+        startSubTest(fnName, "Timing out the missing page");
+        answerPageWithError(pages.get(1), ServerError.ErrorType.REQUEST_TIMEOUT);
+        ServiceStatus status = mEng.waitForProcessorComplete(MAX_PROCESSOR_TIME);
+        assertTrue(ServiceStatus.SUCCESS != status);
+        assertTrue(isHeldPageInDatabase(0));
+        assertFalse(isHeldPageInDatabase(1));
+        assertFalse(isHeldPageInDatabase(2));
+        assertEquals(revision, StateTable.fetchContactRevision(mDb.getReadableDatabase()));
+
+        Log.i(LOG_TAG, "*************************************************************************");
+        Log.i(LOG_TAG, fnName + " has completed successfully");
+        Log.i(LOG_TAG, "*************************************************************************");
+        Log.i(LOG_TAG, "");
+    }
+
+    /*
+     * Checks that the window grows when pages take longer to arrive than to
+     * apply, shrinks again when they arrive quickly and stays within its
+     * bounds.
+     */
+    @SmallTest
+    public void testWindowSize() {
+        final String fnName = "testWindowSize";
+        Log.i(LOG_TAG, "***** EXECUTING " + fnName + " *****");
+
+        assertEquals(1, mProcessor.testCalculateWindowSize(0, 100));
+        assertEquals(2, mProcessor.testCalculateWindowSize(100, 100));
+        assertEquals(4, mProcessor.testCalculateWindowSize(350, 100));
+        assertEquals(Settings.CONTACT_DOWNLOAD_MAX_WINDOW,
+                mProcessor.testCalculateWindowSize(10000, 100));
+        assertEquals(Settings.CONTACT_DOWNLOAD_MAX_WINDOW,
+                mProcessor.testCalculateWindowSize(100, 0));
+        assertEquals(1, mProcessor.testCalculateWindowSize(50, 100));
+
+        Log.i(LOG_TAG, "*************************************************************************");
+        Log.i(LOG_TAG, fnName + " has completed successfully");
+        Log.i(LOG_TAG, "*************************************************************************");
+        Log.i(LOG_TAG, "");
+    }
 }
@@ -27,6 +27,7 @@ package com.vodafone360.people.tests.engine.contactsync;
 
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -591,6 +592,136 @@ public class NativeContactsApiTest extends InstrumentationTestCase {
 		assertNull(ids);
 	}
 
+	@MediumTest
+	@Suppress
+	public void testContactReader() {
+		Account account = null;
+		if(mUsing2xApi) {
+			// Add Account for the case where we are in 2.X
+			mNabApi.addPeopleAccount(PEOPLE_USERNAME);
+			account = s360PeopleAccount;
+			threadWait(100);
+		}
+		
+		long[] ids = getContactIdsForAllAccounts();
+		assertNull(ids);
+		
+		final int numRandomContacts = 10;
+		
+		for(int i = 0; i < numRandomContacts; i++) {
+			long id = i;
+			mNabApi.addContact(account, ContactChangeHelper.randomContact(id, id, -1));
+		}
+		
+		ids = getContactIdsForAllAccounts();
+		assertNotNull(ids);
+		assertEquals(numRandomContacts, ids.length);
+		Arrays.sort(ids);
+		
+		// READ EVERY OTHER CONTACT AND COMPARE WITH THE SINGLE CONTACT READ
+		final NativeContactsApi.ContactReader reader = mNabApi.openContactReader(ids[0], ids[ids.length - 1]);
+		try {
+			for(int i = 0; i < ids.length; i += 2) {
+				final ContactChange[] fetchedContactCcList = mNabApi.getContact(ids[i]);
+				final ContactChange[] readContactCcList = reader.getContact(ids[i]);
+				assertNotNull(readContactCcList);
+				assertTrue(ContactChangeHelper.areUnsortedChangeListsEqual(fetchedContactCcList, readContactCcList, false));
+			}
+			// a contact outside of the range
+			assertNull(reader.getContact(ids[ids.length - 1] + 1));
+		} finally {
+			reader.close();
+		}
+		
+		// DELETE
+		final int idCount = ids.length;
+		for(int i = 0; i < idCount; i++) {
+			mNabApi.removeContact(ids[i]);
+		}
+		
+		ids = getContactIdsForAllAccounts();
+		assertNull(ids);
+	}
+	
+	@MediumTest
+	@Suppress
+	public void testContactWriter() {
+		Account account = null;
+		if(mUsing2xApi) {
+			// Add Account for the case where we are in 2.X
+			mNabApi.addPeopleAccount(PEOPLE_USERNAME);
+			account = s360PeopleAccount;
+			threadWait(100);
+		}
+		
+		long[] ids = getContactIdsForAllAccounts();
+		assertNull(ids);
+		
+		final int numRandomContacts = 10;
+		
+		// ADD ALL CONTACTS IN ONE BATCH, THE FIRST HALF WITH AN ORGANIZATION AND A TITLE
+		final ContactChange[][] newContacts = new ContactChange[numRandomContacts][];
+		NativeContactsApi.ContactWriter writer = mNabApi.openContactWriter();
+		for(int i = 0; i < numRandomContacts; i++) {
+			long id = i;
+			ContactChange[] newContactCcList;
+			do {
+				newContactCcList = ContactChangeHelper.randomContact(id, id, -1);
+			} while(i < numRandomContacts / 2 
+					&& (!ContactChangeHelper.isKeyPresent(ContactChange.KEY_VCARD_ORG, newContactCcList)
+					|| !ContactChangeHelper.isKeyPresent(ContactChange.KEY_VCARD_TITLE, newContactCcList)));
+			newContacts[i] = newContactCcList;
+			writer.addContact(account, newContactCcList);
+		}
+		final ContactChange[][] newIds = writer.execute();
+		assertEquals(numRandomContacts, newIds.length);
+		
+		// every contact gets the ids of its own operations and its details went
+		// to its own raw contact
+		for(int i = 0; i < numRandomContacts; i++) {
+			verifyNewContactIds(ContactChange.INVALID_ID, newContacts[i], newIds[i]);
+			final long nabContactId = newIds[i][0].getNabContactId();
+			for(int j = 0; j < i; j++) {
+				assertTrue(nabContactId != newIds[j][0].getNabContactId());
+			}
+			final ContactChange[] fetchedContactCcList = mNabApi.getContact(nabContactId);
+			assertNotNull(fetchedContactCcList);
+			assertTrue(ContactChangeHelper.areUnsortedChangeListsEqual(newContacts[i], fetchedContactCcList, false));
+		}
+		
+		ids = getContactIdsForAllAccounts();
+		assertNotNull(ids);
+		assertEquals(numRandomContacts, ids.length);
+		
+		// UPDATE ALL CONTACTS IN ONE BATCH
+		final ContactChange[][] fetchedContacts = new ContactChange[numRandomContacts][];
+		final ContactChange[][] updates = new ContactChange[numRandomContacts][];
+		writer = mNabApi.openContactWriter();
+		for(int i = 0; i < numRandomContacts; i++) {
+			fetchedContacts[i] = mNabApi.getContact(newIds[i][0].getNabContactId());
+			updates[i] = ContactChangeHelper.randomContactUpdate(fetchedContacts[i]);
+			writer.updateContact(updates[i]);
+		}
+		final ContactChange[][] updatedIds = writer.execute();
+		assertEquals(numRandomContacts, updatedIds.length);
+		for(int i = 0; i < numRandomContacts; i++) {
+			verifyUpdateContactIds(fetchedContacts[i], updates[i], updatedIds[i]);
+			final ContactChange[] updatedContactCcList = ContactChangeHelper.generatedUpdatedContact(newContacts[i], updates[i]);
+			final ContactChange[] fetchedUpdatedContactCcList = mNabApi.getContact(newIds[i][0].getNabContactId());
+			assertNotNull(fetchedUpdatedContactCcList);
+			assertTrue(ContactChangeHelper.areUnsortedChangeListsEqual(updatedContactCcList, fetchedUpdatedContactCcList, false));
+		}
+		
+		// DELETE ALL CONTACTS IN ONE BATCH
+		writer = mNabApi.openContactWriter();
+		for(int i = 0; i < ids.length; i++) {
+			writer.removeContact(ids[i]);
+		}
+		writer.execute();
+		
+		ids = getContactIdsForAllAccounts();
+		assertNull(ids);
+	}
 	
 	@SmallTest
 	public void testIsKeySupported() {
@@ -574,13 +574,15 @@ public class NativeExporterTest extends TestCase {
         }
         
         @Override
-        public void updateNativeContact(ContactChange[] contact) {
+        public boolean updateNativeContact(ContactChange[] contact) {
             
             
-            super.updateNativeContact(contact);
+            final boolean result = super.updateNativeContact(contact);
             
             // add the updates to the syncable hashtable
             mPeopleContactsToSync.put(contact[0].getInternalContactId(), contact);
+            
+            return result;
         }
 
         @Override
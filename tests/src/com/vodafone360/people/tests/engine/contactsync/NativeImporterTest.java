@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.Map;
 
 import junit.framework.TestCase;
 import android.test.suitebuilder.annotation.Suppress;
@@ -246,6 +247,78 @@ public class NativeImporterTest extends TestCase {
         assertTrue(compareNativeAndPeopleContactsList(nativeMockup, null, peopleMockup));
     }
     
+    /**
+     * Tests that contacts which did not change on native side are not compared again.
+     */
+    public void testMultipleImportsFromNativeWithUnchangedContacts() {
+        
+        final NativeContactsApiMockup nativeMockup = new NativeContactsApiMockup();
+        final PeopleContactsApiMockup peopleMockup = new PeopleContactsApiMockup(null);
+        
+        // add new contacts on native side
+        feedNativeContactsApi(nativeMockup, 20, null);
+        
+        // import the new contacts
+        runNativeImporter(nativeMockup, peopleMockup);
+        
+        // compare contacts on both sides
+        assertTrue(compareNativeAndPeopleContactsList(nativeMockup, null, peopleMockup));
+        
+        // import again without any change
+        peopleMockup.mGetContactCount = 0;
+        runNativeImporter(nativeMockup, peopleMockup);
+        assertEquals(0, peopleMockup.mGetContactCount);
+        
+        // pick an existing contact and add details
+        final ContactChange[] contact = nativeMockup.getContact(10);
+        nativeMockup.setContact(10, addDetails(nativeMockup, contact));
+        
+        // only the updated contact is compared (the mockup gets it once more to update it)
+        runNativeImporter(nativeMockup, peopleMockup);
+        assertEquals(2, peopleMockup.mGetContactCount);
+        
+        // compare contacts on both sides
+        assertTrue(compareNativeAndPeopleContactsList(nativeMockup, null, peopleMockup));
+    }
+    
+    /**
+     * Tests that a contact whose update failed is compared again on the next
+     * import instead of being skipped by its fingerprint.
+     */
+    public void testMultipleImportsFromNativeWithFailedUpdate() {
+        
+        final NativeContactsApiMockup nativeMockup = new NativeContactsApiMockup();
+        final PeopleContactsApiMockup peopleMockup = new PeopleContactsApiMockup(null);
+        
+        // add new contacts on native side and import them
+        feedNativeContactsApi(nativeMockup, 20, null);
+        runNativeImporter(nativeMockup, peopleMockup);
+        assertTrue(compareNativeAndPeopleContactsList(nativeMockup, null, peopleMockup));
+        
+        // pick an existing contact and add details
+        final ContactChange[] contact = nativeMockup.getContact(10);
+        nativeMockup.setContact(10, addDetails(nativeMockup, contact));
+        
+        // the update fails
+        peopleMockup.mFailUpdates = true;
+        peopleMockup.mGetContactCount = 0;
+        runNativeImporter(nativeMockup, peopleMockup);
+        assertEquals(1, peopleMockup.mGetContactCount);
+        assertFalse(compareNativeAndPeopleContactsList(nativeMockup, null, peopleMockup));
+        
+        // the contact is compared and updated again on the next import
+        peopleMockup.mFailUpdates = false;
+        peopleMockup.mGetContactCount = 0;
+        runNativeImporter(nativeMockup, peopleMockup);
+        assertEquals(2, peopleMockup.mGetContactCount);
+        assertTrue(compareNativeAndPeopleContactsList(nativeMockup, null, peopleMockup));
+        
+        // and skipped once it is in sync
+        peopleMockup.mGetContactCount = 0;
+        runNativeImporter(nativeMockup, peopleMockup);
+        assertEquals(0, peopleMockup.mGetContactCount);
+    }
+    
     /**
      * Tests multiple imports from native with an updated contact via deleted details.
      */
@@ -660,8 +733,14 @@ public class NativeImporterTest extends TestCase {
         
         protected Hashtable<Long, ContactChange[]> mPeopleContacts = new Hashtable<Long, ContactChange[]>();
         
+        protected Hashtable<Long, Long> mNativeFingerprints = new Hashtable<Long, Long>();
+        
         protected int mLocalContactId = 1;
         protected int mLocalDetailId = 1;
+        
+        protected int mGetContactCount = 0;
+        
+        protected boolean mFailUpdates = false;
 
         public PeopleContactsApiMockup(DatabaseHelper dbh) {
             
@@ -722,13 +801,35 @@ public class NativeImporterTest extends TestCase {
             if (mPeopleContacts.containsKey(nativeId)) {
                 
                 mPeopleContacts.remove(nativeId);
+                mNativeFingerprints.remove(nativeId);
             }
             return false;
         }
+        
+        @Override
+        public Map<Long, Long> getNativeFingerprints() {
+            
+            return new Hashtable<Long, Long>(mNativeFingerprints);
+        }
+        
+        @Override
+        public boolean setNativeFingerprints(long[] nativeIds, long[] fingerprints) {
+            
+            for (int i = 0; i < nativeIds.length; i++) {
+                
+                if (mPeopleContacts.containsKey(nativeIds[i])) {
+                    
+                    mNativeFingerprints.put(nativeIds[i], fingerprints[i]);
+                }
+            }
+            return true;
+        }
 
         @Override
         public ContactChange[] getContact(long nativeId) {
 
+            mGetContactCount++;
+            
             // return a copy, the NativeImporter may mess with it
             final ContactChange[] original = mPeopleContacts.get(nativeId);
             ContactChange[] copy = null;
@@ -743,8 +844,12 @@ public class NativeImporterTest extends TestCase {
         }
 
         @Override
-        public void updateNativeContact(ContactChange[] contact) {
+        public boolean updateNativeContact(ContactChange[] contact) {
 
+            if (mFailUpdates) {
+                return false;
+            }
+            
             // get the original contact
             final ContactChange[] originalContact = getContact(contact[0].getNabContactId());
             final ArrayList<ContactChange> contactArrayList = new ArrayList<ContactChange>();
@@ -791,6 +896,8 @@ public class NativeImporterTest extends TestCase {
             contactArrayList.toArray(newContactChanges);
             
             mPeopleContacts.put(newContactChanges[0].getNabContactId(), newContactChanges);
+            
+            return true;
         }
     }
     
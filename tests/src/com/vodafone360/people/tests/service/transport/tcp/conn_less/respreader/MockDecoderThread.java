@@ -35,6 +35,14 @@ public class MockDecoderThread extends DecoderThread {
 		response = payload;
 	}
 	
+	@Override
+	public boolean addRpgMessageToDecode(int messageType, RawResponse resp) {
+		// the buffer goes back to the pool, so keep a copy of the payload
+		response = new byte[resp.mLength];
+		System.arraycopy(resp.mData, resp.mOffset, response, 0, resp.mLength);
+		return false;
+	}
+	
 	public byte[] getResponse() {
 		return response;
 	}
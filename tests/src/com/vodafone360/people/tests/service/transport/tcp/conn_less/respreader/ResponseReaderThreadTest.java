@@ -230,7 +230,8 @@ public class ResponseReaderThreadTest extends InstrumentationTestCase {
 		    // Do nothing.
 		}
 		assertNotNull("The decoder response should not have been NULL", decoder.getResponse());
-		assertTrue("Incorrect payload", Arrays.equals(payload, decoder.getResponse()));
+		assertTrue("Incorrect payload", Arrays.equals(new byte[] {1, 2, 3, 4, 5},
+				decoder.getResponse()));
 		respReader.stopConnection();
 		payload = null;
 		respReader = null;
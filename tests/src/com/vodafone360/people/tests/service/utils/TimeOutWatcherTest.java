@@ -25,6 +25,8 @@
 
 package com.vodafone360.people.tests.service.utils;
 
+import java.util.ArrayList;
+
 import android.app.Instrumentation;
 import android.test.InstrumentationTestCase;
 import android.test.suitebuilder.annotation.Suppress;
@@ -229,6 +231,70 @@ public class TimeOutWatcherTest extends InstrumentationTestCase {
         Log.i("testThrowingTimeout()", "-end");
     }
     
+    /**
+     * Tests that a response arriving after the request expired, but before
+     * the timeout is dispatched, is the only response the engine gets.
+     */
+    public void testResponseRacingTimeout() {
+        final QueueManager queueManager = QueueManager.getInstance();
+        final Request request = createRequestWithTimeout(TIMEOUT_2000_MS / 4);
+        final int reqId;
+        synchronized (queueManager.lock) {
+            reqId = queueManager.addRequest(request);
+            // the watcher thread finds the expired request and then blocks on
+            // the lock until the response below has removed the request
+            try {
+                Thread.sleep(TIMEOUT_2000_MS);
+            } catch (InterruptedException ie) {
+                Log.i("testResponseRacingTimeout()", "Error while sleeping: " + ie);
+            }
+            queueManager.addResponse(new DecodedResponse(reqId, new ArrayList<BaseDataType>(),
+                    EngineId.UNDEFINED, DecodedResponse.ResponseType.GET_PRESENCE_RESPONSE
+                            .ordinal()));
+        }
+        try {
+            Thread.sleep(TIMEOUT_2000_MS);
+        } catch (InterruptedException ie) {
+            Log.i("testResponseRacingTimeout()", "Error while sleeping: " + ie);
+        }
+
+        final DecodedResponse response = ResponseQueue.getInstance().getNextResponse(
+                EngineId.UNDEFINED);
+        assertNotNull(response);
+        assertEquals(reqId, response.mReqId.intValue());
+        assertEquals(DecodedResponse.ResponseType.GET_PRESENCE_RESPONSE.ordinal(),
+                response.getResponseType());
+        assertFalse(request.expired);
+        // no timeout for the answered request
+        assertNull(ResponseQueue.getInstance().getNextResponse(EngineId.UNDEFINED));
+        assertEquals(0, queueManager.getRequestTimeoutWatcher().getRequestsCount());
+    }
+
+    /**
+     * Tests that the timeout wins if it is dispatched before the response
+     * arrives, which then finds no request to remove anymore.
+     */
+    public void testTimeoutBeforeResponse() {
+        final QueueManager queueManager = QueueManager.getInstance();
+        final Request request = createRequestWithTimeout(TIMEOUT_2000_MS / 4);
+        final int reqId = queueManager.addRequest(request);
+        try {
+            Thread.sleep(TIMEOUT_2000_MS);
+        } catch (InterruptedException ie) {
+            Log.i("testTimeoutBeforeResponse()", "Error while sleeping: " + ie);
+        }
+        assertTrue(request.expired);
+        assertNull(queueManager.removeRequest(reqId));
+
+        final DecodedResponse response = ResponseQueue.getInstance().getNextResponse(
+                EngineId.UNDEFINED);
+        assertNotNull(response);
+        assertEquals(reqId, response.mReqId.intValue());
+        assertEquals(DecodedResponse.ResponseType.SERVER_ERROR.ordinal(),
+                response.getResponseType());
+        assertNull(ResponseQueue.getInstance().getNextResponse(EngineId.UNDEFINED));
+    }
+
     ////////////////////
     // HELPER METHODS //
     ////////////////////
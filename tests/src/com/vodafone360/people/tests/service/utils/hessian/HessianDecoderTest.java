@@ -36,6 +36,7 @@ import com.vodafone360.people.datatypes.ActivityItem;
 import com.vodafone360.people.datatypes.AuthSessionHolder;
 import com.vodafone360.people.datatypes.BaseDataType;
 import com.vodafone360.people.datatypes.Contact;
+import com.vodafone360.people.datatypes.ContactDetail;
 import com.vodafone360.people.datatypes.Identity;
 import com.vodafone360.people.datatypes.PushEvent;
 import com.vodafone360.people.datatypes.ServerError;
@@ -218,6 +219,44 @@ public class HessianDecoderTest extends AndroidTestCase {
 		assertTrue(clist.get(0) instanceof Contact);
 	}
 
+	@MediumTest
+	public void testStreamedContactListResponse(){
+		List<Contact> streamed = new ArrayList<Contact>();
+		List<Contact> hashed = new ArrayList<Contact>();
+
+		HessianDecoder hess = new HessianDecoder();
+		try {
+			DecodedResponse resp = hess.decodeHessianByteArray(3, testContactListData, Type.COMMON, false, EngineId.UNDEFINED);
+			for (BaseDataType data : resp.mDataTypes) {
+				streamed.add((Contact)data);
+			}
+			hess.setStreamingEnabled(false);
+			resp = hess.decodeHessianByteArray(3, testContactListData, Type.COMMON, false, EngineId.UNDEFINED);
+			for (BaseDataType data : resp.mDataTypes) {
+				hashed.add((Contact)data);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			assertTrue("IOException thrown", false);
+		}
+
+		assertEquals(3, streamed.size());
+		assertEquals(hashed.size(), streamed.size());
+		for (int i = 0; i < streamed.size(); i++) {
+			assertEquals(hashed.get(i).contactID, streamed.get(i).contactID);
+			assertEquals(hashed.get(i).details.size(), streamed.get(i).details.size());
+			for (int j = 0; j < streamed.get(i).details.size(); j++) {
+				ContactDetail hashedDetail = hashed.get(i).details.get(j);
+				ContactDetail streamedDetail = streamed.get(i).details.get(j);
+				assertEquals(hashedDetail.key, streamedDetail.key);
+				assertEquals(hashedDetail.keyType, streamedDetail.keyType);
+				assertEquals(hashedDetail.value, streamedDetail.value);
+				assertEquals(hashedDetail.unique_id, streamedDetail.unique_id);
+				assertEquals(hashedDetail.order, streamedDetail.order);
+			}
+		}
+	}
+
 	@MediumTest
 	public void testIdentityListResponse(){
 		//boolean testPassed = true;
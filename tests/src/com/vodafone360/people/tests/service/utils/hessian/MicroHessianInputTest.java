@@ -0,0 +1,180 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.tests.service.utils.hessian;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+import com.caucho.hessian.micro.MicroHessianInput;
+import com.vodafone360.people.utils.ReusableGzipInputStream;
+
+/**
+ * JUnit tests for reading strings with the MicroHessianInput, which decodes
+ * the UTF-8 bytes of a string in chunks.
+ */
+public class MicroHessianInputTest extends TestCase {
+
+    /**
+     * Characters encoded with one, two, three and four UTF-8 bytes, the last
+     * one being a surrogate pair.
+     */
+    private static final String MIXED = "a\u00e9\u20ac\ud83d\ude00";
+
+    /**
+     * Tests strings of every UTF-8 sequence length, long enough to cross the
+     * 2048 byte buffer of the input and the initial size of the string
+     * buffer, each followed by an int which must still be read correctly.
+     */
+    public void testReadStringAcrossBuffers() throws IOException {
+        final String[] strings = createStrings();
+        final MicroHessianInput input = new MicroHessianInput(new ByteArrayInputStream(
+                encode(strings)));
+        for (String string : strings) {
+            assertEquals(string, input.readString());
+            assertEquals(string.length(), input.readInt());
+        }
+    }
+
+    /**
+     * Tests the same strings read from a stream returning a few bytes at a
+     * time, so sequences are split between reads.
+     */
+    public void testReadStringSplitSequences() throws IOException {
+        final String[] strings = createStrings();
+        final byte[] data = encode(strings);
+        for (int chunk = 1; chunk <= 5; chunk++) {
+            final MicroHessianInput input = new MicroHessianInput(new TrickleInputStream(
+                    new ByteArrayInputStream(data), chunk));
+            for (String string : strings) {
+                assertEquals(string, input.readString());
+                assertEquals(string.length(), input.readInt());
+            }
+        }
+    }
+
+    /**
+     * Tests the strings decompressed by a ReusableGzipInputStream with a
+     * window ending in the middle of sequences, as done for zipped responses.
+     */
+    public void testReadStringZipped() throws IOException {
+        final String[] strings = createStrings();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(encode(strings));
+        gzip.close();
+
+        final ReusableGzipInputStream gzipInput = new ReusableGzipInputStream(7);
+        gzipInput.reset(new ByteArrayInputStream(out.toByteArray()));
+        final MicroHessianInput input = new MicroHessianInput(gzipInput);
+        for (String string : strings) {
+            assertEquals(string, input.readString());
+            assertEquals(string.length(), input.readInt());
+        }
+        gzipInput.release();
+    }
+
+    /**
+     * Tests that a string cut off by the end of the stream, also inside a
+     * sequence, is padded with one (char)-1 per missing character.
+     */
+    public void testReadStringTruncated() throws IOException {
+        final byte[] data = encode(new String[] {
+            "ab\u20ac"
+        });
+        // tag, length and "ab" only
+        MicroHessianInput input = new MicroHessianInput(new ByteArrayInputStream(data, 0, 5));
+        assertEquals("ab\uffff", input.readString());
+
+        // the euro sign is cut after its first byte
+        input = new MicroHessianInput(new ByteArrayInputStream(data, 0, 6));
+        final String string = input.readString();
+        assertEquals(3, string.length());
+        assertEquals("ab", string.substring(0, 2));
+    }
+
+    /**
+     * Creates the strings to read, from short ASCII up to long texts of
+     * mixed sequence lengths.
+     */
+    private static String[] createStrings() {
+        final StringBuilder ascii = new StringBuilder();
+        final StringBuilder mixed = new StringBuilder();
+        final StringBuilder offset = new StringBuilder("x");
+        for (int i = 0; i < 700; i++) {
+            ascii.append((char)('a' + i % 26));
+            mixed.append(MIXED);
+            offset.append(MIXED);
+        }
+        return new String[] {
+                "", "plain", MIXED, ascii.toString(), mixed.toString(), offset.toString(),
+                "\u00fc\u00f6\u00e4 after the long ones"
+        };
+    }
+
+    /**
+     * Encodes strings, each followed by its length as int, as Hessian.
+     */
+    private static byte[] encode(String[] strings) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String string : strings) {
+            out.write('S');
+            out.write(string.length() >> 8);
+            out.write(string.length());
+            out.write(string.getBytes("UTF-8"));
+            out.write('I');
+            final int length = string.length();
+            out.write(length >>> 24);
+            out.write(length >>> 16);
+            out.write(length >>> 8);
+            out.write(length);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Stream returning at most a given number of bytes per read.
+     */
+    private static class TrickleInputStream extends FilterInputStream {
+
+        private final int mChunk;
+
+        public TrickleInputStream(InputStream in, int chunk) {
+            super(in);
+            mChunk = chunk;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, mChunk));
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * CDDL HEADER START
+ *
+ * The contents of this file are subject to the terms of the Common Development
+ * and Distribution License (the "License").
+ * You may not use this file except in compliance with the License.
+ *
+ * You can obtain a copy of the license at
+ * src/com/vodafone360/people/VODAFONE.LICENSE.txt or
+ * http://github.com/360/360-Engine-for-Android
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * When distributing Covered Code, include this CDDL HEADER in each file and
+ * include the License file at src/com/vodafone360/people/VODAFONE.LICENSE.txt.
+ * If applicable, add the following below this CDDL HEADER, with the fields
+ * enclosed by brackets "[]" replaced with your own identifying information:
+ * Portions Copyright [yyyy] [name of copyright owner]
+ *
+ * CDDL HEADER END
+ *
+ * Copyright 2010 Vodafone Sales & Services Ltd.  All rights reserved.
+ * Use is subject to license terms.
+ */
+
+package com.vodafone360.people.tests.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import junit.framework.TestCase;
+
+import com.vodafone360.people.utils.ReusableGzipInputStream;
+
+/**
+ * JUnit tests for the ReusableGzipInputStream class, comparing what it
+ * decompresses with the data compressed by GZIPOutputStream.
+ *
+ * @see ReusableGzipInputStream
+ */
+public class ReusableGzipInputStreamTest extends TestCase {
+
+    /**
+     * Small window so the compressed data spans many of them.
+     */
+    private static final int WINDOW_SIZE = 16;
+
+    /**
+     * Tests decompressing empty, small and large data with one stream.
+     */
+    public void testRoundTrip() throws IOException {
+        final ReusableGzipInputStream in = new ReusableGzipInputStream(WINDOW_SIZE);
+        final byte[][] inputs = {
+                new byte[0], "Hello".getBytes("UTF-8"), createData(10000, 1)
+        };
+        for (byte[] input : inputs) {
+            in.reset(new ByteArrayInputStream(gzip(input)));
+            assertEquals(input, readAll(in));
+            assertEquals(-1, in.read());
+        }
+        in.release();
+    }
+
+    /**
+     * Tests that concatenated GZIP members are read as one stream, also when
+     * a member boundary falls inside the window.
+     */
+    public void testMultipleMembers() throws IOException {
+        final byte[] first = createData(1000, 2);
+        final byte[] second = new byte[0];
+        final byte[] third = "third member".getBytes("UTF-8");
+        final ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        compressed.write(gzip(first));
+        compressed.write(gzip(second));
+        compressed.write(gzip(third));
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(first);
+        expected.write(third);
+
+        for (int windowSize = 1; windowSize <= 64; windowSize++) {
+            final ReusableGzipInputStream in = new ReusableGzipInputStream(windowSize);
+            in.reset(new ByteArrayInputStream(compressed.toByteArray()));
+            assertEquals(expected.toByteArray(), readAll(in));
+            in.release();
+        }
+    }
+
+    /**
+     * Tests that data following a member which is not a GZIP header is
+     * reported instead of being ignored.
+     */
+    public void testTrailingGarbage() throws IOException {
+        final byte[] compressed = gzip("data".getBytes("UTF-8"));
+        final byte[] input = new byte[compressed.length + 2];
+        System.arraycopy(compressed, 0, input, 0, compressed.length);
+        input[compressed.length] = 'x';
+        input[compressed.length + 1] = 'y';
+
+        final ReusableGzipInputStream in = new ReusableGzipInputStream(WINDOW_SIZE);
+        in.reset(new ByteArrayInputStream(input));
+        try {
+            readAll(in);
+            fail("Expected ZipException");
+        } catch (ZipException e) {
+            // expected
+        }
+        in.release();
+    }
+
+    /**
+     * Tests that the stream fails with an EOFException wherever the
+     * compressed data is cut off: in the header, the deflated data or the
+     * trailer. The same stream must keep working afterwards.
+     */
+    public void testTruncated() throws IOException {
+        final byte[] input = createData(300, 3);
+        final byte[] compressed = gzip(input);
+        final ReusableGzipInputStream in = new ReusableGzipInputStream(WINDOW_SIZE);
+        for (int length = 0; length < compressed.length; length++) {
+            try {
+                in.reset(new ByteArrayInputStream(compressed, 0, length));
+                readAll(in);
+                fail("Expected EOFException for length " + length);
+            } catch (EOFException e) {
+                // expected
+            }
+        }
+        in.reset(new ByteArrayInputStream(compressed));
+        assertEquals(input, readAll(in));
+        in.release();
+    }
+
+    /**
+     * Tests that a corrupted trailer and a missing header are reported.
+     */
+    public void testCorrupt() throws IOException {
+        final byte[] compressed = gzip(createData(100, 4));
+        compressed[compressed.length - 8] ^= 0x01;
+        final ReusableGzipInputStream in = new ReusableGzipInputStream(WINDOW_SIZE);
+        in.reset(new ByteArrayInputStream(compressed));
+        try {
+            readAll(in);
+            fail("Expected ZipException");
+        } catch (ZipException e) {
+            // expected
+        }
+        try {
+            in.reset(new ByteArrayInputStream("not zipped".getBytes("UTF-8")));
+            fail("Expected ZipException");
+        } catch (ZipException e) {
+            // expected
+        }
+        in.release();
+    }
+
+    /**
+     * Tests that the stream can still be used after releasing the inflater.
+     */
+    public void testReuseAfterRelease() throws IOException {
+        final byte[] input = createData(500, 5);
+        final ReusableGzipInputStream in = new ReusableGzipInputStream(WINDOW_SIZE);
+        in.release();
+        assertEquals(-1, in.read());
+        in.reset(new ByteArrayInputStream(gzip(input)));
+        assertEquals(input, readAll(in));
+        in.release();
+        in.reset(new ByteArrayInputStream(gzip(input)));
+        assertEquals(input, readAll(in));
+        in.release();
+    }
+
+    /**
+     * Creates compressible data, repeated words mixed with random bytes.
+     *
+     * @param length The length of the data.
+     * @param seed The seed of the random bytes.
+     * @return The data.
+     */
+    private static byte[] createData(int length, long seed) {
+        final Random random = new Random(seed);
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (random.nextInt(4) == 0) ? (byte)random.nextInt() : (byte)('a' + i % 7);
+        }
+        return data;
+    }
+
+    /**
+     * Compresses data into a single GZIP member.
+     *
+     * @param data The data to compress.
+     * @return The GZIP data.
+     */
+    private static byte[] gzip(byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final GZIPOutputStream gzip = new GZIPOutputStream(out);
+        gzip.write(data);
+        gzip.close();
+        return out.toByteArray();
+    }
+
+    /**
+     * Reads a stream to its end in chunks of varying length.
+     *
+     * @param in The stream to read.
+     * @return The bytes read.
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[37];
+        int length = 1;
+        int count;
+        while ((count = in.read(buffer, 0, length)) != -1) {
+            out.write(buffer, 0, count);
+            length = length % buffer.length + 1;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Compares two byte arrays.
+     */
+    private static void assertEquals(byte[] expected, byte[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Byte " + i, expected[i], actual[i]);
+        }
+    }
+}